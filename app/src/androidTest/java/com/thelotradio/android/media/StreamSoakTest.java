@@ -0,0 +1,301 @@
+package com.thelotradio.android.media;
+
+import android.net.Uri;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.SystemClock;
+import android.test.InstrumentationTestCase;
+import android.test.suitebuilder.annotation.LargeTest;
+import android.util.Log;
+
+import com.google.android.exoplayer.MediaCodecTrackRenderer.DecoderInitializationException;
+import com.google.android.exoplayer.util.MimeTypes;
+import com.thelotradio.android.model.Stream;
+import com.thelotradio.android.net.ConnectionTimings;
+import com.thelotradio.android.testing.IcecastStandIn;
+import com.thelotradio.android.testing.NetworkImpairment;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Plays a stream served by an {@link IcecastStandIn} under a range of network impairments, and
+ * reports how playback fared in each: how long it took to start, how often and for what share of
+ * the time it stalled to rebuffer, and how long it took to recover from the worst stall. Changes
+ * to buffering or reconnecting should be judged by these numbers, which are logged under
+ * {@link #TAG} with one line per scenario.
+ * <p/>
+ * Only gross failures are asserted, since the numbers depend on the device.
+ */
+@LargeTest
+public class StreamSoakTest extends InstrumentationTestCase {
+
+    private static final String TAG = "StreamSoak";
+    private static final long SOAK_DURATION_MS = 30000;
+
+    private static final String MP3_CLIP = "/com/thelotradio/android/media/decoder/stereo_44100.mp3";
+    private static final int MP3_BITRATE = 128000;
+    private static final String AAC_CLIP = "/com/thelotradio/android/media/decoder/stereo_44100.aac";
+    // 4486 bytes holding 14336 samples at 44.1 kHz.
+    private static final int AAC_BITRATE = 110400;
+
+    private HandlerThread playerThread;
+    private Handler playerHandler;
+    private IcecastStandIn server;
+    private AudioPlayer player;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        // The player posts its events to the thread it is created on.
+        playerThread = new HandlerThread("SoakPlayer");
+        playerThread.start();
+        playerHandler = new Handler(playerThread.getLooper());
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        if (player != null) {
+            runOnPlayerThread(new Runnable() {
+                @Override
+                public void run() {
+                    player.release();
+                }
+            });
+        }
+        if (server != null) {
+            server.shutdown();
+        }
+        playerThread.quit();
+        super.tearDown();
+    }
+
+    public void testBaseline() throws Exception {
+        SoakResult result = soak("baseline", MP3_CLIP, MimeTypes.AUDIO_MPEG, MP3_BITRATE,
+                NetworkImpairment.NONE);
+        assertEquals(0, result.rebufferCount);
+    }
+
+    public void testBaselineAac() throws Exception {
+        SoakResult result = soak("baseline-aac", AAC_CLIP, MimeTypes.AUDIO_AAC, AAC_BITRATE,
+                NetworkImpairment.NONE);
+        assertEquals(0, result.rebufferCount);
+    }
+
+    public void testLatencyAndJitter() throws Exception {
+        soak("latency-jitter", MP3_CLIP, MimeTypes.AUDIO_MPEG, MP3_BITRATE,
+                new NetworkImpairment.Builder().setLatencyMs(600).setJitterMs(400).build());
+    }
+
+    public void testThroughputBelowBitrate() throws Exception {
+        // Playback has to outrun the network, so this is about how rebuffering is paced.
+        soak("throughput-90pct", MP3_CLIP, MimeTypes.AUDIO_MPEG, MP3_BITRATE,
+                new NetworkImpairment.Builder()
+                        .setThroughputBytesPerSecond(MP3_BITRATE / 8 * 9 / 10).build());
+    }
+
+    public void testMidStreamResets() throws Exception {
+        // Every connection is reset 10 s after its burst.
+        int resetAfterBytes = IcecastStandIn.BURST_BYTES + MP3_BITRATE / 8 * 10;
+        SoakResult result = soak("resets", MP3_CLIP, MimeTypes.AUDIO_MPEG, MP3_BITRATE,
+                new NetworkImpairment.Builder().setResetAfterBytes(resetAfterBytes).build());
+        assertTrue(result.reconnectCount > 0);
+    }
+
+    public void testStallPastReadTimeout() throws Exception {
+        // Every connection stalls 5 s after its burst, for longer than the read timeout, so the
+        // stalled connection is given up on.
+        SoakResult result = soak("stall", MP3_CLIP, MimeTypes.AUDIO_MPEG, MP3_BITRATE,
+                new NetworkImpairment.Builder()
+                        .setStall(IcecastStandIn.BURST_BYTES + MP3_BITRATE / 8 * 5, 12000)
+                        .build());
+        assertTrue(result.reconnectCount > 0);
+    }
+
+    /**
+     * Plays the clip through the stand-in for {@link #SOAK_DURATION_MS} under the impairment, and
+     * logs and returns how playback went. Fails if playback failed or didn't start.
+     */
+    private SoakResult soak(String scenario, String clipName, String mimeType, int bitrate,
+            NetworkImpairment impairment) throws Exception {
+        server = new IcecastStandIn(readResource(clipName), mimeType, bitrate);
+        server.setImpairment(impairment);
+        server.start();
+        final Uri uri = server.getUri();
+        final Stream stream = new Stream(uri, bitrate);
+        final SoakProbe probe = new SoakProbe();
+        runOnPlayerThread(new Runnable() {
+            @Override
+            public void run() {
+                player = new AudioPlayer(getInstrumentation().getTargetContext(),
+                        Collections.singletonList(stream), 0);
+                player.addListener(probe);
+                player.setInfoListener(probe);
+                player.setPlayWhenReady(true);
+                probe.onPrepare(SystemClock.elapsedRealtime());
+                player.prepare();
+            }
+        });
+        Thread.sleep(SOAK_DURATION_MS);
+        SoakResult result = probe.finish(scenario, SystemClock.elapsedRealtime());
+        Log.i(TAG, result + " connections=" + server.getConnectionCount()
+                + " resets=" + server.getResetCount() + " (" + impairment + ")");
+        assertNull(String.valueOf(result.error), result.error);
+        assertTrue("Playback didn't start", result.startupMs >= 0);
+        return result;
+    }
+
+    private void runOnPlayerThread(final Runnable runnable) throws InterruptedException {
+        final CountDownLatch done = new CountDownLatch(1);
+        playerHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                runnable.run();
+                done.countDown();
+            }
+        });
+        done.await();
+    }
+
+    private static byte[] readResource(String name) throws IOException {
+        InputStream in = StreamSoakTest.class.getResourceAsStream(name);
+        assertNotNull(name, in);
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * How playback went in one scenario.
+     */
+    private static final class SoakResult {
+
+        public final String scenario;
+        /** From prepare until playback first started, or -1 if it didn't. */
+        public final long startupMs;
+        /** The number of times playback stalled to rebuffer after it started. */
+        public final int rebufferCount;
+        /** The share of the time since playback started spent rebuffering. */
+        public final double rebufferRatio;
+        /** The longest stall, from running dry until playing again. */
+        public final long maxRecoveryMs;
+        /** The number of times the stream reconnected after losing its connection. */
+        public final int reconnectCount;
+        public final Exception error;
+
+        public SoakResult(String scenario, long startupMs, int rebufferCount, double rebufferRatio,
+                long maxRecoveryMs, int reconnectCount, Exception error) {
+            this.scenario = scenario;
+            this.startupMs = startupMs;
+            this.rebufferCount = rebufferCount;
+            this.rebufferRatio = rebufferRatio;
+            this.maxRecoveryMs = maxRecoveryMs;
+            this.reconnectCount = reconnectCount;
+            this.error = error;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("scenario=%s startupMs=%d rebufferCount=%d rebufferRatio=%.4f"
+                    + " maxRecoveryMs=%d reconnects=%d", scenario, startupMs, rebufferCount,
+                    rebufferRatio, maxRecoveryMs, reconnectCount);
+        }
+    }
+
+    /**
+     * Follows the player's state on its thread, and sums it up for the test thread.
+     */
+    private static final class SoakProbe implements AudioPlayer.Listener,
+            AudioPlayer.InfoListener {
+
+        private long prepareTimeMs;
+        private long startTimeMs = -1;
+        private long rebufferStartMs = -1;
+        private int rebufferCount;
+        private long rebufferMs;
+        private long maxRecoveryMs;
+        private int reconnectCount;
+        private Exception error;
+
+        public synchronized void onPrepare(long nowMs) {
+            prepareTimeMs = nowMs;
+        }
+
+        @Override
+        public synchronized void onStateChanged(boolean playWhenReady, int playbackState) {
+            long nowMs = SystemClock.elapsedRealtime();
+            if (playbackState == AudioPlayer.STATE_READY) {
+                if (startTimeMs == -1) {
+                    startTimeMs = nowMs;
+                } else if (rebufferStartMs != -1) {
+                    endRebuffer(nowMs);
+                }
+            } else if (playbackState == AudioPlayer.STATE_BUFFERING && startTimeMs != -1
+                    && rebufferStartMs == -1) {
+                rebufferStartMs = nowMs;
+                rebufferCount++;
+            }
+        }
+
+        @Override
+        public synchronized void onError(Exception e) {
+            error = e;
+        }
+
+        @Override
+        public synchronized void onStreamReconnected(int reconnectCount, long outageMs) {
+            this.reconnectCount = reconnectCount;
+        }
+
+        @Override
+        public void onStreamChanged(Uri uri, int bitrate) {}
+
+        @Override
+        public void onRecordingFileCompleted(File file) {}
+
+        @Override
+        public void onDecoderInitialized(String decoderName, long initializationDurationMs) {}
+
+        @Override
+        public void onConnectionOpened(ConnectionTimings timings) {}
+
+        @Override
+        public void onBurstCycleCompleted(long burstMs, long idleMs) {}
+
+        @Override
+        public void onSoftwareDecodingFallback(DecoderInitializationException e) {}
+
+        /**
+         * Ends the scenario, counting a stall still going on as if it ended now.
+         */
+        public synchronized SoakResult finish(String scenario, long nowMs) {
+            if (rebufferStartMs != -1) {
+                endRebuffer(nowMs);
+            }
+            long startupMs = startTimeMs == -1 ? -1 : startTimeMs - prepareTimeMs;
+            long playingMs = startTimeMs == -1 ? 0 : nowMs - startTimeMs;
+            double rebufferRatio = playingMs > 0 ? (double) rebufferMs / playingMs : 0;
+            return new SoakResult(scenario, startupMs, rebufferCount, rebufferRatio,
+                    maxRecoveryMs, reconnectCount, error);
+        }
+
+        private void endRebuffer(long nowMs) {
+            long recoveryMs = nowMs - rebufferStartMs;
+            rebufferMs += recoveryMs;
+            maxRecoveryMs = Math.max(maxRecoveryMs, recoveryMs);
+            rebufferStartMs = -1;
+        }
+    }
+}
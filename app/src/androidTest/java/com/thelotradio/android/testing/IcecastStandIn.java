@@ -0,0 +1,307 @@
+package com.thelotradio.android.testing;
+
+import android.net.Uri;
+import android.os.SystemClock;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A local HTTP server that serves a clip as a live stream the way Icecast does, so the player can
+ * be tested against a stream without the real one or a network.
+ * <p/>
+ * The clip is looped on a timeline that runs in real time from when the server starts. Each
+ * connection picks the stream up near the live position, wherever that falls in a frame, gets an
+ * initial burst, and is then paced at the stream's bitrate. Clients asking for metadata get
+ * {@code icy-metaint} blocks carrying the stream title. Every connection goes through the
+ * {@link NetworkImpairment} set when it sends, so conditions can also change mid-stream.
+ */
+public final class IcecastStandIn {
+
+    /**
+     * The metadata interval Icecast uses unless configured otherwise.
+     */
+    public static final int METADATA_INTERVAL = 16000;
+    /**
+     * The burst Icecast sends new listeners unless configured otherwise, in bytes.
+     */
+    public static final int BURST_BYTES = 64 * 1024;
+    public static final String STREAM_TITLE = "Icecast stand-in";
+
+    private static final Charset US_ASCII = Charset.forName("US-ASCII");
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int CHUNK_SIZE = 1024;
+
+    private final byte[] clip;
+    private final String contentType;
+    private final int bitrate;
+    private final byte[] metadataBlock;
+    private final Set<Socket> sockets;
+    private final AtomicInteger connectionCount;
+    private final AtomicInteger resetCount;
+    private final AtomicLong bytesSent;
+    private final Random random;
+
+    private volatile NetworkImpairment impairment;
+    private ServerSocket serverSocket;
+    private long startTimeMs;
+
+    /**
+     * @param clip The audio to loop. Must start at a frame.
+     * @param contentType The MIME type of the audio.
+     * @param bitrate The bitrate of the audio in bits per second, at which it is paced.
+     */
+    public IcecastStandIn(byte[] clip, String contentType, int bitrate) {
+        this.clip = clip;
+        this.contentType = contentType;
+        this.bitrate = bitrate;
+        metadataBlock = createMetadataBlock("StreamTitle='" + STREAM_TITLE + "';");
+        sockets = Collections.newSetFromMap(new ConcurrentHashMap<Socket, Boolean>());
+        connectionCount = new AtomicInteger();
+        resetCount = new AtomicInteger();
+        bytesSent = new AtomicLong();
+        random = new Random();
+        impairment = NetworkImpairment.NONE;
+    }
+
+    /**
+     * Starts listening on a free port of the loopback interface.
+     */
+    public void start() throws IOException {
+        serverSocket = new ServerSocket(0, 0, InetAddress.getByName("127.0.0.1"));
+        startTimeMs = SystemClock.elapsedRealtime();
+        Thread acceptor = new Thread("IcecastStandIn") {
+            @Override
+            public void run() {
+                try {
+                    while (true) {
+                        final Socket socket = serverSocket.accept();
+                        sockets.add(socket);
+                        connectionCount.incrementAndGet();
+                        new Thread("IcecastStandIn:" + socket.getPort()) {
+                            @Override
+                            public void run() {
+                                serve(socket);
+                            }
+                        }.start();
+                    }
+                } catch (IOException e) {
+                    // Closed by shutdown.
+                }
+            }
+        };
+        acceptor.start();
+    }
+
+    /**
+     * Stops listening and drops every open connection.
+     */
+    public void shutdown() {
+        try {
+            serverSocket.close();
+        } catch (IOException e) {
+            // Nothing to do.
+        }
+        for (Socket socket : sockets) {
+            closeQuietly(socket);
+        }
+    }
+
+    /**
+     * Returns the URI of the stream.
+     */
+    public Uri getUri() {
+        return Uri.parse("http://127.0.0.1:" + serverSocket.getLocalPort() + "/stream");
+    }
+
+    /**
+     * Sets the conditions under which data is sent from now on, on new and open connections.
+     */
+    public void setImpairment(NetworkImpairment impairment) {
+        this.impairment = impairment;
+    }
+
+    /**
+     * Returns the number of connections accepted so far.
+     */
+    public int getConnectionCount() {
+        return connectionCount.get();
+    }
+
+    /**
+     * Returns the number of connections reset by the impairment so far.
+     */
+    public int getResetCount() {
+        return resetCount.get();
+    }
+
+    /**
+     * Returns the number of bytes of audio sent so far, on all connections.
+     */
+    public long getBytesSent() {
+        return bytesSent.get();
+    }
+
+    private void serve(Socket socket) {
+        try {
+            boolean metadataRequested = readRequest(socket);
+            NetworkImpairment impairment = this.impairment;
+            if (impairment.latencyMs > 0) {
+                SystemClock.sleep(impairment.latencyMs);
+            }
+            OutputStream output = socket.getOutputStream();
+            output.write(createResponseHeaders(metadataRequested).getBytes(US_ASCII));
+            output.flush();
+            stream(socket, output, metadataRequested);
+        } catch (IOException e) {
+            // The client went away, or the connection was reset.
+        } finally {
+            sockets.remove(socket);
+            closeQuietly(socket);
+        }
+    }
+
+    /**
+     * Reads the request headers.
+     *
+     * @return Whether the client asked for metadata.
+     */
+    private boolean readRequest(Socket socket) throws IOException {
+        BufferedReader reader =
+                new BufferedReader(new InputStreamReader(socket.getInputStream(), US_ASCII));
+        boolean metadataRequested = false;
+        String line;
+        while ((line = reader.readLine()) != null && !line.isEmpty()) {
+            int colon = line.indexOf(':');
+            if (colon != -1 && line.substring(0, colon).trim().equalsIgnoreCase("Icy-MetaData")) {
+                metadataRequested = "1".equals(line.substring(colon + 1).trim());
+            }
+        }
+        if (line == null) {
+            throw new IOException("Request ended early");
+        }
+        return metadataRequested;
+    }
+
+    private String createResponseHeaders(boolean metadataRequested) {
+        StringBuilder headers = new StringBuilder()
+                .append("HTTP/1.0 200 OK\r\n")
+                .append("Server: Icecast 2.4.4\r\n")
+                .append("Content-Type: ").append(contentType).append("\r\n")
+                .append("Cache-Control: no-cache, no-store\r\n")
+                .append("icy-br: ").append(bitrate / 1000).append("\r\n")
+                .append("icy-name: The Lot Radio stand-in\r\n")
+                .append("icy-pub: 0\r\n");
+        if (metadataRequested) {
+            headers.append("icy-metaint: ").append(METADATA_INTERVAL).append("\r\n");
+        }
+        return headers.append("\r\n").toString();
+    }
+
+    /**
+     * Sends the stream from near the live position until the connection is closed or reset.
+     */
+    private void stream(Socket socket, OutputStream output, boolean metadataRequested)
+            throws IOException {
+        long connectionStartMs = SystemClock.elapsedRealtime();
+        long livePosition = (connectionStartMs - startTimeMs) * bitrate / 8000 - BURST_BYTES;
+        int clipPosition = (int) (((livePosition % clip.length) + clip.length) % clip.length);
+        int bytesUntilMetadata = metadataRequested ? METADATA_INTERVAL : Integer.MAX_VALUE;
+        long audioBytesSent = 0;
+        // When the throughput cap next allows sending.
+        long nextSendMs = connectionStartMs;
+        boolean stalled = false;
+        while (true) {
+            NetworkImpairment impairment = this.impairment;
+            int chunkSize = CHUNK_SIZE;
+            if (impairment.resetAfterBytes > 0) {
+                if (audioBytesSent >= impairment.resetAfterBytes) {
+                    reset(socket);
+                    return;
+                }
+                chunkSize = (int) Math.min(chunkSize, impairment.resetAfterBytes - audioBytesSent);
+            }
+            if (!stalled && impairment.stallAfterBytes > 0) {
+                if (audioBytesSent >= impairment.stallAfterBytes) {
+                    SystemClock.sleep(impairment.stallMs);
+                    stalled = true;
+                    nextSendMs = SystemClock.elapsedRealtime();
+                    continue;
+                }
+                chunkSize = (int) Math.min(chunkSize, impairment.stallAfterBytes - audioBytesSent);
+            }
+            // Past the burst the stream can't be sent faster than it is produced.
+            long dueMs = connectionStartMs
+                    + Math.max(0, audioBytesSent + chunkSize - BURST_BYTES) * 8000 / bitrate;
+            if (impairment.throughputBytesPerSecond > 0) {
+                dueMs = Math.max(dueMs, nextSendMs);
+                nextSendMs = dueMs + chunkSize * 1000L / impairment.throughputBytesPerSecond;
+            }
+            if (impairment.jitterMs > 0) {
+                // Delays the chunk without delaying the ones after it.
+                dueMs += random.nextInt(impairment.jitterMs + 1);
+            }
+            long delayMs = dueMs - SystemClock.elapsedRealtime();
+            if (delayMs > 0) {
+                SystemClock.sleep(delayMs);
+            }
+            int bytesRemaining = chunkSize;
+            while (bytesRemaining > 0) {
+                int length = Math.min(bytesRemaining,
+                        Math.min(clip.length - clipPosition, bytesUntilMetadata));
+                output.write(clip, clipPosition, length);
+                clipPosition = (clipPosition + length) % clip.length;
+                bytesRemaining -= length;
+                if (metadataRequested) {
+                    bytesUntilMetadata -= length;
+                    if (bytesUntilMetadata == 0) {
+                        output.write(metadataBlock);
+                        bytesUntilMetadata = METADATA_INTERVAL;
+                    }
+                }
+            }
+            output.flush();
+            audioBytesSent += chunkSize;
+            bytesSent.addAndGet(chunkSize);
+        }
+    }
+
+    /**
+     * Drops the connection with a TCP reset rather than an orderly close, like a failing network.
+     */
+    private void reset(Socket socket) throws IOException {
+        resetCount.incrementAndGet();
+        socket.setSoLinger(true, 0);
+        socket.close();
+    }
+
+    private static byte[] createMetadataBlock(String metadata) {
+        byte[] bytes = metadata.getBytes(UTF_8);
+        // The length byte counts blocks of 16 bytes, and the text is padded with zeros to fill them.
+        int length = (bytes.length + 15) / 16;
+        byte[] block = new byte[1 + length * 16];
+        block[0] = (byte) length;
+        System.arraycopy(bytes, 0, block, 1, bytes.length);
+        return block;
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // Nothing to do.
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.thelotradio.android.testing;
+
+/**
+ * The network conditions an {@link IcecastStandIn} imposes on each connection it serves.
+ */
+public final class NetworkImpairment {
+
+    /**
+     * A network without impairments.
+     */
+    public static final NetworkImpairment NONE = new Builder().build();
+
+    /**
+     * How long each response is held back after the request arrived, in ms.
+     */
+    public final int latencyMs;
+    /**
+     * The most each chunk of the stream is delayed beyond its schedule, at random, in ms.
+     */
+    public final int jitterMs;
+    /**
+     * The most bytes per second sent on a connection, or 0 for no cap.
+     */
+    public final int throughputBytesPerSecond;
+    /**
+     * After how many bytes of the stream each connection is reset, or 0 to never reset it.
+     */
+    public final int resetAfterBytes;
+    /**
+     * After how many bytes of the stream each connection stops sending for {@link #stallMs}, or
+     * 0 to never stall it.
+     */
+    public final int stallAfterBytes;
+    /**
+     * How long a stalled connection sends nothing for, in ms.
+     */
+    public final int stallMs;
+
+    private NetworkImpairment(Builder builder) {
+        latencyMs = builder.latencyMs;
+        jitterMs = builder.jitterMs;
+        throughputBytesPerSecond = builder.throughputBytesPerSecond;
+        resetAfterBytes = builder.resetAfterBytes;
+        stallAfterBytes = builder.stallAfterBytes;
+        stallMs = builder.stallMs;
+    }
+
+    @Override
+    public String toString() {
+        return "latencyMs=" + latencyMs + " jitterMs=" + jitterMs
+                + " throughputBytesPerSecond=" + throughputBytesPerSecond
+                + " resetAfterBytes=" + resetAfterBytes + " stallAfterBytes=" + stallAfterBytes
+                + " stallMs=" + stallMs;
+    }
+
+    /**
+     * Builds {@link NetworkImpairment}s. Everything is unimpaired unless set.
+     */
+    public static final class Builder {
+
+        private int latencyMs;
+        private int jitterMs;
+        private int throughputBytesPerSecond;
+        private int resetAfterBytes;
+        private int stallAfterBytes;
+        private int stallMs;
+
+        public Builder setLatencyMs(int latencyMs) {
+            this.latencyMs = latencyMs;
+            return this;
+        }
+
+        public Builder setJitterMs(int jitterMs) {
+            this.jitterMs = jitterMs;
+            return this;
+        }
+
+        public Builder setThroughputBytesPerSecond(int throughputBytesPerSecond) {
+            this.throughputBytesPerSecond = throughputBytesPerSecond;
+            return this;
+        }
+
+        public Builder setResetAfterBytes(int resetAfterBytes) {
+            this.resetAfterBytes = resetAfterBytes;
+            return this;
+        }
+
+        public Builder setStall(int stallAfterBytes, int stallMs) {
+            this.stallAfterBytes = stallAfterBytes;
+            this.stallMs = stallMs;
+            return this;
+        }
+
+        public NetworkImpairment build() {
+            return new NetworkImpairment(this);
+        }
+    }
+}
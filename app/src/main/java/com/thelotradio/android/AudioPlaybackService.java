@@ -2,42 +2,105 @@ package com.thelotradio.android;
 
 import android.app.PendingIntent;
 import android.app.Service;
+import android.content.ContentResolver;
 import android.content.Context;
 import android.content.Intent;
+import android.graphics.Bitmap;
+import android.net.Uri;
 import android.os.Binder;
+import android.os.Bundle;
+import android.os.Handler;
 import android.os.IBinder;
 import android.support.annotation.Nullable;
 import android.support.v4.media.MediaMetadataCompat;
 import android.support.v4.media.session.MediaButtonReceiver;
 import android.support.v4.media.session.MediaSessionCompat;
 import android.support.v4.media.session.PlaybackStateCompat;
+import android.text.format.DateFormat;
 
+import com.google.android.exoplayer.util.Util;
+import com.thelotradio.android.artwork.ArtworkCache;
+import com.thelotradio.android.media.PlaybackStats;
+import com.thelotradio.android.model.MusicProvider;
+import com.thelotradio.android.model.Show;
+import com.thelotradio.android.net.DiskResponseCache;
+import com.thelotradio.android.net.HttpConnectionPool;
 import com.thelotradio.android.playback.AudioPlayback;
 import com.thelotradio.android.playback.Playback;
+import com.thelotradio.android.playback.PlaybackController;
+import com.thelotradio.android.schedule.ScheduleClient;
+import com.thelotradio.android.schedule.ScheduleFetcher;
+import com.thelotradio.android.visualizer.SpectrumAnalyzer;
+
+import java.io.File;
+import java.util.Date;
 
 /**
  * Background service for playing audio
  */
-public class AudioPlaybackService extends Service implements Playback.Callback {
+public class AudioPlaybackService extends Service implements Playback.Callback,
+        ScheduleClient.Listener, ArtworkCache.Listener {
+    private static final String RESPONSE_CACHE_DIRECTORY = "http";
+    private static final String ARTWORK_CACHE_DIRECTORY = "artwork";
+
     private MediaSessionCompat session;
-    private AudioPlayback audioPlayback;
+    private PlaybackController playbackController;
     private NotificationManager notificationManager;
+    private ScheduleClient scheduleClient;
+    private ArtworkCache artworkCache;
+    private Uri stationArtwork;
+    // What the metadata is made of. Updated on the controller and schedule threads.
+    private String streamTitle = "";
+    private Show currentShow;
+    private Show nextShow;
     private final IBinder binder = new LocalBinder();
+    // Playback callbacks arrive on the controller thread, the notification is updated on this one.
+    private final Handler handler = new Handler();
+    private final Runnable updateNotification = new Runnable() {
+        @Override
+        public void run() {
+            notificationManager.updateNotification();
+        }
+    };
+    private final Runnable stopNotification = new Runnable() {
+        @Override
+        public void run() {
+            notificationManager.stopNotification();
+        }
+    };
 
     public class LocalBinder extends Binder {
         MediaSessionCompat.Token getSessionToken() {
             return session.getSessionToken();
         }
+
+        void warmUp() {
+            playbackController.start();
+        }
+
+        /**
+         * Returns the diagnostics of the player, or null if it isn't created yet.
+         */
+        PlaybackStats getPlaybackStats() {
+            return playbackController.getPlaybackStats();
+        }
+
+        /**
+         * Returns the analyzer of the audio played, which does nothing until started.
+         */
+        SpectrumAnalyzer getSpectrumAnalyzer() {
+            return playbackController.getSpectrumAnalyzer();
+        }
     }
 
     @Override
     public void onCreate() {
         super.onCreate();
-        audioPlayback = new AudioPlayback(this, this);
-        audioPlayback.setCallback(this);
-        // Start a new MediaSession
+        // Start a new MediaSession, before the controller thread that publishes to it
         session = new MediaSessionCompat(this, "TheLotRadio");
-        session.setCallback(new MediaSessionCallback());
+        playbackController = new PlaybackController(this, this);
+        // Media buttons and transport controls go straight to the controller thread.
+        session.setCallback(new MediaSessionCallback(), playbackController.getHandler());
         session.setFlags(MediaSessionCompat.FLAG_HANDLES_MEDIA_BUTTONS |
                 MediaSessionCompat.FLAG_HANDLES_TRANSPORT_CONTROLS);
 
@@ -50,30 +113,62 @@ public class AudioPlaybackService extends Service implements Playback.Callback {
             session.setActive(true);
         }
 
-        audioPlayback.play();
-        session.setMetadata(
-                new MediaMetadataCompat.Builder()
-                        .putText(MediaMetadataCompat.METADATA_KEY_TITLE,
-                                getApplicationContext().getString(R.string.app_name))
-                        .putText(MediaMetadataCompat.METADATA_KEY_ARTIST,
-                                getString(R.string.subtitle))
-                        .build());
+        // Connect and allocate the decoder now, so that pressing play only has to start output.
+        playbackController.start();
+        HttpConnectionPool pool = HttpConnectionPool.getInstance(this);
+        String userAgent = Util.getUserAgent(this, "The Lot Radio");
+        // Decoded downsampled in the background, so the first metadata goes out without it.
+        stationArtwork = Uri.parse(ContentResolver.SCHEME_ANDROID_RESOURCE + "://"
+                + getPackageName() + "/" + R.drawable.ic_logo);
+        artworkCache = new ArtworkCache(this, pool, userAgent,
+                new File(getCacheDir(), ARTWORK_CACHE_DIRECTORY), this);
+        updateMetadata();
         notificationManager = new NotificationManager(this, session);
+        // The controller may not have published a state yet. The notification then shows playback
+        // as paused, and is rebuilt by the update that follows the first state.
         notificationManager.startNotification();
+
+        // The schedule is cached across launches, so starting the service seldom fetches it.
+        ScheduleFetcher scheduleFetcher = new ScheduleFetcher(pool, userAgent,
+                MusicProvider.SCHEDULE,
+                new DiskResponseCache(new File(getCacheDir(), RESPONSE_CACHE_DIRECTORY)));
+        scheduleClient = new ScheduleClient(scheduleFetcher, this);
+        scheduleClient.start();
     }
 
     @Override
     public int onStartCommand(Intent intent, int flags, int startId) {
+        if (intent != null && Intent.ACTION_MEDIA_BUTTON.equals(intent.getAction())) {
+            playbackController.start();
+        } else if (intent != null
+                && AudioPlayback.CUSTOM_ACTION_JUMP_TO_LIVE.equals(intent.getAction())) {
+            // Sent by the notification.
+            playbackController.jumpToLive();
+        }
         MediaButtonReceiver.handleIntent(session, intent);
         return START_STICKY;
     }
 
     @Override
     public void onDestroy() {
-        audioPlayback.stop(true);
+        playbackController.stop(true);
+        // Blocks until stopped, so the stopped state reaches the session before it is released.
+        playbackController.release();
+        // These wait for an update under way, so nothing publishes to the session after this.
+        scheduleClient.release();
+        artworkCache.release();
+        handler.removeCallbacks(updateNotification);
+        notificationManager.stopNotification();
         session.release();
     }
 
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        playbackController.onTrimMemory(level);
+        artworkCache.trimMemory(level);
+    }
+
     @Nullable
     @Override
     public IBinder onBind(Intent intent) {
@@ -88,6 +183,8 @@ public class AudioPlaybackService extends Service implements Playback.Callback {
     @Override
     public void onPlaybackStatusChanged(PlaybackStateCompat state) {
         session.setPlaybackState(state);
+        // States are published after a short delay, so the notification has to follow them here.
+        handler.post(updateNotification);
     }
 
     @Override
@@ -100,28 +197,104 @@ public class AudioPlaybackService extends Service implements Playback.Callback {
 
     }
 
+    @Override
+    public synchronized void onStreamTitleChanged(String title) {
+        streamTitle = title;
+        updateMetadata();
+        handler.post(updateNotification);
+    }
+
+    @Override
+    public synchronized void onShowsChanged(Show currentShow, Show nextShow) {
+        this.currentShow = currentShow;
+        this.nextShow = nextShow;
+        updateMetadata();
+        handler.post(updateNotification);
+    }
+
+    @Override
+    public synchronized void onArtworkLoaded(Uri uri) {
+        updateMetadata();
+        handler.post(updateNotification);
+    }
+
+    /**
+     * Publishes the title announced by the stream, if any, along with the show on air, and the
+     * show after it as the description. The artwork is the station's, downsampled for the lock
+     * screen and for the notification, once loaded.
+     */
+    private synchronized void updateMetadata() {
+        CharSequence title;
+        CharSequence artist;
+        if (!streamTitle.isEmpty()) {
+            title = streamTitle;
+            artist = currentShow != null ? currentShow.name : getString(R.string.app_name);
+        } else if (currentShow != null) {
+            title = currentShow.name;
+            artist = getString(R.string.app_name);
+        } else {
+            title = getString(R.string.app_name);
+            artist = getString(R.string.subtitle);
+        }
+        MediaMetadataCompat.Builder metadata = new MediaMetadataCompat.Builder()
+                .putText(MediaMetadataCompat.METADATA_KEY_TITLE, title)
+                .putText(MediaMetadataCompat.METADATA_KEY_ARTIST, artist);
+        if (nextShow != null) {
+            // The display keys replace the ones above in the description, so all are set.
+            String startTime = DateFormat.getTimeFormat(this).format(new Date(nextShow.startTimeMs));
+            metadata.putText(MediaMetadataCompat.METADATA_KEY_DISPLAY_TITLE, title)
+                    .putText(MediaMetadataCompat.METADATA_KEY_DISPLAY_SUBTITLE, artist)
+                    .putText(MediaMetadataCompat.METADATA_KEY_DISPLAY_DESCRIPTION,
+                            getString(R.string.next_show, nextShow.name, startTime));
+        }
+        // The icon is asked for first, so it is loaded first.
+        Bitmap icon = artworkCache.get(stationArtwork, ArtworkCache.TARGET_ICON);
+        Bitmap art = artworkCache.get(stationArtwork, ArtworkCache.TARGET_ART);
+        if (icon != null) {
+            // The URI tells the notification which icon it is, as the bitmap read back from the
+            // session is a new copy every time.
+            metadata.putBitmap(MediaMetadataCompat.METADATA_KEY_DISPLAY_ICON, icon)
+                    .putString(MediaMetadataCompat.METADATA_KEY_DISPLAY_ICON_URI,
+                            stationArtwork.toString());
+        }
+        if (art != null) {
+            metadata.putBitmap(MediaMetadataCompat.METADATA_KEY_ART, art);
+        }
+        session.setMetadata(metadata.build());
+    }
+
+    /**
+     * Invoked on the controller thread. The notification follows the playback states published
+     * in response to the commands.
+     */
     private class MediaSessionCallback extends MediaSessionCompat.Callback {
         @Override
         public void onPlay() {
-            if (!audioPlayback.isPlaying()) {
-                audioPlayback.play();
-                notificationManager.updateNotification();
-            }
+            // Whether already playing is judged by the controller.
+            playbackController.play();
         }
 
         @Override
         public void onPause() {
-            if (audioPlayback.isPlaying()) {
-                audioPlayback.pause();
-                notificationManager.updateNotification();
+            playbackController.pause();
+        }
+
+        @Override
+        public void onCustomAction(String action, Bundle extras) {
+            if (AudioPlayback.CUSTOM_ACTION_JUMP_TO_LIVE.equals(action)) {
+                playbackController.jumpToLive();
+            } else if (AudioPlayback.CUSTOM_ACTION_START_RECORDING.equals(action)) {
+                playbackController.startRecording();
+            } else if (AudioPlayback.CUSTOM_ACTION_STOP_RECORDING.equals(action)) {
+                playbackController.stopRecording();
             }
         }
 
         @Override
         public void onStop() {
-            audioPlayback.stop(true);
+            playbackController.stop(true);
             session.setActive(false);
-            notificationManager.stopNotification();
+            handler.post(stopNotification);
         }
     }
 }
@@ -5,8 +5,7 @@ import android.app.PendingIntent;
 import android.app.Service;
 import android.content.Context;
 import android.content.Intent;
-import android.graphics.Bitmap;
-import android.graphics.drawable.BitmapDrawable;
+import android.os.Handler;
 import android.support.v4.app.NotificationManagerCompat;
 import android.support.v4.content.ContextCompat;
 import android.support.v4.media.MediaDescriptionCompat;
@@ -17,80 +16,140 @@ import android.support.v4.media.session.PlaybackStateCompat;
 import android.support.v7.app.NotificationCompat;
 import android.view.KeyEvent;
 
+import com.thelotradio.android.playback.AudioPlayback;
+
+import java.util.List;
+
 /**
- * Creates and controls a notification for a MediaSession
+ * Creates and controls a notification for a MediaSession. The parts of the notification that never
+ * change, like the action intents, are created once. The large icon is the one in the session's
+ * metadata, which is already downsampled, so it is used as is. When updates are posted is up to a
+ * {@link NotificationUpdater}.
  */
 public class NotificationManager {
     private static final int NOTIFICATION_ID = 0;
     private final Service service;
     private final MediaSessionCompat mediaSession;
     private final NotificationManagerCompat notificationManager;
+    private final NotificationUpdater updater;
+
+    private PendingIntent stopPendingIntent;
+    private NotificationCompat.Action playAction;
+    private NotificationCompat.Action pauseAction;
+    private NotificationCompat.Action jumpToLiveAction;
+    private NotificationCompat.MediaStyle style;
 
     public NotificationManager(Service service, MediaSessionCompat mediaSession) {
         this.service = service;
         this.mediaSession = mediaSession;
         notificationManager = NotificationManagerCompat.from(service);
+        updater = new NotificationUpdater(new Handler(), new NotificationUpdater.Delegate() {
+            @Override
+            public NotificationUpdater.Content getContent() {
+                return getSessionContent();
+            }
+
+            @Override
+            public void onPostNotification(NotificationUpdater.Content content) {
+                notificationManager.notify(NOTIFICATION_ID, createNotification(content));
+            }
+        });
     }
 
     public void startNotification() {
-        service.startForeground(NOTIFICATION_ID, createNotification());
-        updateNotification();
+        service.startForeground(NOTIFICATION_ID, createNotification(updater.start()));
     }
 
     public void stopNotification() {
+        updater.stop();
         notificationManager.cancel(NOTIFICATION_ID);
         service.stopForeground(true);
     }
 
+    /**
+     * Schedules the notification to be brought up to date with the media session. See
+     * {@link NotificationUpdater#update()}. Ignored once the notification is stopped.
+     */
     public void updateNotification() {
-        notificationManager.notify(NOTIFICATION_ID, createNotification());
+        updater.update();
     }
 
     /**
-     * Build a notification using the information from the given media session. Makes heavy use
-     * of {@link MediaMetadataCompat#getDescription()} to extract the appropriate information.
-     * @return A pre-built notification with information from the given media session.
+     * Reads what the notification should show from the media session. Makes heavy use of
+     * {@link MediaMetadataCompat#getDescription()} to extract the appropriate information.
      */
-    private Notification createNotification() {
+    private NotificationUpdater.Content getSessionContent() {
         MediaControllerCompat controller = mediaSession.getController();
-        MediaMetadataCompat mediaMetadata = controller.getMetadata();
-        MediaDescriptionCompat description = mediaMetadata.getDescription();
-        PendingIntent stopPendingIntent = getActionIntent(service, KeyEvent.KEYCODE_MEDIA_STOP);
-        Bitmap largeIcon = ((BitmapDrawable)
-                ContextCompat.getDrawable(service, R.drawable.ic_logo)).getBitmap();
+        MediaDescriptionCompat description = controller.getMetadata().getDescription();
+        PlaybackStateCompat state = controller.getPlaybackState();
+        // Before the first state is published, nothing plays yet.
+        boolean paused = state == null || state.getState() == PlaybackStateCompat.STATE_PAUSED;
+        boolean canJumpToLive = state != null
+                && hasCustomAction(state, AudioPlayback.CUSTOM_ACTION_JUMP_TO_LIVE);
+        return new NotificationUpdater.Content(description.getTitle(), description.getSubtitle(),
+                description.getIconUri(), description.getIconBitmap(), state != null, paused,
+                canJumpToLive);
+    }
 
+    /**
+     * Build a notification showing the given content of the media session.
+     */
+    private Notification createNotification(NotificationUpdater.Content content) {
+        if (style == null) {
+            createTemplate();
+        }
         NotificationCompat.Builder builder = new NotificationCompat.Builder(service);
         builder
                 .setSmallIcon(R.drawable.ic_notification)
-                .setContentTitle(description.getTitle())
-                .setContentText(description.getSubtitle())
-                .setLargeIcon(largeIcon)
+                .setContentTitle(content.title)
+                .setContentText(content.subtitle)
+                .setLargeIcon(content.largeIcon)
                 .setShowWhen(false)
-                .setContentIntent(controller.getSessionActivity())
+                .setContentIntent(mediaSession.getController().getSessionActivity())
                 .setVisibility(NotificationCompat.VISIBILITY_PUBLIC)
                 .setColor(ContextCompat.getColor(service, R.color.colorPrimaryDark))
                 .setDeleteIntent(stopPendingIntent)
-                .setStyle(new NotificationCompat.MediaStyle()
-                        .setShowCancelButton(true)
-                        .setCancelButtonIntent(stopPendingIntent)
-                        .setShowActionsInCompactView(0)
-                        .setMediaSession(mediaSession.getSessionToken()));
-
-        addAction(builder);
+                .setStyle(style)
+                .addAction(content.paused ? playAction : pauseAction);
+        if (content.canJumpToLive) {
+            builder.addAction(jumpToLiveAction);
+        }
         return builder.build();
     }
 
-    private void addAction(NotificationCompat.Builder builder) {
-        if (mediaSession.getController().getPlaybackState()
-                .getState() == PlaybackStateCompat.STATE_PAUSED) {
-            builder.addAction(new NotificationCompat.Action(R.drawable.ic_play_arrow_white_24dp,
-                    service.getString(R.string.label_play),
-                    getActionIntent(service, KeyEvent.KEYCODE_MEDIA_PLAY)));
-        } else {
-            builder.addAction(new NotificationCompat.Action(R.drawable.ic_pause_white_24dp,
-                    service.getString(R.string.label_pause),
-                    getActionIntent(service, KeyEvent.KEYCODE_MEDIA_PAUSE)));
+    /**
+     * Creates the parts of the notification that never change.
+     */
+    private void createTemplate() {
+        stopPendingIntent = getActionIntent(service, KeyEvent.KEYCODE_MEDIA_STOP);
+        playAction = new NotificationCompat.Action(R.drawable.ic_play_arrow_white_24dp,
+                service.getString(R.string.label_play),
+                getActionIntent(service, KeyEvent.KEYCODE_MEDIA_PLAY));
+        pauseAction = new NotificationCompat.Action(R.drawable.ic_pause_white_24dp,
+                service.getString(R.string.label_pause),
+                getActionIntent(service, KeyEvent.KEYCODE_MEDIA_PAUSE));
+        Intent intent = new Intent(service, service.getClass())
+                .setAction(AudioPlayback.CUSTOM_ACTION_JUMP_TO_LIVE);
+        jumpToLiveAction = new NotificationCompat.Action(R.drawable.ic_skip_next_white_24dp,
+                service.getString(R.string.label_jump_to_live),
+                PendingIntent.getService(service, 0, intent, 0));
+        style = new NotificationCompat.MediaStyle()
+                .setShowCancelButton(true)
+                .setCancelButtonIntent(stopPendingIntent)
+                .setShowActionsInCompactView(0)
+                .setMediaSession(mediaSession.getSessionToken());
+    }
+
+    private static boolean hasCustomAction(PlaybackStateCompat state, String action) {
+        List<PlaybackStateCompat.CustomAction> customActions = state.getCustomActions();
+        if (customActions != null) {
+            for (PlaybackStateCompat.CustomAction customAction : customActions) {
+                if (action.equals(customAction.getAction())) {
+                    return true;
+                }
+            }
         }
+        return false;
     }
 
     /**
@@ -0,0 +1,152 @@
+package com.thelotradio.android;
+
+import android.graphics.Bitmap;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.SystemClock;
+
+/**
+ * Decides when {@link NotificationManager} posts its notification. Updates are coalesced into at
+ * most one post per {@link #FRAME_INTERVAL_MS}, and an update is only posted if what the
+ * notification shows changed, so a session flapping between states during buffering doesn't flood
+ * the system. Kept apart from the notification, which needs a media session, so it can be tested
+ * on its own.
+ */
+/* package */ final class NotificationUpdater {
+
+    /**
+     * Reads what the notification shows, and posts it.
+     */
+    public interface Delegate {
+        /**
+         * Returns what the notification would show now.
+         */
+        Content getContent();
+
+        /**
+         * Builds a notification showing {@code content} and posts it.
+         */
+        void onPostNotification(Content content);
+    }
+
+    /**
+     * What the notification shows. The large icon is the one in the session's metadata, which is
+     * already downsampled, so it is told apart by its URI rather than compared.
+     */
+    public static final class Content {
+        public final CharSequence title;
+        public final CharSequence subtitle;
+        public final Uri largeIconUri;
+        public final Bitmap largeIcon;
+        public final boolean hasPlaybackState;
+        public final boolean paused;
+        public final boolean canJumpToLive;
+
+        public Content(CharSequence title, CharSequence subtitle, Uri largeIconUri,
+                Bitmap largeIcon, boolean hasPlaybackState, boolean paused,
+                boolean canJumpToLive) {
+            this.title = title;
+            this.subtitle = subtitle;
+            this.largeIconUri = largeIconUri;
+            this.largeIcon = largeIcon;
+            this.hasPlaybackState = hasPlaybackState;
+            this.paused = paused;
+            this.canJumpToLive = canJumpToLive;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            Content other = (Content) o;
+            // Always rebuilt once the first state arrives, whichever thread it came from first.
+            return hasPlaybackState == other.hasPlaybackState && paused == other.paused
+                    && canJumpToLive == other.canJumpToLive
+                    && textEquals(title, other.title) && textEquals(subtitle, other.subtitle)
+                    && (largeIconUri == null ? other.largeIconUri == null
+                    : largeIconUri.equals(other.largeIconUri));
+        }
+
+        @Override
+        public int hashCode() {
+            int result = title != null ? title.toString().hashCode() : 0;
+            result = 31 * result + (subtitle != null ? subtitle.toString().hashCode() : 0);
+            result = 31 * result + (largeIconUri != null ? largeIconUri.hashCode() : 0);
+            result = 31 * result + (hasPlaybackState ? 1 : 0);
+            result = 31 * result + (paused ? 1 : 0);
+            return 31 * result + (canJumpToLive ? 1 : 0);
+        }
+
+        private static boolean textEquals(CharSequence a, CharSequence b) {
+            return a == null ? b == null : b != null && a.toString().equals(b.toString());
+        }
+    }
+
+    /* package */ static final int FRAME_INTERVAL_MS = 16;
+
+    private final Handler handler;
+    private final Delegate delegate;
+    private final Runnable post;
+
+    // What the notification last posted shows
+    private Content posted;
+    private boolean started;
+    private boolean pending;
+    private long lastPostedMs;
+
+    public NotificationUpdater(Handler handler, Delegate delegate) {
+        this.handler = handler;
+        this.delegate = delegate;
+        post = new Runnable() {
+            @Override
+            public void run() {
+                pending = false;
+                Content content = delegate.getContent();
+                if (!content.equals(posted)) {
+                    posted = content;
+                    delegate.onPostNotification(content);
+                    lastPostedMs = SystemClock.uptimeMillis();
+                }
+            }
+        };
+    }
+
+    /**
+     * Starts posting updates.
+     *
+     * @return What the first notification shows, which the caller posts.
+     */
+    public Content start() {
+        started = true;
+        posted = delegate.getContent();
+        lastPostedMs = SystemClock.uptimeMillis();
+        return posted;
+    }
+
+    /**
+     * Stops posting updates, including one that is waiting.
+     */
+    public void stop() {
+        started = false;
+        handler.removeCallbacks(post);
+        pending = false;
+        posted = null;
+    }
+
+    /**
+     * Schedules the notification to be brought up to date. Bursts of updates result in a single
+     * post, no sooner than a frame interval after the previous one. Ignored unless started.
+     */
+    public void update() {
+        if (!started || pending) {
+            return;
+        }
+        pending = true;
+        handler.postAtTime(post,
+                Math.max(SystemClock.uptimeMillis(), lastPostedMs + FRAME_INTERVAL_MS));
+    }
+}
@@ -19,6 +19,7 @@ import android.content.ComponentName;
 import android.content.Intent;
 import android.content.ServiceConnection;
 import android.os.Bundle;
+import android.os.Handler;
 import android.os.IBinder;
 import android.os.RemoteException;
 import android.support.v4.media.session.MediaControllerCompat;
@@ -30,6 +31,9 @@ import android.widget.ImageView;
 import android.widget.TextView;
 
 import com.thelotradio.android.media.AudioPlayer;
+import com.thelotradio.android.media.PlaybackStats;
+import com.thelotradio.android.playback.AudioPlayback;
+import com.thelotradio.android.visualizer.SpectrumView;
 
 /**
  * An activity that plays media using {@link AudioPlayer}.
@@ -37,9 +41,23 @@ import com.thelotradio.android.media.AudioPlayer;
 public class PlayerActivity extends AppCompatActivity implements View.OnClickListener {
 
     private static final String TAG = "TheLotRadio";
+    private static final String KEY_STATS_OVERLAY_VISIBLE = "stats_overlay_visible";
+
+    private final Handler handler = new Handler();
+    private final Runnable statsRefresh = new Runnable() {
+        @Override
+        public void run() {
+            updateStatsOverlay();
+            handler.postDelayed(this, PlaybackStats.SAMPLING_INTERVAL_MS);
+        }
+    };
 
     private TextView playerStatus;
+    private TextView record;
+    private TextView statsOverlay;
+    private SpectrumView spectrum;
     private ImageView logo;
+    private AudioPlaybackService.LocalBinder binder;
 
     @Override
     public void onCreate(Bundle savedInstanceState) {
@@ -48,11 +66,124 @@ public class PlayerActivity extends AppCompatActivity implements View.OnClickLis
         setContentView(R.layout.activity_main);
         logo = (ImageView) findViewById(R.id.logo)  ;
         playerStatus = (TextView) findViewById(R.id.player_status);
+        record = (TextView) findViewById(R.id.record);
+        statsOverlay = (TextView) findViewById(R.id.stats_overlay);
+        spectrum = (SpectrumView) findViewById(R.id.spectrum);
         logo.setOnClickListener(this);
+        logo.setOnLongClickListener(new View.OnLongClickListener() {
+            @Override
+            public boolean onLongClick(View view) {
+                setStatsOverlayVisible(statsOverlay.getVisibility() != View.VISIBLE);
+                return true;
+            }
+        });
+        if (savedInstanceState != null
+                && savedInstanceState.getBoolean(KEY_STATS_OVERLAY_VISIBLE)) {
+            statsOverlay.setVisibility(View.VISIBLE);
+        }
         playerStatus.setOnClickListener(this);
+        record.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View view) {
+                String recordingAction = getRecordingAction();
+                if (recordingAction != null) {
+                    getSupportMediaController().getTransportControls()
+                            .sendCustomAction(recordingAction, null);
+                }
+            }
+        });
         bindService(new Intent(this, AudioPlaybackService.class), serviceConnection, BIND_AUTO_CREATE);
     }
 
+    @Override
+    protected void onResume() {
+        super.onResume();
+        if (statsOverlay.getVisibility() == View.VISIBLE) {
+            handler.post(statsRefresh);
+        }
+    }
+
+    @Override
+    protected void onPause() {
+        super.onPause();
+        handler.removeCallbacks(statsRefresh);
+    }
+
+    @Override
+    protected void onSaveInstanceState(Bundle outState) {
+        super.onSaveInstanceState(outState);
+        outState.putBoolean(KEY_STATS_OVERLAY_VISIBLE,
+                statsOverlay.getVisibility() == View.VISIBLE);
+    }
+
+    private void setStatsOverlayVisible(boolean visible) {
+        statsOverlay.setVisibility(visible ? View.VISIBLE : View.GONE);
+        handler.removeCallbacks(statsRefresh);
+        if (visible) {
+            handler.post(statsRefresh);
+        }
+    }
+
+    /**
+     * Shows the player diagnostics. They are only read here, at the rate the player samples them,
+     * so the overlay costs playback nothing.
+     */
+    private void updateStatsOverlay() {
+        PlaybackStats stats = binder != null ? binder.getPlaybackStats() : null;
+        if (stats == null) {
+            statsOverlay.setText(R.string.stats_unknown);
+            return;
+        }
+        long decoderInitializationMs = stats.getDecoderInitializationMs();
+        long bandwidthEstimate = stats.getBandwidthEstimate();
+        int bitrate = stats.getBitrate();
+        statsOverlay.setText(getString(R.string.stats_overlay,
+                formatStat(stats.getBufferedAheadMs()),
+                formatStat(bandwidthEstimate < 0 ? -1 : bandwidthEstimate / 1000),
+                formatStat(bitrate < 0 ? -1 : bitrate / 1000),
+                formatStat(stats.getHost()),
+                stats.getUnderrunCount(),
+                formatStat(stats.getDecoderName()),
+                formatStat(decoderInitializationMs),
+                formatStat(stats.getSampleBufferBytes() / 1024)));
+    }
+
+    private String formatStat(long value) {
+        return value < 0 ? getString(R.string.stats_unknown) : Long.toString(value);
+    }
+
+    private String formatStat(String value) {
+        return value == null ? getString(R.string.stats_unknown) : value;
+    }
+
+
+    private void updateRecordButton() {
+        String recordingAction = getRecordingAction();
+        record.setVisibility(recordingAction != null ? View.VISIBLE : View.GONE);
+        record.setText(AudioPlayback.CUSTOM_ACTION_STOP_RECORDING.equals(recordingAction)
+                ? R.string.label_stop_recording : R.string.label_record);
+    }
+
+    /**
+     * Returns the custom action the session offers to start or stop recording, or null if it
+     * offers neither.
+     */
+    private String getRecordingAction() {
+        MediaControllerCompat controller = getSupportMediaController();
+        if (controller == null || controller.getPlaybackState() == null
+                || controller.getPlaybackState().getCustomActions() == null) {
+            return null;
+        }
+        for (PlaybackStateCompat.CustomAction customAction
+                : controller.getPlaybackState().getCustomActions()) {
+            String action = customAction.getAction();
+            if (AudioPlayback.CUSTOM_ACTION_START_RECORDING.equals(action)
+                    || AudioPlayback.CUSTOM_ACTION_STOP_RECORDING.equals(action)) {
+                return action;
+            }
+        }
+        return null;
+    }
 
     @Override
     public void onClick(View view) {
@@ -71,7 +202,11 @@ public class PlayerActivity extends AppCompatActivity implements View.OnClickLis
     private ServiceConnection serviceConnection = new ServiceConnection() {
         @Override
         public void onServiceConnected(ComponentName className, IBinder service) {
-            AudioPlaybackService.LocalBinder binder = (AudioPlaybackService.LocalBinder) service;
+            binder = (AudioPlaybackService.LocalBinder) service;
+            // The listener is likely to press play next.
+            binder.warmUp();
+            // Analyzes the audio only while the activity is visible.
+            spectrum.setAnalyzer(binder.getSpectrumAnalyzer());
             try {
                 setSupportMediaController(new MediaControllerCompat(PlayerActivity.this,
                         binder.getSessionToken()));
@@ -83,7 +218,8 @@ public class PlayerActivity extends AppCompatActivity implements View.OnClickLis
 
         @Override
         public void onServiceDisconnected(ComponentName name) {
-
+            spectrum.setAnalyzer(null);
+            binder = null;
         }
     };
 
@@ -95,6 +231,7 @@ public class PlayerActivity extends AppCompatActivity implements View.OnClickLis
             } else if (state.getState() == PlaybackStateCompat.STATE_PAUSED) {
                 playerStatus.setText(getString(R.string.paused));
             }
+            updateRecordButton();
         }
     };
 }
\ No newline at end of file
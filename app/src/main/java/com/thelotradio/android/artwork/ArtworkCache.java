@@ -0,0 +1,349 @@
+package com.thelotradio.android.artwork;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Message;
+import android.os.Process;
+import android.util.Log;
+import android.util.LruCache;
+
+import com.google.android.exoplayer.C;
+import com.google.android.exoplayer.upstream.DataSpec;
+import com.thelotradio.android.net.HttpConnectionPool;
+import com.thelotradio.android.net.PooledHttpDataSource;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Provides artwork downsampled to the size it is shown at, for the notification and the lock
+ * screen. Images are decoded on a background thread, at the largest power of two subsampling that
+ * still covers the target size, and then scaled to fit it, so the full-size image is never held
+ * in memory. The results are kept in a size-bounded LRU in memory, backed by a size-bounded cache
+ * of the downsampled images on disk, so that artwork is only fetched and decoded in full once.
+ * <p/>
+ * Artwork is identified by a URI, either {@code http(s)}, fetched over the pooled connections, or
+ * anything a {@link android.content.ContentResolver} can open, like an
+ * {@code android.resource} URI of a drawable.
+ */
+public final class ArtworkCache implements Handler.Callback {
+
+    /**
+     * Listener for artwork becoming available.
+     */
+    public interface Listener {
+        /**
+         * Invoked on the cache's thread when artwork asked for with {@link #get(Uri, int)} was
+         * loaded, so it can be asked for again.
+         */
+        void onArtworkLoaded(Uri uri);
+    }
+
+    /**
+     * The large icon of the notification.
+     */
+    public static final int TARGET_ICON = 0;
+    /**
+     * The artwork of the session, shown full width on the lock screen.
+     */
+    public static final int TARGET_ART = 1;
+
+    private static final String TAG = "ArtworkCache";
+    private static final int MSG_LOAD = 0;
+    private static final int TIMEOUT_MS = 10000;
+    // Far larger than artwork needs to be, while bounding what a broken server can make us buffer.
+    private static final int MAX_SOURCE_LENGTH = 8 * 1024 * 1024;
+    private static final int MAX_MEMORY_BYTES = 16 * 1024 * 1024;
+    private static final long MAX_DISK_BYTES = 8 * 1024 * 1024;
+    // Artwork that failed to load isn't tried again sooner, since metadata is updated often.
+    private static final long RETRY_DELAY_MS = 10 * 60 * 1000;
+    private static final int JPEG_QUALITY = 90;
+
+    private final Context context;
+    private final HttpConnectionPool pool;
+    private final String userAgent;
+    private final int[] targetWidths;
+    private final int[] targetHeights;
+    private final LruCache<String, Bitmap> memoryCache;
+    // Only used on the cache's thread.
+    private final DiskCache diskCache;
+    private final LoadTracker loads;
+    private final HandlerThread thread;
+    private final Handler handler;
+
+    // Guarded by itself, so that release() can wait for a callback under way.
+    private final Object listenerLock;
+    private Listener listener;
+
+    /**
+     * @param context The context to read resources and open content with.
+     * @param pool The pool to take connections from.
+     * @param userAgent The User-Agent string to send with requests.
+     * @param directory The directory to keep the downsampled images in. Created when first
+     *     written to.
+     * @param listener The listener for loaded artwork.
+     */
+    public ArtworkCache(Context context, HttpConnectionPool pool, String userAgent,
+            File directory, Listener listener) {
+        this.context = context;
+        this.pool = pool;
+        this.userAgent = userAgent;
+        this.listener = listener;
+        listenerLock = new Object();
+        Resources resources = context.getResources();
+        int artSize = Math.min(resources.getDisplayMetrics().widthPixels,
+                resources.getDisplayMetrics().heightPixels);
+        targetWidths = new int[] {
+                resources.getDimensionPixelSize(android.R.dimen.notification_large_icon_width),
+                artSize};
+        targetHeights = new int[] {
+                resources.getDimensionPixelSize(android.R.dimen.notification_large_icon_height),
+                artSize};
+        int maxMemoryBytes = (int) Math.min(Runtime.getRuntime().maxMemory() / 8,
+                MAX_MEMORY_BYTES);
+        memoryCache = new LruCache<String, Bitmap>(maxMemoryBytes) {
+            @Override
+            protected int sizeOf(String key, Bitmap bitmap) {
+                // Evicted bitmaps aren't recycled, as the session or notification may still use
+                // them.
+                return bitmap.getByteCount();
+            }
+        };
+        diskCache = new DiskCache(directory, MAX_DISK_BYTES);
+        loads = new LoadTracker(RETRY_DELAY_MS);
+        thread = new HandlerThread("ArtworkCache", Process.THREAD_PRIORITY_BACKGROUND);
+        thread.start();
+        handler = new Handler(thread.getLooper(), this);
+    }
+
+    /**
+     * Returns the artwork at {@code uri} downsampled for {@code target}, if it is in memory.
+     * Otherwise starts loading it, and the listener is invoked once it is. May be called on any
+     * thread.
+     *
+     * @param target {@link #TARGET_ICON} or {@link #TARGET_ART}.
+     * @return The artwork, or null if it is being loaded or failed to load.
+     */
+    public Bitmap get(Uri uri, int target) {
+        String key = getKey(uri, target);
+        Bitmap bitmap = memoryCache.get(key);
+        if (bitmap != null) {
+            return bitmap;
+        }
+        if (loads.start(key, System.currentTimeMillis())) {
+            handler.obtainMessage(MSG_LOAD, target, 0, uri).sendToTarget();
+        }
+        return null;
+    }
+
+    /**
+     * See {@link ComponentCallbacks2#onTrimMemory(int)}. Artwork dropped from memory is read
+     * back from disk when next asked for.
+     */
+    public void trimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            memoryCache.evictAll();
+        }
+    }
+
+    /**
+     * Stops loading artwork. The listener isn't invoked after this returns, and an invocation
+     * under way on the cache's thread is waited for. Must not be called while holding a lock the
+     * listener takes.
+     */
+    public void release() {
+        synchronized (listenerLock) {
+            listener = null;
+        }
+        thread.quit();
+    }
+
+    @Override
+    public boolean handleMessage(Message msg) {
+        if (msg.what != MSG_LOAD) {
+            return false;
+        }
+        Uri uri = (Uri) msg.obj;
+        int target = msg.arg1;
+        String key = getKey(uri, target);
+        Bitmap bitmap = load(uri, key, targetWidths[target], targetHeights[target]);
+        if (bitmap != null) {
+            memoryCache.put(key, bitmap);
+        }
+        loads.finish(key, bitmap != null, System.currentTimeMillis());
+        if (bitmap != null) {
+            synchronized (listenerLock) {
+                if (listener != null) {
+                    listener.onArtworkLoaded(uri);
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reads the downsampled artwork from disk, or else decodes it from the source and writes it
+     * to disk.
+     *
+     * @return The artwork, or null if it couldn't be loaded.
+     */
+    private Bitmap load(Uri uri, String key, int targetWidth, int targetHeight) {
+        byte[] cached = diskCache.get(key);
+        if (cached != null) {
+            Bitmap bitmap = BitmapFactory.decodeByteArray(cached, 0, cached.length);
+            if (bitmap != null) {
+                return bitmap;
+            }
+            diskCache.remove(key);
+        }
+        byte[] source;
+        try {
+            source = readSource(uri);
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to read " + uri, e);
+            return null;
+        }
+        Bitmap bitmap = decode(source, targetWidth, targetHeight);
+        if (bitmap == null) {
+            Log.w(TAG, "Failed to decode " + uri);
+            return null;
+        }
+        try {
+            diskCache.put(key, encode(bitmap));
+        } catch (IOException e) {
+            // It's decoded again next time.
+            Log.w(TAG, "Failed to cache " + uri, e);
+        }
+        return bitmap;
+    }
+
+    private byte[] readSource(Uri uri) throws IOException {
+        String scheme = uri.getScheme();
+        if ("http".equals(scheme) || "https".equals(scheme)) {
+            PooledHttpDataSource dataSource = new PooledHttpDataSource(pool, userAgent, null,
+                    TIMEOUT_MS, TIMEOUT_MS, null, null);
+            try {
+                dataSource.open(new DataSpec(uri));
+                ByteArrayOutputStream source = new ByteArrayOutputStream();
+                byte[] buffer = new byte[4096];
+                int bytesRead;
+                while ((bytesRead = dataSource.read(buffer, 0, buffer.length))
+                        != C.RESULT_END_OF_INPUT) {
+                    source.write(buffer, 0, bytesRead);
+                    checkSourceLength(source);
+                }
+                return source.toByteArray();
+            } finally {
+                dataSource.close();
+            }
+        }
+        InputStream input = context.getContentResolver().openInputStream(uri);
+        if (input == null) {
+            throw new IOException("Failed to open " + uri);
+        }
+        try {
+            ByteArrayOutputStream source = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int bytesRead;
+            while ((bytesRead = input.read(buffer)) != -1) {
+                source.write(buffer, 0, bytesRead);
+                checkSourceLength(source);
+            }
+            return source.toByteArray();
+        } finally {
+            input.close();
+        }
+    }
+
+    /**
+     * Encodes the downsampled artwork to be kept on disk. Artwork with transparency is kept
+     * lossless.
+     */
+    private static byte[] encode(Bitmap bitmap) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        boolean compressed = bitmap.hasAlpha()
+                ? bitmap.compress(Bitmap.CompressFormat.PNG, 100, output)
+                : bitmap.compress(Bitmap.CompressFormat.JPEG, JPEG_QUALITY, output);
+        if (!compressed) {
+            throw new IOException("Failed to compress");
+        }
+        return output.toByteArray();
+    }
+
+    /**
+     * Decodes an image subsampled as far as possible while still covering the target size, and
+     * scales it down to fit the target size, keeping its aspect ratio.
+     *
+     * @return The image, or null if it couldn't be decoded.
+     */
+    private static Bitmap decode(byte[] source, int targetWidth, int targetHeight) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(source, 0, source.length, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return null;
+        }
+        int[] size = getFittedSize(options.outWidth, options.outHeight, targetWidth, targetHeight);
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = getSampleSize(options.outWidth, options.outHeight, size[0], size[1]);
+        Bitmap bitmap = BitmapFactory.decodeByteArray(source, 0, source.length, options);
+        if (bitmap == null) {
+            return null;
+        }
+        if (bitmap.getWidth() > size[0] || bitmap.getHeight() > size[1]) {
+            Bitmap scaled = Bitmap.createScaledBitmap(bitmap, size[0], size[1], true);
+            if (scaled != bitmap) {
+                bitmap.recycle();
+            }
+            bitmap = scaled;
+        }
+        return bitmap;
+    }
+
+    /**
+     * Returns the size of an image scaled down to fit the target size, keeping its aspect ratio,
+     * as its width and height. Images that already fit aren't scaled up.
+     */
+    /* package */ static int[] getFittedSize(int width, int height, int targetWidth,
+            int targetHeight) {
+        if (width <= targetWidth && height <= targetHeight) {
+            return new int[] {width, height};
+        }
+        double scale = Math.min((double) targetWidth / width, (double) targetHeight / height);
+        return new int[] {
+                Math.max(1, (int) Math.round(width * scale)),
+                Math.max(1, (int) Math.round(height * scale))};
+    }
+
+    /**
+     * Returns the largest power of two an image can be subsampled by while still being at least
+     * the given size.
+     */
+    /* package */ static int getSampleSize(int width, int height, int fittedWidth,
+            int fittedHeight) {
+        int sampleSize = 1;
+        while (width / (sampleSize * 2) >= fittedWidth
+                && height / (sampleSize * 2) >= fittedHeight) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    private String getKey(Uri uri, int target) {
+        return targetWidths[target] + "x" + targetHeights[target] + ":" + uri;
+    }
+
+    private static void checkSourceLength(ByteArrayOutputStream source) throws IOException {
+        if (source.size() > MAX_SOURCE_LENGTH) {
+            throw new IOException("Artwork too large");
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package com.thelotradio.android.artwork;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * A size-bounded cache of byte arrays in files of one directory, which deletes the least recently
+ * used files once they add up to more than its size. {@link ArtworkCache} keeps the encoded,
+ * downsampled artwork in it. Not thread safe.
+ */
+/* package */ final class DiskCache {
+
+    private final File directory;
+    private final long maxBytes;
+
+    /**
+     * @param directory The directory to keep the files in. Created when first written to.
+     * @param maxBytes The most the files may add up to.
+     */
+    public DiskCache(File directory, long maxBytes) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Returns the data kept under {@code key}, and marks it as used.
+     *
+     * @return The data, or null if there is none or it couldn't be read.
+     */
+    public byte[] get(String key) {
+        File file = getFile(key);
+        if (!file.exists()) {
+            return null;
+        }
+        byte[] data;
+        try {
+            data = readFile(file);
+        } catch (IOException e) {
+            file.delete();
+            return null;
+        }
+        // Keeps the file from being trimmed, which goes by last use.
+        file.setLastModified(System.currentTimeMillis());
+        return data;
+    }
+
+    /**
+     * Keeps {@code data} under {@code key}, replacing any earlier data atomically, and then trims
+     * the cache to its size.
+     */
+    public void put(String key, byte[] data) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Failed to create " + directory);
+        }
+        File file = getFile(key);
+        File temporaryFile = new File(file.getPath() + ".tmp");
+        FileOutputStream output = new FileOutputStream(temporaryFile);
+        try {
+            output.write(data);
+        } finally {
+            output.close();
+        }
+        if (!temporaryFile.renameTo(file)) {
+            temporaryFile.delete();
+            throw new IOException("Failed to replace " + file);
+        }
+        trim();
+    }
+
+    /**
+     * Drops the data kept under {@code key}, if any.
+     */
+    public void remove(String key) {
+        getFile(key).delete();
+    }
+
+    /* package */ File getFile(String key) {
+        return new File(directory, getFileName(key));
+    }
+
+    /**
+     * Deletes the least recently used files until the cache fits in its size.
+     */
+    private void trim() {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        long totalBytes = 0;
+        for (File file : files) {
+            totalBytes += file.length();
+        }
+        if (totalBytes <= maxBytes) {
+            return;
+        }
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                long difference = a.lastModified() - b.lastModified();
+                return difference < 0 ? -1 : (difference > 0 ? 1 : 0);
+            }
+        });
+        for (int i = 0; i < files.length && totalBytes > maxBytes; i++) {
+            long length = files[i].length();
+            if (files[i].delete()) {
+                totalBytes -= length;
+            }
+        }
+    }
+
+    private static byte[] readFile(File file) throws IOException {
+        FileInputStream input = new FileInputStream(file);
+        try {
+            ByteArrayOutputStream data = new ByteArrayOutputStream((int) file.length());
+            byte[] buffer = new byte[4096];
+            int bytesRead;
+            while ((bytesRead = input.read(buffer)) != -1) {
+                data.write(buffer, 0, bytesRead);
+            }
+            return data.toByteArray();
+        } finally {
+            input.close();
+        }
+    }
+
+    /**
+     * Names the file after a digest of the key, which unlike its hash code doesn't collide.
+     */
+    private static String getFileName(String key) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(key.getBytes("UTF-8"));
+            StringBuilder name = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                name.append(Character.forDigit((b >> 4) & 0xF, 16))
+                        .append(Character.forDigit(b & 0xF, 16));
+            }
+            return name.toString();
+        } catch (NoSuchAlgorithmException | IOException e) {
+            // Every platform has SHA-1 and UTF-8.
+            throw new IllegalStateException(e);
+        }
+    }
+}
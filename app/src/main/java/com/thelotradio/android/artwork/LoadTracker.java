@@ -0,0 +1,50 @@
+package com.thelotradio.android.artwork;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps track of the artwork being loaded, so each is loaded once at a time, and holds back
+ * artwork that failed to load until its retry delay is over. Thread safe.
+ */
+/* package */ final class LoadTracker {
+
+    private final long retryDelayMs;
+    // The keys being loaded, and when the ones that failed may be tried again.
+    private final Map<String, Boolean> pendingKeys;
+    private final Map<String, Long> retryTimesMs;
+
+    /**
+     * @param retryDelayMs How long after failing to load artwork it may be tried again.
+     */
+    public LoadTracker(long retryDelayMs) {
+        this.retryDelayMs = retryDelayMs;
+        pendingKeys = new ConcurrentHashMap<>();
+        retryTimesMs = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Returns whether loading {@code key} should start, which it shouldn't if it is being loaded
+     * or failed to load within the retry delay. If it should, it counts as being loaded from now
+     * until {@link #finish(String, boolean, long)}.
+     */
+    public boolean start(String key, long nowMs) {
+        Long retryTimeMs = retryTimesMs.get(key);
+        return (retryTimeMs == null || nowMs >= retryTimeMs)
+                && pendingKeys.put(key, Boolean.TRUE) == null;
+    }
+
+    /**
+     * Reports that loading {@code key} is over.
+     *
+     * @param loaded Whether it was loaded, or else failed to.
+     */
+    public void finish(String key, boolean loaded, long nowMs) {
+        if (loaded) {
+            retryTimesMs.remove(key);
+        } else {
+            retryTimesMs.put(key, nowMs + retryDelayMs);
+        }
+        pendingKeys.remove(key);
+    }
+}
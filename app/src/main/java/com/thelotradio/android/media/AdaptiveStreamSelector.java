@@ -0,0 +1,123 @@
+package com.thelotradio.android.media;
+
+/**
+ * Picks which quality of a live stream to play from the measured bandwidth and the amount of audio
+ * buffered ahead of the playback position.
+ * <p/>
+ * Once a live mount has sent its initial burst it is served at real time, so the measured
+ * throughput settles at roughly the bitrate being played and says little about headroom. It is
+ * therefore only trusted for stepping down. Stepping up requires the buffer to have stayed healthy
+ * for a while instead.
+ */
+public final class AdaptiveStreamSelector {
+
+    public static final int DEFAULT_LOW_BUFFER_MS = 2000;
+    public static final int DEFAULT_HIGH_BUFFER_MS = 4000;
+    public static final int DEFAULT_MIN_STABLE_MS = 30000;
+    public static final int DEFAULT_MIN_SWITCH_INTERVAL_MS = 10000;
+    public static final int DEFAULT_UP_SWITCH_PENALTY_MS = 120000;
+    public static final float DEFAULT_BANDWIDTH_FRACTION = 0.8f;
+
+    private final int[] bitrates;
+    private final int lowBufferMs;
+    private final int highBufferMs;
+    private final int minStableMs;
+    private final int minSwitchIntervalMs;
+    private final int upSwitchPenaltyMs;
+    private final float bandwidthFraction;
+
+    private int selectedIndex;
+    private long healthySinceMs;
+    private long lastSwitchMs;
+    private long lastDownSwitchMs;
+
+    /**
+     * @param bitrates The bitrate of each quality in bits per second, in ascending order.
+     * @param initialIndex The quality to start with.
+     */
+    public AdaptiveStreamSelector(int[] bitrates, int initialIndex) {
+        this(bitrates, initialIndex, DEFAULT_LOW_BUFFER_MS, DEFAULT_HIGH_BUFFER_MS,
+                DEFAULT_MIN_STABLE_MS, DEFAULT_MIN_SWITCH_INTERVAL_MS, DEFAULT_UP_SWITCH_PENALTY_MS,
+                DEFAULT_BANDWIDTH_FRACTION);
+    }
+
+    /**
+     * @param bitrates The bitrate of each quality in bits per second, in ascending order.
+     * @param initialIndex The quality to start with.
+     * @param lowBufferMs Below this much buffered audio the quality is stepped down.
+     * @param highBufferMs At least this much audio must be buffered for the buffer to count as
+     *     healthy.
+     * @param minStableMs How long the buffer must have been healthy before stepping up.
+     * @param minSwitchIntervalMs The minimum time between two switches, so that a switch can take
+     *     effect before it is judged.
+     * @param upSwitchPenaltyMs How long to wait after stepping down before stepping up again.
+     * @param bandwidthFraction The fraction of the bandwidth estimate the current quality may use
+     *     before the bandwidth is considered too short for it.
+     */
+    public AdaptiveStreamSelector(int[] bitrates, int initialIndex, int lowBufferMs,
+            int highBufferMs, int minStableMs, int minSwitchIntervalMs, int upSwitchPenaltyMs,
+            float bandwidthFraction) {
+        this.bitrates = bitrates;
+        this.lowBufferMs = lowBufferMs;
+        this.highBufferMs = highBufferMs;
+        this.minStableMs = minStableMs;
+        this.minSwitchIntervalMs = minSwitchIntervalMs;
+        this.upSwitchPenaltyMs = upSwitchPenaltyMs;
+        this.bandwidthFraction = bandwidthFraction;
+        selectedIndex = initialIndex;
+        reset();
+    }
+
+    /**
+     * Forgets the buffer history, for example because playback was restarted. The selected
+     * quality is kept.
+     */
+    public void reset() {
+        healthySinceMs = -1;
+        lastSwitchMs = Long.MIN_VALUE / 2;
+        lastDownSwitchMs = Long.MIN_VALUE / 2;
+    }
+
+    public int getSelectedIndex() {
+        return selectedIndex;
+    }
+
+    /**
+     * Updates the selection.
+     *
+     * @param bitrateEstimate The bandwidth estimate in bits per second, or a negative value if
+     *     there is none.
+     * @param bufferedMs The audio buffered ahead of the playback position.
+     * @param nowMs The current time on a monotonic clock.
+     * @return The index of the quality that should be played.
+     */
+    public int evaluate(long bitrateEstimate, long bufferedMs, long nowMs) {
+        boolean bandwidthShort = bitrateEstimate >= 0
+                && bitrateEstimate * bandwidthFraction < bitrates[selectedIndex];
+        boolean canSwitch = nowMs - lastSwitchMs >= minSwitchIntervalMs;
+        if (bufferedMs < lowBufferMs || (bandwidthShort && bufferedMs < highBufferMs)) {
+            healthySinceMs = -1;
+            if (selectedIndex > 0 && canSwitch) {
+                selectedIndex--;
+                lastSwitchMs = nowMs;
+                lastDownSwitchMs = nowMs;
+            }
+            return selectedIndex;
+        }
+        if (bufferedMs < highBufferMs) {
+            healthySinceMs = -1;
+            return selectedIndex;
+        }
+        if (healthySinceMs == -1) {
+            healthySinceMs = nowMs;
+        }
+        if (selectedIndex < bitrates.length - 1 && canSwitch
+                && nowMs - healthySinceMs >= minStableMs
+                && nowMs - lastDownSwitchMs >= upSwitchPenaltyMs) {
+            selectedIndex++;
+            lastSwitchMs = nowMs;
+            healthySinceMs = nowMs;
+        }
+        return selectedIndex;
+    }
+}
@@ -0,0 +1,113 @@
+package com.thelotradio.android.media;
+
+import android.os.Handler;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Builds something on a worker thread and hands it to a handler's thread, unless the build is
+ * canceled first. {@link #build()} checks {@link #isCanceled()} between its stages, so that a
+ * build canceled part way stops at the next stage rather than running to completion.
+ *
+ * @param <T> The type of what is built.
+ */
+/* package */ abstract class AsyncBuild<T> implements Runnable {
+
+    private final ExecutorService executor;
+    private final Handler handler;
+
+    private volatile boolean canceled;
+    private Future<?> future;
+
+    /**
+     * @param executor The executor to build on.
+     * @param handler The handler to deliver the result and errors on, whose thread also starts and
+     *     cancels the build.
+     */
+    public AsyncBuild(ExecutorService executor, Handler handler) {
+        this.executor = executor;
+        this.handler = handler;
+    }
+
+    /**
+     * Submits the build to the executor.
+     */
+    public final void start() {
+        future = executor.submit(this);
+    }
+
+    /**
+     * Cancels the build. Neither {@link #onBuilt(Object)} nor {@link #onError(RuntimeException)}
+     * is invoked after this returns.
+     */
+    public final void cancel() {
+        canceled = true;
+        if (future != null) {
+            future.cancel(false);
+        }
+    }
+
+    public final boolean isCanceled() {
+        return canceled;
+    }
+
+    @Override
+    public final void run() {
+        if (canceled) {
+            return;
+        }
+        final T result;
+        try {
+            result = build();
+        } catch (final RuntimeException e) {
+            handler.post(new Runnable() {
+                @Override
+                public void run() {
+                    if (!canceled) {
+                        onError(e);
+                    }
+                }
+            });
+            return;
+        }
+        if (result == null) {
+            return;
+        }
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (canceled) {
+                    onCanceled(result);
+                } else {
+                    onBuilt(result);
+                }
+            }
+        });
+    }
+
+    /**
+     * Builds the result. Invoked on the executor's thread.
+     *
+     * @return The result, or null if the build was canceled.
+     */
+    protected abstract T build();
+
+    /**
+     * Invoked on the handler's thread with the result of a build that wasn't canceled.
+     */
+    protected abstract void onBuilt(T result);
+
+    /**
+     * Invoked on the handler's thread with the result of a build that was canceled only once it
+     * was done, so that it can let go of what it holds. Does nothing by default.
+     */
+    protected void onCanceled(T result) {
+        // Do nothing.
+    }
+
+    /**
+     * Invoked on the handler's thread if a build that wasn't canceled failed.
+     */
+    protected abstract void onError(RuntimeException e);
+}
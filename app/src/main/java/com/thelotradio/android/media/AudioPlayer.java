@@ -15,11 +15,14 @@
  */
 package com.thelotradio.android.media;
 
+import android.app.ActivityManager;
+import android.content.ComponentCallbacks2;
 import android.content.Context;
 import android.media.MediaCodec;
 import android.media.MediaCodec.CryptoException;
 import android.net.Uri;
 import android.os.Handler;
+import android.os.SystemClock;
 
 import com.google.android.exoplayer.DummyTrackRenderer;
 import com.google.android.exoplayer.ExoPlaybackException;
@@ -27,14 +30,23 @@ import com.google.android.exoplayer.ExoPlayer;
 import com.google.android.exoplayer.MediaCodecAudioTrackRenderer;
 import com.google.android.exoplayer.MediaCodecTrackRenderer;
 import com.google.android.exoplayer.MediaCodecTrackRenderer.DecoderInitializationException;
+import com.google.android.exoplayer.MediaFormat;
 import com.google.android.exoplayer.TrackRenderer;
 import com.google.android.exoplayer.audio.AudioTrack;
 import com.google.android.exoplayer.extractor.ExtractorSampleSource;
 import com.google.android.exoplayer.upstream.BandwidthMeter;
 import com.google.android.exoplayer.util.PlayerControl;
 import com.google.android.exoplayer.util.Util;
+import com.thelotradio.android.model.Stream;
+import com.thelotradio.android.net.ConnectionTimings;
+import com.thelotradio.android.net.HttpConnectionPool;
+import com.thelotradio.android.net.PooledHttpDataSource;
 
+import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
@@ -43,7 +55,10 @@ import java.util.concurrent.CopyOnWriteArrayList;
  * SmoothStreaming and so on).
  */
 public class AudioPlayer implements ExoPlayer.Listener, ExtractorSampleSource.EventListener,
-        MediaCodecAudioTrackRenderer.EventListener {
+        MediaCodecAudioTrackRenderer.EventListener, StreamSwitchingDataSource.EventListener,
+        IcyDataSource.EventListener, StreamRecorder.EventListener,
+        PooledHttpDataSource.EventListener, BurstController.Listener,
+        SoftwareAudioTrackRenderer.EventListener {
 
     /**
      * Listener for AudioPlayer events
@@ -76,6 +91,68 @@ public class AudioPlayer implements ExoPlayer.Listener, ExtractorSampleSource.Ev
         void onCryptoError(MediaCodec.CryptoException e);
 
         void onLoadError(int sourceId, IOException e);
+
+        void onRecordingError(IOException e);
+    }
+
+    /**
+     * A listener for metadata carried in the stream.
+     */
+    public interface MetadataListener {
+        /**
+         * Invoked when the title announced by the stream changes, at the time the audio it
+         * belongs to starts playing.
+         */
+        void onStreamTitle(String title);
+    }
+
+    /**
+     * A listener for debugging information.
+     */
+    public interface InfoListener {
+        void onStreamChanged(Uri uri, int bitrate);
+
+        void onStreamReconnected(int reconnectCount, long outageMs);
+
+        void onRecordingFileCompleted(File file);
+
+        void onDecoderInitialized(String decoderName, long initializationDurationMs);
+
+        void onConnectionOpened(ConnectionTimings timings);
+
+        void onBurstCycleCompleted(long burstMs, long idleMs);
+
+        /**
+         * Invoked when the MediaCodec decoder failed to initialize and playback is retried with
+         * software decoding.
+         */
+        void onSoftwareDecodingFallback(DecoderInitializationException e);
+    }
+
+    /**
+     * A listener for when the stream is downloaded, in low-power mode.
+     */
+    public interface PowerListener {
+        /**
+         * Invoked when downloading starts or stops. Downloading is continuous unless low-power
+         * mode is enabled.
+         */
+        void onDownloadingChanged(boolean downloading);
+    }
+
+    /**
+     * A listener for the decoded audio, as it is handed to the audio track. Invoked on the playback
+     * thread, so it must return quickly and not block.
+     */
+    public interface PcmListener {
+        /**
+         * @param buffer Holds the audio, as interleaved 16-bit little-endian PCM. Must not be
+         *     modified, and its position and limit are not meaningful.
+         * @param offset The offset of the audio in {@code buffer}.
+         * @param size The size of the audio in bytes.
+         * @param channelCount The number of interleaved channels.
+         */
+        void onPcm(ByteBuffer buffer, int offset, int size, int channelCount);
     }
 
     // Constants pulled into this class for convenience.
@@ -90,34 +167,145 @@ public class AudioPlayer implements ExoPlayer.Listener, ExtractorSampleSource.Ev
     public static final int RENDERER_COUNT = 1;
     public static final int TYPE_AUDIO = 0;
 
-    private static final int RENDERER_BUILDING_STATE_IDLE = 1;
-    private static final int RENDERER_BUILDING_STATE_BUILDING = 2;
-    private static final int RENDERER_BUILDING_STATE_BUILT = 3;
+    private static final int RENDERER_BUILDING_STATE_IDLE =
+            PlayerStateReporter.RENDERER_BUILDING_STATE_IDLE;
+    private static final int RENDERER_BUILDING_STATE_BUILDING =
+            PlayerStateReporter.RENDERER_BUILDING_STATE_BUILDING;
+    private static final int RENDERER_BUILDING_STATE_BUILT =
+            PlayerStateReporter.RENDERER_BUILDING_STATE_BUILT;
+
+    private static final int STREAM_EVALUATION_INTERVAL_MS = 2000;
+    // A second of 128 kbps audio.
+    private static final int BUFFER_SEGMENT_SIZE = 16 * 1024;
+    // How long the old connection may keep delivering after a network change before it is
+    // presumed dead and failed, so that the stream is reopened on the new network.
+    private static final int MIGRATION_GRACE_MS = 1000;
+    // How often the buffer is checked against the watermarks in low-power mode.
+    private static final int BURST_EVALUATION_INTERVAL_MS = 500;
 
     private RendererBuilder rendererBuilder;
     private final ExoPlayer player;
     private final PlayerControl playerControl;
     private final Handler mainHandler;
     private final CopyOnWriteArrayList<Listener> listeners;
+    private final List<Stream> streams;
+    // The stream the renderers are built for, whose format is memoized.
+    private final Uri initialUri;
+    private final AdaptiveStreamSelector streamSelector;
+    private final Runnable streamEvaluation;
+    private final Runnable migrationTimeout;
+    private final Runnable burstEvaluation;
+    private final Runnable statsSampling;
+    // Tags the stream titles held back until their audio plays, so that they can be dropped.
+    private final Object streamTitleToken;
+    private final HttpConnectionPool connectionPool;
+    private final BufferController bufferController;
+    private final BurstController burstController;
+    private final BudgetedAllocator allocator;
+    private final StreamRecorder recorder;
+
+    private final PlayerStateReporter stateReporter;
 
     private int rendererBuildingState;
-    private int lastReportedPlaybackState;
-    private boolean lastReportedPlayWhenReady;
     private ExoPlayer.ExoPlayerComponent audioRenderer;
+    private BandwidthMeter bandwidthMeter;
+    private StreamSwitchingDataSource streamSource;
+    private MirrorRacingDataSource connectionSource;
+    private TimeShiftBuffer timeShiftBuffer;
+    private TimeShiftDataSource timeShiftSource;
+    private boolean adaptiveStreamingEnabled;
+    private boolean playedSinceBuild;
+    // The quality the renderers were built for, which the format they memoize belongs to.
+    private Uri builtUri;
+    private MirrorSelector mirrorSelector;
+    private boolean softwareDecodingEnabled;
+    private FormatMemo formatMemo;
+    private boolean formatMemoized;
+    private PlaybackStats stats;
 
     private InternalErrorListener internalErrorListener;
+    private InfoListener infoListener;
+    private MetadataListener metadataListener;
+    private PowerListener powerListener;
+    private PcmListener pcmListener;
 
     public AudioPlayer(Context context, Uri contentUri) {
+        this(context, Collections.singletonList(new Stream(contentUri, 0)), 0);
+    }
+
+    /**
+     * @param context A context.
+     * @param streams The same content at different qualities, ordered by ascending bitrate.
+     * @param initialStreamIndex The quality to start playback with.
+     */
+    public AudioPlayer(Context context, List<Stream> streams, int initialStreamIndex) {
         String userAgent = Util.getUserAgent(context, "The Lot Radio");
-        RendererBuilder rendererBuilder =
-                new ExtractorAudioRendererBuilder(context, userAgent, contentUri);
+        initialUri = streams.get(initialStreamIndex).uri;
+        RendererBuilder rendererBuilder = new ExtractorAudioRendererBuilder(context, userAgent,
+                initialUri);
         this.rendererBuilder = rendererBuilder;
-        player = ExoPlayer.Factory.newInstance(RENDERER_COUNT, 1000, 5000);
+        this.streams = streams;
+        int[] bitrates = new int[streams.size()];
+        for (int i = 0; i < bitrates.length; i++) {
+            bitrates[i] = streams.get(i).bitrate;
+        }
+        streamSelector = new AdaptiveStreamSelector(bitrates, initialStreamIndex);
+        streamEvaluation = new Runnable() {
+            @Override
+            public void run() {
+                evaluateStream();
+                mainHandler.postDelayed(this, STREAM_EVALUATION_INTERVAL_MS);
+            }
+        };
+        migrationTimeout = new Runnable() {
+            @Override
+            public void run() {
+                if (streamSource != null && streamSource.isMigrationPending()
+                        && connectionSource != null) {
+                    // The read is stuck on the old network. Only this player's connections are
+                    // aborted, since other fetches share the pool.
+                    connectionSource.abort();
+                }
+            }
+        };
+        burstEvaluation = new Runnable() {
+            @Override
+            public void run() {
+                evaluateBurst();
+                mainHandler.postDelayed(this, BURST_EVALUATION_INTERVAL_MS);
+            }
+        };
+        statsSampling = new Runnable() {
+            @Override
+            public void run() {
+                sampleStats();
+                mainHandler.postDelayed(this, PlaybackStats.SAMPLING_INTERVAL_MS);
+            }
+        };
+        connectionPool = HttpConnectionPool.getInstance(context);
+        mirrorSelector = new MirrorSelector(streams);
+        int memoryClass = ((ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE))
+                .getMemoryClass();
+        allocator = new BudgetedAllocator(BUFFER_SEGMENT_SIZE, memoryClass);
+        bufferController = new BufferController(BufferProfile.BALANCED, BUFFER_SEGMENT_SIZE);
+        burstController = new BurstController(this);
+        setBitrate(streams.get(initialStreamIndex).bitrate);
+        // The buffer thresholds are applied by the renderer builder, from the buffer policy.
+        player = ExoPlayer.Factory.newInstance(RENDERER_COUNT, 0, 0);
         player.addListener(this);
         playerControl = new PlayerControl(player);
         mainHandler = new Handler();
+        streamTitleToken = new Object();
+        recorder = new StreamRecorder(mainHandler, this);
         listeners = new CopyOnWriteArrayList<>();
-        lastReportedPlaybackState = STATE_IDLE;
+        stateReporter = new PlayerStateReporter(new PlayerStateReporter.Listener() {
+            @Override
+            public void onStateChanged(boolean playWhenReady, int playbackState) {
+                for (Listener listener : listeners) {
+                    listener.onStateChanged(playWhenReady, playbackState);
+                }
+            }
+        });
         rendererBuildingState = RENDERER_BUILDING_STATE_IDLE;
     }
 
@@ -137,11 +325,242 @@ public class AudioPlayer implements ExoPlayer.Listener, ExtractorSampleSource.Ev
         internalErrorListener = listener;
     }
 
+    public void setInfoListener(InfoListener listener) {
+        infoListener = listener;
+    }
+
+    public void setMetadataListener(MetadataListener listener) {
+        metadataListener = listener;
+    }
+
+    public void setPowerListener(PowerListener listener) {
+        powerListener = listener;
+    }
+
+    /**
+     * Sets a listener for the decoded audio. Takes effect from the next {@link #prepare()}.
+     */
+    public void setPcmListener(PcmListener listener) {
+        pcmListener = listener;
+    }
+
+    /**
+     * Enables or disables switching between the qualities the player was created with, based on
+     * the measured bandwidth and buffer health. Switches happen mid-stream, without rebuilding the
+     * renderers, as long as the qualities share their codec, sample rate and channel layout. A
+     * switch to a quality that doesn't rebuilds the renderers for it.
+     */
+    public void setAdaptiveStreamingEnabled(boolean enabled) {
+        adaptiveStreamingEnabled = enabled && streams.size() > 1;
+        mainHandler.removeCallbacks(streamEvaluation);
+        if (adaptiveStreamingEnabled && rendererBuildingState == RENDERER_BUILDING_STATE_BUILT) {
+            mainHandler.postDelayed(streamEvaluation, STREAM_EVALUATION_INTERVAL_MS);
+        }
+    }
+
+    /**
+     * Sets the policy that decides how much audio is buffered. Takes effect immediately, including
+     * while playing.
+     */
+    public void setBufferPolicy(BufferPolicy policy) {
+        bufferController.setPolicy(policy);
+    }
+
+    public BufferPolicy getBufferPolicy() {
+        return bufferController.getPolicy();
+    }
+
+    /**
+     * Enables or disables low-power mode, in which the stream is downloaded in bursts between a
+     * low and a high watermark of buffered audio, rather than continuously. The radio can drop into
+     * its low-power states between bursts. Takes effect immediately, including while playing.
+     */
+    public void setLowPowerEnabled(boolean enabled) {
+        burstController.setEnabled(enabled, SystemClock.elapsedRealtime());
+        mainHandler.removeCallbacks(burstEvaluation);
+        if (enabled && rendererBuildingState == RENDERER_BUILDING_STATE_BUILT) {
+            mainHandler.postDelayed(burstEvaluation, BURST_EVALUATION_INTERVAL_MS);
+        }
+    }
+
+    /**
+     * Returns the fraction of time the stream has been downloading while low-power mode was
+     * enabled, or 1 if it never was.
+     */
+    public float getDownloadDutyCycle() {
+        return burstController.getDutyCycle(SystemClock.elapsedRealtime());
+    }
+
+    /**
+     * Sets where the mirrors of the streams and the outcome of earlier races are kept. By default
+     * the player keeps its own, which is lost when it is released. Takes effect when the renderers
+     * are next built.
+     */
+    public void setMirrorSelector(MirrorSelector mirrorSelector) {
+        this.mirrorSelector = mirrorSelector;
+    }
+
+    /**
+     * Enables or disables decoding in Java rather than with MediaCodec, from the next
+     * {@link #prepare()}. Software decoding is also enabled automatically if the MediaCodec
+     * decoder fails to initialize.
+     */
+    public void setSoftwareDecodingEnabled(boolean enabled) {
+        softwareDecodingEnabled = enabled;
+    }
+
+    public boolean isSoftwareDecodingEnabled() {
+        return softwareDecodingEnabled;
+    }
+
+    /**
+     * Sets where the format of the stream is recorded once it plays, and looked up when the next
+     * renderers are built, to skip sniffing the format. Takes effect from the next
+     * {@link #prepare()}.
+     *
+     * @param formatMemo The memo, shared with other players. May be null to always sniff.
+     */
+    public void setFormatMemo(FormatMemo formatMemo) {
+        this.formatMemo = formatMemo;
+    }
+
+    /**
+     * Sets where to keep diagnostics of this player, which start over. Takes effect from the next
+     * {@link #prepare()}.
+     *
+     * @param stats The diagnostics. May be null to keep none.
+     */
+    public void setPlaybackStats(PlaybackStats stats) {
+        this.stats = stats;
+        if (stats != null) {
+            stats.reset();
+            stats.setBitrate(getSelectedStream().bitrate);
+        }
+    }
+
+    /**
+     * Tells the buffer policy what kind of network the stream is played over.
+     *
+     * @param networkType One of the {@code BufferPolicy.NETWORK_TYPE_*} constants.
+     */
+    public void setNetworkType(int networkType) {
+        bufferController.setNetworkType(networkType);
+    }
+
+    /**
+     * Sets the ring buffer to time-shift in from the next {@link #prepare()}, or null to disable
+     * time-shifting. While enabled, {@link #startTimeShift()} keeps the live stream downloading into
+     * the buffer while paused, so that playback resumes where it was paused. See
+     * {@link #jumpToLive()}.
+     * <p/>
+     * The buffer can be handed from one player to the next, which saves mapping another one, but
+     * must not be set on two players that aren't released yet.
+     */
+    public void setTimeShiftBuffer(TimeShiftBuffer timeShiftBuffer) {
+        this.timeShiftBuffer = timeShiftBuffer;
+    }
+
+    /**
+     * Keeps downloading the live stream while paused, until playback resumes or the player is
+     * stopped. Playing live, the stream isn't buffered for time-shifting at all.
+     *
+     * @return Whether the stream keeps downloading. False if time-shifting is disabled or the
+     *     player isn't prepared.
+     */
+    public boolean startTimeShift() {
+        if (timeShiftSource == null) {
+            return false;
+        }
+        timeShiftSource.pause();
+        return true;
+    }
+
+    /**
+     * Returns how far behind the live stream playback has fallen through time-shifting, in
+     * milliseconds, not counting the audio buffered by the player.
+     */
+    public long getTimeShiftMs() {
+        int bitrate = getSelectedStream().bitrate;
+        if (timeShiftSource == null || bitrate <= 0) {
+            return 0;
+        }
+        return timeShiftSource.getBytesBehindLive() * 8000 / bitrate;
+    }
+
+    /**
+     * Returns how far playback can fall behind the live stream before the oldest audio is lost, in
+     * milliseconds, or 0 if time-shifting is disabled.
+     */
+    public long getTimeShiftCapacityMs() {
+        int bitrate = getSelectedStream().bitrate;
+        if (timeShiftSource == null || bitrate <= 0) {
+            return 0;
+        }
+        return (long) timeShiftBuffer.getCapacity() * 8000 / bitrate;
+    }
+
+    /**
+     * Drops the audio that was time-shifted and continues from the live stream.
+     */
+    public void jumpToLive() {
+        if (timeShiftSource != null) {
+            // The stream isn't seekable, so this throws away everything buffered and reopens the
+            // source at position 0, which the time-shift source takes to mean the live edge.
+            player.seekTo(0);
+        }
+    }
+
+    /**
+     * Starts recording the stream, exactly as downloaded, into files in {@code directory}. The
+     * recording is split into several files if it gets long.
+     */
+    public void startRecording(File directory) {
+        recorder.start(directory);
+    }
+
+    public void stopRecording() {
+        recorder.stop();
+    }
+
+    public boolean isRecording() {
+        return recorder.isRecording();
+    }
+
+    /**
+     * Returns the allocator holding the buffered audio, which reports how much memory it uses.
+     */
+    public BudgetedAllocator getAllocator() {
+        return allocator;
+    }
+
+    /**
+     * Gives back memory that isn't needed for playback, in response to
+     * {@link ComponentCallbacks2#onTrimMemory(int)}.
+     */
+    public void trimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            allocator.releasePool();
+        }
+    }
+
+    /**
+     * Returns the quality currently selected for playback.
+     */
+    public Stream getSelectedStream() {
+        return streams.get(streamSelector.getSelectedIndex());
+    }
+
     public void prepare() {
         if (rendererBuildingState == RENDERER_BUILDING_STATE_BUILT) {
             player.stop();
         }
+        mainHandler.removeCallbacks(streamEvaluation);
+        mainHandler.removeCallbacks(burstEvaluation);
+        mainHandler.removeCallbacks(statsSampling);
         rendererBuilder.cancel();
+        releaseTimeShiftSource();
+        // The new pipeline has to fill its buffer first.
+        burstController.wake(SystemClock.elapsedRealtime());
         rendererBuildingState = RENDERER_BUILDING_STATE_BUILDING;
         maybeReportPlayerState();
         rendererBuilder.buildRenderers(this);
@@ -153,18 +572,49 @@ public class AudioPlayer implements ExoPlayer.Listener, ExtractorSampleSource.Ev
      * @param renderers      Renderers indexed by {@link AudioPlayer} TYPE_* constants. An individual
      *                       element may be null if there do not exist tracks of the corresponding type.
      * @param bandwidthMeter Provides an estimate of the currently available bandwidth. May be null.
+     * @param streamSource The source the renderers read from, through which the quality can be
+     *                     switched. May be null if the stream cannot be switched.
+     * @param connectionSource The source of the connections to the stream, which are aborted if
+     *                         they get stuck on a network the device has left. May be null.
+     * @param timeShiftSource The source buffering the stream for time-shifting. May be null if
+     *                        time-shifting is disabled.
      */
-  /* package */ void onRenderers(TrackRenderer[] renderers, BandwidthMeter bandwidthMeter) {
+  /* package */ void onRenderers(TrackRenderer[] renderers, BandwidthMeter bandwidthMeter,
+                                 StreamSwitchingDataSource streamSource,
+                                 MirrorRacingDataSource connectionSource,
+                                 TimeShiftDataSource timeShiftSource) {
         for (int i = 0; i < RENDERER_COUNT; i++) {
             if (renderers[i] == null) {
                 // Convert a null renderer to a dummy renderer.
                 renderers[i] = new DummyTrackRenderer();
             }
         }
+        this.bandwidthMeter = bandwidthMeter;
+        this.streamSource = streamSource;
+        this.connectionSource = connectionSource;
+        this.timeShiftSource = timeShiftSource;
+        if (streamSource != null) {
+            // Resume at the quality selected for the previous session.
+            streamSource.switchTo(getSelectedStream().uri);
+        }
+        builtUri = getSelectedStream().uri;
+        setBitrate(getSelectedStream().bitrate);
         // Complete preparation.
         player.prepare(renderers);
         audioRenderer = renderers[0];
         rendererBuildingState = RENDERER_BUILDING_STATE_BUILT;
+        playedSinceBuild = false;
+        formatMemoized = false;
+        streamSelector.reset();
+        if (adaptiveStreamingEnabled) {
+            mainHandler.postDelayed(streamEvaluation, STREAM_EVALUATION_INTERVAL_MS);
+        }
+        if (burstController.isEnabled()) {
+            mainHandler.postDelayed(burstEvaluation, BURST_EVALUATION_INTERVAL_MS);
+        }
+        if (stats != null) {
+            mainHandler.post(statsSampling);
+        }
     }
 
     /**
@@ -183,27 +633,65 @@ public class AudioPlayer implements ExoPlayer.Listener, ExtractorSampleSource.Ev
         maybeReportPlayerState();
     }
 
+    /**
+     * Moves the stream onto the device's new default network, for example after walking out of
+     * Wi-Fi. The new connection is spliced in while playback continues from the buffer. If the old
+     * connection stops delivering, it is failed after {@link #MIGRATION_GRACE_MS} rather than when
+     * its read times out.
+     */
+    public void migrateNetwork() {
+        connectionPool.onNetworkChanged();
+        mainHandler.removeCallbacks(migrationTimeout);
+        // The splice needs the stream to be read.
+        burstController.wake(SystemClock.elapsedRealtime());
+        if (streamSource != null && rendererBuildingState == RENDERER_BUILDING_STATE_BUILT) {
+            streamSource.migrate();
+            mainHandler.postDelayed(migrationTimeout, MIGRATION_GRACE_MS);
+        }
+    }
+
     public void setPlayWhenReady(boolean playWhenReady) {
+        if (playWhenReady && timeShiftSource != null) {
+            // Once playback catches up with the download, it goes back to playing live.
+            timeShiftSource.resume();
+        }
         player.setPlayWhenReady(playWhenReady);
     }
 
+    /**
+     * Stops loading and releases the renderers, keeping the player itself for a later
+     * {@link #prepare()}.
+     */
+    public void stop() {
+        mainHandler.removeCallbacks(streamEvaluation);
+        mainHandler.removeCallbacks(migrationTimeout);
+        mainHandler.removeCallbacks(burstEvaluation);
+        mainHandler.removeCallbacks(statsSampling);
+        mainHandler.removeCallbacksAndMessages(streamTitleToken);
+        recorder.stop();
+        rendererBuilder.cancel();
+        releaseTimeShiftSource();
+        rendererBuildingState = RENDERER_BUILDING_STATE_IDLE;
+        player.stop();
+    }
+
     public void release() {
+        mainHandler.removeCallbacks(streamEvaluation);
+        mainHandler.removeCallbacks(migrationTimeout);
+        mainHandler.removeCallbacks(burstEvaluation);
+        mainHandler.removeCallbacks(statsSampling);
+        mainHandler.removeCallbacksAndMessages(streamTitleToken);
+        recorder.stop();
         rendererBuilder.cancel();
+        releaseTimeShiftSource();
         rendererBuildingState = RENDERER_BUILDING_STATE_IDLE;
         player.release();
+        allocator.releasePool();
     }
 
     public int getPlaybackState() {
-        if (rendererBuildingState == RENDERER_BUILDING_STATE_BUILDING) {
-            return STATE_PREPARING;
-        }
-        int playerState = player.getPlaybackState();
-        if (rendererBuildingState == RENDERER_BUILDING_STATE_BUILT && playerState == STATE_IDLE) {
-            // This is an edge case where the renderers are built, but are still being passed to the
-            // player's playback thread.
-            return STATE_PREPARING;
-        }
-        return playerState;
+        return PlayerStateReporter.getPlaybackState(rendererBuildingState,
+                player.getPlaybackState());
     }
 
     public long getDuration() {
@@ -218,18 +706,75 @@ public class AudioPlayer implements ExoPlayer.Listener, ExtractorSampleSource.Ev
         return mainHandler;
     }
 
+    /* package */ HttpConnectionPool getConnectionPool() {
+        return connectionPool;
+    }
+
+    /* package */ MirrorSelector getMirrorSelector() {
+        return mirrorSelector;
+    }
+
+    /* package */ PcmListener getPcmListener() {
+        return pcmListener;
+    }
+
+    /* package */ FormatMemo getFormatMemo() {
+        return formatMemo;
+    }
+
+    /* package */ StreamRecorder getRecorder() {
+        return recorder;
+    }
+
+    /* package */ BufferController getBufferController() {
+        return bufferController;
+    }
+
+    /* package */ BurstController getBurstController() {
+        return burstController;
+    }
+
+    /**
+     * Returns the buffer to time-shift in, or null if time-shifting is disabled.
+     */
+    /* package */ TimeShiftBuffer getTimeShiftBuffer() {
+        return timeShiftBuffer;
+    }
+
     public void setVolume(float volume) {
         player.sendMessage(audioRenderer, MediaCodecAudioTrackRenderer.MSG_SET_VOLUME, volume);
     }
 
     @Override
     public void onPlayerStateChanged(boolean playWhenReady, int state) {
+        if (state == STATE_READY) {
+            maybeMemoizeFormat();
+        }
         maybeReportPlayerState();
     }
 
     @Override
     public void onPlayerError(ExoPlaybackException exception) {
         rendererBuildingState = RENDERER_BUILDING_STATE_IDLE;
+        if (!softwareDecodingEnabled
+                && exception.getCause() instanceof DecoderInitializationException) {
+            // Retry with the software decoders rather than failing playback.
+            softwareDecodingEnabled = true;
+            if (infoListener != null) {
+                infoListener.onSoftwareDecodingFallback(
+                        (DecoderInitializationException) exception.getCause());
+            }
+            prepare();
+            return;
+        }
+        if (exception.getCause()
+                instanceof ExtractorSampleSource.UnrecognizedInputFormatException
+                && formatMemo != null && formatMemo.get(builtUri) != null) {
+            // The stream is no longer in the format it was, so sniff it again.
+            formatMemo.remove(builtUri);
+            prepare();
+            return;
+        }
         for (Listener listener : listeners) {
             listener.onError(exception);
         }
@@ -258,6 +803,9 @@ public class AudioPlayer implements ExoPlayer.Listener, ExtractorSampleSource.Ev
 
     @Override
     public void onAudioTrackUnderrun(int bufferSize, long bufferSizeMs, long elapsedSinceLastFeedMs) {
+        if (stats != null) {
+            stats.onUnderrun();
+        }
         if (internalErrorListener != null) {
             internalErrorListener.onAudioTrackUnderrun(bufferSize, bufferSizeMs, elapsedSinceLastFeedMs);
         }
@@ -273,7 +821,20 @@ public class AudioPlayer implements ExoPlayer.Listener, ExtractorSampleSource.Ev
     @Override
     public void onDecoderInitialized(String decoderName, long elapsedRealtimeMs,
                                      long initializationDurationMs) {
-        // Do nothing
+        if (stats != null) {
+            stats.setDecoder(decoderName, initializationDurationMs);
+        }
+        if (infoListener != null) {
+            infoListener.onDecoderInitialized(decoderName, initializationDurationMs);
+        }
+    }
+
+    @Override
+    public void onSoftwareDecoderInitialized(String decoderName, long initializationDurationMs) {
+        // Not reported as a decoder initialization, which tracks how slow MediaCodec is.
+        if (stats != null) {
+            stats.setDecoder(decoderName, initializationDurationMs);
+        }
     }
 
     @Override
@@ -288,15 +849,178 @@ public class AudioPlayer implements ExoPlayer.Listener, ExtractorSampleSource.Ev
         // Do nothing.
     }
 
-    private void maybeReportPlayerState() {
-        boolean playWhenReady = player.getPlayWhenReady();
-        int playbackState = getPlaybackState();
-        if (lastReportedPlayWhenReady != playWhenReady || lastReportedPlaybackState != playbackState) {
-            for (Listener listener : listeners) {
-                listener.onStateChanged(playWhenReady, playbackState);
+    @Override
+    public void onStreamSwitched(Uri uri) {
+        for (Stream stream : streams) {
+            if (stream.uri.equals(uri)) {
+                setBitrate(stream.bitrate);
+                if (infoListener != null) {
+                    infoListener.onStreamChanged(uri, stream.bitrate);
+                }
+                break;
+            }
+        }
+    }
+
+    @Override
+    public void onStreamTitleChanged(final String title) {
+        // The title arrives with the newest downloaded audio, so hold it back until the audio
+        // buffered ahead of it has played out.
+        long delayMs = getTimeShiftMs();
+        if (player.getPlaybackState() == STATE_READY) {
+            long bufferedPosition = player.getBufferedPosition();
+            if (bufferedPosition != ExoPlayer.UNKNOWN_TIME) {
+                delayMs += Math.max(0, bufferedPosition - player.getCurrentPosition());
+            }
+        }
+        mainHandler.postAtTime(new Runnable() {
+            @Override
+            public void run() {
+                if (metadataListener != null) {
+                    metadataListener.onStreamTitle(title);
+                }
+            }
+        }, streamTitleToken, SystemClock.uptimeMillis() + delayMs);
+    }
+
+    @Override
+    public void onStreamReconnected(int reconnectCount, long outageMs) {
+        if (infoListener != null) {
+            infoListener.onStreamReconnected(reconnectCount, outageMs);
+        }
+    }
+
+    @Override
+    public void onStreamFormatChanged(Uri uri) {
+        if (rendererBuildingState != RENDERER_BUILDING_STATE_BUILT) {
+            // Reported by a pipeline that is already being replaced.
+            return;
+        }
+        // The renderers can't decode the new stream, so build new ones for it. They pick up
+        // the quality that is selected now.
+        prepare();
+    }
+
+    @Override
+    public void onConnectionOpened(ConnectionTimings timings) {
+        if (infoListener != null) {
+            infoListener.onConnectionOpened(timings);
+        }
+    }
+
+    @Override
+    public void onBurstStateChanged(boolean bursting) {
+        if (powerListener != null) {
+            powerListener.onDownloadingChanged(bursting);
+        }
+    }
+
+    @Override
+    public void onBurstCycleCompleted(long burstMs, long idleMs) {
+        if (infoListener != null) {
+            infoListener.onBurstCycleCompleted(burstMs, idleMs);
+        }
+    }
+
+    @Override
+    public void onRecordingFileCompleted(File file) {
+        if (infoListener != null) {
+            infoListener.onRecordingFileCompleted(file);
+        }
+    }
+
+    @Override
+    public void onRecordingError(IOException e) {
+        if (internalErrorListener != null) {
+            internalErrorListener.onRecordingError(e);
+        }
+    }
+
+    private void evaluateStream() {
+        if (streamSource == null || bandwidthMeter == null || !player.getPlayWhenReady()) {
+            return;
+        }
+        long bufferedMs;
+        int playbackState = player.getPlaybackState();
+        if (playbackState == STATE_READY) {
+            long bufferedPosition = player.getBufferedPosition();
+            if (bufferedPosition == ExoPlayer.UNKNOWN_TIME) {
+                return;
             }
-            lastReportedPlayWhenReady = playWhenReady;
-            lastReportedPlaybackState = playbackState;
+            bufferedMs = bufferedPosition - player.getCurrentPosition();
+            playedSinceBuild = true;
+        } else if (playbackState == STATE_BUFFERING && playedSinceBuild) {
+            // Rebuffering: the buffer has run dry.
+            bufferedMs = 0;
+        } else {
+            return;
+        }
+        int index = streamSelector.evaluate(bandwidthMeter.getBitrateEstimate(), bufferedMs,
+                SystemClock.elapsedRealtime());
+        streamSource.switchTo(streams.get(index).uri);
+    }
+
+    private void maybeMemoizeFormat() {
+        if (formatMemo == null || formatMemoized
+                || rendererBuildingState != RENDERER_BUILDING_STATE_BUILT
+                || player.getTrackCount(TYPE_AUDIO) == 0) {
+            return;
+        }
+        MediaFormat format = player.getTrackFormat(TYPE_AUDIO, 0);
+        if (format != null) {
+            formatMemo.put(builtUri, format);
         }
+        formatMemoized = true;
+    }
+
+    private void evaluateBurst() {
+        long bufferedMs = 0;
+        if (player.getPlaybackState() == STATE_READY) {
+            long bufferedPosition = player.getBufferedPosition();
+            if (bufferedPosition != ExoPlayer.UNKNOWN_TIME) {
+                // Audio downloaded but not yet played, whether in the player or time-shifted.
+                bufferedMs = bufferedPosition - player.getCurrentPosition() + getTimeShiftMs();
+            }
+        }
+        burstController.update(bufferedMs, SystemClock.elapsedRealtime());
+    }
+
+    private void sampleStats() {
+        long bufferedAheadMs = -1;
+        int playbackState = player.getPlaybackState();
+        if (playbackState == STATE_READY || playbackState == STATE_BUFFERING) {
+            long bufferedPosition = player.getBufferedPosition();
+            if (bufferedPosition != ExoPlayer.UNKNOWN_TIME) {
+                bufferedAheadMs = Math.max(0, bufferedPosition - player.getCurrentPosition());
+            }
+        }
+        stats.setBufferedAheadMs(bufferedAheadMs);
+        stats.setBandwidthEstimate(bandwidthMeter != null
+                ? bandwidthMeter.getBitrateEstimate() : BandwidthMeter.NO_ESTIMATE);
+        stats.setSampleBufferBytes(allocator.getHeldBytes());
+        // The mirror that won the last race, if any, is the one streaming.
+        Uri uri = getSelectedStream().uri;
+        Uri endpoint = mirrorSelector.getPreferredEndpoint(uri);
+        stats.setHost((endpoint != null ? endpoint : uri).getHost());
+    }
+
+    private void releaseTimeShiftSource() {
+        if (timeShiftSource != null) {
+            timeShiftSource.release();
+            timeShiftSource = null;
+        }
+    }
+
+    private void setBitrate(int bitrate) {
+        if (stats != null) {
+            stats.setBitrate(bitrate);
+        }
+        allocator.setBitrate(bitrate);
+        bufferController.setBitrate(bitrate);
+        bufferController.setMemoryBudgetBytes(allocator.getBudgetBytes());
+    }
+
+    private void maybeReportPlayerState() {
+        stateReporter.update(player.getPlayWhenReady(), getPlaybackState());
     }
 }
\ No newline at end of file
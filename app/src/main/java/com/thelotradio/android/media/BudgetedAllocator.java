@@ -0,0 +1,170 @@
+package com.thelotradio.android.media;
+
+import com.google.android.exoplayer.upstream.Allocation;
+import com.google.android.exoplayer.upstream.Allocator;
+
+/**
+ * An {@link Allocator} that keeps the memory held for buffered audio within a budget derived from
+ * the heap size of the device and the bitrate being played.
+ * <p/>
+ * Released segments are pooled for reuse, but only while the segments in use and in the pool
+ * together fit within the budget, and the pool can be emptied on demand when the system runs low
+ * on memory.
+ */
+public final class BudgetedAllocator implements Allocator {
+
+    /**
+     * The share of the app heap, as reported by {@code ActivityManager.getMemoryClass()}, that
+     * buffered audio may take up.
+     */
+    public static final int HEAP_FRACTION_DIVISOR = 16;
+    /**
+     * There is no point buffering more audio than this.
+     */
+    public static final int MAX_BUFFER_SECONDS = 180;
+
+    private static final int MIN_BUDGET_BYTES = 256 * 1024;
+
+    private final int segmentSize;
+    private final int heapBudgetBytes;
+
+    private Allocation[] pool;
+    private int pooledCount;
+    private int allocatedCount;
+    private int peakBytes;
+    private int budgetBytes;
+    // Mirrors the segments in use and pooled, so that it can be read without taking the lock.
+    private volatile int heldBytes;
+
+    /**
+     * @param segmentSize The size of each segment, in bytes.
+     * @param memoryClassMb The memory class of the device, from
+     *     {@code ActivityManager.getMemoryClass()}.
+     */
+    public BudgetedAllocator(int segmentSize, int memoryClassMb) {
+        this.segmentSize = segmentSize;
+        heapBudgetBytes = Math.max(MIN_BUDGET_BYTES,
+                (int) ((long) memoryClassMb * 1024 * 1024 / HEAP_FRACTION_DIVISOR));
+        budgetBytes = heapBudgetBytes;
+        pool = new Allocation[16];
+    }
+
+    /**
+     * Sizes the budget for a stream of the given bitrate.
+     *
+     * @param bitrate The bitrate in bits per second, or 0 if unknown.
+     */
+    public synchronized void setBitrate(int bitrate) {
+        budgetBytes = heapBudgetBytes;
+        if (bitrate > 0) {
+            long bitrateBudget = (long) bitrate / 8 * MAX_BUFFER_SECONDS;
+            budgetBytes = (int) Math.max(MIN_BUDGET_BYTES, Math.min(budgetBytes, bitrateBudget));
+        }
+        trimPool(budgetBytes);
+        notifyAll();
+    }
+
+    /**
+     * Returns the most memory this allocator holds on to, in bytes.
+     */
+    public synchronized int getBudgetBytes() {
+        return budgetBytes;
+    }
+
+    /**
+     * Returns the memory held in the pool of released segments, in bytes.
+     */
+    public synchronized int getPooledBytes() {
+        return pooledCount * segmentSize;
+    }
+
+    /**
+     * Returns the memory held in segments in use and pooled, in bytes. Doesn't block, so it can be
+     * sampled without holding up the loader.
+     */
+    public int getHeldBytes() {
+        return heldBytes;
+    }
+
+    /**
+     * Returns the most memory this allocator has held at once, in use and pooled, in bytes.
+     */
+    public synchronized int getPeakBytes() {
+        return peakBytes;
+    }
+
+    /**
+     * Releases all pooled segments, for example because the system is low on memory. Segments in
+     * use are unaffected.
+     */
+    public synchronized void releasePool() {
+        trimPool(0);
+    }
+
+    @Override
+    public synchronized Allocation allocate() {
+        allocatedCount++;
+        Allocation allocation;
+        if (pooledCount > 0) {
+            allocation = pool[--pooledCount];
+            pool[pooledCount] = null;
+        } else {
+            allocation = new Allocation(new byte[segmentSize], 0);
+        }
+        heldBytes = (allocatedCount + pooledCount) * segmentSize;
+        peakBytes = Math.max(peakBytes, heldBytes);
+        return allocation;
+    }
+
+    @Override
+    public synchronized void release(Allocation allocation) {
+        allocatedCount--;
+        if ((allocatedCount + pooledCount + 1) * segmentSize <= budgetBytes) {
+            if (pooledCount == pool.length) {
+                Allocation[] newPool = new Allocation[pool.length * 2];
+                System.arraycopy(pool, 0, newPool, 0, pooledCount);
+                pool = newPool;
+            }
+            pool[pooledCount++] = allocation;
+        }
+        heldBytes = (allocatedCount + pooledCount) * segmentSize;
+        // Wake up the loader, which may be waiting for memory to be released.
+        notifyAll();
+    }
+
+    @Override
+    public synchronized void trim(int targetSize) {
+        trimPool(targetSize);
+    }
+
+    @Override
+    public synchronized void blockWhileTotalBytesAllocatedExceeds(int limit)
+            throws InterruptedException {
+        while (getTotalBytesAllocated() > Math.min(limit, budgetBytes)) {
+            wait();
+        }
+    }
+
+    @Override
+    public synchronized int getTotalBytesAllocated() {
+        return allocatedCount * segmentSize;
+    }
+
+    @Override
+    public int getIndividualAllocationLength() {
+        return segmentSize;
+    }
+
+    /**
+     * Drops pooled segments until the segments in use and pooled take up at most
+     * {@code targetSize} bytes.
+     */
+    private void trimPool(int targetSize) {
+        int targetCount = (targetSize + segmentSize - 1) / segmentSize;
+        int targetPooledCount = Math.max(0, targetCount - allocatedCount);
+        while (pooledCount > targetPooledCount) {
+            pool[--pooledCount] = null;
+        }
+        heldBytes = (allocatedCount + pooledCount) * segmentSize;
+    }
+}
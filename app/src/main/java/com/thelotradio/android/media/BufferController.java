@@ -0,0 +1,132 @@
+package com.thelotradio.android.media;
+
+import com.google.android.exoplayer.upstream.Allocator;
+
+/**
+ * Holds the {@link BufferPolicy} in effect and the thresholds it yields for the stream and network
+ * currently in use. The policy, bitrate and network type can all change while playing; the loading
+ * and playback threads pick up the new thresholds without the player being rebuilt.
+ * <p/>
+ * The buffer target is rounded up to a whole number of allocator segments. A segment is only
+ * released once all of it has been read, so with a target below one segment the loader would stop
+ * before the first segment was full, and playback would never get past it. The start and rebuffer
+ * thresholds are in turn capped at what the target holds at the bitrate of the stream, so that
+ * they can always be reached.
+ */
+public final class BufferController {
+
+    // The share of the buffer target the start and rebuffer thresholds may take, leaving room for
+    // container overhead and bitrate variation.
+    private static final int THRESHOLD_SHARE_PERCENT = 75;
+
+    private final int segmentSize;
+
+    private BufferPolicy policy;
+    private int bitrate;
+    private int networkType;
+    private int memoryBudgetBytes;
+
+    private volatile long startBufferUs;
+    private volatile long rebufferUs;
+    private volatile int bufferTargetBytes;
+
+    /**
+     * @param policy The policy to start with.
+     * @param segmentSize The size of the allocator's segments, in bytes.
+     */
+    public BufferController(BufferPolicy policy, int segmentSize) {
+        this.policy = policy;
+        this.segmentSize = segmentSize;
+        networkType = BufferPolicy.NETWORK_TYPE_UNKNOWN;
+        memoryBudgetBytes = Integer.MAX_VALUE;
+        update();
+    }
+
+    public synchronized void setPolicy(BufferPolicy policy) {
+        this.policy = policy;
+        update();
+    }
+
+    public synchronized BufferPolicy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * @param bitrate The bitrate of the stream being played in bits per second, or 0 if unknown.
+     */
+    public synchronized void setBitrate(int bitrate) {
+        if (this.bitrate != bitrate) {
+            this.bitrate = bitrate;
+            update();
+        }
+    }
+
+    /**
+     * @param networkType One of the {@code BufferPolicy.NETWORK_TYPE_*} constants.
+     */
+    public synchronized void setNetworkType(int networkType) {
+        if (this.networkType != networkType) {
+            this.networkType = networkType;
+            update();
+        }
+    }
+
+    /**
+     * Caps the buffer target, whatever the policy asks for.
+     */
+    public synchronized void setMemoryBudgetBytes(int memoryBudgetBytes) {
+        if (this.memoryBudgetBytes != memoryBudgetBytes) {
+            this.memoryBudgetBytes = memoryBudgetBytes;
+            update();
+        }
+    }
+
+    public long getStartBufferUs() {
+        return startBufferUs;
+    }
+
+    public long getRebufferUs() {
+        return rebufferUs;
+    }
+
+    public int getBufferTargetBytes() {
+        return bufferTargetBytes;
+    }
+
+    /**
+     * Blocks while {@code allocator} holds more than the buffer target, or more than {@code limit}
+     * if that is lower.
+     */
+    /* package */ synchronized void blockWhileAboveTarget(Allocator allocator, int limit)
+            throws InterruptedException {
+        while (allocator.getTotalBytesAllocated() > Math.min(limit, bufferTargetBytes)) {
+            wait();
+        }
+    }
+
+    /**
+     * Wakes up threads blocked in {@link #blockWhileAboveTarget}, because memory was released.
+     */
+    /* package */ synchronized void onAllocationReleased() {
+        notifyAll();
+    }
+
+    private synchronized void update() {
+        int targetBytes = Math.min(memoryBudgetBytes,
+                policy.getBufferTargetBytes(bitrate, networkType));
+        int segmentCount = Math.max(1, (int) (((long) targetBytes + segmentSize - 1) / segmentSize));
+        bufferTargetBytes = (int) Math.min(Integer.MAX_VALUE, (long) segmentCount * segmentSize);
+        long startBufferUs = policy.getStartBufferMs(bitrate, networkType) * 1000L;
+        long rebufferUs = policy.getRebufferMs(bitrate, networkType) * 1000L;
+        if (bitrate > 0) {
+            long maxThresholdUs = bufferTargetBytes * 8000000L / bitrate
+                    * THRESHOLD_SHARE_PERCENT / 100;
+            startBufferUs = Math.min(startBufferUs, maxThresholdUs);
+            rebufferUs = Math.min(rebufferUs, maxThresholdUs);
+        }
+        this.startBufferUs = startBufferUs;
+        this.rebufferUs = rebufferUs;
+        // The target may have grown.
+        notifyAll();
+    }
+}
@@ -0,0 +1,48 @@
+package com.thelotradio.android.media;
+
+/**
+ * Decides how much audio the player buffers, given the bitrate being played and the network it is
+ * played over. The player consults its policy again whenever either of those changes, and a new
+ * policy can be set while playing. See {@link BufferProfile} for the built-in policies.
+ */
+public interface BufferPolicy {
+
+    /**
+     * The network type when it is not known.
+     */
+    int NETWORK_TYPE_UNKNOWN = 0;
+    /**
+     * A network without a data cap, typically Wi-Fi or ethernet.
+     */
+    int NETWORK_TYPE_UNMETERED = 1;
+    /**
+     * A network the listener pays for by the byte, typically cellular.
+     */
+    int NETWORK_TYPE_METERED = 2;
+
+    /**
+     * Returns how much audio must be buffered before playback first starts.
+     *
+     * @param bitrate The bitrate of the stream in bits per second, or 0 if unknown.
+     * @param networkType One of the {@code NETWORK_TYPE_*} constants.
+     */
+    int getStartBufferMs(int bitrate, int networkType);
+
+    /**
+     * Returns how much audio must be buffered before playback resumes after the buffer ran dry.
+     *
+     * @param bitrate The bitrate of the stream in bits per second, or 0 if unknown.
+     * @param networkType One of the {@code NETWORK_TYPE_*} constants.
+     */
+    int getRebufferMs(int bitrate, int networkType);
+
+    /**
+     * Returns how many bytes of compressed audio to buffer ahead of the playback position at most.
+     * Loading pauses once this is reached. Rounded up to a whole number of allocator segments by
+     * {@link BufferController}, which also caps the start and rebuffer thresholds at what fits.
+     *
+     * @param bitrate The bitrate of the stream in bits per second, or 0 if unknown.
+     * @param networkType One of the {@code NETWORK_TYPE_*} constants.
+     */
+    int getBufferTargetBytes(int bitrate, int networkType);
+}
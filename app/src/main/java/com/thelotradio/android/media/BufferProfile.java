@@ -0,0 +1,72 @@
+package com.thelotradio.android.media;
+
+/**
+ * A {@link BufferPolicy} that buffers a fixed duration of audio, with a separate duration for
+ * metered networks.
+ */
+public final class BufferProfile implements BufferPolicy {
+
+    /**
+     * Stays as close to live as possible, for live events. Starts quickly and keeps only a few
+     * seconds ahead, at the cost of rebuffering more on a poor connection.
+     */
+    public static final BufferProfile LOW_LATENCY = new BufferProfile(500, 1500, 4000, 4000);
+    /**
+     * A middle ground for everyday listening.
+     */
+    public static final BufferProfile BALANCED = new BufferProfile(1000, 5000, 60000, 30000);
+    /**
+     * For cellular plans with a data cap. Waits for a deeper buffer before starting to ride out
+     * cellular jitter, but keeps little audio ahead so that stopping wastes little data.
+     */
+    public static final BufferProfile METERED_CELLULAR =
+            new BufferProfile(2500, 5000, 20000, 10000);
+    /**
+     * For low-power mode, see {@link AudioPlayer#setLowPowerEnabled(boolean)}, which playback enters
+     * while the device saves power. Starts later, so that playback runs far enough behind the live
+     * stream for the download to idle between bursts.
+     */
+    public static final BufferProfile LOW_POWER = new BufferProfile(10000, 10000, 60000, 60000);
+
+    // Assumed when the bitrate of the stream isn't known.
+    private static final int DEFAULT_BITRATE = 128000;
+
+    private final int startBufferMs;
+    private final int rebufferMs;
+    private final int bufferTargetMs;
+    private final int meteredBufferTargetMs;
+
+    /**
+     * @param startBufferMs The audio to buffer before playback starts.
+     * @param rebufferMs The audio to buffer before playback resumes after running dry.
+     * @param bufferTargetMs The most audio to buffer ahead.
+     * @param meteredBufferTargetMs The most audio to buffer ahead on a metered network.
+     */
+    public BufferProfile(int startBufferMs, int rebufferMs, int bufferTargetMs,
+            int meteredBufferTargetMs) {
+        this.startBufferMs = startBufferMs;
+        this.rebufferMs = rebufferMs;
+        this.bufferTargetMs = bufferTargetMs;
+        this.meteredBufferTargetMs = meteredBufferTargetMs;
+    }
+
+    @Override
+    public int getStartBufferMs(int bitrate, int networkType) {
+        return startBufferMs;
+    }
+
+    @Override
+    public int getRebufferMs(int bitrate, int networkType) {
+        return rebufferMs;
+    }
+
+    @Override
+    public int getBufferTargetBytes(int bitrate, int networkType) {
+        int targetMs = networkType == NETWORK_TYPE_METERED ? meteredBufferTargetMs
+                : bufferTargetMs;
+        // The start and rebuffer thresholds must always fit.
+        targetMs = Math.max(targetMs, Math.max(startBufferMs, rebufferMs));
+        long bytes = (long) (bitrate > 0 ? bitrate : DEFAULT_BITRATE) * targetMs / 8000;
+        return (int) Math.min(Integer.MAX_VALUE, bytes);
+    }
+}
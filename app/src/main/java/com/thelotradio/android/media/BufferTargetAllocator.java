@@ -0,0 +1,51 @@
+package com.thelotradio.android.media;
+
+import com.google.android.exoplayer.upstream.Allocation;
+import com.google.android.exoplayer.upstream.Allocator;
+
+/**
+ * An {@link Allocator} that holds the loader back once the buffer target of a
+ * {@link BufferController} is reached. The loader waits on the allocator before reading each chunk
+ * of the stream, so this is where the amount buffered ahead is decided.
+ */
+/* package */ final class BufferTargetAllocator implements Allocator {
+
+    private final Allocator upstream;
+    private final BufferController bufferController;
+
+    public BufferTargetAllocator(Allocator upstream, BufferController bufferController) {
+        this.upstream = upstream;
+        this.bufferController = bufferController;
+    }
+
+    @Override
+    public Allocation allocate() {
+        return upstream.allocate();
+    }
+
+    @Override
+    public void release(Allocation allocation) {
+        upstream.release(allocation);
+        bufferController.onAllocationReleased();
+    }
+
+    @Override
+    public void trim(int targetSize) {
+        upstream.trim(targetSize);
+    }
+
+    @Override
+    public void blockWhileTotalBytesAllocatedExceeds(int limit) throws InterruptedException {
+        bufferController.blockWhileAboveTarget(upstream, limit);
+    }
+
+    @Override
+    public int getTotalBytesAllocated() {
+        return upstream.getTotalBytesAllocated();
+    }
+
+    @Override
+    public int getIndividualAllocationLength() {
+        return upstream.getIndividualAllocationLength();
+    }
+}
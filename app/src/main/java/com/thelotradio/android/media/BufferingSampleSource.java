@@ -0,0 +1,122 @@
+package com.thelotradio.android.media;
+
+import com.google.android.exoplayer.MediaFormat;
+import com.google.android.exoplayer.MediaFormatHolder;
+import com.google.android.exoplayer.SampleHolder;
+import com.google.android.exoplayer.SampleSource;
+import com.google.android.exoplayer.SampleSource.SampleSourceReader;
+import com.google.android.exoplayer.TrackRenderer;
+
+import java.io.IOException;
+
+/**
+ * A {@link SampleSource} that only reports itself ready to play once the start or rebuffer
+ * threshold of a {@link BufferController} is buffered.
+ * <p/>
+ * ExoPlayer applies its own thresholds only as they were when it was created, so the player is
+ * created without any and they are applied here instead, where they can change at any time.
+ */
+/* package */ final class BufferingSampleSource implements SampleSource, SampleSourceReader {
+
+    private final SampleSourceReader upstream;
+    private final BufferController bufferController;
+
+    private boolean buffering;
+    private boolean started;
+
+    public BufferingSampleSource(SampleSource upstream, BufferController bufferController) {
+        this.upstream = upstream.register();
+        this.bufferController = bufferController;
+    }
+
+    @Override
+    public SampleSourceReader register() {
+        return this;
+    }
+
+    @Override
+    public void maybeThrowError() throws IOException {
+        upstream.maybeThrowError();
+    }
+
+    @Override
+    public boolean prepare(long positionUs) {
+        return upstream.prepare(positionUs);
+    }
+
+    @Override
+    public int getTrackCount() {
+        return upstream.getTrackCount();
+    }
+
+    @Override
+    public MediaFormat getFormat(int track) {
+        return upstream.getFormat(track);
+    }
+
+    @Override
+    public void enable(int track, long positionUs) {
+        upstream.enable(track, positionUs);
+        buffering = true;
+        started = false;
+    }
+
+    @Override
+    public boolean continueBuffering(int track, long positionUs) {
+        boolean ready = upstream.continueBuffering(track, positionUs);
+        if (!buffering) {
+            // Only start waiting for the threshold once the buffer has actually run dry.
+            buffering = !ready;
+            return ready;
+        }
+        long bufferedPositionUs = upstream.getBufferedPositionUs();
+        if (bufferedPositionUs == TrackRenderer.END_OF_TRACK_US) {
+            buffering = false;
+            return true;
+        }
+        if (!ready || bufferedPositionUs == TrackRenderer.UNKNOWN_TIME_US) {
+            return ready;
+        }
+        long thresholdUs = started ? bufferController.getRebufferUs()
+                : bufferController.getStartBufferUs();
+        if (bufferedPositionUs - positionUs >= thresholdUs) {
+            buffering = false;
+            started = true;
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public long readDiscontinuity(int track) {
+        return upstream.readDiscontinuity(track);
+    }
+
+    @Override
+    public int readData(int track, long positionUs, MediaFormatHolder formatHolder,
+            SampleHolder sampleHolder) {
+        return upstream.readData(track, positionUs, formatHolder, sampleHolder);
+    }
+
+    @Override
+    public void seekToUs(long positionUs) {
+        upstream.seekToUs(positionUs);
+        buffering = true;
+        started = false;
+    }
+
+    @Override
+    public long getBufferedPositionUs() {
+        return upstream.getBufferedPositionUs();
+    }
+
+    @Override
+    public void disable(int track) {
+        upstream.disable(track);
+    }
+
+    @Override
+    public void release() {
+        upstream.release();
+    }
+}
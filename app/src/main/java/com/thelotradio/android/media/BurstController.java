@@ -0,0 +1,227 @@
+package com.thelotradio.android.media;
+
+/**
+ * Decides when the live stream is downloaded, so that it arrives in bursts with the radio idle in
+ * between, rather than as a steady trickle that keeps the radio awake all the time.
+ * <p/>
+ * A burst lasts until the high watermark of audio is buffered ahead of playback, or until the
+ * server has nothing more queued up for the connection. Reading then stops, and the server queues
+ * the stream while the buffer plays down to the low watermark, after which the next burst fetches
+ * the queue at full speed. Icecast drops a listener whose queue outgrows its queue-size, 512 KB by
+ * default, so an idle period never lasts longer than the maximum idle time.
+ * <p/>
+ * The state only changes in {@link #update(long, long)}, which the player calls periodically with
+ * how much audio is buffered. The thread reading the stream blocks in {@link #awaitBurst()} while
+ * the download is idle.
+ */
+public final class BurstController {
+
+    /**
+     * Listener for download bursts. Invoked on the thread that updates the controller.
+     */
+    public interface Listener {
+        /**
+         * Invoked when downloading starts or stops.
+         */
+        void onBurstStateChanged(boolean bursting);
+
+        /**
+         * Invoked when a burst and the idle period after it have completed.
+         */
+        void onBurstCycleCompleted(long burstMs, long idleMs);
+    }
+
+    public static final int DEFAULT_LOW_WATERMARK_MS = 4000;
+    public static final int DEFAULT_HIGH_WATERMARK_MS = 30000;
+    public static final int DEFAULT_MAX_IDLE_MS = 20000;
+
+    // Idling for less than this saves nothing, since the radio takes seconds to power down.
+    private static final int MIN_IDLE_MS = 3000;
+    // A burst that buffers slower than this, relative to real time, has drained the server's queue.
+    private static final float CAUGHT_UP_GROWTH_RATE = 0.25f;
+
+    private final Listener listener;
+    private final int lowWatermarkMs;
+    private final int highWatermarkMs;
+    private final int maxIdleMs;
+
+    private boolean enabled;
+    private boolean bursting;
+    private long phaseStartMs;
+    private long idleUntilMs;
+    private long lastBurstMs;
+    private long burstTotalMs;
+    private long idleTotalMs;
+    private long lastUpdateMs;
+    private long lastBufferedMs;
+
+    public BurstController(Listener listener) {
+        this(listener, DEFAULT_LOW_WATERMARK_MS, DEFAULT_HIGH_WATERMARK_MS, DEFAULT_MAX_IDLE_MS);
+    }
+
+    /**
+     * @param listener A listener of bursts. May be null if delivery of events is not required.
+     * @param lowWatermarkMs The audio buffered ahead at which a new burst starts.
+     * @param highWatermarkMs The audio buffered ahead at which a burst stops.
+     * @param maxIdleMs The longest time to go without reading the stream.
+     */
+    public BurstController(Listener listener, int lowWatermarkMs, int highWatermarkMs,
+            int maxIdleMs) {
+        this.listener = listener;
+        this.lowWatermarkMs = lowWatermarkMs;
+        this.highWatermarkMs = highWatermarkMs;
+        this.maxIdleMs = maxIdleMs;
+        bursting = true;
+        lastUpdateMs = -1;
+    }
+
+    /**
+     * Enables or disables bursting. While disabled, the stream is downloaded continuously.
+     */
+    public void setEnabled(boolean enabled, long nowMs) {
+        boolean resumed;
+        synchronized (this) {
+            if (this.enabled == enabled) {
+                return;
+            }
+            resumed = !bursting;
+            endPhase(nowMs);
+            this.enabled = enabled;
+            bursting = true;
+            lastUpdateMs = -1;
+            notifyAll();
+        }
+        if (resumed && listener != null) {
+            listener.onBurstStateChanged(true);
+        }
+    }
+
+    public synchronized boolean isEnabled() {
+        return enabled;
+    }
+
+    public synchronized boolean isBursting() {
+        return bursting;
+    }
+
+    /**
+     * Advances the state.
+     *
+     * @param bufferedMs How much audio is buffered ahead of playback, or 0 if playback is waiting
+     *     for audio.
+     * @param nowMs The current time.
+     */
+    public void update(long bufferedMs, long nowMs) {
+        boolean stateChanged = false;
+        long burstMs = 0;
+        long idleMs = 0;
+        boolean nowBursting;
+        synchronized (this) {
+            if (!enabled) {
+                return;
+            }
+            if (bursting) {
+                long intervalMs = nowMs - lastUpdateMs;
+                boolean caughtUp = lastUpdateMs != -1 && intervalMs > 0
+                        && bufferedMs - lastBufferedMs < intervalMs * CAUGHT_UP_GROWTH_RATE;
+                long idleBudgetMs = bufferedMs - lowWatermarkMs;
+                if (idleBudgetMs >= MIN_IDLE_MS && (bufferedMs >= highWatermarkMs || caughtUp)) {
+                    lastBurstMs = endPhase(nowMs);
+                    bursting = false;
+                    idleUntilMs = nowMs + Math.min(maxIdleMs, idleBudgetMs);
+                    stateChanged = true;
+                }
+            } else if (nowMs >= idleUntilMs || bufferedMs <= lowWatermarkMs) {
+                burstMs = lastBurstMs;
+                idleMs = startBurst(nowMs);
+                stateChanged = true;
+            }
+            lastUpdateMs = nowMs;
+            lastBufferedMs = bufferedMs;
+            nowBursting = bursting;
+        }
+        if (stateChanged) {
+            notifyStateChanged(nowBursting, burstMs, idleMs);
+        }
+    }
+
+    /**
+     * Ends an idle period early, for example because the connection has to be replaced.
+     */
+    public void wake(long nowMs) {
+        long burstMs;
+        long idleMs;
+        synchronized (this) {
+            if (bursting) {
+                return;
+            }
+            burstMs = lastBurstMs;
+            idleMs = startBurst(nowMs);
+            lastUpdateMs = -1;
+        }
+        notifyStateChanged(true, burstMs, idleMs);
+    }
+
+    /**
+     * Blocks while the download is idle.
+     */
+    public synchronized void awaitBurst() throws InterruptedException {
+        while (!bursting) {
+            wait();
+        }
+    }
+
+    /**
+     * Returns the fraction of time spent downloading while bursting was enabled, or 1 if it never
+     * was.
+     */
+    public synchronized float getDutyCycle(long nowMs) {
+        long burstMs = burstTotalMs;
+        long idleMs = idleTotalMs;
+        if (enabled) {
+            if (bursting) {
+                burstMs += nowMs - phaseStartMs;
+            } else {
+                idleMs += nowMs - phaseStartMs;
+            }
+        }
+        long totalMs = burstMs + idleMs;
+        return totalMs == 0 ? 1f : (float) burstMs / totalMs;
+    }
+
+    /**
+     * Adds the phase that is ending to the totals.
+     *
+     * @return The length of the phase.
+     */
+    private long endPhase(long nowMs) {
+        long phaseMs = enabled ? nowMs - phaseStartMs : 0;
+        if (bursting) {
+            burstTotalMs += phaseMs;
+        } else {
+            idleTotalMs += phaseMs;
+        }
+        phaseStartMs = nowMs;
+        return phaseMs;
+    }
+
+    /**
+     * @return The length of the idle period that ended.
+     */
+    private long startBurst(long nowMs) {
+        long idleMs = endPhase(nowMs);
+        bursting = true;
+        notifyAll();
+        return idleMs;
+    }
+
+    private void notifyStateChanged(boolean bursting, long burstMs, long idleMs) {
+        if (listener == null) {
+            return;
+        }
+        listener.onBurstStateChanged(bursting);
+        if (bursting) {
+            listener.onBurstCycleCompleted(burstMs, idleMs);
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.thelotradio.android.media;
+
+import com.google.android.exoplayer.upstream.DataSpec;
+import com.google.android.exoplayer.upstream.UriDataSource;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+
+/**
+ * A {@link UriDataSource} that holds reads back while its {@link BurstController} keeps the
+ * download idle. The connection stays open but unread, so the server queues the stream for the
+ * next burst.
+ */
+/* package */ final class BurstingDataSource implements UriDataSource {
+
+    private final UriDataSource upstream;
+    private final BurstController burstController;
+
+    public BurstingDataSource(UriDataSource upstream, BurstController burstController) {
+        this.upstream = upstream;
+        this.burstController = burstController;
+    }
+
+    @Override
+    public long open(DataSpec dataSpec) throws IOException {
+        return upstream.open(dataSpec);
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int readLength) throws IOException {
+        try {
+            burstController.awaitBurst();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+        return upstream.read(buffer, offset, readLength);
+    }
+
+    @Override
+    public void close() throws IOException {
+        upstream.close();
+    }
+
+    @Override
+    public String getUri() {
+        return upstream.getUri();
+    }
+}
@@ -20,30 +20,62 @@ import android.media.AudioManager;
 import android.net.Uri;
 import android.os.Handler;
 
-import com.google.android.exoplayer.MediaCodecAudioTrackRenderer;
 import com.google.android.exoplayer.MediaCodecSelector;
+import com.google.android.exoplayer.MediaCodecUtil;
+import com.google.android.exoplayer.MediaCodecUtil.DecoderQueryException;
+import com.google.android.exoplayer.MediaFormat;
+import com.google.android.exoplayer.SampleSource;
 import com.google.android.exoplayer.TrackRenderer;
 import com.google.android.exoplayer.audio.AudioCapabilities;
 import com.google.android.exoplayer.extractor.Extractor;
 import com.google.android.exoplayer.extractor.ExtractorSampleSource;
+import com.google.android.exoplayer.extractor.mp3.Mp3Extractor;
+import com.google.android.exoplayer.extractor.ts.AdtsExtractor;
 import com.google.android.exoplayer.upstream.Allocator;
-import com.google.android.exoplayer.upstream.DataSource;
-import com.google.android.exoplayer.upstream.DefaultAllocator;
+import com.google.android.exoplayer.upstream.BandwidthMeter;
 import com.google.android.exoplayer.upstream.DefaultBandwidthMeter;
+import com.google.android.exoplayer.upstream.DefaultHttpDataSource;
 import com.google.android.exoplayer.upstream.DefaultUriDataSource;
+import com.google.android.exoplayer.upstream.HttpDataSource;
+import com.google.android.exoplayer.upstream.UriDataSource;
+import com.google.android.exoplayer.util.MimeTypes;
+import com.thelotradio.android.net.HttpConnectionPool;
+import com.thelotradio.android.net.PooledHttpDataSource;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
 /**
  * A {@link RendererBuilder} for streams that can be read using an {@link Extractor}.
+ * <p/>
+ * Renderers are built on a worker thread, since querying the audio capabilities and the decoders
+ * can block, and handed to the player on its main thread.
+ * <p/>
+ * If the player's {@link FormatMemo} knows the format of the stream, only the extractor for that
+ * format is built, rather than each default extractor sniffing the stream in turn, and the
+ * software decoder is set up ahead of the first read.
  */
 public class ExtractorAudioRendererBuilder implements RendererBuilder {
 
-  private static final int BUFFER_SEGMENT_SIZE = 64 * 1024;
-  private static final int BUFFER_SEGMENT_COUNT = 256;
+  // One worker for all builders, so that a build abandoned by a quick stop and play finishes
+  // before the next one starts, rather than competing with it.
+  private static final ExecutorService BUILD_EXECUTOR = Executors.newSingleThreadExecutor(
+      new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+          Thread thread = new Thread(runnable, "RendererBuilder");
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
 
   private final Context context;
   private final String userAgent;
   private final Uri uri;
 
+  private AsyncRendererBuilder currentAsyncBuilder;
+
   public ExtractorAudioRendererBuilder(Context context, String userAgent, Uri uri) {
     this.context = context;
     this.userAgent = userAgent;
@@ -52,27 +84,204 @@ public class ExtractorAudioRendererBuilder implements RendererBuilder {
 
   @Override
   public void buildRenderers(AudioPlayer audioPlayer) {
-    Allocator allocator = new DefaultAllocator(BUFFER_SEGMENT_SIZE);
-    Handler mainHandler = audioPlayer.getMainHandler();
-
-    // Build the audio renderers.
-    DefaultBandwidthMeter bandwidthMeter = new DefaultBandwidthMeter(mainHandler, null);
-    DataSource dataSource = new DefaultUriDataSource(context, bandwidthMeter, userAgent);
-    ExtractorSampleSource sampleSource = new ExtractorSampleSource(uri, dataSource, allocator,
-        BUFFER_SEGMENT_COUNT * BUFFER_SEGMENT_SIZE, mainHandler, audioPlayer, 0);
-    MediaCodecAudioTrackRenderer audioRenderer = new MediaCodecAudioTrackRenderer(sampleSource,
-        MediaCodecSelector.DEFAULT, null, true, mainHandler, audioPlayer,
-        AudioCapabilities.getCapabilities(context), AudioManager.STREAM_MUSIC);
-
-    // Invoke the callback.
-    TrackRenderer[] renderers = new TrackRenderer[AudioPlayer.RENDERER_COUNT];
-    renderers[AudioPlayer.TYPE_AUDIO] = audioRenderer;
-    audioPlayer.onRenderers(renderers, bandwidthMeter);
+    currentAsyncBuilder = new AsyncRendererBuilder(context, userAgent, uri, audioPlayer);
+    currentAsyncBuilder.start();
   }
 
   @Override
   public void cancel() {
-    // Do nothing.
+    if (currentAsyncBuilder != null) {
+      currentAsyncBuilder.cancel();
+      currentAsyncBuilder = null;
+    }
+  }
+
+  /**
+   * What a build hands to the player.
+   */
+  private static final class Pipeline {
+
+    public final TrackRenderer[] renderers;
+    public final BandwidthMeter bandwidthMeter;
+    public final StreamSwitchingDataSource streamSource;
+    public final MirrorRacingDataSource mirrorSource;
+    public final TimeShiftDataSource timeShiftSource;
+
+    public Pipeline(TrackRenderer[] renderers, BandwidthMeter bandwidthMeter,
+        StreamSwitchingDataSource streamSource, MirrorRacingDataSource mirrorSource,
+        TimeShiftDataSource timeShiftSource) {
+      this.renderers = renderers;
+      this.bandwidthMeter = bandwidthMeter;
+      this.streamSource = streamSource;
+      this.mirrorSource = mirrorSource;
+      this.timeShiftSource = timeShiftSource;
+    }
+
+  }
+
+  private static final class AsyncRendererBuilder extends AsyncBuild<Pipeline> {
+
+    private final Context context;
+    private final String userAgent;
+    private final Uri uri;
+    private final AudioPlayer audioPlayer;
+    private final Handler mainHandler;
+    // Read from the player on the main thread, where it owns them.
+    private final BufferController bufferController;
+    private final Allocator playerAllocator;
+    private final StreamRecorder recorder;
+    private final TimeShiftBuffer timeShiftBuffer;
+    private final HttpConnectionPool connectionPool;
+    private final MirrorSelector mirrorSelector;
+    private final BurstController burstController;
+    private final boolean softwareDecodingEnabled;
+    private final MediaFormat memoizedFormat;
+    private final AudioPlayer.PcmListener pcmListener;
+
+    public AsyncRendererBuilder(Context context, String userAgent, Uri uri,
+        AudioPlayer audioPlayer) {
+      super(BUILD_EXECUTOR, audioPlayer.getMainHandler());
+      this.context = context;
+      this.userAgent = userAgent;
+      this.uri = uri;
+      this.audioPlayer = audioPlayer;
+      mainHandler = audioPlayer.getMainHandler();
+      bufferController = audioPlayer.getBufferController();
+      playerAllocator = audioPlayer.getAllocator();
+      recorder = audioPlayer.getRecorder();
+      timeShiftBuffer = audioPlayer.getTimeShiftBuffer();
+      connectionPool = audioPlayer.getConnectionPool();
+      mirrorSelector = audioPlayer.getMirrorSelector();
+      burstController = audioPlayer.getBurstController();
+      softwareDecodingEnabled = audioPlayer.isSoftwareDecodingEnabled();
+      FormatMemo formatMemo = audioPlayer.getFormatMemo();
+      // The stream is switched to the selected quality before anything is read from it.
+      memoizedFormat = formatMemo != null
+          ? formatMemo.get(audioPlayer.getSelectedStream().uri) : null;
+      pcmListener = audioPlayer.getPcmListener();
+    }
+
+    @Override
+    protected Pipeline build() {
+      AudioCapabilities audioCapabilities = AudioCapabilities.getCapabilities(context);
+      // Fill the decoder cache now, rather than on the playback thread once the format is known.
+      String[] mimeTypes = memoizedFormat != null ? new String[] {memoizedFormat.mimeType}
+          : new String[] {MimeTypes.AUDIO_MPEG, MimeTypes.AUDIO_AAC};
+      for (String mimeType : mimeTypes) {
+        MediaCodecUtil.warmDecoderInfoCache(mimeType, false);
+      }
+      if (isCanceled()) {
+        return null;
+      }
+
+      // How far ahead to load is decided by the buffer policy, within the memory budget of the
+      // allocator, so the sample source itself is not given a limit.
+      Allocator allocator = new BufferTargetAllocator(playerAllocator, bufferController);
+
+      // Build the audio renderers.
+      final DefaultBandwidthMeter bandwidthMeter = new DefaultBandwidthMeter(mainHandler, null);
+      // Now-playing metadata is read in-band from the audio connection itself.
+      // Connections, DNS lookups and TLS sessions are shared with earlier and later pipelines.
+      // Every mirror of a stream is raced, and the first to deliver audio is kept.
+      MirrorRacingDataSource.Factory httpDataSourceFactory = new MirrorRacingDataSource.Factory() {
+        @Override
+        public PooledHttpDataSource createDataSource() {
+          return new PooledHttpDataSource(connectionPool, userAgent, bandwidthMeter,
+              DefaultHttpDataSource.DEFAULT_CONNECT_TIMEOUT_MILLIS,
+              DefaultHttpDataSource.DEFAULT_READ_TIMEOUT_MILLIS, mainHandler, audioPlayer);
+        }
+      };
+      MirrorRacingDataSource mirrorSource =
+          new MirrorRacingDataSource(httpDataSourceFactory, mirrorSelector);
+      HttpDataSource httpDataSource = new IcyDataSource(mirrorSource, mainHandler, audioPlayer);
+      // In low-power mode the connection is only read in bursts, letting the radio sleep between.
+      UriDataSource connectionSource = new BurstingDataSource(
+          new DefaultUriDataSource(context, bandwidthMeter, httpDataSource), burstController);
+      StreamSwitchingDataSource streamSource = new StreamSwitchingDataSource(
+          connectionSource, uri, mainHandler, audioPlayer);
+      // Recordings get the stream exactly as downloaded, whether or not it is being played.
+      UriDataSource dataSource = new TeeDataSource(streamSource, recorder);
+      TimeShiftDataSource timeShiftSource = null;
+      if (timeShiftBuffer != null) {
+        timeShiftSource = new TimeShiftDataSource(dataSource, timeShiftBuffer);
+        dataSource = timeShiftSource;
+      }
+      if (isCanceled()) {
+        // Nothing has been opened yet, but make sure the pipeline holds on to nothing.
+        if (timeShiftSource != null) {
+          timeShiftSource.release();
+        }
+        return null;
+      }
+      // With no extractors given, the sample source tries all of the defaults.
+      Extractor[] extractors = memoizedFormat != null
+          ? new Extractor[] {createExtractor(memoizedFormat.mimeType)} : new Extractor[0];
+      ExtractorSampleSource sampleSource = new ExtractorSampleSource(uri, dataSource, allocator,
+          Integer.MAX_VALUE, mainHandler, audioPlayer, 0, extractors);
+      SampleSource bufferingSource = new BufferingSampleSource(sampleSource, bufferController);
+      TrackRenderer audioRenderer;
+      if (softwareDecodingEnabled || !hasMediaCodecDecoder(mimeTypes)) {
+        SoftwareAudioTrackRenderer softwareRenderer = new SoftwareAudioTrackRenderer(
+            bufferingSource, mainHandler, audioPlayer, audioCapabilities,
+            AudioManager.STREAM_MUSIC, pcmListener);
+        if (memoizedFormat != null) {
+          softwareRenderer.prepareDecoder(memoizedFormat);
+        }
+        audioRenderer = softwareRenderer;
+      } else {
+        audioRenderer = new PcmTappingAudioTrackRenderer(bufferingSource,
+            MediaCodecSelector.DEFAULT, null, true, mainHandler, audioPlayer,
+            audioCapabilities, AudioManager.STREAM_MUSIC, pcmListener);
+      }
+
+      // Handed to the player on the main thread, unless canceled in the meantime.
+      TrackRenderer[] renderers = new TrackRenderer[AudioPlayer.RENDERER_COUNT];
+      renderers[AudioPlayer.TYPE_AUDIO] = audioRenderer;
+      return new Pipeline(renderers, bandwidthMeter, streamSource, mirrorSource,
+          timeShiftSource);
+    }
+
+    @Override
+    protected void onBuilt(Pipeline pipeline) {
+      audioPlayer.onRenderers(pipeline.renderers, pipeline.bandwidthMeter, pipeline.streamSource,
+          pipeline.mirrorSource, pipeline.timeShiftSource);
+    }
+
+    @Override
+    protected void onCanceled(Pipeline pipeline) {
+      // Nothing has been opened yet, but make sure the pipeline holds on to nothing.
+      if (pipeline.timeShiftSource != null) {
+        pipeline.timeShiftSource.release();
+      }
+    }
+
+    @Override
+    protected void onError(RuntimeException e) {
+      audioPlayer.onRenderersError(e);
+    }
+
+    /**
+     * Returns whether MediaCodec has a decoder for any of the formats the stream may be in.
+     * Decoders that are present but fail to initialize are caught by the player, which rebuilds
+     * with software decoding.
+     */
+    private static boolean hasMediaCodecDecoder(String[] mimeTypes) {
+      try {
+        for (String mimeType : mimeTypes) {
+          if (MediaCodecUtil.getDecoderInfo(mimeType, false) != null) {
+            return true;
+          }
+        }
+        return false;
+      } catch (DecoderQueryException e) {
+        return false;
+      }
+    }
+
+    private static Extractor createExtractor(String mimeType) {
+      return MimeTypes.AUDIO_MPEG.equals(mimeType) ? new Mp3Extractor() : new AdtsExtractor();
+    }
+
   }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,226 @@
+package com.thelotradio.android.media;
+
+import android.net.Uri;
+
+import com.google.android.exoplayer.C;
+import com.google.android.exoplayer.MediaFormat;
+import com.google.android.exoplayer.util.MimeTypes;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Remembers the audio format of each stream, so that the next pipeline for it can be built with
+ * the one extractor that reads it, and its decoder set up, before any of the stream has arrived.
+ * Meant to outlive a single player, and to be saved across launches. Thread-safe.
+ * <p/>
+ * Only MP3 and AAC formats are kept, each as its MIME type, sample rate, channel count and
+ * initialization data. The file holds the magic number {@code LOTF} and the format version, then
+ * the streams from least to most recently used.
+ */
+public final class FormatMemo {
+
+    // Far more than the streams the app plays, while bounding a file that only ever grows.
+    /* package */ static final int MAX_ENTRIES = 16;
+
+    private static final int MAGIC = 0x4C4F5446;
+    private static final int VERSION = 1;
+
+    private final LinkedHashMap<String, MediaFormat> formats;
+
+    private boolean changed;
+
+    public FormatMemo() {
+        formats = new LinkedHashMap<String, MediaFormat>(MAX_ENTRIES, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, MediaFormat> eldest) {
+                return size() > MAX_ENTRIES;
+            }
+        };
+    }
+
+    /**
+     * Returns the format last recorded for {@code uri}, or null if there is none.
+     */
+    public synchronized MediaFormat get(Uri uri) {
+        return formats.get(uri.toString());
+    }
+
+    /**
+     * Records the format of the stream at {@code uri}. Formats other than MP3 and AAC are ignored.
+     */
+    public synchronized void put(Uri uri, MediaFormat format) {
+        if (!MimeTypes.AUDIO_MPEG.equals(format.mimeType)
+                && !MimeTypes.AUDIO_AAC.equals(format.mimeType)) {
+            return;
+        }
+        MediaFormat previous = formats.get(uri.toString());
+        if (previous != null && previous.mimeType.equals(format.mimeType)
+                && previous.sampleRate == format.sampleRate
+                && previous.channelCount == format.channelCount
+                && sameInitializationData(previous.initializationData,
+                        format.initializationData)) {
+            return;
+        }
+        formats.put(uri.toString(), createFormat(format.mimeType, format.sampleRate,
+                format.channelCount, format.initializationData));
+        changed = true;
+    }
+
+    /**
+     * Forgets the format of the stream at {@code uri}, for example because it no longer matches.
+     */
+    public synchronized void remove(Uri uri) {
+        if (formats.remove(uri.toString()) != null) {
+            changed = true;
+        }
+    }
+
+    /**
+     * Returns whether formats were recorded or forgotten since the memo was last saved or loaded.
+     */
+    public synchronized boolean hasUnsavedChanges() {
+        return changed;
+    }
+
+    /**
+     * Returns the formats in the binary format.
+     */
+    public synchronized byte[] toByteArray() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(16 + formats.size() * 96);
+        DataOutputStream output = new DataOutputStream(bytes);
+        try {
+            output.writeInt(MAGIC);
+            output.writeByte(VERSION);
+            output.writeByte(formats.size());
+            for (Map.Entry<String, MediaFormat> entry : formats.entrySet()) {
+                MediaFormat format = entry.getValue();
+                output.writeUTF(entry.getKey());
+                output.writeUTF(format.mimeType);
+                output.writeInt(format.sampleRate);
+                output.writeByte(format.channelCount);
+                output.writeByte(format.initializationData.size());
+                for (byte[] data : format.initializationData) {
+                    output.writeShort(data.length);
+                    output.write(data);
+                }
+            }
+            output.flush();
+        } catch (IOException e) {
+            // Never thrown by a ByteArrayOutputStream.
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Replaces the formats with those in data written by {@link #toByteArray()}.
+     *
+     * @throws IOException If the data is not in the binary format. The memo is left empty.
+     */
+    public synchronized void readFormats(byte[] data) throws IOException {
+        formats.clear();
+        changed = false;
+        DataInputStream input = new DataInputStream(new ByteArrayInputStream(data));
+        if (input.readInt() != MAGIC || input.readUnsignedByte() != VERSION) {
+            throw new IOException("Unrecognized format memo file");
+        }
+        try {
+            int count = input.readUnsignedByte();
+            for (int i = 0; i < count; i++) {
+                String uri = input.readUTF();
+                String mimeType = input.readUTF();
+                int sampleRate = input.readInt();
+                int channelCount = input.readUnsignedByte();
+                int initializationDataCount = input.readUnsignedByte();
+                List<byte[]> initializationData = new ArrayList<>(initializationDataCount);
+                for (int j = 0; j < initializationDataCount; j++) {
+                    byte[] bytes = new byte[input.readUnsignedShort()];
+                    input.readFully(bytes);
+                    initializationData.add(bytes);
+                }
+                formats.put(uri, createFormat(mimeType, sampleRate, channelCount,
+                        initializationData));
+            }
+        } catch (IOException e) {
+            formats.clear();
+            throw e;
+        }
+    }
+
+    /**
+     * Writes the formats to a file, replacing it atomically. Blocks on disk I/O.
+     */
+    public void save(File file) throws IOException {
+        byte[] data;
+        synchronized (this) {
+            data = toByteArray();
+            changed = false;
+        }
+        File temporaryFile = new File(file.getPath() + ".tmp");
+        FileOutputStream output = new FileOutputStream(temporaryFile);
+        try {
+            output.write(data);
+            output.getFD().sync();
+        } finally {
+            output.close();
+        }
+        if (!temporaryFile.renameTo(file)) {
+            temporaryFile.delete();
+            throw new IOException("Failed to replace " + file);
+        }
+    }
+
+    /**
+     * Restores the formats from a file written by {@link #save(File)}, if it exists. Blocks on
+     * disk I/O.
+     */
+    public void load(File file) throws IOException {
+        if (!file.exists()) {
+            return;
+        }
+        byte[] data = new byte[(int) file.length()];
+        FileInputStream input = new FileInputStream(file);
+        try {
+            new DataInputStream(input).readFully(data);
+        } finally {
+            input.close();
+        }
+        readFormats(data);
+    }
+
+    private static MediaFormat createFormat(String mimeType, int sampleRate, int channelCount,
+            List<byte[]> initializationData) {
+        List<byte[]> copies = new ArrayList<>(initializationData.size());
+        for (byte[] data : initializationData) {
+            copies.add(Arrays.copyOf(data, data.length));
+        }
+        return MediaFormat.createAudioFormat(null, mimeType, MediaFormat.NO_VALUE,
+                MediaFormat.NO_VALUE, C.UNKNOWN_TIME_US, channelCount, sampleRate,
+                Collections.unmodifiableList(copies), null);
+    }
+
+    private static boolean sameInitializationData(List<byte[]> a, List<byte[]> b) {
+        if (a.size() != b.size()) {
+            return false;
+        }
+        for (int i = 0; i < a.size(); i++) {
+            if (!Arrays.equals(a.get(i), b.get(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
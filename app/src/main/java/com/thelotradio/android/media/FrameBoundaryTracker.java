@@ -0,0 +1,218 @@
+package com.thelotradio.android.media;
+
+/**
+ * Follows MPEG audio and ADTS frame boundaries through a byte stream by reading the length out of
+ * each frame header as it goes past. Used to cut from one connection to another exactly between
+ * two frames, so the extractor never sees a torn frame.
+ */
+/* package */ final class FrameBoundaryTracker {
+
+    /**
+     * The number of bytes needed to determine the length of a frame.
+     */
+    public static final int HEADER_LENGTH = 6;
+    /**
+     * The largest frame either container can describe (ADTS frames have a 13 bit length).
+     */
+    public static final int MAX_FRAME_LENGTH = 8191;
+
+    private static final int[] MPEG_SAMPLE_RATES = {44100, 48000, 32000};
+    private static final int[] BITRATES_V1_L1 =
+            {32, 64, 96, 128, 160, 192, 224, 256, 288, 320, 352, 384, 416, 448};
+    private static final int[] BITRATES_V1_L2 =
+            {32, 48, 56, 64, 80, 96, 112, 128, 160, 192, 224, 256, 320, 384};
+    private static final int[] BITRATES_V1_L3 =
+            {32, 40, 48, 56, 64, 80, 96, 112, 128, 160, 192, 224, 256, 320};
+    private static final int[] BITRATES_V2_L1 =
+            {32, 48, 56, 64, 80, 96, 112, 128, 144, 160, 176, 192, 224, 256};
+    private static final int[] BITRATES_V2_L2_L3 =
+            {8, 16, 24, 32, 40, 48, 56, 64, 80, 96, 112, 128, 144, 160};
+
+    private final byte[] header;
+    private int headerBytes;
+    private int frameBytesRemaining;
+    private boolean synced;
+    private int formatKey;
+
+    public FrameBoundaryTracker() {
+        header = new byte[HEADER_LENGTH];
+        formatKey = -1;
+    }
+
+    /**
+     * Forgets all state, for example because the stream was replaced.
+     */
+    public void reset() {
+        headerBytes = 0;
+        frameBytesRemaining = 0;
+        synced = false;
+        formatKey = -1;
+    }
+
+    /**
+     * Advances the tracker over bytes that have been passed on downstream.
+     */
+    public void consume(byte[] data, int offset, int length) {
+        int limit = offset + length;
+        while (offset < limit) {
+            if (frameBytesRemaining > 0) {
+                int skip = Math.min(frameBytesRemaining, limit - offset);
+                frameBytesRemaining -= skip;
+                offset += skip;
+                continue;
+            }
+            header[headerBytes++] = data[offset++];
+            if (headerBytes < HEADER_LENGTH) {
+                continue;
+            }
+            int frameLength = getFrameLength(header, 0);
+            if (frameLength != -1) {
+                frameBytesRemaining = frameLength - HEADER_LENGTH;
+                headerBytes = 0;
+                synced = true;
+                formatKey = getFormatKey(header, 0);
+            } else {
+                // Lost sync. Slide the window by one byte and keep looking.
+                System.arraycopy(header, 1, header, 0, HEADER_LENGTH - 1);
+                headerBytes--;
+                synced = false;
+            }
+        }
+    }
+
+    /**
+     * Returns whether everything consumed so far ends exactly at the end of a frame.
+     */
+    public boolean isAtFrameBoundary() {
+        return synced && headerBytes == 0 && frameBytesRemaining == 0;
+    }
+
+    /**
+     * Returns the number of bytes until the end of the current frame, or -1 if the tracker is not
+     * currently inside a frame whose length is known.
+     */
+    public int bytesUntilFrameBoundary() {
+        return synced && headerBytes == 0 ? frameBytesRemaining : -1;
+    }
+
+    /**
+     * Returns the format key of the last frame header consumed, or -1 if there was none since the
+     * last {@link #reset()}. See {@link #getFormatKey(byte[], int)}.
+     */
+    public int getFormatKey() {
+        return formatKey;
+    }
+
+    /**
+     * Finds the first frame in {@code data} that is immediately followed by a compatible frame
+     * header, which is a much stronger signal than a single sync word.
+     *
+     * @return The offset of the frame, or -1 if none was found.
+     */
+    public static int findFrame(byte[] data, int offset, int length) {
+        int limit = offset + length;
+        for (int i = offset; i + HEADER_LENGTH <= limit; i++) {
+            int frameLength = getFrameLength(data, i);
+            if (frameLength == -1) {
+                continue;
+            }
+            int next = i + frameLength;
+            if (next + HEADER_LENGTH > limit) {
+                return -1;
+            }
+            if (getFrameLength(data, next) != -1 && isCompatible(data, i, next)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the length of the MPEG audio or ADTS frame whose header starts at {@code offset}, or
+     * -1 if the bytes there are not a valid frame header. {@link #HEADER_LENGTH} bytes must be
+     * available.
+     */
+    public static int getFrameLength(byte[] data, int offset) {
+        int b0 = data[offset] & 0xFF;
+        int b1 = data[offset + 1] & 0xFF;
+        if (b0 != 0xFF) {
+            return -1;
+        }
+        if ((b1 & 0xF6) == 0xF0) {
+            return getAdtsFrameLength(data, offset);
+        }
+        if ((b1 & 0xE0) == 0xE0) {
+            return getMpegFrameLength(b1, data[offset + 2] & 0xFF);
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the parts of the frame header at {@code offset} that a decoder is set up from: the
+     * container, version, layer, profile, sample rate and number of channels. A renderer can't go
+     * on decoding frames whose key differs from that of the frames it started with.
+     * {@link #HEADER_LENGTH} bytes must be available.
+     */
+    public static int getFormatKey(byte[] data, int offset) {
+        int b1 = data[offset + 1] & 0xFE;
+        if ((b1 & 0x06) == 0) {
+            // ADTS: profile, sample rate and channel configuration.
+            return (b1 << 16) | ((data[offset + 2] & 0xFD) << 8) | (data[offset + 3] & 0xC0);
+        }
+        // MPEG audio: sample rate, and mono or not. Stereo and joint stereo frames may alternate
+        // within one stream.
+        int mono = (data[offset + 3] & 0xC0) == 0xC0 ? 1 : 0;
+        return (b1 << 16) | ((data[offset + 2] & 0x0C) << 8) | mono;
+    }
+
+    private static int getAdtsFrameLength(byte[] data, int offset) {
+        int sampleRateIndex = (data[offset + 2] >> 2) & 0x0F;
+        if (sampleRateIndex > 12) {
+            return -1;
+        }
+        int frameLength = ((data[offset + 3] & 0x03) << 11) | ((data[offset + 4] & 0xFF) << 3)
+                | ((data[offset + 5] & 0xE0) >> 5);
+        return frameLength >= HEADER_LENGTH + 1 ? frameLength : -1;
+    }
+
+    private static int getMpegFrameLength(int b1, int b2) {
+        int version = (b1 >>> 3) & 0x03;
+        int layer = (b1 >>> 1) & 0x03;
+        int bitrateIndex = (b2 >>> 4) & 0x0F;
+        int sampleRateIndex = (b2 >>> 2) & 0x03;
+        if (version == 1 || layer == 0 || bitrateIndex == 0 || bitrateIndex == 0x0F
+                || sampleRateIndex == 3) {
+            return -1;
+        }
+        int padding = (b2 >>> 1) & 0x01;
+        int sampleRate = MPEG_SAMPLE_RATES[sampleRateIndex];
+        if (version == 2) {
+            sampleRate /= 2;
+        } else if (version == 0) {
+            sampleRate /= 4;
+        }
+        boolean mpeg1 = version == 3;
+        int bitrate;
+        if (layer == 3) {
+            bitrate = (mpeg1 ? BITRATES_V1_L1 : BITRATES_V2_L1)[bitrateIndex - 1] * 1000;
+            return (12 * bitrate / sampleRate + padding) * 4;
+        }
+        if (mpeg1) {
+            bitrate = (layer == 2 ? BITRATES_V1_L2 : BITRATES_V1_L3)[bitrateIndex - 1] * 1000;
+        } else {
+            bitrate = BITRATES_V2_L2_L3[bitrateIndex - 1] * 1000;
+        }
+        if (layer == 1 && !mpeg1) {
+            // Layer III frames hold half as many samples outside MPEG-1.
+            return 72 * bitrate / sampleRate + padding;
+        }
+        return 144 * bitrate / sampleRate + padding;
+    }
+
+    private static boolean isCompatible(byte[] data, int first, int second) {
+        // Same container, version, layer and sample rate.
+        int sampleRateMask = (data[first + 1] & 0x06) == 0 ? 0x3C : 0x0C;
+        return (data[first + 1] & 0xFE) == (data[second + 1] & 0xFE)
+                && (data[first + 2] & sampleRateMask) == (data[second + 2] & sampleRateMask);
+    }
+}
@@ -0,0 +1,234 @@
+package com.thelotradio.android.media;
+
+import android.os.Handler;
+
+import com.google.android.exoplayer.C;
+import com.google.android.exoplayer.upstream.DataSpec;
+import com.google.android.exoplayer.upstream.HttpDataSource;
+
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An {@link HttpDataSource} that asks Icecast/SHOUTcast servers to interleave metadata with the
+ * audio, and removes it again before the audio reaches the extractor.
+ * <p/>
+ * Audio bytes are read straight into the caller's buffer. Only the metadata blocks, which are at
+ * most 4080 bytes, go through a buffer of their own, and a title is decoded only when it changes.
+ */
+public final class IcyDataSource implements HttpDataSource {
+
+    /**
+     * Listener for stream metadata.
+     */
+    public interface EventListener {
+        /**
+         * Invoked when the server announces a new title, typically the show or track on air.
+         */
+        void onStreamTitleChanged(String title);
+    }
+
+    private static final String REQUEST_HEADER_METADATA = "Icy-MetaData";
+    private static final String RESPONSE_HEADER_METAINT = "icy-metaint";
+    private static final int MAX_METADATA_LENGTH = 255 * 16;
+    private static final byte[] STREAM_TITLE_START =
+            "StreamTitle='".getBytes(Charset.forName("US-ASCII"));
+    private static final Charset UTF_8 = Charset.forName(C.UTF8_NAME);
+
+    private final HttpDataSource upstream;
+    private final Handler eventHandler;
+    private final EventListener eventListener;
+    private final byte[] metadata;
+    private final byte[] lastMetadata;
+
+    private int metadataInterval;
+    private int bytesUntilMetadata;
+    private int lastMetadataLength;
+
+    /**
+     * @param upstream The source to read the stream from.
+     * @param eventHandler A handler for events. May be null if delivery of events is not required.
+     * @param eventListener A listener of events. May be null if delivery of events is not required.
+     */
+    public IcyDataSource(HttpDataSource upstream, Handler eventHandler,
+            EventListener eventListener) {
+        this.upstream = upstream;
+        this.eventHandler = eventHandler;
+        this.eventListener = eventListener;
+        metadata = new byte[MAX_METADATA_LENGTH];
+        lastMetadata = new byte[MAX_METADATA_LENGTH];
+        upstream.setRequestProperty(REQUEST_HEADER_METADATA, "1");
+    }
+
+    @Override
+    public long open(DataSpec dataSpec) throws HttpDataSourceException {
+        long length = upstream.open(dataSpec);
+        metadataInterval = parseMetadataInterval(upstream.getResponseHeaders());
+        bytesUntilMetadata = metadataInterval;
+        lastMetadataLength = 0;
+        return length;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int readLength) throws HttpDataSourceException {
+        if (metadataInterval == 0) {
+            return upstream.read(buffer, offset, readLength);
+        }
+        if (bytesUntilMetadata == 0) {
+            if (!readMetadata()) {
+                return C.RESULT_END_OF_INPUT;
+            }
+            bytesUntilMetadata = metadataInterval;
+        }
+        int bytesRead = upstream.read(buffer, offset, Math.min(readLength, bytesUntilMetadata));
+        if (bytesRead > 0) {
+            bytesUntilMetadata -= bytesRead;
+        }
+        return bytesRead;
+    }
+
+    @Override
+    public void close() throws HttpDataSourceException {
+        metadataInterval = 0;
+        upstream.close();
+    }
+
+    @Override
+    public String getUri() {
+        return upstream.getUri();
+    }
+
+    @Override
+    public void setRequestProperty(String name, String value) {
+        upstream.setRequestProperty(name, value);
+    }
+
+    @Override
+    public void clearRequestProperty(String name) {
+        upstream.clearRequestProperty(name);
+    }
+
+    @Override
+    public void clearAllRequestProperties() {
+        upstream.clearAllRequestProperties();
+        upstream.setRequestProperty(REQUEST_HEADER_METADATA, "1");
+    }
+
+    @Override
+    public Map<String, List<String>> getResponseHeaders() {
+        return upstream.getResponseHeaders();
+    }
+
+    /**
+     * Reads the metadata block at the current position, publishing its title if it changed.
+     *
+     * @return Whether the block was read. False if the stream ended.
+     */
+    private boolean readMetadata() throws HttpDataSourceException {
+        if (!readFully(metadata, 0, 1)) {
+            return false;
+        }
+        int length = (metadata[0] & 0xFF) * 16;
+        if (length == 0) {
+            // The server only repeats the metadata when it changes.
+            return true;
+        }
+        if (!readFully(metadata, 0, length)) {
+            return false;
+        }
+        if (length == lastMetadataLength && regionMatches(metadata, lastMetadata, length)) {
+            return true;
+        }
+        System.arraycopy(metadata, 0, lastMetadata, 0, length);
+        lastMetadataLength = length;
+        final String title = parseStreamTitle(metadata, length);
+        if (title != null && eventHandler != null && eventListener != null) {
+            eventHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    eventListener.onStreamTitleChanged(title);
+                }
+            });
+        }
+        return true;
+    }
+
+    private boolean readFully(byte[] target, int offset, int length)
+            throws HttpDataSourceException {
+        while (length > 0) {
+            int bytesRead = upstream.read(target, offset, length);
+            if (bytesRead == C.RESULT_END_OF_INPUT) {
+                return false;
+            }
+            offset += bytesRead;
+            length -= bytesRead;
+        }
+        return true;
+    }
+
+    /**
+     * Extracts the value of {@code StreamTitle='...';} from a metadata block.
+     *
+     * @return The title, or null if the block has none.
+     */
+    /* package */ static String parseStreamTitle(byte[] data, int length) {
+        int start = indexOf(data, length, STREAM_TITLE_START);
+        if (start == -1) {
+            return null;
+        }
+        start += STREAM_TITLE_START.length;
+        // Titles may contain quotes themselves, so look for the quote that ends the field.
+        int end = start;
+        while (end < length && !(data[end] == '\'' && (end + 1 == length || data[end + 1] == ';'
+                || data[end + 1] == 0))) {
+            end++;
+        }
+        return new String(data, start, end - start, UTF_8).trim();
+    }
+
+    /* package */ static int parseMetadataInterval(Map<String, List<String>> headers) {
+        if (headers == null) {
+            return 0;
+        }
+        for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+            if (RESPONSE_HEADER_METAINT.equalsIgnoreCase(header.getKey())
+                    && !header.getValue().isEmpty()) {
+                try {
+                    int interval = Integer.parseInt(header.getValue().get(0).trim());
+                    return interval > 0 ? interval : 0;
+                } catch (NumberFormatException e) {
+                    return 0;
+                }
+            }
+        }
+        return 0;
+    }
+
+    private static int indexOf(byte[] data, int length, byte[] pattern) {
+        for (int i = 0; i + pattern.length <= length; i++) {
+            if (regionMatches(data, i, pattern)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean regionMatches(byte[] data, int offset, byte[] pattern) {
+        for (int i = 0; i < pattern.length; i++) {
+            if (data[offset + i] != pattern[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean regionMatches(byte[] a, byte[] b, int length) {
+        for (int i = 0; i < length; i++) {
+            if (a[i] != b[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,358 @@
+package com.thelotradio.android.media;
+
+import android.net.Uri;
+
+import com.google.android.exoplayer.C;
+import com.google.android.exoplayer.upstream.DataSpec;
+import com.google.android.exoplayer.upstream.HttpDataSource;
+import com.thelotradio.android.net.PooledHttpDataSource;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An {@link HttpDataSource} that opens every mirror of a stream at once, keeps the first one to
+ * deliver valid audio and aborts the others. A stalled origin costs nothing at startup as long as
+ * one mirror is quick, and a dead one is failed over to for free.
+ * <p/>
+ * The endpoint that won last on the current network is given a head start, so that the others
+ * are only opened if it is slow to deliver. The audio read to check the winner is replayed, so
+ * the caller sees its response from the start. URIs without mirrors are opened directly.
+ */
+public final class MirrorRacingDataSource implements HttpDataSource {
+
+    /**
+     * Creates the sources that endpoints are opened with.
+     */
+    public interface Factory {
+        PooledHttpDataSource createDataSource();
+    }
+
+    public static final int DEFAULT_HEAD_START_MS = 300;
+
+    // Room for a frame and the header of the one after it, which is what identifies valid audio.
+    private static final int PROBE_LENGTH =
+            2 * FrameBoundaryTracker.MAX_FRAME_LENGTH + FrameBoundaryTracker.HEADER_LENGTH;
+
+    private final Factory factory;
+    private final MirrorSelector selector;
+    private final int headStartMs;
+    private final HashMap<String, String> requestProperties;
+
+    private volatile Racer current;
+    private volatile Race race;
+    private int probePosition;
+
+    /**
+     * @param factory Creates a source for each endpoint that is opened.
+     * @param selector The mirrors of each stream, and where the last races were won.
+     */
+    public MirrorRacingDataSource(Factory factory, MirrorSelector selector) {
+        this(factory, selector, DEFAULT_HEAD_START_MS);
+    }
+
+    /**
+     * @param factory Creates a source for each endpoint that is opened.
+     * @param selector The mirrors of each stream, and where the last races were won.
+     * @param headStartMs How long the endpoint that won last on the current network is raced alone
+     *     before the others are opened.
+     */
+    public MirrorRacingDataSource(Factory factory, MirrorSelector selector, int headStartMs) {
+        this.factory = factory;
+        this.selector = selector;
+        this.headStartMs = headStartMs;
+        requestProperties = new HashMap<>();
+    }
+
+    /**
+     * Returns the endpoint that is being read, or null if the source is not open.
+     */
+    public Uri getEndpoint() {
+        return current == null ? null : current.endpoint;
+    }
+
+    /**
+     * Closes the connections being opened or read, which makes a call blocked on them fail right
+     * away, for example because they are stuck on a network the device has left. Connections of
+     * other sources are left alone. The next open starts over with new connections. May be called
+     * from any thread.
+     */
+    public void abort() {
+        Race race = this.race;
+        if (race != null) {
+            race.abortAllBut(null);
+        }
+        Racer current = this.current;
+        if (current != null) {
+            current.dataSource.abort();
+        }
+    }
+
+    @Override
+    public long open(DataSpec dataSpec) throws HttpDataSourceException {
+        probePosition = 0;
+        List<Uri> endpoints = selector.getEndpoints(dataSpec.uri);
+        if (endpoints.size() == 1) {
+            Racer racer = new Racer(null, createDataSource(), endpoints.get(0), dataSpec, false);
+            // Current while opening, so that it can be aborted.
+            current = racer;
+            racer.length = racer.dataSource.open(racer.dataSpec);
+            return racer.length;
+        }
+        boolean headStart = selector.getPreferredEndpoint(dataSpec.uri) != null;
+        Race race = new Race(dataSpec);
+        for (int i = 0; i < endpoints.size(); i++) {
+            race.add(new Racer(race, createDataSource(), endpoints.get(i), dataSpec,
+                    headStart && i > 0));
+        }
+        this.race = race;
+        try {
+            current = race.run();
+        } finally {
+            this.race = null;
+        }
+        selector.onEndpointWon(dataSpec.uri, current.endpoint);
+        return current.length;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int readLength) throws HttpDataSourceException {
+        if (probePosition < current.probeLength) {
+            int bytesToCopy = Math.min(readLength, current.probeLength - probePosition);
+            System.arraycopy(current.probe, probePosition, buffer, offset, bytesToCopy);
+            probePosition += bytesToCopy;
+            return bytesToCopy;
+        }
+        return current.dataSource.read(buffer, offset, readLength);
+    }
+
+    @Override
+    public void close() throws HttpDataSourceException {
+        if (current != null) {
+            try {
+                current.dataSource.close();
+            } finally {
+                current = null;
+            }
+        }
+    }
+
+    @Override
+    public String getUri() {
+        return current == null ? null : current.dataSource.getUri();
+    }
+
+    @Override
+    public Map<String, List<String>> getResponseHeaders() {
+        return current == null ? null : current.dataSource.getResponseHeaders();
+    }
+
+    @Override
+    public void setRequestProperty(String name, String value) {
+        synchronized (requestProperties) {
+            requestProperties.put(name, value);
+        }
+    }
+
+    @Override
+    public void clearRequestProperty(String name) {
+        synchronized (requestProperties) {
+            requestProperties.remove(name);
+        }
+    }
+
+    @Override
+    public void clearAllRequestProperties() {
+        synchronized (requestProperties) {
+            requestProperties.clear();
+        }
+    }
+
+    private PooledHttpDataSource createDataSource() {
+        PooledHttpDataSource dataSource = factory.createDataSource();
+        synchronized (requestProperties) {
+            for (Map.Entry<String, String> property : requestProperties.entrySet()) {
+                dataSource.setRequestProperty(property.getKey(), property.getValue());
+            }
+        }
+        return dataSource;
+    }
+
+    /**
+     * The racers opening the endpoints of one stream, each on a thread of its own.
+     */
+    private final class Race {
+
+        private final DataSpec dataSpec;
+        private final ArrayList<Racer> racers;
+
+        private Racer winner;
+        private boolean canceled;
+        private boolean headStartOver;
+        private int failedCount;
+        private IOException lastError;
+
+        public Race(DataSpec dataSpec) {
+            this.dataSpec = dataSpec;
+            racers = new ArrayList<>();
+        }
+
+        public void add(Racer racer) {
+            racers.add(racer);
+        }
+
+        /**
+         * Starts the racers and waits for the first one to deliver valid audio.
+         */
+        public Racer run() throws HttpDataSourceException {
+            for (Racer racer : racers) {
+                new Thread(racer, "MirrorRacer").start();
+            }
+            synchronized (this) {
+                try {
+                    while (winner == null && failedCount < racers.size()) {
+                        wait();
+                    }
+                } catch (InterruptedException e) {
+                    canceled = true;
+                    abortAllBut(null);
+                    notifyAll();
+                    Thread.currentThread().interrupt();
+                    throw new HttpDataSourceException(new InterruptedIOException(), dataSpec,
+                            HttpDataSourceException.TYPE_OPEN);
+                }
+                if (winner == null) {
+                    if (lastError instanceof HttpDataSourceException) {
+                        throw (HttpDataSourceException) lastError;
+                    }
+                    throw new HttpDataSourceException(lastError, dataSpec,
+                            HttpDataSourceException.TYPE_OPEN);
+                }
+                return winner;
+            }
+        }
+
+        /**
+         * Waits for the head start of the favored racer to run out, if the racer has to give it.
+         *
+         * @return Whether the racer should still open its endpoint.
+         * @throws InterruptedException If the racer was interrupted while waiting.
+         */
+        public synchronized boolean awaitStart(Racer racer) throws InterruptedException {
+            if (racer.delayed) {
+                long deadlineMs = System.currentTimeMillis() + headStartMs;
+                long remainingMs = headStartMs;
+                while (winner == null && !canceled && !headStartOver && remainingMs > 0) {
+                    wait(remainingMs);
+                    remainingMs = deadlineMs - System.currentTimeMillis();
+                }
+            }
+            return winner == null && !canceled;
+        }
+
+        /**
+         * Reports that a racer delivered valid audio, or failed to.
+         *
+         * @return Whether the racer won, and its source must be kept open.
+         */
+        public synchronized boolean onFinished(Racer racer, IOException error) {
+            if (error == null && winner == null && !canceled) {
+                winner = racer;
+                abortAllBut(racer);
+                notifyAll();
+                return true;
+            }
+            if (error != null) {
+                failedCount++;
+                lastError = error;
+                if (!racer.delayed) {
+                    // The favored endpoint is failing, so there is nothing left to wait for.
+                    headStartOver = true;
+                }
+                notifyAll();
+            }
+            return false;
+        }
+
+        private void abortAllBut(Racer racer) {
+            for (Racer other : racers) {
+                if (other != racer) {
+                    other.dataSource.abort();
+                }
+            }
+        }
+    }
+
+    /**
+     * Opens one endpoint and reads from it until it is known to deliver valid audio.
+     */
+    private static final class Racer implements Runnable {
+
+        public final Race race;
+        public final PooledHttpDataSource dataSource;
+        public final Uri endpoint;
+        public final DataSpec dataSpec;
+        public final boolean delayed;
+        public final byte[] probe;
+
+        public long length;
+        public int probeLength;
+
+        public Racer(Race race, PooledHttpDataSource dataSource, Uri endpoint, DataSpec dataSpec,
+                boolean delayed) {
+            this.race = race;
+            this.dataSource = dataSource;
+            this.endpoint = endpoint;
+            this.dataSpec = new DataSpec(endpoint, dataSpec.absoluteStreamPosition,
+                    dataSpec.length, dataSpec.key, dataSpec.flags);
+            this.delayed = delayed;
+            probe = race == null ? null : new byte[PROBE_LENGTH];
+        }
+
+        @Override
+        public void run() {
+            try {
+                if (!race.awaitStart(this)) {
+                    return;
+                }
+            } catch (InterruptedException e) {
+                // Counts as a failed endpoint, or the race would wait for it forever.
+                race.onFinished(this, new InterruptedIOException());
+                Thread.currentThread().interrupt();
+                return;
+            }
+            IOException error = null;
+            try {
+                length = dataSource.open(dataSpec);
+                probe();
+            } catch (IOException e) {
+                error = e;
+            }
+            if (!race.onFinished(this, error)) {
+                try {
+                    dataSource.close();
+                } catch (IOException e) {
+                    // Lost the race anyway.
+                }
+            }
+        }
+
+        private void probe() throws IOException {
+            while (probeLength < PROBE_LENGTH) {
+                int bytesRead = dataSource.read(probe, probeLength, PROBE_LENGTH - probeLength);
+                if (bytesRead == C.RESULT_END_OF_INPUT) {
+                    break;
+                }
+                probeLength += bytesRead;
+                if (FrameBoundaryTracker.findFrame(probe, 0, probeLength) != -1) {
+                    return;
+                }
+            }
+            throw new IOException("No audio from " + endpoint);
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.thelotradio.android.media;
+
+import android.net.Uri;
+
+import com.thelotradio.android.model.Stream;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Knows which endpoints serve each stream, and which of them won the last race on each network.
+ * Meant to outlive a single player, so that what was learnt carries over. Thread-safe.
+ */
+public final class MirrorSelector {
+
+    private final HashMap<Uri, List<Uri>> endpoints;
+    private final HashMap<String, Uri> winners;
+
+    private String networkKey;
+
+    public MirrorSelector() {
+        this(Collections.<Stream>emptyList());
+    }
+
+    /**
+     * @param streams The streams, with their mirrors.
+     */
+    public MirrorSelector(List<Stream> streams) {
+        endpoints = new HashMap<>();
+        winners = new HashMap<>();
+        for (Stream stream : streams) {
+            List<Uri> streamEndpoints = new ArrayList<>(stream.mirrors.size() + 1);
+            streamEndpoints.add(stream.uri);
+            streamEndpoints.addAll(stream.mirrors);
+            endpoints.put(stream.uri, Collections.unmodifiableList(streamEndpoints));
+        }
+    }
+
+    /**
+     * Sets the network that races are run on from now on.
+     *
+     * @param networkKey Identifies the network, or null if it is unknown.
+     */
+    public synchronized void setNetworkKey(String networkKey) {
+        this.networkKey = networkKey;
+    }
+
+    /**
+     * Returns the endpoints serving {@code uri}, the one that last won on the current network
+     * first. A URI without mirrors is its only endpoint.
+     */
+    public synchronized List<Uri> getEndpoints(Uri uri) {
+        List<Uri> streamEndpoints = endpoints.get(uri);
+        if (streamEndpoints == null) {
+            return Collections.singletonList(uri);
+        }
+        Uri winner = winners.get(getWinnerKey(uri));
+        if (winner == null || winner.equals(streamEndpoints.get(0))) {
+            return streamEndpoints;
+        }
+        List<Uri> ordered = new ArrayList<>(streamEndpoints.size());
+        ordered.add(winner);
+        for (Uri endpoint : streamEndpoints) {
+            if (!endpoint.equals(winner)) {
+                ordered.add(endpoint);
+            }
+        }
+        return ordered;
+    }
+
+    /**
+     * Returns the endpoint that last won a race for {@code uri} on the current network, or null.
+     */
+    public synchronized Uri getPreferredEndpoint(Uri uri) {
+        return winners.get(getWinnerKey(uri));
+    }
+
+    /**
+     * Remembers that {@code endpoint} won a race for {@code uri} on the current network.
+     */
+    public synchronized void onEndpointWon(Uri uri, Uri endpoint) {
+        winners.put(getWinnerKey(uri), endpoint);
+    }
+
+    private String getWinnerKey(Uri uri) {
+        return networkKey + " " + uri;
+    }
+}
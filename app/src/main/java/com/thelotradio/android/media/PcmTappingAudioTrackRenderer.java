@@ -0,0 +1,67 @@
+package com.thelotradio.android.media;
+
+import android.media.MediaCodec;
+import android.os.Handler;
+
+import com.google.android.exoplayer.ExoPlaybackException;
+import com.google.android.exoplayer.MediaCodecAudioTrackRenderer;
+import com.google.android.exoplayer.MediaCodecSelector;
+import com.google.android.exoplayer.SampleSource;
+import com.google.android.exoplayer.audio.AudioCapabilities;
+import com.google.android.exoplayer.drm.DrmSessionManager;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A {@link MediaCodecAudioTrackRenderer} that shows each buffer of decoded audio to a
+ * {@link AudioPlayer.PcmListener} before handing it to the audio track. A buffer the audio track
+ * takes in several writes is shown once.
+ */
+public final class PcmTappingAudioTrackRenderer extends MediaCodecAudioTrackRenderer {
+
+    private final AudioPlayer.PcmListener pcmListener;
+
+    private int channelCount;
+    // The output buffer last shown to the listener, until it is released.
+    private int tappedBufferIndex;
+
+    /**
+     * See {@link MediaCodecAudioTrackRenderer}.
+     *
+     * @param pcmListener The listener for the decoded audio. May be null.
+     */
+    public PcmTappingAudioTrackRenderer(SampleSource source, MediaCodecSelector mediaCodecSelector,
+            DrmSessionManager drmSessionManager, boolean playClearSamplesWithoutKeys,
+            Handler eventHandler, EventListener eventListener,
+            AudioCapabilities audioCapabilities, int streamType,
+            AudioPlayer.PcmListener pcmListener) {
+        super(source, mediaCodecSelector, drmSessionManager, playClearSamplesWithoutKeys,
+                eventHandler, eventListener, audioCapabilities, streamType);
+        this.pcmListener = pcmListener;
+        tappedBufferIndex = -1;
+    }
+
+    @Override
+    protected void onOutputFormatChanged(MediaCodec codec, android.media.MediaFormat outputFormat)
+            throws ExoPlaybackException {
+        super.onOutputFormatChanged(codec, outputFormat);
+        channelCount = outputFormat.getInteger(android.media.MediaFormat.KEY_CHANNEL_COUNT);
+    }
+
+    @Override
+    protected boolean processOutputBuffer(long positionUs, long elapsedRealtimeUs,
+            MediaCodec codec, ByteBuffer buffer, MediaCodec.BufferInfo bufferInfo,
+            int bufferIndex, boolean shouldSkip) throws ExoPlaybackException {
+        if (pcmListener != null && !shouldSkip && bufferIndex != tappedBufferIndex
+                && channelCount > 0 && bufferInfo.size > 0) {
+            pcmListener.onPcm(buffer, bufferInfo.offset, bufferInfo.size, channelCount);
+            tappedBufferIndex = bufferIndex;
+        }
+        boolean released = super.processOutputBuffer(positionUs, elapsedRealtimeUs, codec, buffer,
+                bufferInfo, bufferIndex, shouldSkip);
+        if (released) {
+            tappedBufferIndex = -1;
+        }
+        return released;
+    }
+}
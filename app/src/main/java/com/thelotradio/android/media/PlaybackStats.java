@@ -0,0 +1,120 @@
+package com.thelotradio.android.media;
+
+/**
+ * Diagnostics of an {@link AudioPlayer}, for display while it plays. The player writes them on
+ * its thread, as events arrive and every {@link #SAMPLING_INTERVAL_MS}, into volatile fields that
+ * any thread can read without locking, so watching them costs the player nothing.
+ * <p/>
+ * Values are -1, or null, while unknown.
+ */
+public final class PlaybackStats {
+
+    /**
+     * How often the player samples the values that aren't driven by events.
+     */
+    public static final int SAMPLING_INTERVAL_MS = 500;
+
+    private volatile long bufferedAheadMs;
+    private volatile long bandwidthEstimate;
+    private volatile int bitrate;
+    private volatile String host;
+    // Only written by the player, so incrementing it needs no atomics.
+    private volatile int underrunCount;
+    private volatile String decoderName;
+    private volatile long decoderInitializationMs;
+    private volatile int sampleBufferBytes;
+
+    public PlaybackStats() {
+        reset();
+    }
+
+    /**
+     * Returns the audio buffered ahead of the playback position, in ms.
+     */
+    public long getBufferedAheadMs() {
+        return bufferedAheadMs;
+    }
+
+    /**
+     * Returns the estimate of the bandwidth available for the stream, in bits per second.
+     */
+    public long getBandwidthEstimate() {
+        return bandwidthEstimate;
+    }
+
+    /**
+     * Returns the bitrate of the stream playing, in bits per second.
+     */
+    public int getBitrate() {
+        return bitrate;
+    }
+
+    /**
+     * Returns the host streaming the audio.
+     */
+    public String getHost() {
+        return host;
+    }
+
+    /**
+     * Returns the number of times the audio output ran dry since the player started.
+     */
+    public int getUnderrunCount() {
+        return underrunCount;
+    }
+
+    public String getDecoderName() {
+        return decoderName;
+    }
+
+    public long getDecoderInitializationMs() {
+        return decoderInitializationMs;
+    }
+
+    /**
+     * Returns the heap held by buffered samples, in use and pooled, in bytes.
+     */
+    public int getSampleBufferBytes() {
+        return sampleBufferBytes;
+    }
+
+    /* package */ void reset() {
+        bufferedAheadMs = -1;
+        bandwidthEstimate = -1;
+        bitrate = -1;
+        host = null;
+        underrunCount = 0;
+        decoderName = null;
+        decoderInitializationMs = -1;
+        sampleBufferBytes = 0;
+    }
+
+    /* package */ void setBufferedAheadMs(long bufferedAheadMs) {
+        this.bufferedAheadMs = bufferedAheadMs;
+    }
+
+    /* package */ void setBandwidthEstimate(long bandwidthEstimate) {
+        this.bandwidthEstimate = bandwidthEstimate;
+    }
+
+    /* package */ void setBitrate(int bitrate) {
+        this.bitrate = bitrate;
+    }
+
+    /* package */ void setHost(String host) {
+        this.host = host;
+    }
+
+    /* package */ void onUnderrun() {
+        underrunCount++;
+    }
+
+    /* package */ void setDecoder(String decoderName, long initializationMs) {
+        this.decoderName = decoderName;
+        decoderInitializationMs = initializationMs;
+    }
+
+    /* package */ void setSampleBufferBytes(int sampleBufferBytes) {
+        this.sampleBufferBytes = sampleBufferBytes;
+    }
+}
@@ -0,0 +1,62 @@
+package com.thelotradio.android.media;
+
+import com.google.android.exoplayer.ExoPlayer;
+
+/**
+ * Works out the state {@link AudioPlayer} reports from the state of its renderer building and of
+ * its ExoPlayer, and reports it only when it changes. Kept apart from AudioPlayer, which needs a
+ * Looper, so that the benchmarks can run it on a plain JVM.
+ */
+/* package */ final class PlayerStateReporter {
+
+    /**
+     * Receives the states that changed.
+     */
+    public interface Listener {
+        void onStateChanged(boolean playWhenReady, int playbackState);
+    }
+
+    /* package */ static final int RENDERER_BUILDING_STATE_IDLE = 1;
+    /* package */ static final int RENDERER_BUILDING_STATE_BUILDING = 2;
+    /* package */ static final int RENDERER_BUILDING_STATE_BUILT = 3;
+
+    private final Listener listener;
+
+    private int lastReportedPlaybackState;
+    private boolean lastReportedPlayWhenReady;
+
+    public PlayerStateReporter(Listener listener) {
+        this.listener = listener;
+        lastReportedPlaybackState = ExoPlayer.STATE_IDLE;
+    }
+
+    /**
+     * Returns the state to report, one of the ExoPlayer.STATE_* constants.
+     *
+     * @param rendererBuildingState One of the RENDERER_BUILDING_STATE_* constants.
+     * @param playerState The state of the ExoPlayer.
+     */
+    public static int getPlaybackState(int rendererBuildingState, int playerState) {
+        if (rendererBuildingState == RENDERER_BUILDING_STATE_BUILDING) {
+            return ExoPlayer.STATE_PREPARING;
+        }
+        if (rendererBuildingState == RENDERER_BUILDING_STATE_BUILT
+                && playerState == ExoPlayer.STATE_IDLE) {
+            // This is an edge case where the renderers are built, but are still being passed to the
+            // player's playback thread.
+            return ExoPlayer.STATE_PREPARING;
+        }
+        return playerState;
+    }
+
+    /**
+     * Reports the given state to the listener, unless it was the last one reported.
+     */
+    public void update(boolean playWhenReady, int playbackState) {
+        if (lastReportedPlayWhenReady != playWhenReady || lastReportedPlaybackState != playbackState) {
+            listener.onStateChanged(playWhenReady, playbackState);
+            lastReportedPlayWhenReady = playWhenReady;
+            lastReportedPlaybackState = playbackState;
+        }
+    }
+}
@@ -5,7 +5,8 @@ package com.thelotradio.android.media;
  */
 public interface RendererBuilder {
     /**
-     * Builds renderers for playback.
+     * Builds renderers for playback. Called on the player's main thread, which the callbacks must
+     * be invoked on too, but building itself may happen asynchronously.
      *
      * @param audioPlayer The audioPlayer for which renderers are being built. {@link AudioPlayer#onRenderers}
      *                    should be invoked once the renderers have been built. If building fails,
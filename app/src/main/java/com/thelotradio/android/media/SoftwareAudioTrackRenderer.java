@@ -0,0 +1,408 @@
+package com.thelotradio.android.media;
+
+import android.os.Handler;
+import android.os.SystemClock;
+
+import com.google.android.exoplayer.C;
+import com.google.android.exoplayer.ExoPlaybackException;
+import com.google.android.exoplayer.MediaClock;
+import com.google.android.exoplayer.MediaCodecAudioTrackRenderer;
+import com.google.android.exoplayer.MediaFormat;
+import com.google.android.exoplayer.MediaFormatHolder;
+import com.google.android.exoplayer.SampleHolder;
+import com.google.android.exoplayer.SampleSource;
+import com.google.android.exoplayer.SampleSourceTrackRenderer;
+import com.google.android.exoplayer.TrackRenderer;
+import com.google.android.exoplayer.audio.AudioCapabilities;
+import com.google.android.exoplayer.audio.AudioTrack;
+import com.google.android.exoplayer.util.MimeTypes;
+import com.thelotradio.android.media.decoder.AacDecoder;
+import com.thelotradio.android.media.decoder.AudioDecoder;
+import com.thelotradio.android.media.decoder.DecoderException;
+import com.thelotradio.android.media.decoder.Mp3Decoder;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * Decodes and renders MP3 and AAC audio in Java, for devices whose {@link android.media.MediaCodec}
+ * decoders fail to initialize or are slow to.
+ * <p/>
+ * Each access unit is read into one reused buffer and decoded into another, so playback doesn't
+ * allocate. An access unit that fails to decode is dropped, as a hardware decoder would conceal
+ * it, rather than failing a live stream.
+ */
+public final class SoftwareAudioTrackRenderer extends SampleSourceTrackRenderer
+        implements MediaClock {
+
+    /**
+     * Interface definition for a callback to be notified of {@link SoftwareAudioTrackRenderer}
+     * events.
+     */
+    public interface EventListener {
+        void onAudioTrackInitializationError(AudioTrack.InitializationException e);
+
+        void onAudioTrackWriteError(AudioTrack.WriteException e);
+
+        void onSoftwareDecoderInitialized(String decoderName, long initializationDurationMs);
+    }
+
+    /**
+     * The type of a message that can be passed to an instance of this class via
+     * {@link com.google.android.exoplayer.ExoPlayer#sendMessage}. The message object should be a
+     * {@link Float} with 0 being silence and 1 being unity gain. The same as
+     * {@link MediaCodecAudioTrackRenderer#MSG_SET_VOLUME}, so that either renderer can be sent it.
+     */
+    public static final int MSG_SET_VOLUME = MediaCodecAudioTrackRenderer.MSG_SET_VOLUME;
+
+    // Larger than any MP3 frame or stereo AAC access unit.
+    private static final int INPUT_BUFFER_SIZE = 8 * 1024;
+
+    private final Handler eventHandler;
+    private final EventListener eventListener;
+    private final AudioPlayer.PcmListener pcmListener;
+    private final AudioTrack audioTrack;
+    private final MediaFormatHolder formatHolder;
+    private final SampleHolder sampleHolder;
+
+    private MediaFormat format;
+    private AudioDecoder decoder;
+    private ByteBuffer outputBuffer;
+    private boolean outputPending;
+    private long outputTimeUs;
+    private int configuredSampleRate;
+    private int configuredChannelCount;
+    private int droppedAccessUnitCount;
+
+    private int audioSessionId;
+    private long currentPositionUs;
+    private boolean allowPositionDiscontinuity;
+    private boolean inputStreamEnded;
+    private boolean outputStreamEnded;
+    private boolean sourceIsReady;
+
+    /**
+     * @param source The upstream source from which the renderer obtains samples.
+     * @param eventHandler A handler to use when delivering events to {@code eventListener}. May be
+     *     null if delivery of events is not required.
+     * @param eventListener A listener of events. May be null if delivery of events is not required.
+     * @param audioCapabilities The audio capabilities for playback on this device.
+     * @param streamType The type of audio stream for the {@link AudioTrack}.
+     * @param pcmListener A listener for the decoded audio. May be null.
+     */
+    public SoftwareAudioTrackRenderer(SampleSource source, Handler eventHandler,
+            EventListener eventListener, AudioCapabilities audioCapabilities, int streamType,
+            AudioPlayer.PcmListener pcmListener) {
+        super(source);
+        this.eventHandler = eventHandler;
+        this.eventListener = eventListener;
+        this.pcmListener = pcmListener;
+        audioTrack = new AudioTrack(audioCapabilities, streamType);
+        formatHolder = new MediaFormatHolder();
+        sampleHolder = new SampleHolder(SampleHolder.BUFFER_REPLACEMENT_MODE_NORMAL);
+        // Heap backed, so that the decoders can read the array directly.
+        sampleHolder.data = ByteBuffer.allocate(INPUT_BUFFER_SIZE);
+        audioSessionId = AudioTrack.SESSION_ID_NOT_SET;
+    }
+
+    /**
+     * Sets up the decoder for the format the stream is expected to be in, so that it is ready
+     * before the format has been read. If the stream turns out to be in another format, the
+     * decoder is replaced. Must be called before the renderer is passed to the player.
+     *
+     * @param expectedFormat The format the stream had last time it was played.
+     */
+    public void prepareDecoder(MediaFormat expectedFormat) {
+        format = expectedFormat;
+        try {
+            createDecoder();
+        } catch (DecoderException e) {
+            // Left for the format read from the stream to fail on, if it's the same.
+            format = null;
+            decoder = null;
+        }
+    }
+
+    /**
+     * Returns the number of access units dropped because they failed to decode.
+     */
+    public int getDroppedAccessUnitCount() {
+        return droppedAccessUnitCount;
+    }
+
+    @Override
+    protected MediaClock getMediaClock() {
+        return this;
+    }
+
+    @Override
+    protected boolean handlesTrack(MediaFormat mediaFormat) {
+        return MimeTypes.AUDIO_MPEG.equals(mediaFormat.mimeType)
+                || MimeTypes.AUDIO_AAC.equals(mediaFormat.mimeType);
+    }
+
+    @Override
+    protected void doSomeWork(long positionUs, long elapsedRealtimeUs, boolean sourceIsReady)
+            throws ExoPlaybackException {
+        if (outputStreamEnded) {
+            return;
+        }
+        this.sourceIsReady = sourceIsReady;
+        if (format == null && !readFormat(positionUs)) {
+            return;
+        }
+        try {
+            if (decoder == null) {
+                createDecoder();
+            }
+            while (renderOutput() && feedDecoder(positionUs)) {}
+        } catch (AudioTrack.InitializationException e) {
+            notifyAudioTrackInitializationError(e);
+            throw new ExoPlaybackException(e);
+        } catch (AudioTrack.WriteException e) {
+            notifyAudioTrackWriteError(e);
+            throw new ExoPlaybackException(e);
+        } catch (DecoderException e) {
+            throw new ExoPlaybackException(e);
+        }
+    }
+
+    private boolean readFormat(long positionUs) {
+        int result = readSource(positionUs, formatHolder, null);
+        if (result == SampleSource.FORMAT_READ) {
+            format = formatHolder.format;
+            return true;
+        }
+        return false;
+    }
+
+    private void createDecoder() throws DecoderException {
+        long startMs = SystemClock.elapsedRealtime();
+        if (MimeTypes.AUDIO_MPEG.equals(format.mimeType)) {
+            decoder = new Mp3Decoder();
+        } else if (!format.initializationData.isEmpty()) {
+            decoder = new AacDecoder(format.initializationData.get(0));
+        } else {
+            throw new DecoderException("No AudioSpecificConfig for " + format.mimeType);
+        }
+        if (outputBuffer == null || outputBuffer.capacity() < decoder.getMaxOutputSize()) {
+            outputBuffer = ByteBuffer.allocateDirect(decoder.getMaxOutputSize())
+                    .order(ByteOrder.nativeOrder());
+        }
+        outputPending = false;
+        notifyDecoderInitialized(decoder.getClass().getSimpleName(),
+                SystemClock.elapsedRealtime() - startMs);
+    }
+
+    /**
+     * Hands the pending output, if any, to the audio track.
+     *
+     * @return Whether there is no output left pending, so that more can be decoded.
+     */
+    private boolean renderOutput() throws AudioTrack.InitializationException,
+            AudioTrack.WriteException {
+        if (!outputPending) {
+            return true;
+        }
+        if (!audioTrack.isInitialized()) {
+            if (audioSessionId != AudioTrack.SESSION_ID_NOT_SET) {
+                audioTrack.initialize(audioSessionId);
+            } else {
+                audioSessionId = audioTrack.initialize();
+            }
+            if (getState() == TrackRenderer.STATE_STARTED) {
+                audioTrack.play();
+            }
+        }
+        int result = audioTrack.handleBuffer(outputBuffer, outputBuffer.position(),
+                outputBuffer.remaining(), outputTimeUs);
+        if ((result & AudioTrack.RESULT_POSITION_DISCONTINUITY) != 0) {
+            allowPositionDiscontinuity = true;
+        }
+        if ((result & AudioTrack.RESULT_BUFFER_CONSUMED) != 0) {
+            outputPending = false;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Reads an access unit from the source and decodes it into the output buffer.
+     *
+     * @return Whether to try to decode more.
+     */
+    private boolean feedDecoder(long positionUs) throws DecoderException {
+        if (inputStreamEnded) {
+            return false;
+        }
+        int result = readSource(positionUs, formatHolder, sampleHolder);
+        if (result == SampleSource.NOTHING_READ) {
+            return false;
+        }
+        if (result == SampleSource.FORMAT_READ) {
+            onFormatChanged(formatHolder.format);
+            return true;
+        }
+        if (result == SampleSource.END_OF_STREAM) {
+            inputStreamEnded = true;
+            outputStreamEnded = true;
+            audioTrack.handleEndOfStream();
+            return false;
+        }
+        ByteBuffer input = sampleHolder.data;
+        outputBuffer.clear();
+        try {
+            decoder.decode(input.array(), input.arrayOffset(), sampleHolder.size, outputBuffer);
+        } catch (DecoderException e) {
+            // Forget the state that led up to the bad access unit, and carry on from the next.
+            droppedAccessUnitCount++;
+            decoder.reset();
+            return true;
+        } finally {
+            sampleHolder.clearData();
+        }
+        if (sampleHolder.isDecodeOnly()) {
+            return true;
+        }
+        if (decoder.getSampleRate() != configuredSampleRate
+                || decoder.getChannelCount() != configuredChannelCount) {
+            configuredSampleRate = decoder.getSampleRate();
+            configuredChannelCount = decoder.getChannelCount();
+            audioTrack.configure(MimeTypes.AUDIO_RAW, configuredChannelCount, configuredSampleRate,
+                    C.ENCODING_PCM_16BIT);
+        }
+        outputBuffer.flip();
+        if (pcmListener != null && outputBuffer.hasRemaining()) {
+            pcmListener.onPcm(outputBuffer, 0, outputBuffer.limit(), configuredChannelCount);
+        }
+        outputTimeUs = sampleHolder.timeUs;
+        outputPending = true;
+        return true;
+    }
+
+    private void onFormatChanged(MediaFormat newFormat) throws DecoderException {
+        boolean sameDecoder = newFormat.mimeType.equals(format.mimeType)
+                && sameInitializationData(newFormat, format);
+        format = newFormat;
+        if (!sameDecoder) {
+            createDecoder();
+        }
+    }
+
+    private static boolean sameInitializationData(MediaFormat a, MediaFormat b) {
+        if (a.initializationData.size() != b.initializationData.size()) {
+            return false;
+        }
+        for (int i = 0; i < a.initializationData.size(); i++) {
+            if (!Arrays.equals(a.initializationData.get(i), b.initializationData.get(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    protected boolean isEnded() {
+        return outputStreamEnded && !audioTrack.hasPendingData();
+    }
+
+    @Override
+    protected boolean isReady() {
+        return audioTrack.hasPendingData() || (format != null && sourceIsReady);
+    }
+
+    @Override
+    public long getPositionUs() {
+        long newCurrentPositionUs = audioTrack.getCurrentPositionUs(isEnded());
+        if (newCurrentPositionUs != AudioTrack.CURRENT_POSITION_NOT_SET) {
+            currentPositionUs = allowPositionDiscontinuity ? newCurrentPositionUs
+                    : Math.max(currentPositionUs, newCurrentPositionUs);
+            allowPositionDiscontinuity = false;
+        }
+        return currentPositionUs;
+    }
+
+    @Override
+    protected void onDiscontinuity(long positionUs) {
+        audioTrack.reset();
+        currentPositionUs = positionUs;
+        allowPositionDiscontinuity = true;
+        inputStreamEnded = false;
+        outputStreamEnded = false;
+        sourceIsReady = false;
+        outputPending = false;
+        if (decoder != null) {
+            decoder.reset();
+        }
+    }
+
+    @Override
+    protected void onStarted() {
+        audioTrack.play();
+    }
+
+    @Override
+    protected void onStopped() {
+        audioTrack.pause();
+    }
+
+    @Override
+    protected void onDisabled() throws ExoPlaybackException {
+        audioSessionId = AudioTrack.SESSION_ID_NOT_SET;
+        format = null;
+        decoder = null;
+        outputPending = false;
+        configuredSampleRate = 0;
+        configuredChannelCount = 0;
+        try {
+            audioTrack.release();
+        } finally {
+            super.onDisabled();
+        }
+    }
+
+    @Override
+    public void handleMessage(int messageType, Object message) throws ExoPlaybackException {
+        if (messageType == MSG_SET_VOLUME) {
+            audioTrack.setVolume((Float) message);
+        } else {
+            super.handleMessage(messageType, message);
+        }
+    }
+
+    private void notifyDecoderInitialized(final String decoderName,
+            final long initializationDurationMs) {
+        if (eventHandler != null && eventListener != null) {
+            eventHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    eventListener.onSoftwareDecoderInitialized(decoderName,
+                            initializationDurationMs);
+                }
+            });
+        }
+    }
+
+    private void notifyAudioTrackInitializationError(final AudioTrack.InitializationException e) {
+        if (eventHandler != null && eventListener != null) {
+            eventHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    eventListener.onAudioTrackInitializationError(e);
+                }
+            });
+        }
+    }
+
+    private void notifyAudioTrackWriteError(final AudioTrack.WriteException e) {
+        if (eventHandler != null && eventListener != null) {
+            eventHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    eventListener.onAudioTrackWriteError(e);
+                }
+            });
+        }
+    }
+}
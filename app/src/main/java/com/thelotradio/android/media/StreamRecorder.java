@@ -0,0 +1,365 @@
+package com.thelotradio.android.media;
+
+import android.os.Handler;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Writes the compressed stream, exactly as it was downloaded, to a series of files.
+ * <p/>
+ * Bytes are handed over with {@link #write(byte[], int, int)}, which copies them into one of a
+ * fixed number of preallocated chunks and returns straight away. A thread of its own writes the
+ * chunks to disk. If the disk falls so far behind that no chunk is free, bytes are dropped rather
+ * than making the caller wait, so recording can never hold up playback. A new file is started at
+ * a frame boundary once the current one reaches the size or duration limit.
+ */
+public final class StreamRecorder {
+
+    /**
+     * Listener for recording events.
+     */
+    public interface EventListener {
+        /**
+         * Invoked when a file is complete.
+         */
+        void onRecordingFileCompleted(File file);
+
+        /**
+         * Invoked when recording stopped because a file could not be written.
+         */
+        void onRecordingError(IOException e);
+    }
+
+    public static final int DEFAULT_CHUNK_SIZE = 16 * 1024;
+    public static final int DEFAULT_CHUNK_COUNT = 32;
+    public static final long DEFAULT_MAX_FILE_BYTES = 100 * 1024 * 1024;
+    public static final long DEFAULT_MAX_FILE_DURATION_MS = 60 * 60 * 1000;
+
+    private static final String FILE_NAME_PREFIX = "thelotradio-";
+
+    private final Handler eventHandler;
+    private final EventListener eventListener;
+    private final int chunkSize;
+    private final long maxFileBytes;
+    private final long maxFileDurationMs;
+    private final BlockingQueue<Chunk> freeChunks;
+    private final BlockingQueue<Chunk> filledChunks;
+    private final Chunk endOfRecording;
+    private final FrameBoundaryTracker frameTracker;
+
+    private volatile boolean recording;
+    private volatile long bytesWritten;
+    private volatile long bytesDropped;
+    private Thread writerThread;
+
+    // Only accessed by the thread handing over bytes.
+    private long bytesDroppedAtLastChunk;
+
+    // Only accessed by the writer thread.
+    private File directory;
+    private FileOutputStream outputStream;
+    private FileChannel channel;
+    private File file;
+    private int fileIndex;
+    private long fileBytes;
+    private long fileStartMs;
+    // The size of the file when it reached a limit, or -1 if it hasn't yet
+    private long fileFullBytes;
+    private String recordingName;
+
+    /**
+     * @param eventHandler A handler for events. May be null if delivery of events is not required.
+     * @param eventListener A listener of events. May be null if delivery of events is not required.
+     */
+    public StreamRecorder(Handler eventHandler, EventListener eventListener) {
+        this(eventHandler, eventListener, DEFAULT_CHUNK_SIZE, DEFAULT_CHUNK_COUNT,
+                DEFAULT_MAX_FILE_BYTES, DEFAULT_MAX_FILE_DURATION_MS);
+    }
+
+    /**
+     * @param eventHandler A handler for events. May be null if delivery of events is not required.
+     * @param eventListener A listener of events. May be null if delivery of events is not required.
+     * @param chunkSize The size of each chunk, in bytes.
+     * @param chunkCount The number of chunks, which bounds the memory used when the disk is slow.
+     * @param maxFileBytes The size after which a new file is started.
+     * @param maxFileDurationMs The time after which a new file is started.
+     */
+    public StreamRecorder(Handler eventHandler, EventListener eventListener, int chunkSize,
+            int chunkCount, long maxFileBytes, long maxFileDurationMs) {
+        this.eventHandler = eventHandler;
+        this.eventListener = eventListener;
+        this.chunkSize = chunkSize;
+        this.maxFileBytes = maxFileBytes;
+        this.maxFileDurationMs = maxFileDurationMs;
+        freeChunks = new ArrayBlockingQueue<>(chunkCount);
+        filledChunks = new ArrayBlockingQueue<>(chunkCount + 1);
+        for (int i = 0; i < chunkCount; i++) {
+            freeChunks.add(new Chunk(chunkSize));
+        }
+        endOfRecording = new Chunk(0);
+        frameTracker = new FrameBoundaryTracker();
+    }
+
+    /**
+     * Starts recording into new files in {@code directory}. Does nothing if already recording.
+     */
+    public synchronized void start(final File directory) {
+        if (recording) {
+            return;
+        }
+        recording = true;
+        final Thread previousWriterThread = writerThread;
+        writerThread = new Thread("StreamRecorder") {
+            @Override
+            public void run() {
+                if (previousWriterThread != null) {
+                    // Let the previous recording finish writing first.
+                    try {
+                        previousWriterThread.join();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                writeChunks(directory);
+            }
+        };
+        writerThread.setPriority(Thread.MIN_PRIORITY);
+        writerThread.start();
+    }
+
+    /**
+     * Stops recording once the bytes handed over so far are written. Must be called on the thread
+     * that calls {@link #start(File)}.
+     * <p/>
+     * Blocks in the rare case that recordings were stopped and started again so quickly that the
+     * chunks and end markers left for the disk fill the queue, until the writer frees a slot.
+     */
+    public void stop() {
+        synchronized (this) {
+            if (!recording) {
+                return;
+            }
+            recording = false;
+        }
+        // Outside the lock, which the writer takes if it fails, so that it goes on freeing slots.
+        boolean wasInterrupted = false;
+        while (true) {
+            try {
+                filledChunks.put(endOfRecording);
+                break;
+            } catch (InterruptedException e) {
+                wasInterrupted = true;
+            }
+        }
+        if (wasInterrupted) {
+            // Restore the interrupted status.
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public boolean isRecording() {
+        return recording;
+    }
+
+    /**
+     * Returns the number of bytes written to files since the recorder was created.
+     */
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    /**
+     * Returns the number of bytes that were dropped because the disk could not keep up.
+     */
+    public long getBytesDropped() {
+        return bytesDropped;
+    }
+
+    /**
+     * Hands over bytes to record. Never blocks and never allocates. Does nothing when not
+     * recording.
+     */
+    public void write(byte[] data, int offset, int length) {
+        while (recording && length > 0) {
+            Chunk chunk = freeChunks.poll();
+            if (chunk == null) {
+                bytesDropped += length;
+                return;
+            }
+            int chunkLength = Math.min(length, chunkSize);
+            System.arraycopy(data, offset, chunk.data, 0, chunkLength);
+            chunk.length = chunkLength;
+            chunk.discontinuous = bytesDropped != bytesDroppedAtLastChunk;
+            if (!filledChunks.offer(chunk)) {
+                // End markers of earlier recordings take up the slots.
+                freeChunks.add(chunk);
+                bytesDropped += length;
+                return;
+            }
+            bytesDroppedAtLastChunk = bytesDropped;
+            offset += chunkLength;
+            length -= chunkLength;
+        }
+    }
+
+    private void writeChunks(File directory) {
+        this.directory = directory;
+        recordingName = new SimpleDateFormat("yyyyMMdd-HHmmss", Locale.US).format(new Date());
+        fileIndex = 0;
+        frameTracker.reset();
+        try {
+            while (true) {
+                Chunk chunk = filledChunks.take();
+                if (chunk == endOfRecording) {
+                    break;
+                }
+                try {
+                    writeChunk(chunk);
+                } finally {
+                    freeChunks.add(chunk);
+                }
+            }
+        } catch (IOException e) {
+            onError(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            closeFile();
+        }
+    }
+
+    /**
+     * Gives up on the recording after a write failed.
+     */
+    private void onError(final IOException e) {
+        synchronized (this) {
+            recording = false;
+        }
+        Chunk chunk;
+        while ((chunk = filledChunks.poll()) != null) {
+            if (chunk != endOfRecording) {
+                freeChunks.add(chunk);
+            }
+        }
+        if (eventHandler != null && eventListener != null) {
+            eventHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    eventListener.onRecordingError(e);
+                }
+            });
+        }
+    }
+
+    private void writeChunk(Chunk chunk) throws IOException {
+        if (chunk.discontinuous) {
+            // Bytes were dropped, so the frame being tracked was torn.
+            frameTracker.reset();
+        }
+        int offset = 0;
+        while (offset < chunk.length) {
+            if (file == null) {
+                openFile(chunk.data, offset, chunk.length - offset);
+            }
+            int length = chunk.length - offset;
+            if (fileFullBytes == -1 && isFileFull()) {
+                fileFullBytes = fileBytes;
+            }
+            if (fileFullBytes != -1) {
+                int bytesUntilFrameBoundary = frameTracker.bytesUntilFrameBoundary();
+                if (bytesUntilFrameBoundary == 0
+                        || fileBytes - fileFullBytes >= FrameBoundaryTracker.MAX_FRAME_LENGTH) {
+                    // At a frame boundary, or the stream isn't made of frames the tracker knows.
+                    closeFile();
+                    continue;
+                } else if (bytesUntilFrameBoundary > 0) {
+                    length = Math.min(length, bytesUntilFrameBoundary);
+                }
+            }
+            chunk.buffer.limit(offset + length);
+            chunk.buffer.position(offset);
+            while (chunk.buffer.hasRemaining()) {
+                channel.write(chunk.buffer);
+            }
+            frameTracker.consume(chunk.data, offset, length);
+            fileBytes += length;
+            bytesWritten += length;
+            offset += length;
+        }
+    }
+
+    private boolean isFileFull() {
+        return fileBytes >= maxFileBytes || now() - fileStartMs >= maxFileDurationMs;
+    }
+
+    private void openFile(byte[] data, int offset, int length) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create " + directory);
+        }
+        fileIndex++;
+        file = new File(directory, FILE_NAME_PREFIX + recordingName + "-" + fileIndex
+                + getExtension(data, offset, length));
+        outputStream = new FileOutputStream(file);
+        channel = outputStream.getChannel();
+        fileBytes = 0;
+        fileFullBytes = -1;
+        fileStartMs = now();
+    }
+
+    private void closeFile() {
+        if (file == null) {
+            return;
+        }
+        try {
+            outputStream.close();
+        } catch (IOException e) {
+            // Everything was written already, so there is nothing to lose.
+        }
+        final File completedFile = file;
+        file = null;
+        outputStream = null;
+        channel = null;
+        if (eventHandler != null && eventListener != null) {
+            eventHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    eventListener.onRecordingFileCompleted(completedFile);
+                }
+            });
+        }
+    }
+
+    private static String getExtension(byte[] data, int offset, int length) {
+        int frameOffset = FrameBoundaryTracker.findFrame(data, offset, length);
+        if (frameOffset != -1 && (data[frameOffset + 1] & 0xF6) == 0xF0) {
+            return ".aac";
+        }
+        return ".mp3";
+    }
+
+    private static long now() {
+        return System.nanoTime() / 1000000;
+    }
+
+    private static final class Chunk {
+
+        public final byte[] data;
+        public final ByteBuffer buffer;
+        public int length;
+        public boolean discontinuous;
+
+        public Chunk(int size) {
+            data = new byte[size];
+            buffer = ByteBuffer.wrap(data);
+        }
+    }
+}
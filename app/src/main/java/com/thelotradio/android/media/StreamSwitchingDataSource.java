@@ -0,0 +1,464 @@
+package com.thelotradio.android.media;
+
+import android.net.Uri;
+import android.os.Handler;
+
+import com.google.android.exoplayer.C;
+import com.google.android.exoplayer.upstream.DataSpec;
+import com.google.android.exoplayer.upstream.UriDataSource;
+import com.google.android.exoplayer.util.Clock;
+import com.google.android.exoplayer.util.SystemClock;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * A {@link UriDataSource} that can move a live stream onto a different connection while it is
+ * being read, either to switch to another URI or to recover from a dropped connection.
+ * <p/>
+ * A switch cuts the old connection exactly between two frames and picks the new one up at its
+ * first complete frame, so the extractor reading from this source sees one continuous stream and
+ * the renderers needn't be rebuilt. That holds only as long as the streams share their codec,
+ * sample rate and channel layout; a new connection that doesn't is reported through
+ * {@link EventListener#onStreamFormatChanged(Uri)}. When a live connection fails it is reopened with
+ * jittered exponential backoff while the player keeps playing from its buffer. The frame the
+ * failure tore in half is padded out so the extractor stays in sync. The outage only ends once a
+ * new connection has delivered {@link #RECOVERY_BYTES}, so a server that accepts connections only
+ * to drop them neither restarts the backoff nor keeps the outage from timing out. Sources of known
+ * length are neither switched nor reconnected.
+ * <p/>
+ * When the device moves to another network, {@link #migrate()} moves the stream onto a new
+ * connection the same way as a switch. If the old connection is dead, the read blocked on it has
+ * to be failed from outside, and the stream is then reopened without backing off first.
+ */
+public final class StreamSwitchingDataSource implements UriDataSource {
+
+    /**
+     * Listener for stream events.
+     */
+    public interface EventListener {
+        /**
+         * Invoked when bytes from a newly opened stream start being returned.
+         *
+         * @param uri The URI now being read.
+         */
+        void onStreamSwitched(Uri uri);
+
+        /**
+         * Invoked when the stream is flowing again after its connection was lost.
+         *
+         * @param reconnectCount The number of reconnects since this source was created.
+         * @param outageMs How long the stream was interrupted for.
+         */
+        void onStreamReconnected(int reconnectCount, long outageMs);
+
+        /**
+         * Invoked when a newly opened stream turns out to have a different sample rate, channel
+         * layout or codec than the one it replaced. The extractor and renderers reading from this
+         * source are set up for the old format, and have to be rebuilt.
+         *
+         * @param uri The URI now being read.
+         */
+        void onStreamFormatChanged(Uri uri);
+    }
+
+    public static final int DEFAULT_INITIAL_RETRY_DELAY_MS = 250;
+    public static final int DEFAULT_MAX_RETRY_DELAY_MS = 8000;
+    public static final int DEFAULT_MAX_OUTAGE_MS = 60000;
+    /**
+     * How much a new connection has to deliver for the stream to count as flowing again, about a
+     * second of audio.
+     */
+    public static final int RECOVERY_BYTES = 16 * 1024;
+
+    // How far to read past a switch request waiting for a frame boundary before giving up on it.
+    private static final int MAX_ALIGNMENT_BYTES = 64 * 1024;
+    private static final int SCRATCH_LENGTH = 3 * FrameBoundaryTracker.MAX_FRAME_LENGTH;
+    private static final int SCRATCH_KEEP_LENGTH =
+            FrameBoundaryTracker.MAX_FRAME_LENGTH + FrameBoundaryTracker.HEADER_LENGTH;
+
+    private final UriDataSource upstream;
+    private final Handler eventHandler;
+    private final EventListener eventListener;
+    private final int initialRetryDelayMs;
+    private final int maxRetryDelayMs;
+    private final int maxOutageMs;
+    private final FrameBoundaryTracker frameTracker;
+    private final byte[] scratch;
+    private final Random random;
+    private final Clock clock;
+
+    private volatile Uri targetUri;
+    private volatile boolean migrationPending;
+    private volatile int reconnectCount;
+    private volatile long lastOutageMs;
+    private volatile long totalOutageMs;
+
+    private DataSpec dataSpec;
+    private Uri openedUri;
+    private boolean live;
+    private int bytesSinceSwitchRequested;
+    private int paddingRemaining;
+    private int scratchPosition;
+    private int scratchLimit;
+    // The outage under way, if outageStartMs isn't -1: the attempts to reconnect so far, when the
+    // last one succeeded, and what the connection it opened has delivered since.
+    private long outageStartMs;
+    private int retryAttempt;
+    private long reopenTimeMs;
+    private int bytesSinceReopen;
+
+    /**
+     * @param upstream The source to read the streams from.
+     * @param uri The URI to read until {@link #switchTo(Uri)} is called.
+     * @param eventHandler A handler for events. May be null if delivery of events is not required.
+     * @param eventListener A listener of events. May be null if delivery of events is not required.
+     */
+    public StreamSwitchingDataSource(UriDataSource upstream, Uri uri, Handler eventHandler,
+            EventListener eventListener) {
+        this(upstream, uri, eventHandler, eventListener, DEFAULT_INITIAL_RETRY_DELAY_MS,
+                DEFAULT_MAX_RETRY_DELAY_MS, DEFAULT_MAX_OUTAGE_MS);
+    }
+
+    /**
+     * @param upstream The source to read the streams from.
+     * @param uri The URI to read until {@link #switchTo(Uri)} is called.
+     * @param eventHandler A handler for events. May be null if delivery of events is not required.
+     * @param eventListener A listener of events. May be null if delivery of events is not required.
+     * @param initialRetryDelayMs The delay before the first attempt to reconnect. Each further
+     *     attempt waits up to twice as long as the previous one.
+     * @param maxRetryDelayMs The longest delay between two attempts to reconnect.
+     * @param maxOutageMs How long to keep trying to reconnect before failing the read.
+     */
+    public StreamSwitchingDataSource(UriDataSource upstream, Uri uri, Handler eventHandler,
+            EventListener eventListener, int initialRetryDelayMs, int maxRetryDelayMs,
+            int maxOutageMs) {
+        this(upstream, uri, eventHandler, eventListener, initialRetryDelayMs, maxRetryDelayMs,
+                maxOutageMs, new SystemClock());
+    }
+
+    /* package */ StreamSwitchingDataSource(UriDataSource upstream, Uri uri, Handler eventHandler,
+            EventListener eventListener, int initialRetryDelayMs, int maxRetryDelayMs,
+            int maxOutageMs, Clock clock) {
+        this.upstream = upstream;
+        this.targetUri = uri;
+        this.eventHandler = eventHandler;
+        this.eventListener = eventListener;
+        this.initialRetryDelayMs = initialRetryDelayMs;
+        this.maxRetryDelayMs = maxRetryDelayMs;
+        this.maxOutageMs = maxOutageMs;
+        frameTracker = new FrameBoundaryTracker();
+        scratch = new byte[SCRATCH_LENGTH];
+        random = new Random();
+        this.clock = clock;
+        outageStartMs = -1;
+    }
+
+    /**
+     * Requests that reading continues from {@code uri}. May be called from any thread. The switch
+     * happens at the next frame boundary, or on the next {@link #open(DataSpec)}.
+     */
+    public void switchTo(Uri uri) {
+        targetUri = uri;
+    }
+
+    /**
+     * Requests that reading continues on a new connection to the same URI, because the device
+     * moved to another network. May be called from any thread. The new connection is spliced in at
+     * the next frame boundary, or as soon as reading from the old one fails.
+     */
+    public void migrate() {
+        migrationPending = true;
+    }
+
+    /**
+     * Returns whether a migration requested by {@link #migrate()} is still waiting for the new
+     * connection.
+     */
+    public boolean isMigrationPending() {
+        return migrationPending;
+    }
+
+    /**
+     * Returns the URI that is being read, or will be read once a pending switch completes.
+     */
+    public Uri getTargetUri() {
+        return targetUri;
+    }
+
+    /**
+     * Returns the number of times a lost connection has been recovered.
+     */
+    public int getReconnectCount() {
+        return reconnectCount;
+    }
+
+    /**
+     * Returns how long the most recent outage lasted, or 0 if there has not been one.
+     */
+    public long getLastOutageMs() {
+        return lastOutageMs;
+    }
+
+    /**
+     * Returns the combined length of all outages so far.
+     */
+    public long getTotalOutageMs() {
+        return totalOutageMs;
+    }
+
+    @Override
+    public long open(DataSpec dataSpec) throws IOException {
+        Uri uri = targetUri;
+        this.dataSpec = new DataSpec(uri, dataSpec.absoluteStreamPosition, dataSpec.length,
+                dataSpec.key, dataSpec.flags);
+        // A new connection is opened on the current network anyway.
+        migrationPending = false;
+        long length = upstream.open(this.dataSpec);
+        openedUri = uri;
+        live = length == C.LENGTH_UNBOUNDED;
+        frameTracker.reset();
+        bytesSinceSwitchRequested = 0;
+        paddingRemaining = 0;
+        scratchPosition = 0;
+        scratchLimit = 0;
+        outageStartMs = -1;
+        return length;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int readLength) throws IOException {
+        // Loops until bytes are returned, reconnecting as often as it takes.
+        while (true) {
+            if (paddingRemaining > 0) {
+                int bytesToFill = Math.min(readLength, paddingRemaining);
+                Arrays.fill(buffer, offset, offset + bytesToFill, (byte) 0);
+                paddingRemaining -= bytesToFill;
+                return bytesToFill;
+            }
+            if (scratchPosition < scratchLimit) {
+                int bytesToCopy = Math.min(readLength, scratchLimit - scratchPosition);
+                System.arraycopy(scratch, scratchPosition, buffer, offset, bytesToCopy);
+                frameTracker.consume(buffer, offset, bytesToCopy);
+                scratchPosition += bytesToCopy;
+                onBytesDelivered(bytesToCopy);
+                return bytesToCopy;
+            }
+            if (!live) {
+                return upstream.read(buffer, offset, readLength);
+            }
+            int length = readLength;
+            boolean switchPending = migrationPending || !targetUri.equals(openedUri);
+            if (switchPending) {
+                if (frameTracker.isAtFrameBoundary()
+                        || bytesSinceSwitchRequested >= MAX_ALIGNMENT_BYTES) {
+                    Uri previousUri = openedUri;
+                    try {
+                        reopen();
+                        if (!openedUri.equals(previousUri)) {
+                            postStreamSwitched(openedUri);
+                        }
+                    } catch (InterruptedIOException e) {
+                        throw e;
+                    } catch (IOException e) {
+                        reconnect();
+                    }
+                    continue;
+                }
+                int bytesUntilFrameBoundary = frameTracker.bytesUntilFrameBoundary();
+                if (bytesUntilFrameBoundary > 0) {
+                    length = Math.min(length, bytesUntilFrameBoundary);
+                }
+            }
+            int bytesRead;
+            try {
+                bytesRead = upstream.read(buffer, offset, length);
+            } catch (InterruptedIOException e) {
+                throw e;
+            } catch (IOException e) {
+                bytesRead = C.RESULT_END_OF_INPUT;
+            }
+            if (bytesRead == C.RESULT_END_OF_INPUT) {
+                // A live stream has no end, so the connection was lost.
+                reconnect();
+                continue;
+            }
+            frameTracker.consume(buffer, offset, bytesRead);
+            bytesSinceSwitchRequested = switchPending ? bytesSinceSwitchRequested + bytesRead : 0;
+            onBytesDelivered(bytesRead);
+            return bytesRead;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        dataSpec = null;
+        openedUri = null;
+        paddingRemaining = 0;
+        scratchPosition = 0;
+        scratchLimit = 0;
+        upstream.close();
+    }
+
+    @Override
+    public String getUri() {
+        return upstream.getUri();
+    }
+
+    /**
+     * Reopens the stream after its connection was lost, backing off between attempts. An outage
+     * carries on across connections that fail again before delivering {@link #RECOVERY_BYTES}.
+     *
+     * @throws IOException If the outage has lasted longer than allowed.
+     */
+    private void reconnect() throws IOException {
+        if (outageStartMs == -1) {
+            outageStartMs = clock.elapsedRealtime();
+            retryAttempt = 0;
+        }
+        // Pad out the frame that was torn by the failure.
+        int tornFrameBytes = Math.max(0, frameTracker.bytesUntilFrameBoundary());
+        IOException lastError = null;
+        while (true) {
+            long elapsedMs = clock.elapsedRealtime() - outageStartMs;
+            if (elapsedMs >= maxOutageMs) {
+                throw lastError != null ? lastError
+                        : new IOException("Stream ended and could not be reopened");
+            }
+            // The old network is gone, not overloaded, so the first attempt needn't back off.
+            long delayMs = retryAttempt == 0 && migrationPending ? 0
+                    : getRetryDelayMs(retryAttempt);
+            retryAttempt++;
+            try {
+                Thread.sleep(Math.min(delayMs, maxOutageMs - elapsedMs));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            }
+            try {
+                reopen();
+                break;
+            } catch (InterruptedIOException e) {
+                throw e;
+            } catch (IOException e) {
+                lastError = e;
+            }
+        }
+        paddingRemaining = tornFrameBytes;
+        reopenTimeMs = clock.elapsedRealtime();
+        bytesSinceReopen = 0;
+    }
+
+    /**
+     * Ends the outage under way, if any, once the connection that ended it has proven itself.
+     */
+    private void onBytesDelivered(int byteCount) {
+        if (outageStartMs == -1) {
+            return;
+        }
+        bytesSinceReopen += byteCount;
+        if (bytesSinceReopen < RECOVERY_BYTES) {
+            return;
+        }
+        final int reconnectCount = ++this.reconnectCount;
+        final long outageMs = reopenTimeMs - outageStartMs;
+        outageStartMs = -1;
+        lastOutageMs = outageMs;
+        totalOutageMs += outageMs;
+        if (eventHandler != null && eventListener != null) {
+            eventHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    eventListener.onStreamReconnected(reconnectCount, outageMs);
+                }
+            });
+        }
+    }
+
+    private long getRetryDelayMs(int attempt) {
+        long delayMs = Math.min((long) initialRetryDelayMs << Math.min(attempt, 16),
+                maxRetryDelayMs);
+        // Spread the attempts of many listeners hitting the same outage.
+        return delayMs / 2 + (long) (random.nextDouble() * (delayMs / 2));
+    }
+
+    /**
+     * Replaces the upstream connection with a new one to the target URI, positioned at its first
+     * complete frame.
+     */
+    private void reopen() throws IOException {
+        Uri uri = targetUri;
+        int formatKey = frameTracker.getFormatKey();
+        try {
+            upstream.close();
+        } catch (IOException e) {
+            // The connection is being discarded anyway.
+        }
+        openedUri = null;
+        upstream.open(new DataSpec(uri, 0, C.LENGTH_UNBOUNDED, dataSpec.key, dataSpec.flags));
+        openedUri = uri;
+        migrationPending = false;
+        bytesSinceSwitchRequested = 0;
+        frameTracker.reset();
+        alignToFirstFrame();
+        if (formatKey != -1 && scratchLimit - scratchPosition >= FrameBoundaryTracker.HEADER_LENGTH
+                && FrameBoundaryTracker.getFrameLength(scratch, scratchPosition) != -1
+                && FrameBoundaryTracker.getFormatKey(scratch, scratchPosition) != formatKey) {
+            postStreamFormatChanged(uri);
+        }
+    }
+
+    private void postStreamSwitched(final Uri uri) {
+        if (eventHandler != null && eventListener != null) {
+            eventHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    eventListener.onStreamSwitched(uri);
+                }
+            });
+        }
+    }
+
+    private void postStreamFormatChanged(final Uri uri) {
+        if (eventHandler != null && eventListener != null) {
+            eventHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    eventListener.onStreamFormatChanged(uri);
+                }
+            });
+        }
+    }
+
+    /**
+     * Reads the start of a freshly opened stream into the scratch buffer and positions it at the
+     * first complete frame, dropping whatever partial frame the server started with.
+     */
+    private void alignToFirstFrame() throws IOException {
+        scratchPosition = 0;
+        scratchLimit = 0;
+        int bytesSkipped = 0;
+        while (bytesSkipped < MAX_ALIGNMENT_BYTES) {
+            int bytesRead = upstream.read(scratch, scratchLimit, SCRATCH_LENGTH - scratchLimit);
+            if (bytesRead == C.RESULT_END_OF_INPUT) {
+                return;
+            }
+            scratchLimit += bytesRead;
+            int frameOffset = FrameBoundaryTracker.findFrame(scratch, 0, scratchLimit);
+            if (frameOffset != -1) {
+                scratchPosition = frameOffset;
+                return;
+            }
+            if (scratchLimit == SCRATCH_LENGTH) {
+                // Keep the tail, since it may hold the start of a frame.
+                bytesSkipped += SCRATCH_LENGTH - SCRATCH_KEEP_LENGTH;
+                System.arraycopy(scratch, SCRATCH_LENGTH - SCRATCH_KEEP_LENGTH, scratch, 0,
+                        SCRATCH_KEEP_LENGTH);
+                scratchLimit = SCRATCH_KEEP_LENGTH;
+            }
+        }
+        // No frame found. Pass the bytes on and let the extractor resynchronize.
+    }
+}
@@ -0,0 +1,45 @@
+package com.thelotradio.android.media;
+
+import com.google.android.exoplayer.upstream.DataSpec;
+import com.google.android.exoplayer.upstream.UriDataSource;
+
+import java.io.IOException;
+
+/**
+ * A {@link UriDataSource} that hands every byte it reads to a {@link StreamRecorder} as well.
+ * The recorder never blocks, so reading through this source is as fast as reading upstream.
+ */
+/* package */ final class TeeDataSource implements UriDataSource {
+
+    private final UriDataSource upstream;
+    private final StreamRecorder recorder;
+
+    public TeeDataSource(UriDataSource upstream, StreamRecorder recorder) {
+        this.upstream = upstream;
+        this.recorder = recorder;
+    }
+
+    @Override
+    public long open(DataSpec dataSpec) throws IOException {
+        return upstream.open(dataSpec);
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int readLength) throws IOException {
+        int bytesRead = upstream.read(buffer, offset, readLength);
+        if (bytesRead > 0) {
+            recorder.write(buffer, offset, bytesRead);
+        }
+        return bytesRead;
+    }
+
+    @Override
+    public void close() throws IOException {
+        upstream.close();
+    }
+
+    @Override
+    public String getUri() {
+        return upstream.getUri();
+    }
+}
@@ -0,0 +1,124 @@
+package com.thelotradio.android.media;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A fixed-size ring of stream bytes, kept in a memory-mapped file so that long stretches of audio
+ * can be held without taking up heap.
+ * <p/>
+ * Bytes are addressed by their absolute position in the stream. A single writer appends to the
+ * ring, overwriting the oldest bytes once it is full, while a reader reads back from any position
+ * that hasn't been overwritten yet. Writes go straight into the mapping, so they cost one copy into
+ * the page cache and no allocations.
+ */
+public final class TimeShiftBuffer {
+
+    // The most bytes written before the write position is advanced. The same number of bytes
+    // behind the oldest byte are kept off-limits to the reader, so it never reads bytes that are
+    // in the middle of being overwritten.
+    private static final int MAX_WRITE_LENGTH = 64 * 1024;
+
+    private final int capacity;
+    private final MappedByteBuffer writeBuffer;
+    private final ByteBuffer readBuffer;
+
+    private volatile long writePosition;
+
+    /**
+     * @param file The file to map. It is created or truncated, and deleted again once mapped.
+     * @param capacity The number of bytes the ring holds. Must be more than 64 KB.
+     */
+    public TimeShiftBuffer(File file, int capacity) throws IOException {
+        if (capacity <= MAX_WRITE_LENGTH) {
+            throw new IllegalArgumentException("capacity: " + capacity);
+        }
+        this.capacity = capacity;
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        try {
+            randomAccessFile.setLength(capacity);
+            writeBuffer = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0,
+                    capacity);
+        } finally {
+            randomAccessFile.close();
+            // The mapping outlives the file, and nothing is left behind if the process dies.
+            file.delete();
+        }
+        readBuffer = writeBuffer.duplicate();
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Returns the position the next byte will be written at, which is also the total number of
+     * bytes written.
+     */
+    public long getWritePosition() {
+        return writePosition;
+    }
+
+    /**
+     * Returns the position of the oldest byte that can still be read.
+     */
+    public long getStartPosition() {
+        return Math.max(0, writePosition - capacity + MAX_WRITE_LENGTH);
+    }
+
+    /**
+     * Appends bytes to the ring, overwriting the oldest bytes if it is full.
+     */
+    public synchronized void write(byte[] data, int offset, int length) {
+        while (length > 0) {
+            int index = (int) (writePosition % capacity);
+            int chunkLength = Math.min(Math.min(length, capacity - index), MAX_WRITE_LENGTH);
+            writeBuffer.position(index);
+            writeBuffer.put(data, offset, chunkLength);
+            offset += chunkLength;
+            length -= chunkLength;
+            writePosition += chunkLength;
+            notifyAll();
+        }
+    }
+
+    /**
+     * Reads bytes starting at {@code position} without blocking.
+     *
+     * @return The number of bytes read, which is 0 if nothing has been written at
+     *     {@code position} yet, or -1 if the bytes at {@code position} have already been
+     *     overwritten.
+     */
+    public int read(long position, byte[] target, int offset, int length) {
+        if (position < getStartPosition()) {
+            return -1;
+        }
+        length = (int) Math.min(length, writePosition - position);
+        if (length <= 0) {
+            return 0;
+        }
+        int index = (int) (position % capacity);
+        length = Math.min(length, capacity - index);
+        synchronized (readBuffer) {
+            readBuffer.position(index);
+            readBuffer.get(target, offset, length);
+        }
+        // The writer may have lapped the reader while it was copying.
+        return position < getStartPosition() ? -1 : length;
+    }
+
+    /**
+     * Blocks until a byte has been written at {@code position}, or until {@code timeoutMs} has
+     * passed.
+     */
+    public synchronized void blockUntilWritten(long position, long timeoutMs)
+            throws InterruptedException {
+        if (writePosition <= position) {
+            wait(timeoutMs);
+        }
+    }
+}
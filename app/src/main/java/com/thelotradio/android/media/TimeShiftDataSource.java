@@ -0,0 +1,359 @@
+package com.thelotradio.android.media;
+
+import com.google.android.exoplayer.C;
+import com.google.android.exoplayer.upstream.DataSpec;
+import com.google.android.exoplayer.upstream.UriDataSource;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+
+/**
+ * A {@link UriDataSource} that plays a live stream, and that keeps downloading it into a
+ * {@link TimeShiftBuffer} while playback is paused.
+ * <p/>
+ * Playing live, reads go straight to the upstream source, and nothing passes through the buffer.
+ * Once {@link #pause()} is called, a thread of its own takes the upstream source over and keeps
+ * writing the live stream into the buffer, whether or not the player is reading, and reads are
+ * served from the buffer. Playback picks up where it was paused, and can catch up with the live
+ * stream again by reopening the source at position 0. Once playback has resumed and reading catches
+ * up with the download, the thread hands the upstream source back.
+ * <p/>
+ * Opening at any other position, as the loader does when it retries after an error, carries on
+ * from where reading stopped.
+ */
+/* package */ final class TimeShiftDataSource implements UriDataSource {
+
+    private static final int PUMP_BUFFER_LENGTH = 16 * 1024;
+    private static final int ALIGNMENT_LENGTH =
+            2 * FrameBoundaryTracker.MAX_FRAME_LENGTH + FrameBoundaryTracker.HEADER_LENGTH;
+    // How often a blocked read checks whether the pump has stopped.
+    private static final int POLL_INTERVAL_MS = 100;
+
+    private final UriDataSource upstream;
+    private final TimeShiftBuffer buffer;
+    private final byte[] alignmentBuffer;
+    // Held by whichever thread is using the upstream source, the reader playing live or the pump.
+    // The pump only writes to the buffer while holding it, so that the bytes in the buffer and the
+    // bytes read from the upstream source directly always follow on from each other.
+    private final Object upstreamLock;
+
+    // Guarded by upstreamLock.
+    private boolean upstreamOpen;
+
+    // Written while holding this.
+    private volatile boolean shifting;
+    private volatile Thread pumpThread;
+
+    private volatile boolean released;
+    private volatile boolean paused;
+    private volatile boolean pumpEnded;
+    private volatile IOException pumpError;
+    private volatile DataSpec dataSpec;
+
+    private volatile long readPosition;
+    private boolean aligned;
+
+    /**
+     * @param upstream The source of the live stream.
+     * @param buffer The buffer to shift time in. Must not be shared with another source that is
+     *     not yet released.
+     */
+    public TimeShiftDataSource(UriDataSource upstream, TimeShiftBuffer buffer) {
+        this.upstream = upstream;
+        this.buffer = buffer;
+        alignmentBuffer = new byte[ALIGNMENT_LENGTH];
+        upstreamLock = new Object();
+        readPosition = buffer.getWritePosition();
+        aligned = true;
+    }
+
+    /**
+     * Returns how many bytes of the live stream have been downloaded but not read yet.
+     */
+    public long getBytesBehindLive() {
+        return Math.max(0, buffer.getWritePosition() - readPosition);
+    }
+
+    /**
+     * Keeps downloading into the buffer from now on, even while nothing is read, so that playback
+     * can resume where it was paused.
+     */
+    public synchronized void pause() {
+        if (released) {
+            return;
+        }
+        paused = true;
+        shifting = true;
+        // Before the first open, the pump is started by the open.
+        if (pumpThread == null && dataSpec != null) {
+            startPump();
+        }
+    }
+
+    /**
+     * Lets the download go back to playing live once reading has caught up with it.
+     */
+    public void resume() {
+        paused = false;
+    }
+
+    @Override
+    public long open(DataSpec dataSpec) throws IOException {
+        if (released) {
+            throw new IOException("Released");
+        }
+        this.dataSpec = dataSpec;
+        if (!shifting) {
+            synchronized (upstreamLock) {
+                if (!shifting) {
+                    if (dataSpec.position == 0) {
+                        // Whatever the pump wrote but wasn't read is stale by now.
+                        readPosition = buffer.getWritePosition();
+                    }
+                    if (!upstreamOpen) {
+                        upstream.open(dataSpec);
+                        upstreamOpen = true;
+                    }
+                    return C.LENGTH_UNBOUNDED;
+                }
+            }
+        }
+        if (dataSpec.position == 0) {
+            readPosition = buffer.getWritePosition();
+            aligned = false;
+        }
+        synchronized (this) {
+            if (pumpThread == null) {
+                // First open since pausing, or the pump gave up. Start over with a new connection.
+                startPump();
+            }
+        }
+        return C.LENGTH_UNBOUNDED;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int readLength) throws IOException {
+        while (true) {
+            if (!shifting) {
+                synchronized (upstreamLock) {
+                    if (!shifting) {
+                        return readLive(buffer, offset, readLength);
+                    }
+                }
+            }
+            if (!aligned) {
+                if (!align()) {
+                    return maybeThrowPumpError();
+                }
+                aligned = true;
+            }
+            int bytesRead = readBlocking(buffer, offset, readLength);
+            if (bytesRead != 0) {
+                if (bytesRead > 0) {
+                    readPosition += bytesRead;
+                }
+                return bytesRead;
+            }
+            // Caught up with the pump, which is handing the upstream source back.
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!shifting) {
+            synchronized (upstreamLock) {
+                if (!shifting && upstreamOpen) {
+                    upstreamOpen = false;
+                    upstream.close();
+                }
+            }
+        }
+        // Otherwise the pump keeps going, so that reading can resume where it left off.
+    }
+
+    @Override
+    public String getUri() {
+        return upstream.getUri();
+    }
+
+    /**
+     * Stops downloading. The source cannot be opened again.
+     */
+    public synchronized void release() {
+        released = true;
+        if (pumpThread != null) {
+            pumpThread.interrupt();
+        }
+    }
+
+    /**
+     * Reads while playing live. Whatever the pump wrote but wasn't read yet comes first, then the
+     * upstream source. Must be called while holding the upstream lock.
+     */
+    private int readLive(byte[] target, int offset, int length) throws IOException {
+        if (readPosition < buffer.getWritePosition()) {
+            int bytesRead = buffer.read(readPosition, target, offset, length);
+            if (bytesRead > 0) {
+                readPosition += bytesRead;
+                return bytesRead;
+            }
+            // Overwritten, which the pump can only do while shifting, so never here.
+            readPosition = buffer.getWritePosition();
+        }
+        return upstream.read(target, offset, length);
+    }
+
+    private void startPump() {
+        pumpError = null;
+        pumpEnded = false;
+        pumpThread = new Thread("TimeShiftPump") {
+            @Override
+            public void run() {
+                pump();
+            }
+        };
+        pumpThread.start();
+    }
+
+    private void pump() {
+        byte[] data = new byte[PUMP_BUFFER_LENGTH];
+        boolean ended = false;
+        IOException error = null;
+        try {
+            while (!ended) {
+                synchronized (upstreamLock) {
+                    synchronized (this) {
+                        if (released) {
+                            break;
+                        }
+                        if (!shifting) {
+                            // Reading caught up, so hand the upstream source back, still open.
+                            pumpThread = null;
+                            return;
+                        }
+                    }
+                    if (!upstreamOpen) {
+                        upstream.open(dataSpec);
+                        upstreamOpen = true;
+                    }
+                    int bytesRead = upstream.read(data, 0, data.length);
+                    if (bytesRead == C.RESULT_END_OF_INPUT) {
+                        ended = true;
+                    } else {
+                        buffer.write(data, 0, bytesRead);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            error = e;
+        }
+        synchronized (upstreamLock) {
+            if (upstreamOpen) {
+                upstreamOpen = false;
+                try {
+                    upstream.close();
+                } catch (IOException e) {
+                    // Nothing more to read from it anyway.
+                }
+            }
+        }
+        // Only report once the upstream is closed, since the reader may reopen it straight away.
+        synchronized (this) {
+            if (!released) {
+                pumpError = error;
+                pumpEnded = ended;
+            }
+            pumpThread = null;
+        }
+    }
+
+    /**
+     * Reads at least one byte, waiting for the pump if it hasn't written that far yet. If the
+     * reader has fallen so far behind that its position was overwritten, it skips ahead to the
+     * oldest frame that is still there.
+     *
+     * @return The number of bytes read, {@link C#RESULT_END_OF_INPUT} if the pump ended, or 0 if
+     *     reading caught up with the pump while playing, so that it goes back to playing live.
+     */
+    private int readBlocking(byte[] target, int offset, int length) throws IOException {
+        while (true) {
+            int bytesRead = buffer.read(readPosition, target, offset, length);
+            if (bytesRead > 0) {
+                return bytesRead;
+            }
+            if (bytesRead == -1) {
+                readPosition = buffer.getStartPosition();
+                if (!align()) {
+                    return maybeThrowPumpError();
+                }
+                continue;
+            }
+            if (pumpError != null || pumpEnded || released) {
+                return maybeThrowPumpError();
+            }
+            synchronized (this) {
+                if (!paused) {
+                    shifting = false;
+                    return 0;
+                }
+            }
+            waitForPump(readPosition);
+        }
+    }
+
+    /**
+     * Moves the read position to the next frame, since it is about to jump into the middle of
+     * the stream.
+     *
+     * @return Whether there is anything left to read. False if the pump stopped first.
+     */
+    private boolean align() throws IOException {
+        int length = 0;
+        while (true) {
+            int bytesRead = buffer.read(readPosition + length, alignmentBuffer, length,
+                    ALIGNMENT_LENGTH - length);
+            if (bytesRead == -1) {
+                readPosition = buffer.getStartPosition();
+                length = 0;
+                continue;
+            }
+            if (bytesRead == 0) {
+                if (pumpError != null || pumpEnded || released) {
+                    // No frame found. Pass on what there is and let the extractor resynchronize.
+                    return length > 0;
+                }
+                waitForPump(readPosition + length);
+                continue;
+            }
+            length += bytesRead;
+            int frameOffset = FrameBoundaryTracker.findFrame(alignmentBuffer, 0, length);
+            if (frameOffset != -1) {
+                readPosition += frameOffset;
+                return true;
+            }
+            if (length == ALIGNMENT_LENGTH) {
+                // Keep the tail, since it may hold the start of a frame.
+                int skipLength = ALIGNMENT_LENGTH - FrameBoundaryTracker.MAX_FRAME_LENGTH;
+                readPosition += skipLength;
+                length = 0;
+            }
+        }
+    }
+
+    private void waitForPump(long position) throws InterruptedIOException {
+        try {
+            buffer.blockUntilWritten(position, POLL_INTERVAL_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+    }
+
+    private int maybeThrowPumpError() throws IOException {
+        IOException error = pumpError;
+        if (error != null) {
+            throw error;
+        }
+        return C.RESULT_END_OF_INPUT;
+    }
+}
@@ -0,0 +1,918 @@
+package com.thelotradio.android.media.decoder;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * An {@link AudioDecoder} for mono and stereo AAC Low Complexity, given one raw data block, with
+ * no ADTS header, at a time.
+ * <p/>
+ * Streams that signal HE-AAC implicitly, in fill elements, decode to their AAC-LC core at half the
+ * sample rate.
+ */
+public final class AacDecoder implements AudioDecoder {
+
+    private static final int FRAME_LENGTH = 1024;
+    private static final int SHORT_WINDOW_LENGTH = 128;
+    private static final int MAX_CHANNELS = 2;
+    private static final int MAX_OUTPUT_SIZE = FRAME_LENGTH * MAX_CHANNELS * 2;
+    // Room for the window groups times the most bands a window can have.
+    private static final int MAX_BANDS = 64;
+    private static final int MAX_GROUPED_BANDS = 8 * MAX_BANDS;
+
+    private static final int AUDIO_OBJECT_TYPE_AAC_LC = 2;
+    private static final int AUDIO_OBJECT_TYPE_SBR = 5;
+    private static final int AUDIO_OBJECT_TYPE_PS = 29;
+
+    private static final int ELEMENT_SCE = 0;
+    private static final int ELEMENT_CPE = 1;
+    private static final int ELEMENT_LFE = 3;
+    private static final int ELEMENT_DSE = 4;
+    private static final int ELEMENT_FIL = 6;
+    private static final int ELEMENT_END = 7;
+
+    private static final int ONLY_LONG_SEQUENCE = 0;
+    private static final int LONG_START_SEQUENCE = 1;
+    private static final int EIGHT_SHORT_SEQUENCE = 2;
+    private static final int LONG_STOP_SEQUENCE = 3;
+    private static final int WINDOW_SHAPE_KBD = 1;
+
+    private static final int ZERO_CODEBOOK = 0;
+    private static final int ESCAPE_CODEBOOK = 11;
+    private static final int RESERVED_CODEBOOK = 12;
+    private static final int NOISE_CODEBOOK = 13;
+    private static final int INTENSITY_CODEBOOK_2 = 14;
+    private static final int INTENSITY_CODEBOOK = 15;
+    // The number of distinct values of y and z in each pair codebook. Pairs decode as
+    // y * size + z.
+    private static final int[] PAIR_SIZES = {0, 0, 0, 0, 0, 9, 9, 8, 8, 13, 13, 17};
+
+    private static final int TNS_MAX_ORDER_LONG = 12;
+    private static final int TNS_MAX_ORDER_SHORT = 7;
+    private static final int TNS_MAX_FILTERS = 4;
+
+    // Quantized values are raised to the power 4/3 by lookup, up to the largest escape plus the
+    // largest pulse.
+    private static final float[] POW_4_3 = new float[(1 << 13) + 16];
+    // Gains are powers of 2 in quarter steps, 2^((i - 100) / 4) for scale factor i.
+    private static final float[] GAINS = new float[256];
+    // The TNS filter coefficients, by coefficient resolution and then the coded value plus 8.
+    private static final float[][] TNS_COEFFICIENTS = new float[2][16];
+    // The rising halves of the windows.
+    private static final float[] SINE_LONG = new float[FRAME_LENGTH];
+    private static final float[] SINE_SHORT = new float[SHORT_WINDOW_LENGTH];
+    private static final float[] KBD_LONG = new float[FRAME_LENGTH];
+    private static final float[] KBD_SHORT = new float[SHORT_WINDOW_LENGTH];
+
+    static {
+        for (int i = 0; i < POW_4_3.length; i++) {
+            POW_4_3[i] = (float) Math.pow(i, 4d / 3);
+        }
+        for (int i = 0; i < GAINS.length; i++) {
+            GAINS[i] = (float) Math.pow(2, (i - 100) / 4d);
+        }
+        for (int resolution = 0; resolution < 2; resolution++) {
+            double positive = ((1 << (resolution + 2)) - 0.5) / (Math.PI / 2);
+            double negative = ((1 << (resolution + 2)) + 0.5) / (Math.PI / 2);
+            for (int value = -8; value < 8; value++) {
+                TNS_COEFFICIENTS[resolution][value + 8] =
+                        (float) Math.sin(value / (value >= 0 ? positive : negative));
+            }
+        }
+        for (int i = 0; i < FRAME_LENGTH; i++) {
+            SINE_LONG[i] = (float) Math.sin(Math.PI / (2 * FRAME_LENGTH) * (i + 0.5));
+        }
+        for (int i = 0; i < SHORT_WINDOW_LENGTH; i++) {
+            SINE_SHORT[i] = (float) Math.sin(Math.PI / (2 * SHORT_WINDOW_LENGTH) * (i + 0.5));
+        }
+        kaiserBesselDerived(KBD_LONG, 4);
+        kaiserBesselDerived(KBD_SHORT, 6);
+    }
+
+    private final int sampleRate;
+    private final int sampleRateIndex;
+    private final int channelCount;
+
+    private final BitReader reader;
+    private final ChannelStream[] channels;
+    private final Imdct longImdct;
+    private final Imdct shortImdct;
+    private final float[] imdctOutput;
+    private final float[] shortImdctOutput;
+    private final float[] lpc;
+    private final float[] lpcScratch;
+    private final short[][] pcm;
+
+    // The channel pair being decoded.
+    private int msMaskPresent;
+    private final boolean[] msUsed;
+
+    private int noiseState;
+
+    /**
+     * @param audioSpecificConfig The AudioSpecificConfig of the stream, as carried in the
+     *     initialization data of its format.
+     * @throws DecoderException If the stream is not mono or stereo AAC-LC.
+     */
+    public AacDecoder(byte[] audioSpecificConfig) throws DecoderException {
+        reader = new BitReader();
+        reader.reset(audioSpecificConfig, 0, audioSpecificConfig.length);
+        int objectType = readAudioObjectType();
+        int rateIndex = reader.readBits(4);
+        int explicitRate = rateIndex == 15 ? reader.readBits(24) : 0;
+        int channelConfiguration = reader.readBits(4);
+        if (objectType == AUDIO_OBJECT_TYPE_SBR || objectType == AUDIO_OBJECT_TYPE_PS) {
+            // Explicitly signalled HE-AAC. Decode the core, skipping the extension sample rate.
+            if (reader.readBits(4) == 15) {
+                reader.skipBits(24);
+            }
+            objectType = readAudioObjectType();
+        }
+        if (objectType != AUDIO_OBJECT_TYPE_AAC_LC) {
+            throw new DecoderException("Unsupported audio object type " + objectType);
+        }
+        if (reader.readBit() != 0) {
+            throw new DecoderException("Unsupported frame length of 960");
+        }
+        if (channelConfiguration != 1 && channelConfiguration != 2) {
+            throw new DecoderException("Unsupported channel configuration "
+                    + channelConfiguration);
+        }
+        if (rateIndex == 15) {
+            rateIndex = nearestSampleRateIndex(explicitRate);
+            sampleRate = explicitRate;
+        } else if (rateIndex < AacTables.SAMPLE_RATES.length) {
+            sampleRate = AacTables.SAMPLE_RATES[rateIndex];
+        } else {
+            throw new DecoderException("Reserved sampling frequency index " + rateIndex);
+        }
+        sampleRateIndex = rateIndex;
+        channelCount = channelConfiguration;
+
+        channels = new ChannelStream[MAX_CHANNELS];
+        for (int ch = 0; ch < MAX_CHANNELS; ch++) {
+            channels[ch] = new ChannelStream();
+        }
+        longImdct = new Imdct(2 * FRAME_LENGTH, 1f / FRAME_LENGTH);
+        shortImdct = new Imdct(2 * SHORT_WINDOW_LENGTH, 1f / SHORT_WINDOW_LENGTH);
+        imdctOutput = new float[2 * FRAME_LENGTH];
+        shortImdctOutput = new float[2 * SHORT_WINDOW_LENGTH];
+        lpc = new float[TNS_MAX_ORDER_LONG + 1];
+        lpcScratch = new float[TNS_MAX_ORDER_LONG + 1];
+        pcm = new short[MAX_CHANNELS][FRAME_LENGTH];
+        msUsed = new boolean[MAX_GROUPED_BANDS];
+        noiseState = 1;
+    }
+
+    @Override
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    @Override
+    public int getChannelCount() {
+        return channelCount;
+    }
+
+    @Override
+    public int getMaxOutputSize() {
+        return MAX_OUTPUT_SIZE;
+    }
+
+    @Override
+    public void reset() {
+        for (ChannelStream channel : channels) {
+            Arrays.fill(channel.overlap, 0);
+            channel.windowShape = 0;
+        }
+    }
+
+    @Override
+    public int decode(byte[] data, int offset, int length, ByteBuffer output)
+            throws DecoderException {
+        reader.reset(data, offset, length);
+        int decodedChannels = 0;
+        int element;
+        while ((element = reader.readBits(3)) != ELEMENT_END) {
+            switch (element) {
+                case ELEMENT_SCE:
+                case ELEMENT_LFE:
+                    if (decodedChannels + 1 > channelCount) {
+                        throw new DecoderException("Unexpected channel element");
+                    }
+                    reader.skipBits(4);
+                    decodeSingleChannel(channels[decodedChannels]);
+                    decodedChannels++;
+                    break;
+                case ELEMENT_CPE:
+                    if (decodedChannels + 2 > channelCount) {
+                        throw new DecoderException("Unexpected channel element");
+                    }
+                    reader.skipBits(4);
+                    decodeChannelPair(channels[decodedChannels], channels[decodedChannels + 1]);
+                    decodedChannels += 2;
+                    break;
+                case ELEMENT_DSE:
+                    skipDataStream();
+                    break;
+                case ELEMENT_FIL:
+                    skipFill();
+                    break;
+                default:
+                    throw new DecoderException("Unsupported syntactic element " + element);
+            }
+            if (reader.getPosition() > reader.getLimit()) {
+                throw new DecoderException("Truncated raw data block");
+            }
+        }
+        if (decodedChannels != channelCount) {
+            throw new DecoderException("Missing channel elements");
+        }
+        for (int ch = 0; ch < channelCount; ch++) {
+            ChannelStream channel = channels[ch];
+            applyTns(channel);
+            synthesize(channel, pcm[ch]);
+        }
+        writePcm(output);
+        return FRAME_LENGTH;
+    }
+
+    private int readAudioObjectType() {
+        int objectType = reader.readBits(5);
+        return objectType == 31 ? 32 + reader.readBits(6) : objectType;
+    }
+
+    private static int nearestSampleRateIndex(int sampleRate) {
+        int nearest = 0;
+        for (int i = 1; i < AacTables.SAMPLE_RATES.length; i++) {
+            if (Math.abs(AacTables.SAMPLE_RATES[i] - sampleRate)
+                    < Math.abs(AacTables.SAMPLE_RATES[nearest] - sampleRate)) {
+                nearest = i;
+            }
+        }
+        return nearest;
+    }
+
+    private void skipDataStream() {
+        reader.skipBits(4);
+        boolean byteAlign = reader.readBit() == 1;
+        int count = reader.readBits(8);
+        if (count == 255) {
+            count += reader.readBits(8);
+        }
+        if (byteAlign) {
+            reader.byteAlign();
+        }
+        reader.skipBits(count * 8);
+    }
+
+    private void skipFill() {
+        int count = reader.readBits(4);
+        if (count == 15) {
+            count += reader.readBits(8) - 1;
+        }
+        reader.skipBits(count * 8);
+    }
+
+    private void decodeSingleChannel(ChannelStream channel) throws DecoderException {
+        readChannelStream(channel, false);
+        dequantize(channel, null);
+    }
+
+    private void decodeChannelPair(ChannelStream left, ChannelStream right)
+            throws DecoderException {
+        boolean commonWindow = reader.readBit() == 1;
+        msMaskPresent = 0;
+        if (commonWindow) {
+            readIcsInfo(left);
+            right.copyIcsInfo(left);
+            msMaskPresent = reader.readBits(2);
+            if (msMaskPresent == 3) {
+                throw new DecoderException("Reserved ms_mask_present");
+            }
+            for (int g = 0; g < left.windowGroupCount; g++) {
+                for (int sfb = 0; sfb < left.maxSfb; sfb++) {
+                    msUsed[g * MAX_BANDS + sfb] = msMaskPresent == 2
+                            || (msMaskPresent == 1 && reader.readBit() == 1);
+                }
+            }
+        }
+        readChannelStream(left, commonWindow);
+        readChannelStream(right, commonWindow);
+        dequantize(left, null);
+        dequantize(right, left);
+        if (msMaskPresent != 0) {
+            applyMidSide(left, right);
+        }
+        applyIntensity(left, right);
+    }
+
+    /**
+     * Reads individual_channel_stream, leaving the quantized spectrum in the channel.
+     */
+    private void readChannelStream(ChannelStream channel, boolean commonWindow)
+            throws DecoderException {
+        int globalGain = reader.readBits(8);
+        if (!commonWindow) {
+            readIcsInfo(channel);
+        }
+        readSectionData(channel);
+        readScalefactors(channel, globalGain);
+        channel.pulseCount = 0;
+        if (reader.readBit() == 1) {
+            if (channel.windowSequence == EIGHT_SHORT_SEQUENCE) {
+                throw new DecoderException("Pulse data in a short window");
+            }
+            channel.pulseCount = reader.readBits(2) + 1;
+            channel.pulseStartBand = reader.readBits(6);
+            if (channel.pulseStartBand >= channel.bandOffsets.length - 1) {
+                throw new DecoderException("Invalid pulse_start_sfb");
+            }
+            for (int i = 0; i < channel.pulseCount; i++) {
+                channel.pulseOffsets[i] = reader.readBits(5);
+                channel.pulseAmplitudes[i] = reader.readBits(4);
+            }
+        }
+        Arrays.fill(channel.tnsFilterCounts, 0);
+        if (reader.readBit() == 1) {
+            readTns(channel);
+        }
+        if (reader.readBit() == 1) {
+            throw new DecoderException("Unsupported gain control data");
+        }
+        readSpectralData(channel);
+    }
+
+    private void readIcsInfo(ChannelStream channel) throws DecoderException {
+        reader.skipBits(1);
+        channel.windowSequence = reader.readBits(2);
+        channel.previousWindowShape = channel.windowShape;
+        channel.windowShape = reader.readBits(1);
+        if (channel.windowSequence == EIGHT_SHORT_SEQUENCE) {
+            channel.bandOffsets = AacTables.SHORT_BAND_OFFSETS[sampleRateIndex];
+            channel.maxSfb = reader.readBits(4);
+            int grouping = reader.readBits(7);
+            channel.windowGroupCount = 1;
+            channel.windowGroupLengths[0] = 1;
+            for (int i = 6; i >= 0; i--) {
+                if (((grouping >> i) & 1) == 1) {
+                    channel.windowGroupLengths[channel.windowGroupCount - 1]++;
+                } else {
+                    channel.windowGroupLengths[channel.windowGroupCount++] = 1;
+                }
+            }
+        } else {
+            channel.bandOffsets = AacTables.LONG_BAND_OFFSETS[sampleRateIndex];
+            channel.maxSfb = reader.readBits(6);
+            channel.windowGroupCount = 1;
+            channel.windowGroupLengths[0] = 1;
+            if (reader.readBit() == 1) {
+                throw new DecoderException("Prediction in an AAC-LC stream");
+            }
+        }
+        if (channel.maxSfb > channel.bandOffsets.length - 1) {
+            throw new DecoderException("Invalid max_sfb " + channel.maxSfb);
+        }
+    }
+
+    private void readSectionData(ChannelStream channel) throws DecoderException {
+        int sectionBits = channel.windowSequence == EIGHT_SHORT_SEQUENCE ? 3 : 5;
+        int escape = (1 << sectionBits) - 1;
+        for (int g = 0; g < channel.windowGroupCount; g++) {
+            int sfb = 0;
+            while (sfb < channel.maxSfb) {
+                int codebook = reader.readBits(4);
+                if (codebook == RESERVED_CODEBOOK) {
+                    throw new DecoderException("Reserved codebook");
+                }
+                int length = 0;
+                int increment;
+                do {
+                    increment = reader.readBits(sectionBits);
+                    length += increment;
+                } while (increment == escape);
+                // Empty sections are legal, so without this a truncated unit would never end.
+                if (reader.getPosition() > reader.getLimit()) {
+                    throw new DecoderException("Truncated section data");
+                }
+                if (sfb + length > channel.maxSfb) {
+                    throw new DecoderException("Section past max_sfb");
+                }
+                for (int end = sfb + length; sfb < end; sfb++) {
+                    channel.bandTypes[g * MAX_BANDS + sfb] = codebook;
+                }
+            }
+        }
+    }
+
+    private void readScalefactors(ChannelStream channel, int globalGain)
+            throws DecoderException {
+        int scalefactor = globalGain;
+        int intensityPosition = 0;
+        int noiseEnergy = globalGain - 90;
+        boolean firstNoiseBand = true;
+        for (int g = 0; g < channel.windowGroupCount; g++) {
+            for (int sfb = 0; sfb < channel.maxSfb; sfb++) {
+                int index = g * MAX_BANDS + sfb;
+                int value;
+                switch (channel.bandTypes[index]) {
+                    case ZERO_CODEBOOK:
+                        value = 0;
+                        break;
+                    case INTENSITY_CODEBOOK:
+                    case INTENSITY_CODEBOOK_2:
+                        intensityPosition += readScalefactorDelta();
+                        // Stored as the scale factor giving the gain 2^(-position / 4).
+                        value = 100 - intensityPosition;
+                        break;
+                    case NOISE_CODEBOOK:
+                        if (firstNoiseBand) {
+                            noiseEnergy += reader.readBits(9) - 256;
+                            firstNoiseBand = false;
+                        } else {
+                            noiseEnergy += readScalefactorDelta();
+                        }
+                        value = noiseEnergy + 100;
+                        break;
+                    default:
+                        scalefactor += readScalefactorDelta();
+                        value = scalefactor;
+                        break;
+                }
+                if (value < 0 || value >= GAINS.length) {
+                    throw new DecoderException("Scale factor out of range");
+                }
+                channel.scalefactors[index] = value;
+            }
+        }
+    }
+
+    private int readScalefactorDelta() {
+        return AacTables.SCALEFACTOR_TABLE.decode(reader) - 60;
+    }
+
+    private void readTns(ChannelStream channel) throws DecoderException {
+        boolean shortWindows = channel.windowSequence == EIGHT_SHORT_SEQUENCE;
+        int windowCount = shortWindows ? 8 : 1;
+        int maxOrder = shortWindows ? TNS_MAX_ORDER_SHORT : TNS_MAX_ORDER_LONG;
+        for (int w = 0; w < windowCount; w++) {
+            int filterCount = reader.readBits(shortWindows ? 1 : 2);
+            channel.tnsFilterCounts[w] = filterCount;
+            if (filterCount == 0) {
+                continue;
+            }
+            int resolution = reader.readBit();
+            for (int f = 0; f < filterCount; f++) {
+                int filter = w * TNS_MAX_FILTERS + f;
+                channel.tnsLengths[filter] = reader.readBits(shortWindows ? 4 : 6);
+                int order = reader.readBits(shortWindows ? 3 : 5);
+                if (order > maxOrder) {
+                    throw new DecoderException("TNS order " + order + " too high");
+                }
+                channel.tnsOrders[filter] = order;
+                if (order == 0) {
+                    continue;
+                }
+                channel.tnsDirections[filter] = reader.readBit() == 1;
+                int coefficientBits = resolution + 3 - reader.readBit();
+                for (int i = 0; i < order; i++) {
+                    // Sign extend the coefficient.
+                    int value = reader.readBits(coefficientBits) << (32 - coefficientBits)
+                            >> (32 - coefficientBits);
+                    channel.tnsCoefficients[filter * TNS_MAX_ORDER_LONG + i] =
+                            TNS_COEFFICIENTS[resolution][value + 8];
+                }
+            }
+        }
+    }
+
+    private void readSpectralData(ChannelStream channel) throws DecoderException {
+        int[] quantized = channel.quantized;
+        Arrays.fill(quantized, 0);
+        int[] offsets = channel.bandOffsets;
+        int window = 0;
+        for (int g = 0; g < channel.windowGroupCount; g++) {
+            int groupLength = channel.windowGroupLengths[g];
+            for (int sfb = 0; sfb < channel.maxSfb; sfb++) {
+                int codebook = channel.bandTypes[g * MAX_BANDS + sfb];
+                if (codebook == ZERO_CODEBOOK || codebook >= NOISE_CODEBOOK) {
+                    continue;
+                }
+                HuffmanTable table = AacTables.SPECTRUM_TABLES[codebook];
+                for (int w = 0; w < groupLength; w++) {
+                    int base = (window + w) * SHORT_WINDOW_LENGTH;
+                    int start = base + offsets[sfb];
+                    int end = base + offsets[sfb + 1];
+                    if (codebook < 5) {
+                        for (int k = start; k < end; k += 4) {
+                            readQuad(table.decode(reader), codebook < 3, quantized, k);
+                        }
+                    } else {
+                        for (int k = start; k < end; k += 2) {
+                            readPair(table.decode(reader), codebook, quantized, k);
+                        }
+                    }
+                }
+            }
+            window += groupLength;
+        }
+        int k = channel.pulseCount > 0 ? offsets[channel.pulseStartBand] : 0;
+        for (int i = 0; i < channel.pulseCount; i++) {
+            k += channel.pulseOffsets[i];
+            if (k >= FRAME_LENGTH) {
+                throw new DecoderException("Pulse past the end of the spectrum");
+            }
+            quantized[k] += quantized[k] > 0
+                    ? channel.pulseAmplitudes[i] : -channel.pulseAmplitudes[i];
+        }
+    }
+
+    private void readQuad(int value, boolean signed, int[] quantized, int k) {
+        if (signed) {
+            quantized[k] = value / 27 - 1;
+            quantized[k + 1] = value / 9 % 3 - 1;
+            quantized[k + 2] = value / 3 % 3 - 1;
+            quantized[k + 3] = value % 3 - 1;
+        } else {
+            quantized[k] = value / 27;
+            quantized[k + 1] = value / 9 % 3;
+            quantized[k + 2] = value / 3 % 3;
+            quantized[k + 3] = value % 3;
+            for (int i = k; i < k + 4; i++) {
+                if (quantized[i] != 0 && reader.readBit() == 1) {
+                    quantized[i] = -quantized[i];
+                }
+            }
+        }
+    }
+
+    private void readPair(int value, int codebook, int[] quantized, int k)
+            throws DecoderException {
+        int size = PAIR_SIZES[codebook];
+        if (codebook < 7) {
+            quantized[k] = value / size - 4;
+            quantized[k + 1] = value % size - 4;
+            return;
+        }
+        int y = value / size;
+        int z = value % size;
+        boolean negativeY = y != 0 && reader.readBit() == 1;
+        boolean negativeZ = z != 0 && reader.readBit() == 1;
+        if (codebook == ESCAPE_CODEBOOK) {
+            if (y == 16) {
+                y = readEscape();
+            }
+            if (z == 16) {
+                z = readEscape();
+            }
+        }
+        quantized[k] = negativeY ? -y : y;
+        quantized[k + 1] = negativeZ ? -z : z;
+    }
+
+    private int readEscape() throws DecoderException {
+        int prefixLength = 0;
+        while (reader.readBit() == 1) {
+            if (++prefixLength > 8) {
+                throw new DecoderException("Invalid escape sequence");
+            }
+        }
+        return (1 << (prefixLength + 4)) + reader.readBits(prefixLength + 4);
+    }
+
+    /**
+     * Scales the quantized spectrum of a channel, filling noise bands with noise. Intensity
+     * stereo bands are left silent.
+     *
+     * @param pairedChannel The other channel of a pair whose first channel is already
+     *     dequantized, or null.
+     */
+    private void dequantize(ChannelStream channel, ChannelStream pairedChannel) {
+        float[] spectrum = channel.spectrum;
+        int[] quantized = channel.quantized;
+        int[] offsets = channel.bandOffsets;
+        Arrays.fill(spectrum, 0);
+        int window = 0;
+        for (int g = 0; g < channel.windowGroupCount; g++) {
+            int groupLength = channel.windowGroupLengths[g];
+            for (int sfb = 0; sfb < channel.maxSfb; sfb++) {
+                int index = g * MAX_BANDS + sfb;
+                int codebook = channel.bandTypes[index];
+                if (codebook == ZERO_CODEBOOK || codebook == INTENSITY_CODEBOOK
+                        || codebook == INTENSITY_CODEBOOK_2) {
+                    continue;
+                }
+                float gain = GAINS[channel.scalefactors[index]];
+                for (int w = 0; w < groupLength; w++) {
+                    int base = (window + w) * SHORT_WINDOW_LENGTH;
+                    int start = base + offsets[sfb];
+                    int end = base + offsets[sfb + 1];
+                    if (codebook == NOISE_CODEBOOK) {
+                        // Noise shared by both channels where mid/side is on for the band.
+                        boolean correlated = pairedChannel != null && msUsed[index]
+                                && pairedChannel.bandTypes[index] == NOISE_CODEBOOK;
+                        fillNoise(spectrum, start, end, gain,
+                                correlated ? pairedChannel.spectrum : null);
+                    } else {
+                        for (int k = start; k < end; k++) {
+                            int value = quantized[k];
+                            spectrum[k] = value >= 0
+                                    ? POW_4_3[value] * gain : -POW_4_3[-value] * gain;
+                        }
+                    }
+                }
+            }
+            window += groupLength;
+        }
+    }
+
+    private void fillNoise(float[] spectrum, int start, int end, float energy, float[] source) {
+        float sum = 0;
+        for (int k = start; k < end; k++) {
+            float value;
+            if (source != null) {
+                value = source[k];
+            } else {
+                noiseState = noiseState * 1664525 + 1013904223;
+                value = noiseState;
+            }
+            spectrum[k] = value;
+            sum += value * value;
+        }
+        if (sum > 0) {
+            float scale = energy / (float) Math.sqrt(sum);
+            for (int k = start; k < end; k++) {
+                spectrum[k] *= scale;
+            }
+        }
+    }
+
+    private void applyMidSide(ChannelStream left, ChannelStream right) {
+        int[] offsets = left.bandOffsets;
+        int window = 0;
+        for (int g = 0; g < left.windowGroupCount; g++) {
+            int groupLength = left.windowGroupLengths[g];
+            for (int sfb = 0; sfb < left.maxSfb; sfb++) {
+                int index = g * MAX_BANDS + sfb;
+                if (!msUsed[index] || left.bandTypes[index] >= NOISE_CODEBOOK
+                        || right.bandTypes[index] >= NOISE_CODEBOOK) {
+                    continue;
+                }
+                for (int w = 0; w < groupLength; w++) {
+                    int base = (window + w) * SHORT_WINDOW_LENGTH;
+                    for (int k = base + offsets[sfb]; k < base + offsets[sfb + 1]; k++) {
+                        float mid = left.spectrum[k];
+                        float side = right.spectrum[k];
+                        left.spectrum[k] = mid + side;
+                        right.spectrum[k] = mid - side;
+                    }
+                }
+            }
+            window += groupLength;
+        }
+    }
+
+    private void applyIntensity(ChannelStream left, ChannelStream right) {
+        int[] offsets = right.bandOffsets;
+        int window = 0;
+        for (int g = 0; g < right.windowGroupCount; g++) {
+            int groupLength = right.windowGroupLengths[g];
+            for (int sfb = 0; sfb < right.maxSfb; sfb++) {
+                int index = g * MAX_BANDS + sfb;
+                int codebook = right.bandTypes[index];
+                if (codebook != INTENSITY_CODEBOOK && codebook != INTENSITY_CODEBOOK_2) {
+                    continue;
+                }
+                float scale = GAINS[right.scalefactors[index]];
+                // The codebook gives the sign, inverted again where mid/side is on.
+                if ((codebook == INTENSITY_CODEBOOK_2)
+                        != (msMaskPresent != 0 && msUsed[index])) {
+                    scale = -scale;
+                }
+                for (int w = 0; w < groupLength; w++) {
+                    int base = (window + w) * SHORT_WINDOW_LENGTH;
+                    for (int k = base + offsets[sfb]; k < base + offsets[sfb + 1]; k++) {
+                        right.spectrum[k] = left.spectrum[k] * scale;
+                    }
+                }
+            }
+            window += groupLength;
+        }
+    }
+
+    /**
+     * Applies the all-pole filters of temporal noise shaping to the spectrum of a channel.
+     */
+    private void applyTns(ChannelStream channel) {
+        boolean shortWindows = channel.windowSequence == EIGHT_SHORT_SEQUENCE;
+        int windowCount = shortWindows ? 8 : 1;
+        int[] offsets = channel.bandOffsets;
+        int maxBand = Math.min(channel.maxSfb, shortWindows
+                ? AacTables.TNS_MAX_BANDS_SHORT[sampleRateIndex]
+                : AacTables.TNS_MAX_BANDS_LONG[sampleRateIndex]);
+        float[] spectrum = channel.spectrum;
+        for (int w = 0; w < windowCount; w++) {
+            int bottom = offsets.length - 1;
+            for (int f = 0; f < channel.tnsFilterCounts[w]; f++) {
+                int filter = w * TNS_MAX_FILTERS + f;
+                int top = bottom;
+                bottom = Math.max(0, top - channel.tnsLengths[filter]);
+                int order = channel.tnsOrders[filter];
+                if (order == 0) {
+                    continue;
+                }
+                int start = offsets[Math.min(bottom, maxBand)];
+                int end = offsets[Math.min(top, maxBand)];
+                int size = end - start;
+                if (size <= 0) {
+                    continue;
+                }
+                toLpc(channel.tnsCoefficients, filter * TNS_MAX_ORDER_LONG, order);
+                int increment = 1;
+                if (channel.tnsDirections[filter]) {
+                    increment = -1;
+                    start = end - 1;
+                }
+                start += w * SHORT_WINDOW_LENGTH;
+                for (int m = 0; m < size; m++, start += increment) {
+                    float value = spectrum[start];
+                    for (int i = 1, taps = Math.min(m, order); i <= taps; i++) {
+                        value -= spectrum[start - i * increment] * lpc[i];
+                    }
+                    spectrum[start] = value;
+                }
+            }
+        }
+    }
+
+    // Converts reflection coefficients into the direct form coefficients lpc[1..order].
+    private void toLpc(float[] coefficients, int offset, int order) {
+        for (int m = 1; m <= order; m++) {
+            float reflection = coefficients[offset + m - 1];
+            for (int i = 1; i < m; i++) {
+                lpcScratch[i] = lpc[i] + reflection * lpc[m - i];
+            }
+            for (int i = 1; i < m; i++) {
+                lpc[i] = lpcScratch[i];
+            }
+            lpc[m] = reflection;
+        }
+    }
+
+    /**
+     * Transforms the spectrum of a channel into samples, windowing and overlapping them with
+     * the previous frame's.
+     */
+    private void synthesize(ChannelStream channel, short[] channelPcm) {
+        float[] longPrevious = channel.previousWindowShape == WINDOW_SHAPE_KBD
+                ? KBD_LONG : SINE_LONG;
+        float[] longCurrent = channel.windowShape == WINDOW_SHAPE_KBD ? KBD_LONG : SINE_LONG;
+        float[] shortPrevious = channel.previousWindowShape == WINDOW_SHAPE_KBD
+                ? KBD_SHORT : SINE_SHORT;
+        float[] shortCurrent = channel.windowShape == WINDOW_SHAPE_KBD ? KBD_SHORT : SINE_SHORT;
+        float[] buffer = imdctOutput;
+        float[] overlap = channel.overlap;
+        // Flat parts of the start and stop windows, either side of a short window's slope.
+        int flat = (FRAME_LENGTH - SHORT_WINDOW_LENGTH) / 2;
+        int sequence = channel.windowSequence;
+        if (sequence == EIGHT_SHORT_SEQUENCE) {
+            Arrays.fill(buffer, 0);
+            for (int w = 0; w < 8; w++) {
+                shortImdct.transform(channel.spectrum, w * SHORT_WINDOW_LENGTH,
+                        shortImdctOutput, 0);
+                float[] rising = w == 0 ? shortPrevious : shortCurrent;
+                int base = flat + w * SHORT_WINDOW_LENGTH;
+                for (int i = 0; i < SHORT_WINDOW_LENGTH; i++) {
+                    buffer[base + i] += shortImdctOutput[i] * rising[i];
+                    buffer[base + SHORT_WINDOW_LENGTH + i] +=
+                            shortImdctOutput[SHORT_WINDOW_LENGTH + i]
+                                    * shortCurrent[SHORT_WINDOW_LENGTH - 1 - i];
+                }
+            }
+        } else {
+            longImdct.transform(channel.spectrum, 0, buffer, 0);
+            if (sequence == LONG_STOP_SEQUENCE) {
+                for (int i = 0; i < flat; i++) {
+                    buffer[i] = 0;
+                }
+                for (int i = 0; i < SHORT_WINDOW_LENGTH; i++) {
+                    buffer[flat + i] *= shortPrevious[i];
+                }
+            } else {
+                for (int i = 0; i < FRAME_LENGTH; i++) {
+                    buffer[i] *= longPrevious[i];
+                }
+            }
+            if (sequence == LONG_START_SEQUENCE) {
+                for (int i = 0; i < SHORT_WINDOW_LENGTH; i++) {
+                    buffer[FRAME_LENGTH + flat + i] *= shortCurrent[SHORT_WINDOW_LENGTH - 1 - i];
+                }
+                for (int i = FRAME_LENGTH + flat + SHORT_WINDOW_LENGTH; i < 2 * FRAME_LENGTH;
+                        i++) {
+                    buffer[i] = 0;
+                }
+            } else {
+                for (int i = 0; i < FRAME_LENGTH; i++) {
+                    buffer[FRAME_LENGTH + i] *= longCurrent[FRAME_LENGTH - 1 - i];
+                }
+            }
+        }
+        for (int i = 0; i < FRAME_LENGTH; i++) {
+            channelPcm[i] = clip(buffer[i] + overlap[i]);
+            overlap[i] = buffer[FRAME_LENGTH + i];
+        }
+    }
+
+    private static short clip(float sample) {
+        int value = Math.round(sample);
+        if (value > Short.MAX_VALUE) {
+            return Short.MAX_VALUE;
+        } else if (value < Short.MIN_VALUE) {
+            return Short.MIN_VALUE;
+        }
+        return (short) value;
+    }
+
+    private void writePcm(ByteBuffer output) {
+        if (channelCount == 1) {
+            for (int i = 0; i < FRAME_LENGTH; i++) {
+                output.putShort(pcm[0][i]);
+            }
+        } else {
+            for (int i = 0; i < FRAME_LENGTH; i++) {
+                output.putShort(pcm[0][i]);
+                output.putShort(pcm[1][i]);
+            }
+        }
+    }
+
+    // Fills the rising half of a Kaiser-Bessel derived window.
+    private static void kaiserBesselDerived(float[] window, double alpha) {
+        int half = window.length;
+        double[] kernel = new double[half + 1];
+        double total = 0;
+        for (int i = 0; i <= half; i++) {
+            double x = (i - half / 2d) / (half / 2d);
+            kernel[i] = besselI0(Math.PI * alpha * Math.sqrt(1 - x * x));
+            total += kernel[i];
+        }
+        double sum = 0;
+        for (int i = 0; i < half; i++) {
+            sum += kernel[i];
+            window[i] = (float) Math.sqrt(sum / total);
+        }
+    }
+
+    private static double besselI0(double x) {
+        double sum = 1;
+        double term = 1;
+        for (int k = 1; k < 50; k++) {
+            term *= (x / (2 * k)) * (x / (2 * k));
+            sum += term;
+        }
+        return sum;
+    }
+
+    /**
+     * The state of one channel: the side information and spectrum of the frame being decoded,
+     * and the overlap carried into the next.
+     */
+    private static final class ChannelStream {
+
+        public int windowSequence;
+        public int windowShape;
+        public int previousWindowShape;
+        public int maxSfb;
+        public int[] bandOffsets;
+        public int windowGroupCount;
+        public final int[] windowGroupLengths = new int[8];
+        public final int[] bandTypes = new int[MAX_GROUPED_BANDS];
+        // The scale factor of each band, or the equivalent for intensity and noise bands.
+        public final int[] scalefactors = new int[MAX_GROUPED_BANDS];
+
+        public int pulseCount;
+        public int pulseStartBand;
+        public final int[] pulseOffsets = new int[4];
+        public final int[] pulseAmplitudes = new int[4];
+
+        public final int[] tnsFilterCounts = new int[8];
+        public final int[] tnsLengths = new int[8 * TNS_MAX_FILTERS];
+        public final int[] tnsOrders = new int[8 * TNS_MAX_FILTERS];
+        public final boolean[] tnsDirections = new boolean[8 * TNS_MAX_FILTERS];
+        public final float[] tnsCoefficients = new float[8 * TNS_MAX_FILTERS * TNS_MAX_ORDER_LONG];
+
+        public final int[] quantized = new int[FRAME_LENGTH];
+        public final float[] spectrum = new float[FRAME_LENGTH];
+        public final float[] overlap = new float[FRAME_LENGTH];
+
+        public void copyIcsInfo(ChannelStream other) {
+            windowSequence = other.windowSequence;
+            previousWindowShape = windowShape;
+            windowShape = other.windowShape;
+            maxSfb = other.maxSfb;
+            bandOffsets = other.bandOffsets;
+            windowGroupCount = other.windowGroupCount;
+            System.arraycopy(other.windowGroupLengths, 0, windowGroupLengths, 0, 8);
+        }
+    }
+}
@@ -0,0 +1,336 @@
+package com.thelotradio.android.media.decoder;
+
+/**
+ * The constant tables of MPEG-4 AAC Low Complexity, from ISO/IEC 14496-3.
+ */
+/* package */ final class AacTables {
+
+    /**
+     * The sample rates, indexed by sampling_frequency_index.
+     */
+    public static final int[] SAMPLE_RATES = {
+            96000, 88200, 64000, 48000, 44100, 32000, 24000, 22050, 16000, 12000, 11025, 8000, 7350
+    };
+    /**
+     * The Huffman tables for spectral data, indexed by codebook number. Null for the codebooks that
+     * carry no spectral data.
+     */
+    public static final HuffmanTable[] SPECTRUM_TABLES;
+    /**
+     * The Huffman table for scale factor differences, which decode offset by 60.
+     */
+    public static final HuffmanTable SCALEFACTOR_TABLE;
+
+    /**
+     * The offsets of the long window scale factor bands, indexed by sampling_frequency_index. The
+     * last offset of each is the window length.
+     */
+    public static final int[][] LONG_BAND_OFFSETS;
+    /**
+     * The offsets of the short window scale factor bands, indexed like {@link #LONG_BAND_OFFSETS}.
+     */
+    public static final int[][] SHORT_BAND_OFFSETS;
+    /**
+     * The number of long window scale factor bands temporal noise shaping may filter, indexed by
+     * sampling_frequency_index.
+     */
+    public static final int[] TNS_MAX_BANDS_LONG = {
+            31, 31, 34, 40, 42, 51, 46, 46, 42, 42, 42, 39, 39
+    };
+    /**
+     * The number of short window scale factor bands temporal noise shaping may filter, indexed by
+     * sampling_frequency_index.
+     */
+    public static final int[] TNS_MAX_BANDS_SHORT = {
+            9, 9, 10, 14, 14, 14, 14, 14, 14, 14, 14, 14, 14
+    };
+
+    private static final int[] LONG_OFFSETS_96 = {
+            0, 4, 8, 12, 16, 20, 24, 28, 32, 36, 40, 44, 48, 52, 56, 64, 72, 80, 88, 96, 108, 120,
+            132, 144, 156, 172, 188, 212, 240, 276, 320, 384, 448, 512, 576, 640, 704, 768, 832,
+            896, 960, 1024
+    };
+    private static final int[] LONG_OFFSETS_64 = {
+            0, 4, 8, 12, 16, 20, 24, 28, 32, 36, 40, 44, 48, 52, 56, 64, 72, 80, 88, 100, 112, 124,
+            140, 156, 172, 192, 216, 240, 268, 304, 344, 384, 424, 464, 504, 544, 584, 624, 664,
+            704, 744, 784, 824, 864, 904, 944, 984, 1024
+    };
+    private static final int[] LONG_OFFSETS_48 = {
+            0, 4, 8, 12, 16, 20, 24, 28, 32, 36, 40, 48, 56, 64, 72, 80, 88, 96, 108, 120, 132, 144,
+            160, 176, 196, 216, 240, 264, 292, 320, 352, 384, 416, 448, 480, 512, 544, 576, 608,
+            640, 672, 704, 736, 768, 800, 832, 864, 896, 928, 1024
+    };
+    private static final int[] LONG_OFFSETS_32 = {
+            0, 4, 8, 12, 16, 20, 24, 28, 32, 36, 40, 48, 56, 64, 72, 80, 88, 96, 108, 120, 132, 144,
+            160, 176, 196, 216, 240, 264, 292, 320, 352, 384, 416, 448, 480, 512, 544, 576, 608,
+            640, 672, 704, 736, 768, 800, 832, 864, 896, 928, 960, 992, 1024
+    };
+    private static final int[] LONG_OFFSETS_24 = {
+            0, 4, 8, 12, 16, 20, 24, 28, 32, 36, 40, 44, 52, 60, 68, 76, 84, 92, 100, 108, 116, 124,
+            136, 148, 160, 172, 188, 204, 220, 240, 260, 284, 308, 336, 364, 396, 432, 468, 508,
+            552, 600, 652, 704, 768, 832, 896, 960, 1024
+    };
+    private static final int[] LONG_OFFSETS_16 = {
+            0, 8, 16, 24, 32, 40, 48, 56, 64, 72, 80, 88, 100, 112, 124, 136, 148, 160, 172, 184,
+            196, 212, 228, 244, 260, 280, 300, 320, 344, 368, 396, 424, 456, 492, 532, 572, 616,
+            664, 716, 772, 832, 896, 960, 1024
+    };
+    private static final int[] LONG_OFFSETS_8 = {
+            0, 12, 24, 36, 48, 60, 72, 84, 96, 108, 120, 132, 144, 156, 172, 188, 204, 220, 236,
+            252, 268, 288, 308, 328, 348, 372, 396, 420, 448, 476, 508, 544, 580, 620, 664, 712,
+            764, 820, 880, 944, 1024
+    };
+    private static final int[] SHORT_OFFSETS_96 = {
+            0, 4, 8, 12, 16, 20, 24, 32, 40, 48, 64, 92, 128
+    };
+    private static final int[] SHORT_OFFSETS_48 = {
+            0, 4, 8, 12, 16, 20, 28, 36, 44, 56, 68, 80, 96, 112, 128
+    };
+    private static final int[] SHORT_OFFSETS_24 = {
+            0, 4, 8, 12, 16, 20, 24, 28, 36, 44, 52, 64, 76, 92, 108, 128
+    };
+    private static final int[] SHORT_OFFSETS_16 = {
+            0, 4, 8, 12, 16, 20, 24, 28, 32, 40, 48, 60, 72, 88, 108, 128
+    };
+    private static final int[] SHORT_OFFSETS_8 = {
+            0, 4, 8, 12, 16, 20, 24, 28, 36, 44, 52, 60, 72, 88, 108, 128
+    };
+
+    // The Huffman codewords, as the codeword length shifted left by 24 ORed with the codeword.
+    // Quadruples of signed values index as 27 * (w + 1) + 9 * (x + 1) + 3 * (y + 1) + (z + 1),
+    // unsigned ones as 27 * w + 9 * x + 3 * y + z, and pairs as y times the number of distinct
+    // values plus z, with signed values offset by 4.
+    private static final int[] CODES_1 = {
+            0xb0007f8, 0x90001f1, 0xb0007fd, 0xa0003f5, 0x7000068, 0xa0003f0, 0xb0007f7, 0x90001ec,
+            0xb0007f5, 0xa0003f1, 0x7000072, 0xa0003f4, 0x7000074, 0x5000011, 0x7000076, 0x90001eb,
+            0x700006c, 0xa0003f6, 0xb0007fc, 0x90001e1, 0xb0007f1, 0x90001f0, 0x7000061, 0x90001f6,
+            0xb0007f2, 0x90001ea, 0xb0007fb, 0x90001f2, 0x7000069, 0x90001ed, 0x7000077, 0x5000017,
+            0x700006f, 0x90001e6, 0x7000064, 0x90001e5, 0x7000067, 0x5000015, 0x7000062, 0x5000012,
+            0x1000000, 0x5000014, 0x7000065, 0x5000016, 0x700006d, 0x90001e9, 0x7000063, 0x90001e4,
+            0x700006b, 0x5000013, 0x7000071, 0x90001e3, 0x7000070, 0x90001f3, 0xb0007fe, 0x90001e7,
+            0xb0007f3, 0x90001ef, 0x7000060, 0x90001ee, 0xb0007f0, 0x90001e2, 0xb0007fa, 0xa0003f3,
+            0x700006a, 0x90001e8, 0x7000075, 0x5000010, 0x7000073, 0x90001f4, 0x700006e, 0xa0003f7,
+            0xb0007f6, 0x90001e0, 0xb0007f9, 0xa0003f2, 0x7000066, 0x90001f5, 0xb0007ff, 0x90001f7,
+            0xb0007f4
+    };
+    private static final int[] CODES_2 = {
+            0x90001f3, 0x700006f, 0x90001fd, 0x80000eb, 0x6000023, 0x80000ea, 0x90001f7, 0x80000e8,
+            0x90001fa, 0x80000f2, 0x600002d, 0x7000070, 0x6000020, 0x5000006, 0x600002b, 0x700006e,
+            0x6000028, 0x80000e9, 0x90001f9, 0x7000066, 0x80000f8, 0x80000e7, 0x600001b, 0x80000f1,
+            0x90001f4, 0x700006b, 0x90001f5, 0x80000ec, 0x600002a, 0x700006c, 0x600002c, 0x500000a,
+            0x6000027, 0x7000067, 0x600001a, 0x80000f5, 0x6000024, 0x5000008, 0x600001f, 0x5000009,
+            0x3000000, 0x5000007, 0x600001d, 0x500000b, 0x6000030, 0x80000ef, 0x600001c, 0x7000064,
+            0x600001e, 0x500000c, 0x6000029, 0x80000f3, 0x600002f, 0x80000f0, 0x90001fc, 0x7000071,
+            0x90001f2, 0x80000f4, 0x6000021, 0x80000e6, 0x80000f7, 0x7000068, 0x90001f8, 0x80000ee,
+            0x6000022, 0x7000065, 0x6000031, 0x4000002, 0x6000026, 0x80000ed, 0x6000025, 0x700006a,
+            0x90001fb, 0x7000072, 0x90001fe, 0x7000069, 0x600002e, 0x80000f6, 0x90001ff, 0x700006d,
+            0x90001f6
+    };
+    private static final int[] CODES_3 = {
+            0x1000000, 0x4000009, 0x80000ef, 0x400000b, 0x5000019, 0x80000f0, 0x90001eb, 0x90001e6,
+            0xa0003f2, 0x400000a, 0x6000035, 0x90001ef, 0x6000034, 0x6000037, 0x90001e9, 0x90001ed,
+            0x90001e7, 0xa0003f3, 0x90001ee, 0xa0003ed, 0xd001ffa, 0x90001ec, 0x90001f2, 0xb0007f9,
+            0xb0007f8, 0xa0003f8, 0xc000ff8, 0x4000008, 0x6000038, 0xa0003f6, 0x6000036, 0x7000075,
+            0xa0003f1, 0xa0003eb, 0xa0003ec, 0xc000ff4, 0x5000018, 0x7000076, 0xb0007f4, 0x6000039,
+            0x7000074, 0xa0003ef, 0x90001f3, 0x90001f4, 0xb0007f6, 0x90001e8, 0xa0003ea, 0xd001ffc,
+            0x80000f2, 0x90001f1, 0xc000ffb, 0xa0003f5, 0xb0007f3, 0xc000ffc, 0x80000ee, 0xa0003f7,
+            0xf007ffe, 0x90001f0, 0xb0007f5, 0xf007ffd, 0xd001ffb, 0xe003ffa, 0x1000ffff, 0x80000f1,
+            0xa0003f0, 0xe003ffc, 0x90001ea, 0xa0003ee, 0xe003ffb, 0xc000ff6, 0xc000ffa, 0xf007ffc,
+            0xb0007f2, 0xc000ff5, 0x1000fffe, 0xa0003f4, 0xb0007f7, 0xf007ffb, 0xc000ff7, 0xc000ff9,
+            0xf007ffa
+    };
+    private static final int[] CODES_4 = {
+            0x4000007, 0x5000016, 0x80000f6, 0x5000018, 0x4000008, 0x80000ef, 0x90001ef, 0x80000f3,
+            0xb0007f8, 0x5000019, 0x5000017, 0x80000ed, 0x5000015, 0x4000001, 0x80000e2, 0x80000f0,
+            0x7000070, 0xa0003f0, 0x90001ee, 0x80000f1, 0xb0007fa, 0x80000ee, 0x80000e4, 0xa0003f2,
+            0xb0007f6, 0xa0003ef, 0xb0007fd, 0x4000005, 0x5000014, 0x80000f2, 0x4000009, 0x4000004,
+            0x80000e5, 0x80000f4, 0x80000e8, 0xa0003f4, 0x4000006, 0x4000002, 0x80000e7, 0x4000003,
+            0x4000000, 0x700006b, 0x80000e3, 0x7000069, 0x90001f3, 0x80000eb, 0x80000e6, 0xa0003f6,
+            0x700006e, 0x700006a, 0x90001f4, 0xa0003ec, 0x90001f0, 0xa0003f9, 0x80000f5, 0x80000ec,
+            0xb0007fb, 0x80000ea, 0x700006f, 0xa0003f7, 0xb0007f9, 0xa0003f3, 0xc000fff, 0x80000e9,
+            0x700006d, 0xa0003f8, 0x700006c, 0x7000068, 0x90001f5, 0xa0003ee, 0x90001f2, 0xb0007f4,
+            0xb0007f7, 0xa0003f1, 0xc000ffe, 0xa0003ed, 0x90001f1, 0xb0007f5, 0xb0007fe, 0xa0003f5,
+            0xb0007fc
+    };
+    private static final int[] CODES_5 = {
+            0xd001fff, 0xc000ff7, 0xb0007f4, 0xb0007e8, 0xa0003f1, 0xb0007ee, 0xb0007f9, 0xc000ff8,
+            0xd001ffd, 0xc000ffd, 0xb0007f1, 0xa0003e8, 0x90001e8, 0x80000f0, 0x90001ec, 0xa0003ee,
+            0xb0007f2, 0xc000ffa, 0xc000ff4, 0xa0003ef, 0x90001f2, 0x80000e8, 0x7000070, 0x80000ec,
+            0x90001f0, 0xa0003ea, 0xb0007f3, 0xb0007eb, 0x90001eb, 0x80000ea, 0x500001a, 0x4000008,
+            0x5000019, 0x80000ee, 0x90001ef, 0xb0007ed, 0xa0003f0, 0x80000f2, 0x7000073, 0x400000b,
+            0x1000000, 0x400000a, 0x7000071, 0x80000f3, 0xb0007e9, 0xb0007ef, 0x90001ee, 0x80000ef,
+            0x5000018, 0x4000009, 0x500001b, 0x80000eb, 0x90001e9, 0xb0007ec, 0xb0007f6, 0xa0003eb,
+            0x90001f3, 0x80000ed, 0x7000072, 0x80000e9, 0x90001f1, 0xa0003ed, 0xb0007f7, 0xc000ff6,
+            0xb0007f0, 0xa0003e9, 0x90001ed, 0x80000f1, 0x90001ea, 0xa0003ec, 0xb0007f8, 0xc000ff9,
+            0xd001ffc, 0xc000ffc, 0xc000ff5, 0xb0007ea, 0xa0003f3, 0xa0003f2, 0xb0007f5, 0xc000ffb,
+            0xd001ffe
+    };
+    private static final int[] CODES_6 = {
+            0xb0007fe, 0xa0003fd, 0x90001f1, 0x90001eb, 0x90001f4, 0x90001ea, 0x90001f0, 0xa0003fc,
+            0xb0007fd, 0xa0003f6, 0x90001e5, 0x80000ea, 0x700006c, 0x7000071, 0x7000068, 0x80000f0,
+            0x90001e6, 0xa0003f7, 0x90001f3, 0x80000ef, 0x6000032, 0x6000027, 0x6000028, 0x6000026,
+            0x6000031, 0x80000eb, 0x90001f7, 0x90001e8, 0x700006f, 0x600002e, 0x4000008, 0x4000004,
+            0x4000006, 0x6000029, 0x700006b, 0x90001ee, 0x90001ef, 0x7000072, 0x600002d, 0x4000002,
+            0x4000000, 0x4000003, 0x600002f, 0x7000073, 0x90001fa, 0x90001e7, 0x700006e, 0x600002b,
+            0x4000007, 0x4000001, 0x4000005, 0x600002c, 0x700006d, 0x90001ec, 0x90001f9, 0x80000ee,
+            0x6000030, 0x6000024, 0x600002a, 0x6000025, 0x6000033, 0x80000ec, 0x90001f2, 0xa0003f8,
+            0x90001e4, 0x80000ed, 0x700006a, 0x7000070, 0x7000069, 0x7000074, 0x80000f1, 0xa0003fa,
+            0xb0007ff, 0xa0003f9, 0x90001f6, 0x90001ed, 0x90001f8, 0x90001e9, 0x90001f5, 0xa0003fb,
+            0xb0007fc
+    };
+    private static final int[] CODES_7 = {
+            0x1000000, 0x3000005, 0x6000037, 0x7000074, 0x80000f2, 0x90001eb, 0xa0003ed, 0xb0007f7,
+            0x3000004, 0x400000c, 0x6000035, 0x7000071, 0x80000ec, 0x80000ee, 0x90001ee, 0x90001f5,
+            0x6000036, 0x6000034, 0x7000072, 0x80000ea, 0x80000f1, 0x90001e9, 0x90001f3, 0xa0003f5,
+            0x7000073, 0x7000070, 0x80000eb, 0x80000f0, 0x90001f1, 0x90001f0, 0xa0003ec, 0xa0003fa,
+            0x80000f3, 0x80000ed, 0x90001e8, 0x90001ef, 0xa0003ef, 0xa0003f1, 0xa0003f9, 0xb0007fb,
+            0x90001ed, 0x80000ef, 0x90001ea, 0x90001f2, 0xa0003f3, 0xa0003f8, 0xb0007f9, 0xb0007fc,
+            0xa0003ee, 0x90001ec, 0x90001f4, 0xa0003f4, 0xa0003f7, 0xb0007f8, 0xc000ffd, 0xc000ffe,
+            0xb0007f6, 0xa0003f0, 0xa0003f2, 0xa0003f6, 0xb0007fa, 0xb0007fd, 0xc000ffc, 0xc000fff
+    };
+    private static final int[] CODES_8 = {
+            0x500000e, 0x4000005, 0x5000010, 0x6000030, 0x700006f, 0x80000f1, 0x90001fa, 0xa0003fe,
+            0x4000003, 0x3000000, 0x4000004, 0x5000012, 0x600002c, 0x700006a, 0x7000075, 0x80000f8,
+            0x500000f, 0x4000002, 0x4000006, 0x5000014, 0x600002e, 0x7000069, 0x7000072, 0x80000f5,
+            0x600002f, 0x5000011, 0x5000013, 0x600002a, 0x6000032, 0x700006c, 0x80000ec, 0x80000fa,
+            0x7000071, 0x600002b, 0x600002d, 0x6000031, 0x700006d, 0x7000070, 0x80000f2, 0x90001f9,
+            0x80000ef, 0x7000068, 0x6000033, 0x700006b, 0x700006e, 0x80000ee, 0x80000f9, 0xa0003fc,
+            0x90001f8, 0x7000074, 0x7000073, 0x80000ed, 0x80000f0, 0x80000f6, 0x90001f6, 0x90001fd,
+            0xa0003fd, 0x80000f3, 0x80000f4, 0x80000f7, 0x90001f7, 0x90001fb, 0x90001fc, 0xa0003ff
+    };
+    private static final int[] CODES_9 = {
+            0x1000000, 0x3000005, 0x6000037, 0x80000e7, 0x90001de, 0xa0003ce, 0xa0003d9, 0xb0007c8,
+            0xb0007cd, 0xc000fc8, 0xc000fdd, 0xd001fe4, 0xd001fec, 0x3000004, 0x400000c, 0x6000035,
+            0x7000072, 0x80000ea, 0x80000ed, 0x90001e2, 0xa0003d1, 0xa0003d3, 0xa0003e0, 0xb0007d8,
+            0xc000fcf, 0xc000fd5, 0x6000036, 0x6000034, 0x7000071, 0x80000e8, 0x80000ec, 0x90001e1,
+            0xa0003cf, 0xa0003dd, 0xa0003db, 0xb0007d0, 0xc000fc7, 0xc000fd4, 0xc000fe4, 0x80000e6,
+            0x7000070, 0x80000e9, 0x90001dd, 0x90001e3, 0xa0003d2, 0xa0003dc, 0xb0007cc, 0xb0007ca,
+            0xb0007de, 0xc000fd8, 0xc000fea, 0xd001fdb, 0x90001df, 0x80000eb, 0x90001dc, 0x90001e6,
+            0xa0003d5, 0xa0003de, 0xb0007cb, 0xb0007dd, 0xb0007dc, 0xc000fcd, 0xc000fe2, 0xc000fe7,
+            0xd001fe1, 0xa0003d0, 0x90001e0, 0x90001e4, 0xa0003d6, 0xb0007c5, 0xb0007d1, 0xb0007db,
+            0xc000fd2, 0xb0007e0, 0xc000fd9, 0xc000feb, 0xd001fe3, 0xd001fe9, 0xb0007c4, 0x90001e5,
+            0xa0003d7, 0xb0007c6, 0xb0007cf, 0xb0007da, 0xc000fcb, 0xc000fda, 0xc000fe3, 0xc000fe9,
+            0xd001fe6, 0xd001ff3, 0xd001ff7, 0xb0007d3, 0xa0003d8, 0xa0003e1, 0xb0007d4, 0xb0007d9,
+            0xc000fd3, 0xc000fde, 0xd001fdd, 0xd001fd9, 0xd001fe2, 0xd001fea, 0xd001ff1, 0xd001ff6,
+            0xb0007d2, 0xa0003d4, 0xa0003da, 0xb0007c7, 0xb0007d7, 0xb0007e2, 0xc000fce, 0xc000fdb,
+            0xd001fd8, 0xd001fee, 0xe003ff0, 0xd001ff4, 0xe003ff2, 0xb0007e1, 0xa0003df, 0xb0007c9,
+            0xb0007d6, 0xc000fca, 0xc000fd0, 0xc000fe5, 0xc000fe6, 0xd001feb, 0xd001fef, 0xe003ff3,
+            0xe003ff4, 0xe003ff5, 0xc000fe0, 0xb0007ce, 0xb0007d5, 0xc000fc6, 0xc000fd1, 0xc000fe1,
+            0xd001fe0, 0xd001fe8, 0xd001ff0, 0xe003ff1, 0xe003ff8, 0xe003ff6, 0xf007ffc, 0xc000fe8,
+            0xb0007df, 0xc000fc9, 0xc000fd7, 0xc000fdc, 0xd001fdc, 0xd001fdf, 0xd001fed, 0xd001ff5,
+            0xe003ff9, 0xe003ffb, 0xf007ffd, 0xf007ffe, 0xd001fe7, 0xc000fcc, 0xc000fd6, 0xc000fdf,
+            0xd001fde, 0xd001fda, 0xd001fe5, 0xd001ff2, 0xe003ffa, 0xe003ff7, 0xe003ffc, 0xe003ffd,
+            0xf007fff
+    };
+    private static final int[] CODES_10 = {
+            0x6000022, 0x5000008, 0x600001d, 0x6000026, 0x700005f, 0x80000d3, 0x90001cf, 0xa0003d0,
+            0xa0003d7, 0xa0003ed, 0xb0007f0, 0xb0007f6, 0xc000ffd, 0x5000007, 0x4000000, 0x4000001,
+            0x5000009, 0x6000020, 0x7000054, 0x7000060, 0x80000d5, 0x80000dc, 0x90001d4, 0xa0003cd,
+            0xa0003de, 0xb0007e7, 0x600001c, 0x4000002, 0x5000006, 0x500000c, 0x600001e, 0x6000028,
+            0x700005b, 0x80000cd, 0x80000d9, 0x90001ce, 0x90001dc, 0xa0003d9, 0xa0003f1, 0x6000025,
+            0x500000b, 0x500000a, 0x500000d, 0x6000024, 0x7000057, 0x7000061, 0x80000cc, 0x80000dd,
+            0x90001cc, 0x90001de, 0xa0003d3, 0xa0003e7, 0x700005d, 0x6000021, 0x600001f, 0x6000023,
+            0x6000027, 0x7000059, 0x7000064, 0x80000d8, 0x80000df, 0x90001d2, 0x90001e2, 0xa0003dd,
+            0xa0003ee, 0x80000d1, 0x7000055, 0x6000029, 0x7000056, 0x7000058, 0x7000062, 0x80000ce,
+            0x80000e0, 0x80000e2, 0x90001da, 0xa0003d4, 0xa0003e3, 0xb0007eb, 0x90001c9, 0x700005e,
+            0x700005a, 0x700005c, 0x7000063, 0x80000ca, 0x80000da, 0x90001c7, 0x90001ca, 0x90001e0,
+            0xa0003db, 0xa0003e8, 0xb0007ec, 0x90001e3, 0x80000d2, 0x80000cb, 0x80000d0, 0x80000d7,
+            0x80000db, 0x90001c6, 0x90001d5, 0x90001d8, 0xa0003ca, 0xa0003da, 0xb0007ea, 0xb0007f1,
+            0x90001e1, 0x80000d4, 0x80000cf, 0x80000d6, 0x80000de, 0x80000e1, 0x90001d0, 0x90001d6,
+            0xa0003d1, 0xa0003d5, 0xa0003f2, 0xb0007ee, 0xb0007fb, 0xa0003e9, 0x90001cd, 0x90001c8,
+            0x90001cb, 0x90001d1, 0x90001d7, 0x90001df, 0xa0003cf, 0xa0003e0, 0xa0003ef, 0xb0007e6,
+            0xb0007f8, 0xc000ffa, 0xa0003eb, 0x90001dd, 0x90001d3, 0x90001d9, 0x90001db, 0xa0003d2,
+            0xa0003cc, 0xa0003dc, 0xa0003ea, 0xb0007ed, 0xb0007f3, 0xb0007f9, 0xc000ff9, 0xb0007f2,
+            0xa0003ce, 0x90001e4, 0xa0003cb, 0xa0003d8, 0xa0003d6, 0xa0003e2, 0xa0003e5, 0xb0007e8,
+            0xb0007f4, 0xb0007f5, 0xb0007f7, 0xc000ffb, 0xb0007fa, 0xa0003ec, 0xa0003df, 0xa0003e1,
+            0xa0003e4, 0xa0003e6, 0xa0003f0, 0xb0007e9, 0xb0007ef, 0xc000ff8, 0xc000ffe, 0xc000ffc,
+            0xc000fff
+    };
+    private static final int[] CODES_11 = {
+            0x4000000, 0x5000006, 0x6000019, 0x700003d, 0x800009c, 0x80000c6, 0x90001a7, 0xa000390,
+            0xa0003c2, 0xa0003df, 0xb0007e6, 0xb0007f3, 0xc000ffb, 0xb0007ec, 0xc000ffa, 0xc000ffe,
+            0xa00038e, 0x5000005, 0x4000001, 0x5000008, 0x6000014, 0x7000037, 0x7000042, 0x8000092,
+            0x80000af, 0x9000191, 0x90001a5, 0x90001b5, 0xa00039e, 0xa0003c0, 0xa0003a2, 0xa0003cd,
+            0xb0007d6, 0x80000ae, 0x6000017, 0x5000007, 0x5000009, 0x6000018, 0x7000039, 0x7000040,
+            0x800008e, 0x80000a3, 0x80000b8, 0x9000199, 0x90001ac, 0x90001c1, 0xa0003b1, 0xa000396,
+            0xa0003be, 0xa0003ca, 0x800009d, 0x700003c, 0x6000015, 0x6000016, 0x600001a, 0x700003b,
+            0x7000044, 0x8000091, 0x80000a5, 0x80000be, 0x9000196, 0x90001ae, 0x90001b9, 0xa0003a1,
+            0xa000391, 0xa0003a5, 0xa0003d5, 0x8000094, 0x800009a, 0x7000036, 0x7000038, 0x700003a,
+            0x7000041, 0x800008c, 0x800009b, 0x80000b0, 0x80000c3, 0x900019e, 0x90001ab, 0x90001bc,
+            0xa00039f, 0xa00038f, 0xa0003a9, 0xa0003cf, 0x8000093, 0x80000bf, 0x700003e, 0x700003f,
+            0x7000043, 0x7000045, 0x800009e, 0x80000a7, 0x80000b9, 0x9000194, 0x90001a2, 0x90001ba,
+            0x90001c3, 0xa0003a6, 0xa0003a7, 0xa0003bb, 0xa0003d4, 0x800009f, 0x90001a0, 0x800008f,
+            0x800008d, 0x8000090, 0x8000098, 0x80000a6, 0x80000b6, 0x80000c4, 0x900019f, 0x90001af,
+            0x90001bf, 0xa000399, 0xa0003bf, 0xa0003b4, 0xa0003c9, 0xa0003e7, 0x80000a8, 0x90001b6,
+            0x80000ab, 0x80000a4, 0x80000aa, 0x80000b2, 0x80000c2, 0x80000c5, 0x9000198, 0x90001a4,
+            0x90001b8, 0xa00038c, 0xa0003a4, 0xa0003c4, 0xa0003c6, 0xa0003dd, 0xa0003e8, 0x80000ad,
+            0xa0003af, 0x9000192, 0x80000bd, 0x80000bc, 0x900018e, 0x9000197, 0x900019a, 0x90001a3,
+            0x90001b1, 0xa00038d, 0xa000398, 0xa0003b7, 0xa0003d3, 0xa0003d1, 0xa0003db, 0xb0007dd,
+            0x80000b4, 0xa0003de, 0x90001a9, 0x900019b, 0x900019c, 0x90001a1, 0x90001aa, 0x90001ad,
+            0x90001b3, 0xa00038b, 0xa0003b2, 0xa0003b8, 0xa0003ce, 0xa0003e1, 0xa0003e0, 0xb0007d2,
+            0xb0007e5, 0x80000b7, 0xb0007e3, 0x90001bb, 0x90001a8, 0x90001a6, 0x90001b0, 0x90001b2,
+            0x90001b7, 0xa00039b, 0xa00039a, 0xa0003ba, 0xa0003b5, 0xa0003d6, 0xb0007d7, 0xa0003e4,
+            0xb0007d8, 0xb0007ea, 0x80000ba, 0xb0007e8, 0xa0003a0, 0x90001bd, 0x90001b4, 0xa00038a,
+            0x90001c4, 0xa000392, 0xa0003aa, 0xa0003b0, 0xa0003bc, 0xa0003d7, 0xb0007d4, 0xb0007dc,
+            0xb0007db, 0xb0007d5, 0xb0007f0, 0x80000c1, 0xb0007fb, 0xa0003c8, 0xa0003a3, 0xa000395,
+            0xa00039d, 0xa0003ac, 0xa0003ae, 0xa0003c5, 0xa0003d8, 0xa0003e2, 0xa0003e6, 0xb0007e4,
+            0xb0007e7, 0xb0007e0, 0xb0007e9, 0xb0007f7, 0x9000190, 0xb0007f2, 0xa000393, 0x90001be,
+            0x90001c0, 0xa000394, 0xa000397, 0xa0003ad, 0xa0003c3, 0xa0003c1, 0xa0003d2, 0xb0007da,
+            0xb0007d9, 0xb0007df, 0xb0007eb, 0xb0007f4, 0xb0007fa, 0x9000195, 0xb0007f8, 0xa0003bd,
+            0xa00039c, 0xa0003ab, 0xa0003a8, 0xa0003b3, 0xa0003b9, 0xa0003d0, 0xa0003e3, 0xa0003e5,
+            0xb0007e2, 0xb0007de, 0xb0007ed, 0xb0007f1, 0xb0007f9, 0xb0007fc, 0x9000193, 0xc000ffd,
+            0xa0003dc, 0xa0003b6, 0xa0003c7, 0xa0003cc, 0xa0003cb, 0xa0003d9, 0xa0003da, 0xb0007d3,
+            0xb0007e1, 0xb0007ee, 0xb0007ef, 0xb0007f5, 0xb0007f6, 0xc000ffc, 0xc000fff, 0x900019d,
+            0x90001c2, 0x80000b5, 0x80000a1, 0x8000096, 0x8000097, 0x8000095, 0x8000099, 0x80000a0,
+            0x80000a2, 0x80000ac, 0x80000a9, 0x80000b1, 0x80000b3, 0x80000bb, 0x80000c0, 0x900018f,
+            0x5000004
+    };
+    private static final int[] CODES_SCALEFACTOR = {
+            0x1203ffe8, 0x1203ffe6, 0x1203ffe7, 0x1203ffe5, 0x1307fff5, 0x1307fff1, 0x1307ffed,
+            0x1307fff6, 0x1307ffee, 0x1307ffef, 0x1307fff0, 0x1307fffc, 0x1307fffd, 0x1307ffff,
+            0x1307fffe, 0x1307fff7, 0x1307fff8, 0x1307fffb, 0x1307fff9, 0x1203ffe4, 0x1307fffa,
+            0x1203ffe3, 0x1101ffef, 0x1101fff0, 0x1000fff5, 0x1101ffee, 0x1000fff2, 0x1000fff3,
+            0x1000fff4, 0x1000fff1, 0xf007ff6, 0xf007ff7, 0xe003ff9, 0xe003ff5, 0xe003ff7,
+            0xe003ff3, 0xe003ff6, 0xe003ff2, 0xd001ff7, 0xd001ff5, 0xc000ff9, 0xc000ff7, 0xc000ff6,
+            0xb0007f9, 0xc000ff4, 0xb0007f8, 0xa0003f9, 0xa0003f7, 0xa0003f5, 0x90001f8, 0x90001f7,
+            0x80000fa, 0x80000f8, 0x80000f6, 0x7000079, 0x600003a, 0x6000038, 0x500001a, 0x400000b,
+            0x3000004, 0x1000000, 0x400000a, 0x400000c, 0x500001b, 0x6000039, 0x600003b, 0x7000078,
+            0x700007a, 0x80000f7, 0x80000f9, 0x90001f6, 0x90001f9, 0xa0003f4, 0xa0003f6, 0xa0003f8,
+            0xb0007f5, 0xb0007f4, 0xb0007f6, 0xb0007f7, 0xc000ff5, 0xc000ff8, 0xd001ff4, 0xd001ff6,
+            0xd001ff8, 0xe003ff8, 0xe003ff4, 0x1000fff0, 0xf007ff4, 0x1000fff6, 0xf007ff5,
+            0x1203ffe2, 0x1307ffd9, 0x1307ffda, 0x1307ffdb, 0x1307ffdc, 0x1307ffdd, 0x1307ffde,
+            0x1307ffd8, 0x1307ffd2, 0x1307ffd3, 0x1307ffd4, 0x1307ffd5, 0x1307ffd6, 0x1307fff2,
+            0x1307ffdf, 0x1307ffe7, 0x1307ffe8, 0x1307ffe9, 0x1307ffea, 0x1307ffeb, 0x1307ffe6,
+            0x1307ffe0, 0x1307ffe1, 0x1307ffe2, 0x1307ffe3, 0x1307ffe4, 0x1307ffe5, 0x1307ffd7,
+            0x1307ffec, 0x1307fff4, 0x1307fff3
+    };
+
+    static {
+        SPECTRUM_TABLES = new HuffmanTable[12];
+        SPECTRUM_TABLES[1] = new HuffmanTable(CODES_1);
+        SPECTRUM_TABLES[2] = new HuffmanTable(CODES_2);
+        SPECTRUM_TABLES[3] = new HuffmanTable(CODES_3);
+        SPECTRUM_TABLES[4] = new HuffmanTable(CODES_4);
+        SPECTRUM_TABLES[5] = new HuffmanTable(CODES_5);
+        SPECTRUM_TABLES[6] = new HuffmanTable(CODES_6);
+        SPECTRUM_TABLES[7] = new HuffmanTable(CODES_7);
+        SPECTRUM_TABLES[8] = new HuffmanTable(CODES_8);
+        SPECTRUM_TABLES[9] = new HuffmanTable(CODES_9);
+        SPECTRUM_TABLES[10] = new HuffmanTable(CODES_10);
+        SPECTRUM_TABLES[11] = new HuffmanTable(CODES_11);
+        SCALEFACTOR_TABLE = new HuffmanTable(CODES_SCALEFACTOR);
+        LONG_BAND_OFFSETS = new int[][] {
+                LONG_OFFSETS_96, LONG_OFFSETS_96, LONG_OFFSETS_64, LONG_OFFSETS_48, LONG_OFFSETS_48,
+                LONG_OFFSETS_32, LONG_OFFSETS_24, LONG_OFFSETS_24, LONG_OFFSETS_16, LONG_OFFSETS_16,
+                LONG_OFFSETS_16, LONG_OFFSETS_8, LONG_OFFSETS_8
+        };
+        SHORT_BAND_OFFSETS = new int[][] {
+                SHORT_OFFSETS_96, SHORT_OFFSETS_96, SHORT_OFFSETS_96, SHORT_OFFSETS_48,
+                SHORT_OFFSETS_48, SHORT_OFFSETS_48, SHORT_OFFSETS_24, SHORT_OFFSETS_24,
+                SHORT_OFFSETS_16, SHORT_OFFSETS_16, SHORT_OFFSETS_16, SHORT_OFFSETS_8,
+                SHORT_OFFSETS_8
+        };
+    }
+
+    private AacTables() {}
+}
@@ -0,0 +1,45 @@
+package com.thelotradio.android.media.decoder;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Decodes compressed audio, one access unit at a time, into 16 bit PCM.
+ * <p/>
+ * Implementations keep all of their working memory from construction onwards, so decoding never
+ * allocates. They are not thread-safe.
+ */
+public interface AudioDecoder {
+
+    /**
+     * Decodes an access unit, such as an MP3 frame or an AAC raw data block.
+     *
+     * @param data Holds the access unit.
+     * @param offset The offset of the access unit in {@code data}.
+     * @param length The length of the access unit.
+     * @param output Receives the decoded samples, interleaved, in the buffer's byte order. Must
+     *     have room for {@link #getMaxOutputSize()} bytes.
+     * @return The number of samples per channel written to {@code output}.
+     * @throws DecoderException If the access unit is malformed.
+     */
+    int decode(byte[] data, int offset, int length, ByteBuffer output) throws DecoderException;
+
+    /**
+     * Returns the sample rate of the audio decoded last, or 0 if nothing has been decoded.
+     */
+    int getSampleRate();
+
+    /**
+     * Returns the number of channels of the audio decoded last, or 0 if nothing has been decoded.
+     */
+    int getChannelCount();
+
+    /**
+     * Returns the most bytes a single call to {@link #decode} can output.
+     */
+    int getMaxOutputSize();
+
+    /**
+     * Forgets the state carried from one access unit to the next, for example after a seek.
+     */
+    void reset();
+}
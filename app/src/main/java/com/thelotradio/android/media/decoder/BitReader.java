@@ -0,0 +1,88 @@
+package com.thelotradio.android.media.decoder;
+
+/**
+ * Reads big-endian bit fields out of a byte array. Reading past the end yields zeros rather than
+ * failing, so that a truncated access unit decodes to garbage instead of crashing; callers that
+ * care check {@link #getPosition()} against the limit.
+ */
+/* package */ final class BitReader {
+
+    private byte[] data;
+    private int limit;
+    private int position;
+
+    /**
+     * Starts reading {@code length} bytes of {@code data} from {@code offset}.
+     */
+    public void reset(byte[] data, int offset, int length) {
+        this.data = data;
+        limit = offset + length;
+        position = offset * 8;
+    }
+
+    /**
+     * Returns the position of the next bit to read, counted from the start of the array.
+     */
+    public int getPosition() {
+        return position;
+    }
+
+    public void setPosition(int position) {
+        this.position = position;
+    }
+
+    /**
+     * Returns the position just past the last readable bit.
+     */
+    public int getLimit() {
+        return limit * 8;
+    }
+
+    /**
+     * Reads up to 25 bits.
+     */
+    public int readBits(int count) {
+        int value = peekBits(count);
+        position += count;
+        return value;
+    }
+
+    public int readBit() {
+        int index = position >> 3;
+        int bit = index < limit ? (data[index] >> (7 - (position & 7))) & 1 : 0;
+        position++;
+        return bit;
+    }
+
+    /**
+     * Returns the next {@code count} bits, up to 25, without consuming them.
+     */
+    public int peekBits(int count) {
+        if (count == 0) {
+            return 0;
+        }
+        int index = position >> 3;
+        int word;
+        if (index + 4 <= limit) {
+            word = (data[index] << 24) | ((data[index + 1] & 0xFF) << 16)
+                    | ((data[index + 2] & 0xFF) << 8) | (data[index + 3] & 0xFF);
+        } else {
+            word = 0;
+            for (int i = 0; i < 4; i++) {
+                word = (word << 8) | (index + i < limit ? data[index + i] & 0xFF : 0);
+            }
+        }
+        return (word << (position & 7)) >>> (32 - count);
+    }
+
+    public void skipBits(int count) {
+        position += count;
+    }
+
+    /**
+     * Skips to the next byte boundary.
+     */
+    public void byteAlign() {
+        position = (position + 7) & ~7;
+    }
+}
@@ -0,0 +1,13 @@
+package com.thelotradio.android.media.decoder;
+
+/**
+ * Thrown when an {@link AudioDecoder} is given data it can't decode.
+ */
+public final class DecoderException extends Exception {
+
+    private static final long serialVersionUID = 1L;
+
+    public DecoderException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,84 @@
+package com.thelotradio.android.media.decoder;
+
+/**
+ * A Huffman code, decoded with a lookup on the next few bits and, for the rare longer codewords, a
+ * second lookup in a subtable.
+ */
+/* package */ final class HuffmanTable {
+
+    private static final int ROOT_BITS = 8;
+    private static final int SUBTABLE_FLAG = 0x80000000;
+
+    // Leaves hold the codeword length in bits 16-23 and the value in bits 0-15. Links to subtables
+    // have the top bit set, the subtable's index width in bits 20-24 and its offset in bits 0-19.
+    private final int[] entries;
+
+    /**
+     * @param codes The codeword of each value, indexed by value, as the codeword length shifted
+     *     left by 24 ORed with the codeword itself.
+     */
+    public HuffmanTable(int[] codes) {
+        // Each subtable is as wide as the longest codeword sharing its prefix requires.
+        int[] subtableBits = new int[1 << ROOT_BITS];
+        for (int code : codes) {
+            int length = code >>> 24;
+            if (length > ROOT_BITS) {
+                int prefix = (code & 0xFFFFFF) >>> (length - ROOT_BITS);
+                subtableBits[prefix] = Math.max(subtableBits[prefix], length - ROOT_BITS);
+            }
+        }
+        int size = 1 << ROOT_BITS;
+        int[] subtableOffsets = new int[1 << ROOT_BITS];
+        for (int prefix = 0; prefix < subtableBits.length; prefix++) {
+            if (subtableBits[prefix] > 0) {
+                subtableOffsets[prefix] = size;
+                size += 1 << subtableBits[prefix];
+            }
+        }
+        entries = new int[size];
+        for (int prefix = 0; prefix < subtableBits.length; prefix++) {
+            if (subtableBits[prefix] > 0) {
+                entries[prefix] = SUBTABLE_FLAG | (subtableBits[prefix] << 20)
+                        | subtableOffsets[prefix];
+            }
+        }
+        for (int value = 0; value < codes.length; value++) {
+            int length = codes[value] >>> 24;
+            int codeword = codes[value] & 0xFFFFFF;
+            int leaf = (length << 16) | value;
+            if (length <= ROOT_BITS) {
+                int first = codeword << (ROOT_BITS - length);
+                int last = first + (1 << (ROOT_BITS - length));
+                for (int i = first; i < last; i++) {
+                    entries[i] = leaf;
+                }
+            } else {
+                int prefix = codeword >>> (length - ROOT_BITS);
+                int bits = subtableBits[prefix];
+                int suffixLength = length - ROOT_BITS;
+                int suffix = codeword & ((1 << suffixLength) - 1);
+                int first = subtableOffsets[prefix] + (suffix << (bits - suffixLength));
+                int last = first + (1 << (bits - suffixLength));
+                for (int i = first; i < last; i++) {
+                    entries[i] = leaf;
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads a codeword and returns its value.
+     */
+    public int decode(BitReader reader) {
+        int entry = entries[reader.peekBits(ROOT_BITS)];
+        if ((entry & SUBTABLE_FLAG) != 0) {
+            reader.skipBits(ROOT_BITS);
+            int bits = (entry >>> 20) & 0x1F;
+            entry = entries[(entry & 0xFFFFF) + reader.peekBits(bits)];
+            reader.skipBits((entry >>> 16) - ROOT_BITS);
+        } else {
+            reader.skipBits(entry >>> 16);
+        }
+        return entry & 0xFFFF;
+    }
+}
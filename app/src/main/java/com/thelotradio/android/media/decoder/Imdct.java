@@ -0,0 +1,114 @@
+package com.thelotradio.android.media.decoder;
+
+/**
+ * An inverse modified discrete cosine transform, computed with a complex FFT of a quarter of the
+ * output length.
+ */
+/* package */ final class Imdct {
+
+    private final int length;
+    private final float scale;
+    private final float[] twiddleCos;
+    private final float[] twiddleSin;
+    private final float[] fftCos;
+    private final float[] fftSin;
+    private final int[] bitReversal;
+    private final float[] real;
+    private final float[] imaginary;
+
+    /**
+     * @param length The number of output samples, a power of two. Each transform reads half as
+     *     many coefficients.
+     * @param scale The factor applied to each output sample.
+     */
+    public Imdct(int length, float scale) {
+        this.length = length;
+        // The twiddles below yield the negated transform.
+        this.scale = -scale;
+        int quarter = length / 4;
+        twiddleCos = new float[quarter];
+        twiddleSin = new float[quarter];
+        for (int i = 0; i < quarter; i++) {
+            double angle = 2 * Math.PI * (i + 0.125) / length;
+            twiddleCos[i] = (float) -Math.cos(angle);
+            twiddleSin[i] = (float) -Math.sin(angle);
+        }
+        fftCos = new float[quarter / 2];
+        fftSin = new float[quarter / 2];
+        for (int i = 0; i < quarter / 2; i++) {
+            double angle = 2 * Math.PI * i / quarter;
+            fftCos[i] = (float) Math.cos(angle);
+            fftSin[i] = (float) Math.sin(angle);
+        }
+        bitReversal = new int[quarter];
+        int bits = Integer.numberOfTrailingZeros(quarter);
+        for (int i = 0; i < quarter; i++) {
+            bitReversal[i] = Integer.reverse(i) >>> (32 - bits);
+        }
+        real = new float[quarter];
+        imaginary = new float[quarter];
+    }
+
+    /**
+     * Transforms {@code length / 2} coefficients from {@code input} into {@code length} samples
+     * in {@code output}.
+     */
+    public void transform(float[] input, int inputOffset, float[] output, int outputOffset) {
+        int half = length / 2;
+        int quarter = length / 4;
+        int eighth = length / 8;
+        // Pre-twiddle into bit reversed order, so that the FFT can work in place.
+        for (int k = 0; k < quarter; k++) {
+            float re = input[inputOffset + half - 1 - 2 * k];
+            float im = input[inputOffset + 2 * k];
+            int j = bitReversal[k];
+            real[j] = re * twiddleCos[k] - im * twiddleSin[k];
+            imaginary[j] = re * twiddleSin[k] + im * twiddleCos[k];
+        }
+        fft(quarter);
+        // Post-twiddle. The result is the middle half of the output, which is antisymmetric in its
+        // first quarter and symmetric in its last.
+        for (int k = 0; k < eighth; k++) {
+            int a = eighth - k - 1;
+            int b = eighth + k;
+            float r0 = imaginary[a] * twiddleSin[a] - real[a] * twiddleCos[a];
+            float i1 = imaginary[a] * twiddleCos[a] + real[a] * twiddleSin[a];
+            float r1 = imaginary[b] * twiddleSin[b] - real[b] * twiddleCos[b];
+            float i0 = imaginary[b] * twiddleCos[b] + real[b] * twiddleSin[b];
+            real[a] = r0;
+            imaginary[a] = i0;
+            real[b] = r1;
+            imaginary[b] = i1;
+        }
+        int middle = outputOffset + quarter;
+        for (int k = 0; k < quarter; k++) {
+            output[middle + 2 * k] = real[k] * scale;
+            output[middle + 2 * k + 1] = imaginary[k] * scale;
+        }
+        for (int k = 0; k < quarter; k++) {
+            output[outputOffset + k] = -output[outputOffset + half - k - 1];
+            output[outputOffset + length - k - 1] = output[outputOffset + half + k];
+        }
+    }
+
+    // An in place radix-2 FFT of bit reversed input, with a positive exponent.
+    private void fft(int size) {
+        for (int span = 1; span < size; span <<= 1) {
+            int stride = size / (2 * span);
+            for (int start = 0; start < size; start += 2 * span) {
+                for (int i = 0; i < span; i++) {
+                    float c = fftCos[i * stride];
+                    float s = fftSin[i * stride];
+                    int p = start + i;
+                    int q = p + span;
+                    float re = real[q] * c - imaginary[q] * s;
+                    float im = real[q] * s + imaginary[q] * c;
+                    real[q] = real[p] - re;
+                    imaginary[q] = imaginary[p] - im;
+                    real[p] += re;
+                    imaginary[p] += im;
+                }
+            }
+        }
+    }
+}
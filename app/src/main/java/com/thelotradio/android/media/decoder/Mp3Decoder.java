@@ -0,0 +1,1005 @@
+package com.thelotradio.android.media.decoder;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * An {@link AudioDecoder} for MPEG-1, MPEG-2 and MPEG-2.5 Layer III audio, given one whole frame,
+ * header included, at a time.
+ * <p/>
+ * Frames refer back into the main data of earlier frames through the bit reservoir. A frame whose
+ * main data starts before the first frame seen since a {@link #reset()} decodes to silence, so that
+ * joining a stream mid-way keeps the timing of every frame.
+ */
+public final class Mp3Decoder implements AudioDecoder {
+
+    private static final int GRANULE_LENGTH = 576;
+    private static final int SUBBANDS = 32;
+    private static final int SUBBAND_LENGTH = 18;
+    private static final int MAX_CHANNELS = 2;
+    private static final int MAX_OUTPUT_SIZE = 2 * GRANULE_LENGTH * MAX_CHANNELS * 2;
+
+    private static final int[] SAMPLE_RATES = {
+            44100, 48000, 32000, 22050, 24000, 16000, 11025, 12000, 8000
+    };
+    private static final int MODE_JOINT_STEREO = 1;
+    private static final int MODE_MONO = 3;
+    private static final int BLOCK_TYPE_SHORT = 2;
+
+    // Main data can start this far back in the frames before, plus the largest frame's own.
+    private static final int MAX_MAIN_DATA_BEGIN = 511;
+    private static final int RESERVOIR_SIZE = MAX_MAIN_DATA_BEGIN + 1441;
+
+    // Quantized values are raised to the power 4/3 by lookup, up to the largest a table can code.
+    private static final int MAX_QUANTIZED_VALUE = 15 + (1 << 13) - 1;
+    private static final float[] POW_4_3 = new float[MAX_QUANTIZED_VALUE + 1];
+    // Gains are powers of 2 in quarter steps, from 2^(-POW_2_OFFSET / 4).
+    private static final int POW_2_OFFSET = 450;
+    private static final float[] POW_2_QUARTER = new float[POW_2_OFFSET + 64];
+
+    private static final int[][] LONG_BAND_BOUNDARIES = new int[SAMPLE_RATES.length][23];
+    private static final int[][] SHORT_BAND_BOUNDARIES = new int[SAMPLE_RATES.length][14];
+
+    // The antialiasing butterflies between adjacent subbands.
+    private static final float[] ALIAS_CS = new float[8];
+    private static final float[] ALIAS_CA = new float[8];
+    // The IMDCT of a long block, and of each of the three windows of a short block.
+    private static final float[] IMDCT_LONG = new float[36 * 18];
+    private static final float[] IMDCT_SHORT = new float[12 * 6];
+    // The windows of the four block types, by which the IMDCT output is multiplied.
+    private static final float[][] WINDOWS = new float[4][36];
+    private static final float[] SHORT_WINDOW = new float[12];
+    // The matrixing of the synthesis filterbank, as a 32 point DCT.
+    private static final float[] SYNTHESIS_DCT = new float[SUBBANDS * SUBBANDS];
+
+    // Intensity stereo ratios for MPEG-1, by intensity position, and for MPEG-2, by the
+    // intensity scale and then the position.
+    private static final float[][] INTENSITY_RATIOS = new float[2][7];
+    private static final float[][] LSF_INTENSITY_RATIOS = new float[2][32];
+
+    static {
+        for (int i = 0; i < POW_4_3.length; i++) {
+            POW_4_3[i] = (float) Math.pow(i, 4d / 3);
+        }
+        for (int i = 0; i < POW_2_QUARTER.length; i++) {
+            POW_2_QUARTER[i] = (float) Math.pow(2, (i - POW_2_OFFSET) / 4d);
+        }
+        for (int rate = 0; rate < SAMPLE_RATES.length; rate++) {
+            for (int band = 0; band < 22; band++) {
+                LONG_BAND_BOUNDARIES[rate][band + 1] =
+                        LONG_BAND_BOUNDARIES[rate][band] + Mp3Tables.LONG_BAND_WIDTHS[rate][band];
+            }
+            for (int band = 0; band < 13; band++) {
+                SHORT_BAND_BOUNDARIES[rate][band + 1] = SHORT_BAND_BOUNDARIES[rate][band]
+                        + Mp3Tables.SHORT_BAND_WIDTHS[rate][band];
+            }
+        }
+        double[] aliasCoefficients = {-0.6, -0.535, -0.33, -0.185, -0.095, -0.041, -0.0142, -0.0037};
+        for (int i = 0; i < 8; i++) {
+            double c = aliasCoefficients[i];
+            ALIAS_CS[i] = (float) (1 / Math.sqrt(1 + c * c));
+            ALIAS_CA[i] = (float) (c / Math.sqrt(1 + c * c));
+        }
+        for (int i = 0; i < 36; i++) {
+            for (int k = 0; k < 18; k++) {
+                IMDCT_LONG[i * 18 + k] =
+                        (float) Math.cos(Math.PI / 72 * (2 * i + 1 + 18) * (2 * k + 1));
+            }
+        }
+        for (int i = 0; i < 12; i++) {
+            for (int k = 0; k < 6; k++) {
+                IMDCT_SHORT[i * 6 + k] =
+                        (float) Math.cos(Math.PI / 24 * (2 * i + 1 + 6) * (2 * k + 1));
+            }
+            SHORT_WINDOW[i] = (float) Math.sin(Math.PI / 12 * (i + 0.5));
+        }
+        for (int i = 0; i < 36; i++) {
+            WINDOWS[0][i] = (float) Math.sin(Math.PI / 36 * (i + 0.5));
+        }
+        for (int i = 0; i < 18; i++) {
+            WINDOWS[1][i] = WINDOWS[0][i];
+            WINDOWS[3][i + 18] = WINDOWS[0][i + 18];
+        }
+        for (int i = 18; i < 24; i++) {
+            WINDOWS[1][i] = 1;
+            WINDOWS[3][i - 6] = 1;
+        }
+        for (int i = 24; i < 30; i++) {
+            WINDOWS[1][i] = (float) Math.sin(Math.PI / 12 * (i - 18 + 0.5));
+            WINDOWS[3][i - 18] = (float) Math.sin(Math.PI / 12 * (i - 24 + 0.5));
+        }
+        for (int i = 0; i < SUBBANDS; i++) {
+            for (int k = 0; k < SUBBANDS; k++) {
+                SYNTHESIS_DCT[i * SUBBANDS + k] =
+                        (float) Math.cos((2 * k + 1) * i * Math.PI / 64);
+            }
+        }
+        for (int position = 0; position < 7; position++) {
+            double ratio = Math.tan(position * Math.PI / 12);
+            boolean infinite = position == 6;
+            INTENSITY_RATIOS[0][position] = infinite ? 1 : (float) (ratio / (1 + ratio));
+            INTENSITY_RATIOS[1][position] = infinite ? 0 : (float) (1 / (1 + ratio));
+        }
+        for (int scale = 0; scale < 2; scale++) {
+            for (int position = 0; position < 32; position++) {
+                // Odd positions attenuate the left channel, even ones the right.
+                LSF_INTENSITY_RATIOS[scale][position] =
+                        (float) Math.pow(2, -(scale + 1) * ((position + 1) / 2) / 4d);
+            }
+        }
+    }
+
+    // The frame being decoded.
+    private final BitReader reader;
+    private boolean lsf;
+    private int sampleRateIndex;
+    private int channelCount;
+    private int mode;
+    private int modeExtension;
+    private int granuleCount;
+
+    // Side information, indexed by granule * 2 + channel.
+    private final int[] scfsi;
+    private final int[] part23Lengths;
+    private final int[] bigValues;
+    private final int[] globalGains;
+    private final int[] scalefacCompress;
+    private final boolean[] windowSwitching;
+    private final int[] blockTypes;
+    private final boolean[] mixedBlocks;
+    private final int[] tableSelects;
+    private final int[] subblockGains;
+    private final int[] region0Counts;
+    private final int[] region1Counts;
+    private final boolean[] preflags;
+    private final int[] scalefacScales;
+    private final int[] count1TableSelects;
+
+    // Scale factors of each channel, of the long bands and of the short bands times 3 windows.
+    // For MPEG-2 intensity stereo, the largest value each one could have had.
+    private final int[][] longScalefacs;
+    private final int[][] shortScalefacs;
+    private final int[] longScalefacLimits;
+    private final int[] shortScalefacLimits;
+    private final int[] lsfScalefacs;
+    private final int[] lsfScalefacLimits;
+
+    // The bit reservoir.
+    private final byte[] reservoir;
+    private int reservoirLength;
+
+    // The granule being decoded, per channel.
+    private final int[] quantized;
+    private final float[][] spectrum;
+    private final int[] nonzeroLengths;
+    private final float[] reordered;
+    private final float[] imdctOutput;
+    private final float[][] overlaps;
+    private final float[] subbandSamples;
+    private final float[][] synthesisBuffers;
+    private final int[] synthesisOffsets;
+    private final float[] dctOutput;
+    private final short[][] pcm;
+
+    private int sampleRate;
+    private int outputChannelCount;
+
+    public Mp3Decoder() {
+        reader = new BitReader();
+        scfsi = new int[MAX_CHANNELS * 4];
+        part23Lengths = new int[4];
+        bigValues = new int[4];
+        globalGains = new int[4];
+        scalefacCompress = new int[4];
+        windowSwitching = new boolean[4];
+        blockTypes = new int[4];
+        mixedBlocks = new boolean[4];
+        tableSelects = new int[4 * 3];
+        subblockGains = new int[4 * 3];
+        region0Counts = new int[4];
+        region1Counts = new int[4];
+        preflags = new boolean[4];
+        scalefacScales = new int[4];
+        count1TableSelects = new int[4];
+        longScalefacs = new int[MAX_CHANNELS][22];
+        shortScalefacs = new int[MAX_CHANNELS][13 * 3];
+        longScalefacLimits = new int[22];
+        shortScalefacLimits = new int[13 * 3];
+        lsfScalefacs = new int[39];
+        lsfScalefacLimits = new int[39];
+        reservoir = new byte[RESERVOIR_SIZE];
+        quantized = new int[GRANULE_LENGTH];
+        spectrum = new float[MAX_CHANNELS][GRANULE_LENGTH];
+        nonzeroLengths = new int[MAX_CHANNELS];
+        reordered = new float[GRANULE_LENGTH];
+        imdctOutput = new float[36];
+        overlaps = new float[MAX_CHANNELS][GRANULE_LENGTH];
+        subbandSamples = new float[GRANULE_LENGTH];
+        synthesisBuffers = new float[MAX_CHANNELS][1024];
+        synthesisOffsets = new int[MAX_CHANNELS];
+        dctOutput = new float[SUBBANDS];
+        pcm = new short[MAX_CHANNELS][GRANULE_LENGTH];
+    }
+
+    @Override
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    @Override
+    public int getChannelCount() {
+        return outputChannelCount;
+    }
+
+    @Override
+    public int getMaxOutputSize() {
+        return MAX_OUTPUT_SIZE;
+    }
+
+    @Override
+    public void reset() {
+        reservoirLength = 0;
+        for (int ch = 0; ch < MAX_CHANNELS; ch++) {
+            Arrays.fill(overlaps[ch], 0);
+            Arrays.fill(synthesisBuffers[ch], 0);
+            synthesisOffsets[ch] = 0;
+        }
+    }
+
+    @Override
+    public int decode(byte[] data, int offset, int length, ByteBuffer output)
+            throws DecoderException {
+        if (length < 4) {
+            throw new DecoderException("Truncated frame");
+        }
+        reader.reset(data, offset, length);
+        int sideInfoLength = readHeader();
+        int mainDataOffset = reader.getPosition() / 8 + sideInfoLength;
+        int mainDataLength = offset + length - mainDataOffset;
+        if (mainDataLength < 0) {
+            throw new DecoderException("Truncated frame");
+        }
+        int mainDataBegin = readSideInfo();
+
+        // Append this frame's main data to the reservoir, keeping only what later frames can use.
+        if (reservoirLength > MAX_MAIN_DATA_BEGIN) {
+            System.arraycopy(reservoir, reservoirLength - MAX_MAIN_DATA_BEGIN, reservoir, 0,
+                    MAX_MAIN_DATA_BEGIN);
+            reservoirLength = MAX_MAIN_DATA_BEGIN;
+        }
+        mainDataLength = Math.min(mainDataLength, RESERVOIR_SIZE - reservoirLength);
+        boolean complete = mainDataBegin <= reservoirLength;
+        int mainDataStart = reservoirLength - mainDataBegin;
+        System.arraycopy(data, mainDataOffset, reservoir, reservoirLength, mainDataLength);
+        reservoirLength += mainDataLength;
+
+        sampleRate = SAMPLE_RATES[sampleRateIndex];
+        outputChannelCount = channelCount;
+        if (!complete) {
+            // The start of the main data is missing, so output silence for the frame.
+            int silentBytes = granuleCount * GRANULE_LENGTH * channelCount * 2;
+            for (int i = 0; i < silentBytes; i += 2) {
+                output.putShort((short) 0);
+            }
+            return granuleCount * GRANULE_LENGTH;
+        }
+
+        reader.reset(reservoir, 0, reservoirLength);
+        reader.setPosition(mainDataStart * 8);
+        for (int gr = 0; gr < granuleCount; gr++) {
+            for (int ch = 0; ch < channelCount; ch++) {
+                int index = gr * 2 + ch;
+                int part2Start = reader.getPosition();
+                if (lsf) {
+                    readLsfScalefacs(index, ch);
+                } else {
+                    readScalefacs(index, gr, ch);
+                }
+                int end = part2Start + part23Lengths[index];
+                readSpectrum(index, end);
+                requantize(index, ch);
+                reader.setPosition(end);
+            }
+            if (mode == MODE_JOINT_STEREO) {
+                processStereo(gr * 2);
+            }
+            for (int ch = 0; ch < channelCount; ch++) {
+                int index = gr * 2 + ch;
+                float[] samples = spectrum[ch];
+                int nonzeroLength = nonzeroLengths[ch];
+                boolean shortBlock = blockTypes[index] == BLOCK_TYPE_SHORT;
+                if (shortBlock) {
+                    nonzeroLength = reorder(samples, nonzeroLength, mixedBlocks[index]);
+                }
+                if (!shortBlock || mixedBlocks[index]) {
+                    nonzeroLength = antialias(samples, nonzeroLength,
+                            shortBlock ? 1 : SUBBANDS - 1);
+                }
+                hybridSynthesis(samples, nonzeroLength, index, ch);
+                polyphaseSynthesis(ch);
+            }
+            writePcm(output);
+        }
+        return granuleCount * GRANULE_LENGTH;
+    }
+
+    /**
+     * Reads the frame header.
+     *
+     * @return The length of the side information that follows it, and its CRC if present.
+     */
+    private int readHeader() throws DecoderException {
+        int sync = reader.readBits(11);
+        int version = reader.readBits(2);
+        int layer = reader.readBits(2);
+        boolean protectedByCrc = reader.readBit() == 0;
+        int bitrateIndex = reader.readBits(4);
+        int rateIndex = reader.readBits(2);
+        reader.skipBits(2);
+        mode = reader.readBits(2);
+        modeExtension = reader.readBits(2);
+        reader.skipBits(4);
+        if (sync != 0x7FF || version == 1 || layer != 1 || bitrateIndex == 15 || rateIndex == 3) {
+            throw new DecoderException("Not an MPEG audio Layer III frame");
+        }
+        lsf = version != 3;
+        sampleRateIndex = rateIndex + (version == 3 ? 0 : version == 2 ? 3 : 6);
+        channelCount = mode == MODE_MONO ? 1 : 2;
+        granuleCount = lsf ? 1 : 2;
+        int sideInfoLength;
+        if (lsf) {
+            sideInfoLength = channelCount == 1 ? 9 : 17;
+        } else {
+            sideInfoLength = channelCount == 1 ? 17 : 32;
+        }
+        return sideInfoLength + (protectedByCrc ? 2 : 0);
+    }
+
+    /**
+     * Reads the side information, from just past the header and any CRC.
+     *
+     * @return main_data_begin.
+     */
+    private int readSideInfo() {
+        int mainDataBegin;
+        if (lsf) {
+            mainDataBegin = reader.readBits(8);
+            reader.skipBits(channelCount == 1 ? 1 : 2);
+        } else {
+            mainDataBegin = reader.readBits(9);
+            reader.skipBits(channelCount == 1 ? 5 : 3);
+            for (int ch = 0; ch < channelCount; ch++) {
+                for (int band = 0; band < 4; band++) {
+                    scfsi[ch * 4 + band] = reader.readBit();
+                }
+            }
+        }
+        for (int gr = 0; gr < granuleCount; gr++) {
+            for (int ch = 0; ch < channelCount; ch++) {
+                int index = gr * 2 + ch;
+                part23Lengths[index] = reader.readBits(12);
+                bigValues[index] = Math.min(reader.readBits(9), GRANULE_LENGTH / 2);
+                globalGains[index] = reader.readBits(8);
+                scalefacCompress[index] = reader.readBits(lsf ? 9 : 4);
+                windowSwitching[index] = reader.readBit() == 1;
+                if (windowSwitching[index]) {
+                    blockTypes[index] = reader.readBits(2);
+                    mixedBlocks[index] = reader.readBit() == 1;
+                    for (int region = 0; region < 2; region++) {
+                        tableSelects[index * 3 + region] = reader.readBits(5);
+                    }
+                    tableSelects[index * 3 + 2] = 0;
+                    for (int window = 0; window < 3; window++) {
+                        subblockGains[index * 3 + window] = reader.readBits(3);
+                    }
+                    // The regions are implicit, with region 2 empty.
+                    region0Counts[index] =
+                            blockTypes[index] == BLOCK_TYPE_SHORT && !mixedBlocks[index] ? 8 : 7;
+                    region1Counts[index] = 20 - region0Counts[index];
+                } else {
+                    blockTypes[index] = 0;
+                    mixedBlocks[index] = false;
+                    for (int region = 0; region < 3; region++) {
+                        tableSelects[index * 3 + region] = reader.readBits(5);
+                    }
+                    for (int window = 0; window < 3; window++) {
+                        subblockGains[index * 3 + window] = 0;
+                    }
+                    region0Counts[index] = reader.readBits(4);
+                    region1Counts[index] = reader.readBits(3);
+                }
+                preflags[index] = !lsf && reader.readBit() == 1;
+                scalefacScales[index] = reader.readBit();
+                count1TableSelects[index] = reader.readBit();
+            }
+        }
+        return mainDataBegin;
+    }
+
+    private void readScalefacs(int index, int gr, int ch) {
+        int[] longScalefac = longScalefacs[ch];
+        int[] shortScalefac = shortScalefacs[ch];
+        int slen1 = Mp3Tables.SCALEFAC_LENGTHS[0][scalefacCompress[index]];
+        int slen2 = Mp3Tables.SCALEFAC_LENGTHS[1][scalefacCompress[index]];
+        if (blockTypes[index] == BLOCK_TYPE_SHORT) {
+            int firstShortBand = 0;
+            if (mixedBlocks[index]) {
+                for (int band = 0; band < 8; band++) {
+                    longScalefac[band] = reader.readBits(slen1);
+                }
+                firstShortBand = 3;
+            }
+            for (int band = firstShortBand; band < 12; band++) {
+                int slen = band < 6 ? slen1 : slen2;
+                for (int window = 0; window < 3; window++) {
+                    shortScalefac[band * 3 + window] = reader.readBits(slen);
+                }
+            }
+            for (int window = 0; window < 3; window++) {
+                shortScalefac[36 + window] = 0;
+            }
+        } else {
+            // With scfsi set, a group of bands reuses the scale factors of the first granule.
+            for (int group = 0; group < 4; group++) {
+                int first = group == 0 ? 0 : group == 1 ? 6 : group == 2 ? 11 : 16;
+                int last = group == 0 ? 6 : group == 1 ? 11 : group == 2 ? 16 : 21;
+                if (gr == 0 || scfsi[ch * 4 + group] == 0) {
+                    int slen = group < 2 ? slen1 : slen2;
+                    for (int band = first; band < last; band++) {
+                        longScalefac[band] = reader.readBits(slen);
+                    }
+                }
+            }
+            longScalefac[21] = 0;
+        }
+    }
+
+    private void readLsfScalefacs(int index, int ch) {
+        int compress = scalefacCompress[index];
+        boolean intensityChannel = ch == 1 && (modeExtension & 1) != 0;
+        int split;
+        int slen0;
+        int slen1;
+        int slen2;
+        int slen3;
+        if (!intensityChannel) {
+            if (compress < 400) {
+                split = 0;
+                slen0 = (compress >> 4) / 5;
+                slen1 = (compress >> 4) % 5;
+                slen2 = (compress & 15) >> 2;
+                slen3 = compress & 3;
+            } else if (compress < 500) {
+                compress -= 400;
+                split = 1;
+                slen0 = (compress >> 2) / 5;
+                slen1 = (compress >> 2) % 5;
+                slen2 = compress & 3;
+                slen3 = 0;
+            } else {
+                compress -= 500;
+                split = 2;
+                slen0 = compress / 3;
+                slen1 = compress % 3;
+                slen2 = 0;
+                slen3 = 0;
+                preflags[index] = true;
+            }
+        } else {
+            compress >>= 1;
+            if (compress < 180) {
+                split = 3;
+                slen0 = compress / 36;
+                slen1 = (compress % 36) / 6;
+                slen2 = compress % 6;
+                slen3 = 0;
+            } else if (compress < 244) {
+                compress -= 180;
+                split = 4;
+                slen0 = (compress & 63) >> 4;
+                slen1 = (compress & 15) >> 2;
+                slen2 = compress & 3;
+                slen3 = 0;
+            } else {
+                compress -= 244;
+                split = 5;
+                slen0 = compress / 3;
+                slen1 = compress % 3;
+                slen2 = 0;
+                slen3 = 0;
+            }
+        }
+        boolean shortBlock = blockTypes[index] == BLOCK_TYPE_SHORT;
+        int blockIndex = !shortBlock ? 0 : mixedBlocks[index] ? 2 : 1;
+        int[] counts = Mp3Tables.LSF_SCALEFAC_COUNTS[split][blockIndex];
+        int count = 0;
+        for (int group = 0; group < 4; group++) {
+            int slen = group == 0 ? slen0 : group == 1 ? slen1 : group == 2 ? slen2 : slen3;
+            for (int i = 0; i < counts[group]; i++) {
+                lsfScalefacs[count] = reader.readBits(slen);
+                lsfScalefacLimits[count] = (1 << slen) - 1;
+                count++;
+            }
+        }
+        int[] longScalefac = longScalefacs[ch];
+        int[] shortScalefac = shortScalefacs[ch];
+        if (!shortBlock) {
+            for (int band = 0; band < 21; band++) {
+                longScalefac[band] = band < count ? lsfScalefacs[band] : 0;
+                longScalefacLimits[band] = band < count ? lsfScalefacLimits[band] : -1;
+            }
+            longScalefac[21] = 0;
+            longScalefacLimits[21] = longScalefacLimits[20];
+        } else {
+            int i = 0;
+            int firstShortBand = 0;
+            if (mixedBlocks[index]) {
+                for (int band = 0; band < 6; band++, i++) {
+                    longScalefac[band] = lsfScalefacs[i];
+                    longScalefacLimits[band] = lsfScalefacLimits[i];
+                }
+                firstShortBand = 3;
+            }
+            for (int band = firstShortBand; band < 12; band++) {
+                for (int window = 0; window < 3; window++, i++) {
+                    shortScalefac[band * 3 + window] = i < count ? lsfScalefacs[i] : 0;
+                    shortScalefacLimits[band * 3 + window] = i < count ? lsfScalefacLimits[i] : -1;
+                }
+            }
+            for (int window = 0; window < 3; window++) {
+                shortScalefac[36 + window] = 0;
+                shortScalefacLimits[36 + window] = shortScalefacLimits[33 + window];
+            }
+        }
+    }
+
+    /**
+     * Reads the Huffman coded values of a granule into {@link #quantized}, up to the end of its
+     * part 2 and 3 data, and sets how many of them are followed only by zeros.
+     */
+    private void readSpectrum(int index, int end) {
+        int[] longBoundaries = LONG_BAND_BOUNDARIES[sampleRateIndex];
+        int region1Start;
+        int region2Start;
+        if (blockTypes[index] == BLOCK_TYPE_SHORT) {
+            region1Start = SHORT_BAND_BOUNDARIES[sampleRateIndex][3] * 3;
+            region2Start = GRANULE_LENGTH;
+        } else if (windowSwitching[index]) {
+            region1Start = longBoundaries[8];
+            region2Start = GRANULE_LENGTH;
+        } else {
+            region1Start = longBoundaries[Math.min(region0Counts[index] + 1, 22)];
+            region2Start =
+                    longBoundaries[Math.min(region0Counts[index] + region1Counts[index] + 2, 22)];
+        }
+        int bigValuesEnd = bigValues[index] * 2;
+        int i = 0;
+        for (int region = 0; region < 3; region++) {
+            int regionEnd = Math.min(bigValuesEnd, region == 0 ? region1Start
+                    : region == 1 ? region2Start : GRANULE_LENGTH);
+            int tableIndex = tableSelects[index * 3 + region];
+            HuffmanTable table = Mp3Tables.BIG_VALUE_TABLES[tableIndex];
+            if (table == null) {
+                for (; i < regionEnd; i++) {
+                    quantized[i] = 0;
+                }
+                continue;
+            }
+            int size = Mp3Tables.BIG_VALUE_TABLE_SIZES[tableIndex];
+            int linbits = Mp3Tables.LINBITS[tableIndex];
+            for (; i < regionEnd; i += 2) {
+                int value = table.decode(reader);
+                int x = value / size;
+                int y = value - x * size;
+                if (x == 15 && linbits > 0) {
+                    x += reader.readBits(linbits);
+                }
+                if (x != 0 && reader.readBit() == 1) {
+                    x = -x;
+                }
+                if (y == 15 && linbits > 0) {
+                    y += reader.readBits(linbits);
+                }
+                if (y != 0 && reader.readBit() == 1) {
+                    y = -y;
+                }
+                quantized[i] = x;
+                quantized[i + 1] = y;
+            }
+        }
+        HuffmanTable count1Table = count1TableSelects[index] == 0
+                ? Mp3Tables.COUNT1_TABLE_A : Mp3Tables.COUNT1_TABLE_B;
+        while (i + 4 <= GRANULE_LENGTH && reader.getPosition() < end) {
+            int value = count1Table.decode(reader);
+            for (int bit = 3; bit >= 0; bit--) {
+                int v = (value >> bit) & 1;
+                if (v != 0 && reader.readBit() == 1) {
+                    v = -1;
+                }
+                quantized[i++] = v;
+            }
+            if (reader.getPosition() > end) {
+                // The last quadruple ran past the end of the data, so it was never sent.
+                i -= 4;
+                break;
+            }
+        }
+        int nonzeroLength = i;
+        for (; i < GRANULE_LENGTH; i++) {
+            quantized[i] = 0;
+        }
+        while (nonzeroLength > 0 && quantized[nonzeroLength - 1] == 0) {
+            nonzeroLength--;
+        }
+        nonzeroLengths[index & 1] = nonzeroLength;
+    }
+
+    /**
+     * Scales the quantized values of a granule into {@link #spectrum}.
+     */
+    private void requantize(int index, int ch) {
+        float[] samples = spectrum[ch];
+        int nonzeroLength = nonzeroLengths[ch];
+        int globalGain = globalGains[index] - 210;
+        int scalefacShift = 1 + scalefacScales[index];
+        int[] longBoundaries = LONG_BAND_BOUNDARIES[sampleRateIndex];
+        int[] shortBoundaries = SHORT_BAND_BOUNDARIES[sampleRateIndex];
+        int[] longScalefac = longScalefacs[ch];
+        int i = 0;
+        int longBands = 22;
+        int firstShortBand = 13;
+        if (blockTypes[index] == BLOCK_TYPE_SHORT) {
+            if (mixedBlocks[index]) {
+                longBands = lsf ? 6 : 8;
+                firstShortBand = 3;
+            } else {
+                longBands = 0;
+                firstShortBand = 0;
+            }
+        }
+        for (int band = 0; band < longBands && i < nonzeroLength; band++) {
+            int scalefac = longScalefac[band] + (preflags[index] ? Mp3Tables.PRETAB[band] : 0);
+            float gain = pow2Quarter(globalGain - (scalefac << scalefacShift));
+            int end = Math.min(longBoundaries[band + 1], nonzeroLength);
+            for (; i < end; i++) {
+                samples[i] = dequantize(quantized[i], gain);
+            }
+        }
+        int[] shortScalefac = shortScalefacs[ch];
+        for (int band = firstShortBand; band < 13 && i < nonzeroLength; band++) {
+            int width = shortBoundaries[band + 1] - shortBoundaries[band];
+            for (int window = 0; window < 3; window++) {
+                int scalefac = shortScalefac[band * 3 + window];
+                float gain = pow2Quarter(globalGain - 8 * subblockGains[index * 3 + window]
+                        - (scalefac << scalefacShift));
+                int end = Math.min(i + width, nonzeroLength);
+                for (; i < end; i++) {
+                    samples[i] = dequantize(quantized[i], gain);
+                }
+            }
+        }
+        for (; i < GRANULE_LENGTH; i++) {
+            samples[i] = 0;
+        }
+    }
+
+    private static float dequantize(int value, float gain) {
+        if (value == 0) {
+            return 0;
+        } else if (value > 0) {
+            return POW_4_3[Math.min(value, MAX_QUANTIZED_VALUE)] * gain;
+        } else {
+            return -POW_4_3[Math.min(-value, MAX_QUANTIZED_VALUE)] * gain;
+        }
+    }
+
+    private static float pow2Quarter(int exponent) {
+        int index = exponent + POW_2_OFFSET;
+        if (index < 0) {
+            return 0;
+        }
+        return POW_2_QUARTER[Math.min(index, POW_2_QUARTER.length - 1)];
+    }
+
+    /**
+     * Applies mid/side and intensity stereo to a granule, band by band.
+     */
+    private void processStereo(int index) {
+        boolean midSide = (modeExtension & 2) != 0;
+        boolean intensity = (modeExtension & 1) != 0;
+        float[] left = spectrum[0];
+        float[] right = spectrum[1];
+        int activeLength = Math.max(nonzeroLengths[0], nonzeroLengths[1]);
+        int rightLength = nonzeroLengths[1];
+        int[] longBoundaries = LONG_BAND_BOUNDARIES[sampleRateIndex];
+        int[] shortBoundaries = SHORT_BAND_BOUNDARIES[sampleRateIndex];
+        int rightIndex = index + 1;
+        int longBands = 22;
+        int firstShortBand = 13;
+        if (blockTypes[index] == BLOCK_TYPE_SHORT) {
+            if (mixedBlocks[index]) {
+                longBands = lsf ? 6 : 8;
+                firstShortBand = 3;
+            } else {
+                longBands = 0;
+                firstShortBand = 0;
+            }
+        }
+        // Intensity stereo covers the bands above the highest one the right channel has audio in,
+        // which for short blocks is tracked for each window.
+        boolean shortAudioInRight = false;
+        int start = longBands > 0 ? longBoundaries[longBands] : 0;
+        for (int band = firstShortBand; band < 13; band++) {
+            int width = shortBoundaries[band + 1] - shortBoundaries[band];
+            for (int window = 0; window < 3; window++) {
+                boolean audio = hasAudio(right, start, start + width);
+                shortAudioInRight |= audio;
+                start += width;
+            }
+        }
+        for (int band = 0; band < longBands; band++) {
+            int bandStart = longBoundaries[band];
+            int bandEnd = longBoundaries[band + 1];
+            boolean intensityBand = intensity && bandStart >= rightLength && !shortAudioInRight;
+            int position = longScalefacs[1][Math.min(band, 20)];
+            int limit = lsf ? longScalefacLimits[band] : 7;
+            if (intensityBand && position != limit) {
+                applyIntensity(left, right, bandStart, bandEnd, position, rightIndex);
+            } else if (midSide && bandStart < activeLength) {
+                applyMidSide(left, right, bandStart, bandEnd);
+            }
+        }
+        if (firstShortBand < 13) {
+            int windowsStart = longBands > 0 ? longBoundaries[longBands] : 0;
+            for (int window = 0; window < 3; window++) {
+                // Find the highest band of this window with audio in the right channel.
+                int firstIntensityBand = firstShortBand;
+                int bandStart = windowsStart;
+                for (int band = firstShortBand; band < 13; band++) {
+                    int width = shortBoundaries[band + 1] - shortBoundaries[band];
+                    int windowStart = bandStart + window * width;
+                    if (hasAudio(right, windowStart, windowStart + width)) {
+                        firstIntensityBand = band + 1;
+                    }
+                    bandStart += 3 * width;
+                }
+                bandStart = windowsStart;
+                for (int band = firstShortBand; band < 13; band++) {
+                    int width = shortBoundaries[band + 1] - shortBoundaries[band];
+                    int windowStart = bandStart + window * width;
+                    int scalefacIndex = Math.min(band, 11) * 3 + window;
+                    int position = shortScalefacs[1][scalefacIndex];
+                    int limit = lsf ? shortScalefacLimits[band * 3 + window] : 7;
+                    if (intensity && band >= firstIntensityBand && position != limit) {
+                        applyIntensity(left, right, windowStart, windowStart + width, position,
+                                rightIndex);
+                    } else if (midSide && windowStart < activeLength) {
+                        applyMidSide(left, right, windowStart, windowStart + width);
+                    }
+                    bandStart += 3 * width;
+                }
+            }
+        }
+        int nonzeroLength = intensity ? GRANULE_LENGTH : activeLength;
+        nonzeroLengths[0] = nonzeroLength;
+        nonzeroLengths[1] = nonzeroLength;
+    }
+
+    private static boolean hasAudio(float[] samples, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (samples[i] != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void applyMidSide(float[] left, float[] right, int start, int end) {
+        final float scale = 0.70710678f;
+        for (int i = start; i < end; i++) {
+            float mid = left[i];
+            float side = right[i];
+            left[i] = (mid + side) * scale;
+            right[i] = (mid - side) * scale;
+        }
+    }
+
+    private void applyIntensity(float[] left, float[] right, int start, int end, int position,
+            int rightIndex) {
+        float leftRatio;
+        float rightRatio;
+        if (!lsf) {
+            leftRatio = INTENSITY_RATIOS[0][position];
+            rightRatio = INTENSITY_RATIOS[1][position];
+        } else {
+            float ratio = LSF_INTENSITY_RATIOS[scalefacCompress[rightIndex] & 1][position & 31];
+            leftRatio = (position & 1) != 0 ? ratio : 1;
+            rightRatio = (position & 1) != 0 ? 1 : ratio;
+        }
+        for (int i = start; i < end; i++) {
+            float value = left[i];
+            left[i] = value * leftRatio;
+            right[i] = value * rightRatio;
+        }
+    }
+
+    /**
+     * Reorders the short bands of a granule from window by window to line by line, so that each
+     * subband holds its six lines of the three windows interleaved.
+     *
+     * @return The length beyond which the samples are still all zeros.
+     */
+    private int reorder(float[] samples, int nonzeroLength, boolean mixed) {
+        int[] shortBoundaries = SHORT_BAND_BOUNDARIES[sampleRateIndex];
+        int firstBand = mixed ? 3 : 0;
+        int first = shortBoundaries[firstBand] * 3;
+        if (nonzeroLength <= first) {
+            return nonzeroLength;
+        }
+        int start = first;
+        int position = start;
+        for (int band = firstBand; band < 13 && start < nonzeroLength; band++) {
+            int width = shortBoundaries[band + 1] - shortBoundaries[band];
+            for (int line = 0; line < width; line++) {
+                for (int window = 0; window < 3; window++) {
+                    reordered[position++] = samples[start + window * width + line];
+                }
+            }
+            start += 3 * width;
+        }
+        System.arraycopy(reordered, first, samples, first, start - first);
+        // The lines of the last band with audio are now spread over all of it.
+        return start;
+    }
+
+    /**
+     * Undoes the aliasing between adjacent subbands of long blocks.
+     *
+     * @return The length beyond which the samples are still all zeros.
+     */
+    private static int antialias(float[] samples, int nonzeroLength, int maxBoundary) {
+        int boundaries = Math.min(maxBoundary, (nonzeroLength + SUBBAND_LENGTH - 1) / SUBBAND_LENGTH);
+        for (int boundary = 1; boundary <= boundaries; boundary++) {
+            int middle = boundary * SUBBAND_LENGTH;
+            for (int i = 0; i < 8; i++) {
+                float low = samples[middle - 1 - i];
+                float high = samples[middle + i];
+                samples[middle - 1 - i] = low * ALIAS_CS[i] - high * ALIAS_CA[i];
+                samples[middle + i] = high * ALIAS_CS[i] + low * ALIAS_CA[i];
+            }
+        }
+        return boundaries == 0 ? nonzeroLength
+                : Math.max(nonzeroLength, boundaries * SUBBAND_LENGTH + 8);
+    }
+
+    /**
+     * Transforms each subband of a granule back to the time domain, overlapping it with the
+     * previous granule, into {@link #subbandSamples} laid out time slot by time slot.
+     */
+    private void hybridSynthesis(float[] samples, int nonzeroLength, int index, int ch) {
+        float[] overlap = overlaps[ch];
+        int activeSubbands = (nonzeroLength + SUBBAND_LENGTH - 1) / SUBBAND_LENGTH;
+        for (int sb = 0; sb < SUBBANDS; sb++) {
+            int base = sb * SUBBAND_LENGTH;
+            if (sb >= activeSubbands) {
+                for (int i = 0; i < SUBBAND_LENGTH; i++) {
+                    subbandSamples[i * SUBBANDS + sb] = overlap[base + i];
+                    overlap[base + i] = 0;
+                }
+            } else {
+                int blockType = blockTypes[index];
+                if (mixedBlocks[index] && sb < 2) {
+                    blockType = 0;
+                }
+                if (blockType == BLOCK_TYPE_SHORT) {
+                    imdctShort(samples, base);
+                } else {
+                    imdctLong(samples, base, WINDOWS[blockType]);
+                }
+                for (int i = 0; i < SUBBAND_LENGTH; i++) {
+                    subbandSamples[i * SUBBANDS + sb] = imdctOutput[i] + overlap[base + i];
+                    overlap[base + i] = imdctOutput[i + SUBBAND_LENGTH];
+                }
+            }
+            if ((sb & 1) != 0) {
+                // Undo the frequency inversion of the odd subbands.
+                for (int i = 1; i < SUBBAND_LENGTH; i += 2) {
+                    subbandSamples[i * SUBBANDS + sb] = -subbandSamples[i * SUBBANDS + sb];
+                }
+            }
+        }
+    }
+
+    private void imdctLong(float[] samples, int base, float[] window) {
+        for (int i = 0; i < 36; i++) {
+            float sum = 0;
+            int row = i * 18;
+            for (int k = 0; k < 18; k++) {
+                sum += samples[base + k] * IMDCT_LONG[row + k];
+            }
+            imdctOutput[i] = sum * window[i];
+        }
+    }
+
+    private void imdctShort(float[] samples, int base) {
+        for (int i = 0; i < 36; i++) {
+            imdctOutput[i] = 0;
+        }
+        for (int window = 0; window < 3; window++) {
+            for (int i = 0; i < 12; i++) {
+                float sum = 0;
+                int row = i * 6;
+                for (int k = 0; k < 6; k++) {
+                    sum += samples[base + 3 * k + window] * IMDCT_SHORT[row + k];
+                }
+                imdctOutput[6 + 6 * window + i] += sum * SHORT_WINDOW[i];
+            }
+        }
+    }
+
+    /**
+     * Runs the polyphase synthesis filterbank over the 18 time slots of {@link #subbandSamples},
+     * into the PCM of the channel.
+     */
+    private void polyphaseSynthesis(int ch) {
+        float[] buffer = synthesisBuffers[ch];
+        short[] channelPcm = pcm[ch];
+        float[] window = Mp3Tables.SYNTHESIS_WINDOW;
+        int offset = synthesisOffsets[ch];
+        for (int slot = 0; slot < SUBBAND_LENGTH; slot++) {
+            int input = slot * SUBBANDS;
+            for (int i = 0; i < SUBBANDS; i++) {
+                float sum = 0;
+                int row = i * SUBBANDS;
+                for (int k = 0; k < SUBBANDS; k++) {
+                    sum += subbandSamples[input + k] * SYNTHESIS_DCT[row + k];
+                }
+                dctOutput[i] = sum;
+            }
+            // The 64 new values of V, from the symmetries of the matrixing.
+            offset = (offset - 64) & 1023;
+            for (int i = 0; i < 16; i++) {
+                buffer[offset + i] = dctOutput[i + 16];
+            }
+            buffer[offset + 16] = 0;
+            for (int i = 17; i < 48; i++) {
+                buffer[offset + i] = -dctOutput[48 - i];
+            }
+            for (int i = 48; i < 64; i++) {
+                buffer[offset + i] = -dctOutput[i - 48];
+            }
+            for (int j = 0; j < SUBBANDS; j++) {
+                float sum = 0;
+                for (int i = 0; i < 8; i++) {
+                    sum += buffer[(offset + 128 * i + j) & 1023] * window[64 * i + j];
+                    sum += buffer[(offset + 128 * i + 96 + j) & 1023] * window[64 * i + 32 + j];
+                }
+                channelPcm[slot * SUBBANDS + j] = clip(sum);
+            }
+        }
+        synthesisOffsets[ch] = offset;
+    }
+
+    private static short clip(float sample) {
+        int value = Math.round(sample * 32768);
+        if (value > Short.MAX_VALUE) {
+            return Short.MAX_VALUE;
+        } else if (value < Short.MIN_VALUE) {
+            return Short.MIN_VALUE;
+        }
+        return (short) value;
+    }
+
+    private void writePcm(ByteBuffer output) {
+        if (channelCount == 1) {
+            for (int i = 0; i < GRANULE_LENGTH; i++) {
+                output.putShort(pcm[0][i]);
+            }
+        } else {
+            for (int i = 0; i < GRANULE_LENGTH; i++) {
+                output.putShort(pcm[0][i]);
+                output.putShort(pcm[1][i]);
+            }
+        }
+    }
+}
@@ -2,6 +2,10 @@ package com.thelotradio.android.model;
 
 import android.net.Uri;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
 /**
  * Provides the Uri for the music stream
  */
@@ -9,7 +13,27 @@ public final class MusicProvider {
     public final static Uri STREAM_64KBPS = Uri.parse("http://thelot.out.airtime.pro:8000/thelot_a");
     public final static Uri STREAM_128KBPS = Uri.parse("http://thelot.out.airtime.pro:8000/thelot_b");
     public final static Uri STREAM_192KBPS = Uri.parse("http://thelot.out.airtime.pro:8000/thelot_c");
+    // The shows before, on and after air, with times in UTC
+    public final static Uri SCHEDULE =
+            Uri.parse("https://thelot.airtime.pro/api/live-info-v2?timezone=UTC&shows=5");
     public final static Uri SAMPLE_MP3 = Uri.parse("https://audiocdn7.mixcloud.com/previews/9/f/b/a/c8df-aa59-484e-9c32-873a5bbad006.mp3");
 
+    // The live stream at every quality, ordered by ascending bitrate. No mirror of the mounts is
+    // known to serve the same stream, so there is nothing to race yet; mirrors go in as the last
+    // arguments once they are.
+    private final static List<Stream> LIVE_STREAMS = Collections.unmodifiableList(Arrays.asList(
+            new Stream(STREAM_64KBPS, 64000),
+            new Stream(STREAM_128KBPS, 128000),
+            new Stream(STREAM_192KBPS, 192000)));
+    // Index into the live streams of the quality to start playback with
+    public final static int DEFAULT_LIVE_STREAM_INDEX = 1;
+
     private MusicProvider() { }
+
+    /**
+     * @return The live stream at every available quality, ordered by ascending bitrate
+     */
+    public static List<Stream> getLiveStreams() {
+        return LIVE_STREAMS;
+    }
 }
@@ -0,0 +1,43 @@
+package com.thelotradio.android.model;
+
+/**
+ * A show on the station's schedule
+ */
+public final class Show {
+    public final String name;
+    // Wall-clock times in ms since the epoch, the end exclusive
+    public final long startTimeMs;
+    public final long endTimeMs;
+
+    public Show(String name, long startTimeMs, long endTimeMs) {
+        this.name = name;
+        this.startTimeMs = startTimeMs;
+        this.endTimeMs = endTimeMs;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof Show)) {
+            return false;
+        }
+        Show other = (Show) obj;
+        return name.equals(other.name) && startTimeMs == other.startTimeMs
+                && endTimeMs == other.endTimeMs;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = name.hashCode();
+        result = 31 * result + (int) (startTimeMs ^ (startTimeMs >>> 32));
+        result = 31 * result + (int) (endTimeMs ^ (endTimeMs >>> 32));
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return name + " [" + startTimeMs + ", " + endTimeMs + ")";
+    }
+}
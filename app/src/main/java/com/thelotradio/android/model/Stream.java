@@ -0,0 +1,28 @@
+package com.thelotradio.android.model;
+
+import android.net.Uri;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * One quality of the live stream
+ */
+public final class Stream {
+    public final Uri uri;
+    public final int bitrate;
+    // Other endpoints serving the same stream, which may be raced against uri
+    public final List<Uri> mirrors;
+
+    /**
+     * @param uri Where the stream is served from
+     * @param bitrate The bitrate of the stream in bits per second
+     * @param mirrors Other endpoints serving the same stream
+     */
+    public Stream(Uri uri, int bitrate, Uri... mirrors) {
+        this.uri = uri;
+        this.bitrate = bitrate;
+        this.mirrors = Collections.unmodifiableList(Arrays.asList(mirrors));
+    }
+}
@@ -0,0 +1,38 @@
+package com.thelotradio.android.net;
+
+/**
+ * How long the phases of opening an HTTP response took. Phases that were skipped, because the
+ * connection was reused or the host was in the {@link DnsCache}, take 0 ms.
+ */
+public final class ConnectionTimings {
+
+    /** The host the response came from. */
+    public final String host;
+    /** Whether the connection was kept alive from an earlier response. */
+    public final boolean reused;
+    /** Whether TLS was resumed from an earlier session, rather than a full handshake. */
+    public final boolean tlsResumed;
+    public final long dnsMs;
+    public final long connectMs;
+    public final long tlsMs;
+    /** From sending the request until the response's status line arrived. */
+    public final long firstByteMs;
+
+    public ConnectionTimings(String host, boolean reused, boolean tlsResumed, long dnsMs,
+            long connectMs, long tlsMs, long firstByteMs) {
+        this.host = host;
+        this.reused = reused;
+        this.tlsResumed = tlsResumed;
+        this.dnsMs = dnsMs;
+        this.connectMs = connectMs;
+        this.tlsMs = tlsMs;
+        this.firstByteMs = firstByteMs;
+    }
+
+    /**
+     * Returns the time from starting to open the connection until the first byte of the response.
+     */
+    public long getTotalMs() {
+        return dnsMs + connectMs + tlsMs + firstByteMs;
+    }
+}
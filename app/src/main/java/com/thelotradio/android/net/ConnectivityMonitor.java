@@ -0,0 +1,95 @@
+package com.thelotradio.android.net;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+import android.os.Handler;
+import android.text.TextUtils;
+
+/**
+ * Watches for changes of the default network, such as walking out of Wi-Fi onto cellular, or
+ * from one Wi-Fi network to another. Connections opened before the change are bound to the old
+ * network and are usually dead.
+ */
+public final class ConnectivityMonitor {
+
+    /**
+     * Listener for network changes. Invoked on the thread that created the monitor.
+     */
+    public interface Listener {
+        /**
+         * Invoked when the default network changed.
+         *
+         * @param networkInfo The new default network, or null if there is none.
+         */
+        void onDefaultNetworkChanged(NetworkInfo networkInfo);
+    }
+
+    private final Context context;
+    private final ConnectivityManager connectivityManager;
+    private final Listener listener;
+    private final BroadcastReceiver receiver;
+    private final Handler handler;
+
+    private boolean started;
+    private String networkKey;
+
+    public ConnectivityMonitor(Context context, Listener listener) {
+        this.context = context;
+        this.listener = listener;
+        connectivityManager =
+                (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        handler = new Handler();
+        receiver = new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                checkDefaultNetwork();
+            }
+        };
+    }
+
+    public void start() {
+        if (started) {
+            return;
+        }
+        started = true;
+        networkKey = getNetworkKey(connectivityManager.getActiveNetworkInfo());
+        // The sticky broadcast delivered on registration matches the network just recorded, so
+        // it isn't reported as a change.
+        context.registerReceiver(receiver,
+                new IntentFilter(ConnectivityManager.CONNECTIVITY_ACTION), null, handler);
+    }
+
+    public void stop() {
+        if (!started) {
+            return;
+        }
+        started = false;
+        context.unregisterReceiver(receiver);
+    }
+
+    private void checkDefaultNetwork() {
+        NetworkInfo networkInfo = connectivityManager.getActiveNetworkInfo();
+        String key = getNetworkKey(networkInfo);
+        if (!TextUtils.equals(key, networkKey)) {
+            networkKey = key;
+            listener.onDefaultNetworkChanged(
+                    networkInfo != null && networkInfo.isConnected() ? networkInfo : null);
+        }
+    }
+
+    /**
+     * Identifies a network by its type and, for Wi-Fi, its SSID.
+     *
+     * @return The key, or null if the network is not connected.
+     */
+    public static String getNetworkKey(NetworkInfo networkInfo) {
+        if (networkInfo == null || !networkInfo.isConnected()) {
+            return null;
+        }
+        return networkInfo.getType() + ":" + networkInfo.getExtraInfo();
+    }
+}
@@ -0,0 +1,161 @@
+package com.thelotradio.android.net;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Keeps HTTP responses on disk together with their validators, so that they can be used while
+ * offline, and revalidated with a conditional request rather than downloaded again. Meant for the
+ * small documents the app polls, not for media.
+ * <p/>
+ * Each response is kept in a file of its own, named after the hash of its URL. The file holds the
+ * magic number {@code LOTC} and the format version, then the URL, the {@code ETag} and
+ * {@code Last-Modified} headers, when the response was last validated, and the body. Reads and
+ * writes block on disk I/O.
+ */
+public final class DiskResponseCache {
+
+    private static final int MAGIC = 0x4C4F5443;
+    private static final int VERSION = 1;
+
+    /**
+     * A cached response.
+     */
+    public static final class Entry {
+
+        public final String url;
+        /** The entity tag of the response, or null if it had none. */
+        public final String etag;
+        /** The {@code Last-Modified} header of the response, or null if it had none. */
+        public final String lastModified;
+        /** When the response was last received or revalidated, in ms since the epoch. */
+        public final long validatedAtMs;
+        public final byte[] body;
+
+        public Entry(String url, String etag, String lastModified, long validatedAtMs,
+                byte[] body) {
+            this.url = url;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.validatedAtMs = validatedAtMs;
+            this.body = body;
+        }
+
+        /**
+         * Returns a copy of the entry after a {@code 304 Not Modified} response, which may carry
+         * new validators.
+         *
+         * @param etag The entity tag sent with the 304, or null to keep the current one.
+         * @param lastModified The {@code Last-Modified} header sent with the 304, or null to keep
+         *     the current one.
+         */
+        public Entry revalidate(String etag, String lastModified, long validatedAtMs) {
+            return new Entry(url, etag != null ? etag : this.etag,
+                    lastModified != null ? lastModified : this.lastModified, validatedAtMs, body);
+        }
+    }
+
+    private final File directory;
+
+    /**
+     * @param directory The directory to keep the responses in. Created when first written to.
+     */
+    public DiskResponseCache(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Returns the response cached for {@code url}, or null if there is none or it is unreadable.
+     */
+    public synchronized Entry get(String url) {
+        File file = getFile(url);
+        if (!file.exists()) {
+            return null;
+        }
+        try {
+            DataInputStream input = new DataInputStream(new FileInputStream(file));
+            try {
+                if (input.readInt() != MAGIC || input.readUnsignedByte() != VERSION) {
+                    return null;
+                }
+                String cachedUrl = input.readUTF();
+                if (!cachedUrl.equals(url)) {
+                    // Another URL with the same hash.
+                    return null;
+                }
+                String etag = readOptionalString(input);
+                String lastModified = readOptionalString(input);
+                long validatedAtMs = input.readLong();
+                byte[] body = new byte[input.readInt()];
+                input.readFully(body);
+                return new Entry(url, etag, lastModified, validatedAtMs, body);
+            } finally {
+                input.close();
+            }
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Caches a response, replacing any cached for the same URL atomically.
+     */
+    public synchronized void put(Entry entry) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + entry.body.length);
+        DataOutputStream output = new DataOutputStream(bytes);
+        output.writeInt(MAGIC);
+        output.writeByte(VERSION);
+        output.writeUTF(entry.url);
+        writeOptionalString(output, entry.etag);
+        writeOptionalString(output, entry.lastModified);
+        output.writeLong(entry.validatedAtMs);
+        output.writeInt(entry.body.length);
+        output.write(entry.body);
+        output.flush();
+
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Failed to create " + directory);
+        }
+        File file = getFile(entry.url);
+        File temporaryFile = new File(file.getPath() + ".tmp");
+        FileOutputStream fileOutput = new FileOutputStream(temporaryFile);
+        try {
+            fileOutput.write(bytes.toByteArray());
+            fileOutput.getFD().sync();
+        } finally {
+            fileOutput.close();
+        }
+        if (!temporaryFile.renameTo(file)) {
+            temporaryFile.delete();
+            throw new IOException("Failed to replace " + file);
+        }
+    }
+
+    /**
+     * Forgets the response cached for {@code url}, if any.
+     */
+    public synchronized void remove(String url) {
+        getFile(url).delete();
+    }
+
+    private File getFile(String url) {
+        return new File(directory, Integer.toHexString(url.hashCode()));
+    }
+
+    private static String readOptionalString(DataInputStream input) throws IOException {
+        return input.readBoolean() ? input.readUTF() : null;
+    }
+
+    private static void writeOptionalString(DataOutputStream output, String value)
+            throws IOException {
+        output.writeBoolean(value != null);
+        if (value != null) {
+            output.writeUTF(value);
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.thelotradio.android.net;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Caches host name lookups for a fixed time. The platform only caches successful lookups for a
+ * couple of seconds, so without this every reconnect to the stream pays for a DNS round trip.
+ * Failed lookups are not cached.
+ */
+public final class DnsCache {
+
+    /**
+     * Resolves host names. Replaced in tests.
+     */
+    /* package */ interface Resolver {
+        InetAddress[] resolve(String host) throws UnknownHostException;
+    }
+
+    public static final long DEFAULT_TTL_MS = 5 * 60 * 1000;
+
+    private static final Resolver SYSTEM_RESOLVER = new Resolver() {
+        @Override
+        public InetAddress[] resolve(String host) throws UnknownHostException {
+            return InetAddress.getAllByName(host);
+        }
+    };
+
+    private final Resolver resolver;
+    private final long ttlNs;
+    private final Map<String, Entry> entries;
+
+    /**
+     * @param ttlMs How long a lookup is reused for.
+     */
+    public DnsCache(long ttlMs) {
+        this(SYSTEM_RESOLVER, ttlMs);
+    }
+
+    /* package */ DnsCache(Resolver resolver, long ttlMs) {
+        this.resolver = resolver;
+        ttlNs = ttlMs * 1000000;
+        entries = new HashMap<>();
+    }
+
+    /**
+     * Returns the addresses of a host, from the cache if they were looked up within the TTL.
+     */
+    public InetAddress[] lookup(String host) throws UnknownHostException {
+        long nowNs = System.nanoTime();
+        synchronized (this) {
+            Entry entry = entries.get(host);
+            if (entry != null && nowNs - entry.resolvedAtNs < ttlNs) {
+                return entry.addresses;
+            }
+        }
+        // Not under the lock, so that a slow lookup doesn't hold up lookups of other hosts.
+        InetAddress[] addresses = resolver.resolve(host);
+        synchronized (this) {
+            entries.put(host, new Entry(addresses, nowNs));
+        }
+        return addresses;
+    }
+
+    /**
+     * Forgets a host, for example because connecting to its cached addresses failed.
+     */
+    public synchronized void invalidate(String host) {
+        entries.remove(host);
+    }
+
+    /**
+     * Forgets all hosts, for example because the device moved to another network.
+     */
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    private static final class Entry {
+
+        public final InetAddress[] addresses;
+        public final long resolvedAtNs;
+
+        public Entry(InetAddress[] addresses, long resolvedAtNs) {
+            this.addresses = addresses;
+            this.resolvedAtNs = resolvedAtNs;
+        }
+    }
+}
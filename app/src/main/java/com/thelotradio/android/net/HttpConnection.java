@@ -0,0 +1,83 @@
+package com.thelotradio.android.net;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+
+/**
+ * A connection to an HTTP server, which is handed back to the {@link HttpConnectionPool} after a
+ * response that leaves it reusable.
+ */
+/* package */ final class HttpConnection {
+
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    public final String key;
+    public final String host;
+    public final Socket socket;
+    public final InputStream input;
+    public final OutputStream output;
+    public final boolean tlsResumed;
+    public final long dnsMs;
+    public final long connectMs;
+    public final long tlsMs;
+
+    private int useCount;
+    private long idleSinceNs;
+
+    public HttpConnection(String key, String host, Socket socket, boolean tlsResumed, long dnsMs,
+            long connectMs, long tlsMs) throws IOException {
+        this.key = key;
+        this.host = host;
+        this.socket = socket;
+        this.tlsResumed = tlsResumed;
+        this.dnsMs = dnsMs;
+        this.connectMs = connectMs;
+        this.tlsMs = tlsMs;
+        input = new BufferedInputStream(socket.getInputStream(), BUFFER_SIZE);
+        output = new BufferedOutputStream(socket.getOutputStream(), BUFFER_SIZE);
+    }
+
+    /**
+     * Marks the start of a request on the connection.
+     */
+    public void onUse() {
+        useCount++;
+    }
+
+    /**
+     * Returns whether the connection served an earlier response.
+     */
+    public boolean isReused() {
+        return useCount > 1;
+    }
+
+    public void onIdle() {
+        idleSinceNs = System.nanoTime();
+    }
+
+    public long getIdleSinceNs() {
+        return idleSinceNs;
+    }
+
+    /**
+     * Returns the timings of opening the connection, or zeros other than the first byte if it was
+     * reused.
+     */
+    public ConnectionTimings getTimings(long firstByteMs) {
+        return isReused() ? new ConnectionTimings(host, true, tlsResumed, 0, 0, 0, firstByteMs)
+                : new ConnectionTimings(host, false, tlsResumed, dnsMs, connectMs, tlsMs,
+                        firstByteMs);
+    }
+
+    public void close() {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // Nothing left to do.
+        }
+    }
+}
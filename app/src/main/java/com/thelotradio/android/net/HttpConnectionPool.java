@@ -0,0 +1,211 @@
+package com.thelotradio.android.net;
+
+import android.content.Context;
+import android.net.SSLCertificateSocketFactory;
+import android.net.SSLSessionCache;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLPeerUnverifiedException;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+
+/**
+ * Opens HTTP and HTTPS connections and keeps them alive between responses, so that reconnecting
+ * to the stream, or switching to another bitrate on the same server, can skip the DNS lookup, the
+ * TCP handshake and the TLS handshake.
+ * <p/>
+ * Host names are resolved through a {@link DnsCache}, and TLS sessions are resumed from a session
+ * cache that outlives the process. Sockets ask for a large receive buffer before connecting, so
+ * that the TCP window can open up to the rate of the stream from the start.
+ */
+public final class HttpConnectionPool {
+
+    public static final int SOCKET_RECEIVE_BUFFER_SIZE = 64 * 1024;
+
+    private static final int TLS_HANDSHAKE_TIMEOUT_MS = 8000;
+    private static final int MAX_IDLE_CONNECTIONS = 4;
+    private static final long KEEP_ALIVE_NS = 60L * 1000 * 1000 * 1000;
+
+    private static HttpConnectionPool instance;
+
+    private final SSLSocketFactory sslSocketFactory;
+    private final DnsCache dnsCache;
+    private final ArrayDeque<HttpConnection> idleConnections;
+
+    /**
+     * Returns the pool shared by all players in the process.
+     */
+    public static synchronized HttpConnectionPool getInstance(Context context) {
+        if (instance == null) {
+            SSLSocketFactory sslSocketFactory = SSLCertificateSocketFactory.getDefault(
+                    TLS_HANDSHAKE_TIMEOUT_MS, new SSLSessionCache(context.getApplicationContext()));
+            instance = new HttpConnectionPool(sslSocketFactory,
+                    new DnsCache(DnsCache.DEFAULT_TTL_MS));
+        }
+        return instance;
+    }
+
+    /**
+     * @param sslSocketFactory Creates TLS sockets layered over connected sockets.
+     * @param dnsCache Resolves host names.
+     */
+    public HttpConnectionPool(SSLSocketFactory sslSocketFactory, DnsCache dnsCache) {
+        this.sslSocketFactory = sslSocketFactory;
+        this.dnsCache = dnsCache;
+        idleConnections = new ArrayDeque<>();
+    }
+
+    public DnsCache getDnsCache() {
+        return dnsCache;
+    }
+
+    public synchronized int getIdleConnectionCount() {
+        return idleConnections.size();
+    }
+
+    /**
+     * Closes all idle connections, for example because the device moved to another network.
+     */
+    public void evictAll() {
+        ArrayDeque<HttpConnection> evicted;
+        synchronized (this) {
+            evicted = idleConnections.clone();
+            idleConnections.clear();
+        }
+        for (HttpConnection connection : evicted) {
+            connection.close();
+        }
+    }
+
+    /**
+     * Forgets the DNS lookups and closes the idle connections, which belong to the network the
+     * device just left. Responses being read are left alone, see
+     * {@link PooledHttpDataSource#abort()}.
+     */
+    public void onNetworkChanged() {
+        dnsCache.clear();
+        evictAll();
+    }
+
+    /**
+     * Returns an idle connection to the server, or opens a new one.
+     *
+     * @param secure Whether the connection is for HTTPS.
+     * @param allowReuse Whether an idle connection may be returned.
+     */
+    /* package */ HttpConnection get(boolean secure, String host, int port, int connectTimeoutMs,
+            int readTimeoutMs, boolean allowReuse) throws IOException {
+        String key = (secure ? "https://" : "http://") + host + ":" + port;
+        if (allowReuse) {
+            HttpConnection connection = takeIdle(key);
+            if (connection != null) {
+                connection.socket.setSoTimeout(readTimeoutMs);
+                connection.onUse();
+                return connection;
+            }
+        }
+        HttpConnection connection = connect(key, secure, host, port, connectTimeoutMs,
+                readTimeoutMs);
+        connection.onUse();
+        return connection;
+    }
+
+    /**
+     * Returns a connection whose response was read completely, so that it can serve another.
+     */
+    /* package */ void recycle(HttpConnection connection) {
+        connection.onIdle();
+        HttpConnection evicted = null;
+        synchronized (this) {
+            idleConnections.addFirst(connection);
+            if (idleConnections.size() > MAX_IDLE_CONNECTIONS) {
+                evicted = idleConnections.removeLast();
+            }
+        }
+        if (evicted != null) {
+            evicted.close();
+        }
+    }
+
+    private HttpConnection takeIdle(String key) {
+        long nowNs = System.nanoTime();
+        HttpConnection match = null;
+        synchronized (this) {
+            Iterator<HttpConnection> iterator = idleConnections.iterator();
+            while (iterator.hasNext()) {
+                HttpConnection connection = iterator.next();
+                if (nowNs - connection.getIdleSinceNs() > KEEP_ALIVE_NS
+                        || connection.socket.isClosed()) {
+                    iterator.remove();
+                    connection.close();
+                } else if (match == null && connection.key.equals(key)) {
+                    iterator.remove();
+                    match = connection;
+                }
+            }
+        }
+        return match;
+    }
+
+    private HttpConnection connect(String key, boolean secure, String host, int port,
+            int connectTimeoutMs, int readTimeoutMs) throws IOException {
+        long startNs = System.nanoTime();
+        InetAddress[] addresses = dnsCache.lookup(host);
+        long connectStartNs = System.nanoTime();
+        Socket socket = null;
+        IOException connectException = null;
+        for (InetAddress address : addresses) {
+            socket = new Socket();
+            try {
+                socket.setReceiveBufferSize(SOCKET_RECEIVE_BUFFER_SIZE);
+                socket.setTcpNoDelay(true);
+                socket.connect(new InetSocketAddress(address, port), connectTimeoutMs);
+                connectException = null;
+                break;
+            } catch (IOException e) {
+                socket.close();
+                connectException = e;
+            }
+        }
+        if (connectException != null) {
+            // The host may have moved.
+            dnsCache.invalidate(host);
+            throw connectException;
+        }
+        socket.setSoTimeout(readTimeoutMs);
+        long tlsStartNs = System.nanoTime();
+        boolean tlsResumed = false;
+        if (secure) {
+            try {
+                SSLSocket sslSocket = (SSLSocket) sslSocketFactory.createSocket(socket, host, port,
+                        true);
+                sslSocket.startHandshake();
+                if (!HttpsURLConnection.getDefaultHostnameVerifier().verify(host,
+                        sslSocket.getSession())) {
+                    throw new SSLPeerUnverifiedException("Hostname " + host + " not verified");
+                }
+                // A resumed session was created by an earlier handshake.
+                tlsResumed = sslSocket.getSession().getCreationTime()
+                        < System.currentTimeMillis() - toMs(System.nanoTime() - tlsStartNs) - 1;
+                socket = sslSocket;
+            } catch (IOException e) {
+                socket.close();
+                throw e;
+            }
+        }
+        long endNs = System.nanoTime();
+        return new HttpConnection(key, host, socket, tlsResumed, toMs(connectStartNs - startNs),
+                toMs(tlsStartNs - connectStartNs), toMs(endNs - tlsStartNs));
+    }
+
+    private static long toMs(long ns) {
+        return ns / 1000000;
+    }
+}
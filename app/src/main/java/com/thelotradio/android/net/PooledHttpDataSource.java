@@ -0,0 +1,569 @@
+package com.thelotradio.android.net;
+
+import android.net.Uri;
+import android.os.Handler;
+
+import com.google.android.exoplayer.C;
+import com.google.android.exoplayer.upstream.DataSpec;
+import com.google.android.exoplayer.upstream.HttpDataSource;
+import com.google.android.exoplayer.upstream.TransferListener;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.ProtocolException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An {@link HttpDataSource} that speaks HTTP/1.1 over connections from an
+ * {@link HttpConnectionPool}, rather than opening a new {@link java.net.HttpURLConnection} for
+ * every request. A connection goes back to the pool once its response has been read completely.
+ * Icecast serves live streams without a length, so those connections can't be reused, but their
+ * reconnects still skip the DNS lookup and resume the TLS session.
+ * <p/>
+ * Same-protocol redirects are followed, and the SHOUTcast {@code ICY 200 OK} status line is
+ * accepted. How long each phase of opening a response took is reported as
+ * {@link ConnectionTimings}.
+ */
+public final class PooledHttpDataSource implements HttpDataSource {
+
+    /**
+     * Listener for connection events.
+     */
+    public interface EventListener {
+        /**
+         * Invoked when a response has been opened, with how long that took.
+         */
+        void onConnectionOpened(ConnectionTimings timings);
+    }
+
+    private static final int MAX_REDIRECTS = 5;
+    private static final int MAX_LINE_LENGTH = 8 * 1024;
+    private static final int SKIP_BUFFER_LENGTH = 4 * 1024;
+    private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+
+    private final HttpConnectionPool pool;
+    private final String userAgent;
+    private final TransferListener listener;
+    private final int connectTimeoutMillis;
+    private final int readTimeoutMillis;
+    private final Handler eventHandler;
+    private final EventListener eventListener;
+    private final HashMap<String, String> requestProperties;
+    private final StringBuilder line;
+
+    private DataSpec dataSpec;
+    private volatile HttpConnection connection;
+    private volatile boolean aborted;
+    private String uri;
+    private Map<String, List<String>> responseHeaders;
+    private boolean opened;
+    private ConnectionTimings timings;
+    private byte[] skipBuffer;
+
+    // Framing of the response body
+    private boolean keepAlive;
+    private boolean chunked;
+    private long bodyBytesRemaining;
+    private long chunkBytesRemaining;
+    private boolean bodyEnded;
+
+    private long bytesToSkip;
+    private long bytesToRead;
+    private long bytesSkipped;
+    private long bytesRead;
+
+    /**
+     * @param pool The pool to take connections from.
+     * @param userAgent The User-Agent string to send with requests.
+     * @param listener An optional listener.
+     * @param connectTimeoutMillis The connection timeout, in milliseconds.
+     * @param readTimeoutMillis The read timeout, in milliseconds.
+     * @param eventHandler A handler for events. May be null if delivery of events is not required.
+     * @param eventListener A listener of events. May be null if delivery of events is not required.
+     */
+    public PooledHttpDataSource(HttpConnectionPool pool, String userAgent,
+            TransferListener listener, int connectTimeoutMillis, int readTimeoutMillis,
+            Handler eventHandler, EventListener eventListener) {
+        this.pool = pool;
+        this.userAgent = userAgent;
+        this.listener = listener;
+        this.connectTimeoutMillis = connectTimeoutMillis;
+        this.readTimeoutMillis = readTimeoutMillis;
+        this.eventHandler = eventHandler;
+        this.eventListener = eventListener;
+        requestProperties = new HashMap<>();
+        line = new StringBuilder();
+    }
+
+    @Override
+    public String getUri() {
+        return uri;
+    }
+
+    @Override
+    public Map<String, List<String>> getResponseHeaders() {
+        return responseHeaders;
+    }
+
+    /**
+     * Returns how long opening the current or last response took, or null if none was opened.
+     */
+    public ConnectionTimings getTimings() {
+        return timings;
+    }
+
+    @Override
+    public void setRequestProperty(String name, String value) {
+        synchronized (requestProperties) {
+            requestProperties.put(name, value);
+        }
+    }
+
+    @Override
+    public void clearRequestProperty(String name) {
+        synchronized (requestProperties) {
+            requestProperties.remove(name);
+        }
+    }
+
+    @Override
+    public void clearAllRequestProperties() {
+        synchronized (requestProperties) {
+            requestProperties.clear();
+        }
+    }
+
+    /**
+     * Closes the connection of the response being opened or read, which makes a call blocked on it
+     * fail right away, and makes any further open fail. May be called from any thread. The source
+     * must still be closed as usual.
+     */
+    public void abort() {
+        aborted = true;
+        HttpConnection connection = this.connection;
+        if (connection != null) {
+            connection.close();
+        }
+    }
+
+    @Override
+    public long open(DataSpec dataSpec) throws HttpDataSourceException {
+        this.dataSpec = dataSpec;
+        bytesRead = 0;
+        bytesSkipped = 0;
+        Uri requestUri = dataSpec.uri;
+        int responseCode;
+        int redirectCount = 0;
+        while (true) {
+            responseCode = request(requestUri);
+            if (!isRedirect(responseCode)) {
+                break;
+            }
+            String location = getHeader(responseHeaders, "Location");
+            closeConnection();
+            if (location == null) {
+                throw new HttpDataSourceException("Redirect without a location", dataSpec,
+                        HttpDataSourceException.TYPE_OPEN);
+            }
+            Uri target = resolve(requestUri, location);
+            if (target.getScheme() == null
+                    || !target.getScheme().equalsIgnoreCase(requestUri.getScheme())) {
+                throw new HttpDataSourceException("Unsupported cross-protocol redirect", dataSpec,
+                        HttpDataSourceException.TYPE_OPEN);
+            }
+            if (++redirectCount > MAX_REDIRECTS) {
+                throw new HttpDataSourceException("Too many redirects: " + redirectCount,
+                        dataSpec, HttpDataSourceException.TYPE_OPEN);
+            }
+            requestUri = target;
+        }
+        uri = requestUri.toString();
+
+        if (responseCode < 200 || responseCode > 299) {
+            Map<String, List<String>> headers = responseHeaders;
+            closeConnection();
+            throw new InvalidResponseCodeException(responseCode, headers, dataSpec);
+        }
+
+        // If the server ignored the range and sent the whole resource, skip to the position.
+        bytesToSkip = responseCode == 200 ? dataSpec.position : 0;
+        if (dataSpec.length != C.LENGTH_UNBOUNDED) {
+            bytesToRead = dataSpec.length;
+        } else if (!chunked && bodyBytesRemaining != C.LENGTH_UNBOUNDED) {
+            bytesToRead = bodyBytesRemaining - bytesToSkip;
+        } else {
+            bytesToRead = C.LENGTH_UNBOUNDED;
+        }
+
+        opened = true;
+        if (listener != null) {
+            listener.onTransferStart();
+        }
+        notifyConnectionOpened(timings);
+        return bytesToRead;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int readLength) throws HttpDataSourceException {
+        try {
+            skipInternal();
+            return readInternal(buffer, offset, readLength);
+        } catch (IOException e) {
+            throw new HttpDataSourceException(e, dataSpec, HttpDataSourceException.TYPE_READ);
+        }
+    }
+
+    @Override
+    public void close() throws HttpDataSourceException {
+        try {
+            closeConnection();
+        } finally {
+            if (opened) {
+                opened = false;
+                if (listener != null) {
+                    listener.onTransferEnd();
+                }
+            }
+        }
+    }
+
+    /**
+     * Sends a request for a URI and reads the head of the response. If a kept-alive connection
+     * turns out to have been closed by the server, the request is retried on a new connection.
+     *
+     * @return The response code.
+     */
+    private int request(Uri requestUri) throws HttpDataSourceException {
+        String scheme = requestUri.getScheme();
+        boolean secure = "https".equalsIgnoreCase(scheme);
+        if (!secure && !"http".equalsIgnoreCase(scheme)) {
+            throw new HttpDataSourceException("Unsupported scheme: " + scheme, dataSpec,
+                    HttpDataSourceException.TYPE_OPEN);
+        }
+        String host = requestUri.getHost();
+        int port = requestUri.getPort() != -1 ? requestUri.getPort() : secure ? 443 : 80;
+        for (boolean allowReuse = true; ; allowReuse = false) {
+            if (aborted) {
+                throw new HttpDataSourceException("Aborted", dataSpec,
+                        HttpDataSourceException.TYPE_OPEN);
+            }
+            try {
+                connection = pool.get(secure, host, port, connectTimeoutMillis, readTimeoutMillis,
+                        allowReuse);
+                if (aborted) {
+                    // Aborted while connecting, before the connection could be closed.
+                    connection.close();
+                }
+            } catch (IOException e) {
+                throw new HttpDataSourceException("Unable to connect to " + requestUri, e,
+                        dataSpec, HttpDataSourceException.TYPE_OPEN);
+            }
+            try {
+                long requestStartNs = System.nanoTime();
+                writeRequest(requestUri, host, port, secure);
+                int responseCode = readResponseHead();
+                timings = connection.getTimings((System.nanoTime() - requestStartNs) / 1000000);
+                return responseCode;
+            } catch (IOException e) {
+                boolean stale = connection.isReused();
+                connection.close();
+                connection = null;
+                if (!stale || aborted) {
+                    throw new HttpDataSourceException("Unable to connect to " + requestUri, e,
+                            dataSpec, HttpDataSourceException.TYPE_OPEN);
+                }
+            }
+        }
+    }
+
+    private void writeRequest(Uri requestUri, String host, int port, boolean secure)
+            throws IOException {
+        StringBuilder request = new StringBuilder(256);
+        String path = requestUri.getEncodedPath();
+        request.append(dataSpec.postBody != null ? "POST " : "GET ")
+                .append(path == null || path.isEmpty() ? "/" : path);
+        if (requestUri.getEncodedQuery() != null) {
+            request.append('?').append(requestUri.getEncodedQuery());
+        }
+        request.append(" HTTP/1.1\r\nHost: ").append(host);
+        if (port != (secure ? 443 : 80)) {
+            request.append(':').append(port);
+        }
+        request.append("\r\nUser-Agent: ").append(userAgent)
+                .append("\r\nAccept-Encoding: identity\r\nConnection: keep-alive\r\n");
+        if (dataSpec.position != 0 || dataSpec.length != C.LENGTH_UNBOUNDED) {
+            request.append("Range: bytes=").append(dataSpec.position).append('-');
+            if (dataSpec.length != C.LENGTH_UNBOUNDED) {
+                request.append(dataSpec.position + dataSpec.length - 1);
+            }
+            request.append("\r\n");
+        }
+        if (dataSpec.postBody != null) {
+            request.append("Content-Length: ").append(dataSpec.postBody.length).append("\r\n");
+        }
+        synchronized (requestProperties) {
+            for (Map.Entry<String, String> property : requestProperties.entrySet()) {
+                request.append(property.getKey()).append(": ").append(property.getValue())
+                        .append("\r\n");
+            }
+        }
+        request.append("\r\n");
+        connection.output.write(request.toString().getBytes(ISO_8859_1));
+        if (dataSpec.postBody != null) {
+            connection.output.write(dataSpec.postBody);
+        }
+        connection.output.flush();
+    }
+
+    /**
+     * Reads the status line and headers of a response, and works out how its body is framed.
+     *
+     * @return The response code.
+     */
+    private int readResponseHead() throws IOException {
+        String statusLine = readLine();
+        if (statusLine == null) {
+            throw new EOFException("Connection closed before the response");
+        }
+        // "HTTP/1.1 200 OK", or "ICY 200 OK" from SHOUTcast servers.
+        int firstSpace = statusLine.indexOf(' ');
+        int responseCode;
+        try {
+            responseCode = Integer.parseInt(statusLine.substring(firstSpace + 1,
+                    Math.min(statusLine.length(), firstSpace + 4)));
+        } catch (RuntimeException e) {
+            throw new ProtocolException("Malformed status line: " + statusLine);
+        }
+        boolean http11 = statusLine.startsWith("HTTP/1.1");
+
+        Map<String, List<String>> headers = new LinkedHashMap<>();
+        String header;
+        while ((header = readLine()) != null && !header.isEmpty()) {
+            int colon = header.indexOf(':');
+            if (colon <= 0) {
+                continue;
+            }
+            String name = header.substring(0, colon).trim();
+            List<String> values = headers.get(name);
+            if (values == null) {
+                values = new ArrayList<>(1);
+                headers.put(name, values);
+            }
+            values.add(header.substring(colon + 1).trim());
+        }
+        if (header == null) {
+            throw new EOFException("Connection closed in the response headers");
+        }
+        responseHeaders = Collections.unmodifiableMap(headers);
+
+        String connectionHeader = getHeader(headers, "Connection");
+        keepAlive = http11 ? !"close".equalsIgnoreCase(connectionHeader)
+                : "keep-alive".equalsIgnoreCase(connectionHeader);
+        chunked = "chunked".equalsIgnoreCase(getHeader(headers, "Transfer-Encoding"));
+        chunkBytesRemaining = 0;
+        bodyBytesRemaining = C.LENGTH_UNBOUNDED;
+        if (responseCode == 204 || responseCode == 304) {
+            bodyBytesRemaining = 0;
+        } else if (!chunked) {
+            String contentLength = getHeader(headers, "Content-Length");
+            if (contentLength != null) {
+                try {
+                    bodyBytesRemaining = Long.parseLong(contentLength);
+                } catch (NumberFormatException e) {
+                    throw new ProtocolException("Malformed Content-Length: " + contentLength);
+                }
+            } else {
+                // The body ends when the server closes the connection.
+                keepAlive = false;
+            }
+        }
+        bodyEnded = bodyBytesRemaining == 0;
+        return responseCode;
+    }
+
+    private void skipInternal() throws IOException {
+        while (bytesSkipped < bytesToSkip) {
+            if (skipBuffer == null) {
+                skipBuffer = new byte[SKIP_BUFFER_LENGTH];
+            }
+            int bytesRead = readBody(skipBuffer, 0,
+                    (int) Math.min(bytesToSkip - bytesSkipped, SKIP_BUFFER_LENGTH));
+            if (bytesRead == -1) {
+                throw new EOFException();
+            }
+            bytesSkipped += bytesRead;
+            if (listener != null) {
+                listener.onBytesTransferred(bytesRead);
+            }
+        }
+    }
+
+    private int readInternal(byte[] buffer, int offset, int readLength) throws IOException {
+        if (bytesToRead != C.LENGTH_UNBOUNDED) {
+            long bytesRemaining = bytesToRead - bytesRead;
+            if (bytesRemaining == 0) {
+                return C.RESULT_END_OF_INPUT;
+            }
+            readLength = (int) Math.min(readLength, bytesRemaining);
+        }
+        int read = readBody(buffer, offset, readLength);
+        if (read == -1) {
+            if (bytesToRead != C.LENGTH_UNBOUNDED) {
+                throw new EOFException();
+            }
+            return C.RESULT_END_OF_INPUT;
+        }
+        bytesRead += read;
+        if (listener != null) {
+            listener.onBytesTransferred(read);
+        }
+        return read;
+    }
+
+    /**
+     * Reads from the body of the response, following its framing.
+     *
+     * @return The number of bytes read, or -1 at the end of the body.
+     */
+    private int readBody(byte[] buffer, int offset, int readLength) throws IOException {
+        if (bodyEnded) {
+            return -1;
+        }
+        if (chunked) {
+            if (chunkBytesRemaining == 0) {
+                readChunkSize();
+                if (bodyEnded) {
+                    return -1;
+                }
+            }
+            readLength = (int) Math.min(readLength, chunkBytesRemaining);
+        } else if (bodyBytesRemaining != C.LENGTH_UNBOUNDED) {
+            readLength = (int) Math.min(readLength, bodyBytesRemaining);
+        }
+        int read = connection.input.read(buffer, offset, readLength);
+        if (read == -1) {
+            if (chunked || bodyBytesRemaining != C.LENGTH_UNBOUNDED) {
+                throw new EOFException("Response body truncated");
+            }
+            bodyEnded = true;
+            return -1;
+        }
+        if (chunked) {
+            chunkBytesRemaining -= read;
+            if (chunkBytesRemaining == 0) {
+                // The line break after the chunk.
+                readLine();
+            }
+        } else if (bodyBytesRemaining != C.LENGTH_UNBOUNDED) {
+            bodyBytesRemaining -= read;
+            bodyEnded = bodyBytesRemaining == 0;
+        }
+        return read;
+    }
+
+    private void readChunkSize() throws IOException {
+        String sizeLine = readLine();
+        if (sizeLine == null) {
+            throw new EOFException("Response body truncated");
+        }
+        int extension = sizeLine.indexOf(';');
+        if (extension != -1) {
+            sizeLine = sizeLine.substring(0, extension);
+        }
+        try {
+            chunkBytesRemaining = Long.parseLong(sizeLine.trim(), 16);
+        } catch (NumberFormatException e) {
+            throw new ProtocolException("Malformed chunk size: " + sizeLine);
+        }
+        if (chunkBytesRemaining == 0) {
+            // Skip the trailers.
+            String trailer;
+            while ((trailer = readLine()) != null && !trailer.isEmpty()) {
+                // Ignored.
+            }
+            bodyEnded = true;
+        }
+    }
+
+    /**
+     * Reads a line of the response head, without its line break.
+     *
+     * @return The line, or null if the connection closed before any of it.
+     */
+    private String readLine() throws IOException {
+        line.setLength(0);
+        int b;
+        while ((b = connection.input.read()) != -1 && b != '\n') {
+            if (line.length() == MAX_LINE_LENGTH) {
+                throw new ProtocolException("Line too long");
+            }
+            line.append((char) b);
+        }
+        if (b == -1 && line.length() == 0) {
+            return null;
+        }
+        int length = line.length();
+        if (length > 0 && line.charAt(length - 1) == '\r') {
+            line.setLength(length - 1);
+        }
+        return line.toString();
+    }
+
+    /**
+     * Hands the connection back to the pool if the response was read completely and the server
+     * keeps it alive, and closes it otherwise. Reading the rest of a live stream would never end.
+     */
+    private void closeConnection() {
+        if (connection == null) {
+            return;
+        }
+        if (keepAlive && bodyEnded) {
+            pool.recycle(connection);
+        } else {
+            connection.close();
+        }
+        connection = null;
+    }
+
+    private void notifyConnectionOpened(final ConnectionTimings timings) {
+        if (eventHandler != null && eventListener != null) {
+            eventHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    eventListener.onConnectionOpened(timings);
+                }
+            });
+        }
+    }
+
+    private Uri resolve(Uri base, String location) throws HttpDataSourceException {
+        try {
+            return Uri.parse(new URI(base.toString()).resolve(location).toString());
+        } catch (URISyntaxException | IllegalArgumentException e) {
+            throw new HttpDataSourceException("Malformed redirect: " + location, dataSpec,
+                    HttpDataSourceException.TYPE_OPEN);
+        }
+    }
+
+    private static boolean isRedirect(int responseCode) {
+        return responseCode == 300 || responseCode == 301 || responseCode == 302
+                || responseCode == 303 || responseCode == 307 || responseCode == 308;
+    }
+
+    private static String getHeader(Map<String, List<String>> headers, String name) {
+        for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+            if (name.equalsIgnoreCase(header.getKey()) && !header.getValue().isEmpty()) {
+                return header.getValue().get(0);
+            }
+        }
+        return null;
+    }
+}
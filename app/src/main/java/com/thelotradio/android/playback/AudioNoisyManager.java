@@ -5,36 +5,54 @@ import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
 import android.media.AudioManager;
+import android.os.Handler;
 
 /**
- * Manages the AudioManager.ACTION_AUDIO_BECOMING_NOISY for the application
+ * Manages the AudioManager.ACTION_AUDIO_BECOMING_NOISY for a playback, pausing it when headphones
+ * are unplugged. The broadcast is received on the handler's thread, so that the pause doesn't
+ * wait on a busy main thread.
  */
 public final class AudioNoisyManager {
-    private static boolean mAudioNoisyReceiverRegistered;
-    private static Playback playback;
-    private static AudioNoisyReceiver audioNoisyReceiver = new AudioNoisyReceiver();
     private static final IntentFilter audioNoisyIntentFilter =
             new IntentFilter(AudioManager.ACTION_AUDIO_BECOMING_NOISY);
 
-    private AudioNoisyManager() { }
+    private final Context context;
+    private final Handler handler;
+    private final AudioNoisyReceiver audioNoisyReceiver;
+    private boolean audioNoisyReceiverRegistered;
 
-    public static void registerAudioNoisyReceiver(Context context, Playback playback) {
-        if (!mAudioNoisyReceiverRegistered) {
-            AudioNoisyManager.playback = playback;
-            context.registerReceiver(audioNoisyReceiver, audioNoisyIntentFilter);
-            mAudioNoisyReceiverRegistered = true;
+    /**
+     * @param context The context with which to register.
+     * @param playback The playback to pause.
+     * @param handler The handler on whose thread to pause the playback.
+     */
+    public AudioNoisyManager(Context context, Playback playback, Handler handler) {
+        this.context = context;
+        this.handler = handler;
+        audioNoisyReceiver = new AudioNoisyReceiver(playback);
+    }
+
+    public void registerAudioNoisyReceiver() {
+        if (!audioNoisyReceiverRegistered) {
+            context.registerReceiver(audioNoisyReceiver, audioNoisyIntentFilter, null, handler);
+            audioNoisyReceiverRegistered = true;
         }
     }
 
-    public static void unregisterAudioNoisyReceiver(Context context) {
-        if (mAudioNoisyReceiverRegistered) {
-            playback = null;
+    public void unregisterAudioNoisyReceiver() {
+        if (audioNoisyReceiverRegistered) {
             context.unregisterReceiver(audioNoisyReceiver);
-            mAudioNoisyReceiverRegistered = false;
+            audioNoisyReceiverRegistered = false;
         }
     }
 
     private static class AudioNoisyReceiver extends BroadcastReceiver {
+        private final Playback playback;
+
+        public AudioNoisyReceiver(Playback playback) {
+            this.playback = playback;
+        }
+
         @Override
         public void onReceive(Context context, Intent intent) {
             if (AudioManager.ACTION_AUDIO_BECOMING_NOISY.equals(intent.getAction())) {
@@ -2,22 +2,51 @@ package com.thelotradio.android.playback;
 
 import android.content.Context;
 import android.media.AudioManager;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
 import android.net.wifi.WifiManager;
+import android.os.AsyncTask;
+import android.os.Environment;
+import android.os.Handler;
+import android.os.SystemClock;
 import android.support.v4.media.session.PlaybackStateCompat;
+import android.util.Log;
 
 import com.google.android.exoplayer.ExoPlaybackException;
 import com.google.android.exoplayer.MediaCodecTrackRenderer;
 import com.google.android.exoplayer.MediaCodecUtil;
 import com.thelotradio.android.R;
 import com.thelotradio.android.media.AudioPlayer;
-import com.thelotradio.android.media.EventLogger;
+import com.thelotradio.android.media.BufferPolicy;
+import com.thelotradio.android.media.BufferProfile;
+import com.thelotradio.android.media.FormatMemo;
+import com.thelotradio.android.media.MirrorSelector;
+import com.thelotradio.android.media.PlaybackStats;
+import com.thelotradio.android.media.TimeShiftBuffer;
+import com.thelotradio.android.media.decoder.DecoderException;
 import com.thelotradio.android.model.MusicProvider;
+import com.thelotradio.android.net.ConnectivityMonitor;
+import com.thelotradio.android.telemetry.PlaybackTelemetry;
+import com.thelotradio.android.telemetry.Telemetry;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
 
 /**
  * Plays an audio track using an AudioPlayer
  */
-public class AudioPlayback implements Playback, AudioManager.OnAudioFocusChangeListener,
-        AudioPlayer.Listener {
+public class AudioPlayback implements PlaybackController.ControlledPlayback,
+        AudioPlayer.Listener, AudioPlayer.MetadataListener, AudioPlayer.PowerListener,
+        ConnectivityMonitor.Listener {
+    // Custom action that drops time-shifted audio and continues from the live stream.
+    public static final String CUSTOM_ACTION_JUMP_TO_LIVE =
+            "com.thelotradio.android.JUMP_TO_LIVE";
+    // Custom actions that start and stop recording the stream to storage.
+    public static final String CUSTOM_ACTION_START_RECORDING =
+            "com.thelotradio.android.START_RECORDING";
+    public static final String CUSTOM_ACTION_STOP_RECORDING =
+            "com.thelotradio.android.STOP_RECORDING";
     // The volume we set the AudioPlayer to when we lose audio focus, but are
     // allowed to reduce the volume instead of stopping playback.
     public static final float VOLUME_DUCK = 0.2f;
@@ -30,7 +59,41 @@ public class AudioPlayback implements Playback, AudioManager.OnAudioFocusChangeL
     private static final int AUDIO_NO_FOCUS_CAN_DUCK = 1;
     // we have full audio focus
     private static final int AUDIO_FOCUSED  = 2;
+    // How long a pipeline prepared by start() is kept around waiting for play()
+    private static final int WARM_UP_TIMEOUT_MS = 30000;
+    private static final String TAG = "AudioPlayback";
+    // Telemetry kept across sessions in the app's files directory
+    private static final String TELEMETRY_FILE_NAME = "telemetry";
+    private static final int TELEMETRY_EVENT_CAPACITY = 1024;
+    private static final int TELEMETRY_HISTOGRAM_GENERATION_SIZE = 500;
+    private static final String FORMAT_MEMO_FILE_NAME = "formats";
+    // MediaCodec is passed over for the software decoders once its median initialization time,
+    // over at least this many initializations, is longer than this.
+    private static final int SLOW_DECODER_INITIALIZATION_MS = 1000;
+    private static final int MIN_DECODER_INITIALIZATION_SAMPLES = 3;
+    // One in this many players passed over MediaCodec gives it another chance instead.
+    private static final int MEDIA_CODEC_RETRY_INTERVAL = 20;
+    // Half an hour of 128 kbps audio, kept in the app's cache directory.
+    private static final int TIME_SHIFT_BUFFER_SIZE = 32 * 1024 * 1024;
+    private static final String TIME_SHIFT_FILE_NAME = "timeshift";
     private final AudioManager audioManager;
+    private final ConnectivityManager connectivityManager;
+    private final ConnectivityMonitor connectivityMonitor;
+    private final PowerSaveMonitor powerSaveMonitor;
+    private final Handler handler;
+    private final Runnable coolDown;
+    private final Runnable timeShiftExpiry;
+    private final PlaybackStateFactory stateFactory;
+    private final PlaybackStatePublisher statePublisher;
+    private final MirrorSelector mirrorSelector;
+    private final Telemetry telemetry;
+    private final File telemetryFile;
+    private final FormatMemo formatMemo;
+    private final File formatMemoFile;
+    private final AudioManager.OnAudioFocusChangeListener focusListener;
+    private final AudioNoisyManager audioNoisyManager;
+    private final PlaybackStats playbackStats;
+    private final Random random;
 
     private Context context;
     private AudioPlayer audioPlayer;
@@ -38,36 +101,159 @@ public class AudioPlayback implements Playback, AudioManager.OnAudioFocusChangeL
     private int audioFocus = AUDIO_NO_FOCUS_NO_DUCK;
     private int state = PlaybackStateCompat.STATE_NONE;
     private boolean playOnAudioFocusGain;
-    private EventLogger eventLogger;
+    private PlaybackTelemetry playbackTelemetry;
     private WifiManager.WifiLock wifiLock;
+    // Mapped once and handed from one player to the next, since the mapping can't be undone.
+    private TimeShiftBuffer timeShiftBuffer;
+    private BufferPolicy bufferPolicy = BufferProfile.BALANCED;
+    private AudioPlayer.PcmListener pcmListener;
+    private boolean lowPowerEnabled;
+    // Whether an earlier player decoded in software, for the next to start out doing so
+    private boolean softwareDecodingRequired;
+    // Whether the player is between download bursts in low-power mode
+    private boolean downloadIdle;
+    // When play() was last requested, until the audio it asked for starts
+    private long startupRequestedMs;
+    private boolean startupWarm;
+    private long lastStartupLatencyMs = -1;
+    // When playback was paused while time-shifting, or 0
+    private long pausedAtMs;
+    // How far playback has fallen behind the live stream through pauses
+    private long timeShiftMs;
 
     public AudioPlayback(Context context, Callback callback) {
+        this(context, callback, null);
+    }
+
+    /**
+     * Creates a playback that is driven from the calling thread, which must have a Looper. The
+     * player, the callback and the headphone unplug receiver all run on that thread.
+     *
+     * @param focusListener The listener to register for audio focus changes, which must forward
+     *     them to {@link #onAudioFocusChange(int)} on the calling thread, or null to register this
+     *     playback itself. Audio focus changes are otherwise delivered on the main thread.
+     */
+    public AudioPlayback(Context context, Callback callback,
+            AudioManager.OnAudioFocusChangeListener focusListener) {
         this.context = context;
         this.callback = callback;
+        this.focusListener = focusListener != null ? focusListener : this;
         audioManager = (AudioManager) context.getSystemService(Context.AUDIO_SERVICE);
+        connectivityManager =
+                (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        connectivityMonitor = new ConnectivityMonitor(context, this);
+        powerSaveMonitor = new PowerSaveMonitor(context, new PowerSaveMonitor.Listener() {
+            @Override
+            public void onPowerSaveChanged(boolean powerSave) {
+                setLowPowerEnabled(powerSave);
+            }
+        });
+        // Where the mirrors were won is remembered for as long as the service lives.
+        mirrorSelector = new MirrorSelector(MusicProvider.getLiveStreams());
         wifiLock = ((WifiManager) context.getSystemService(Context.WIFI_SERVICE))
                 .createWifiLock(WifiManager.WIFI_MODE_FULL, "thelotradio_lock");
+        handler = new Handler();
+        audioNoisyManager = new AudioNoisyManager(context, this, handler);
+        coolDown = new Runnable() {
+            @Override
+            public void run() {
+                if (audioPlayer != null && !audioPlayer.getPlayWhenReady()) {
+                    audioPlayer.stop();
+                }
+            }
+        };
+        timeShiftExpiry = new Runnable() {
+            @Override
+            public void run() {
+                // Paused for longer than the time-shift buffer holds, so the pause point is lost,
+                // or moved to a metered network. Stop downloading; play will start over from the
+                // live stream.
+                if (audioPlayer != null && !audioPlayer.getPlayWhenReady()) {
+                    audioPlayer.stop();
+                }
+                pausedAtMs = 0;
+                timeShiftMs = 0;
+                // Lets go of the Wi-Fi lock, which was kept for the download.
+                releaseResources(false);
+                publishState();
+            }
+        };
+        stateFactory = new PlaybackStateFactory(
+                new PlaybackStateCompat.CustomAction.Builder(CUSTOM_ACTION_JUMP_TO_LIVE,
+                        context.getString(R.string.label_jump_to_live),
+                        R.drawable.ic_skip_next_white_24dp).build(),
+                new PlaybackStateCompat.CustomAction.Builder(CUSTOM_ACTION_START_RECORDING,
+                        context.getString(R.string.label_record),
+                        R.drawable.ic_fiber_manual_record_white_24dp).build(),
+                new PlaybackStateCompat.CustomAction.Builder(CUSTOM_ACTION_STOP_RECORDING,
+                        context.getString(R.string.label_stop_recording),
+                        R.drawable.ic_stop_white_24dp).build());
+        statePublisher = new PlaybackStatePublisher(handler,
+                new PlaybackStatePublisher.Delegate() {
+                    @Override
+                    public void onPublishState(int state, long actions, int customActions) {
+                        if (callback != null) {
+                            callback.onPlaybackStatusChanged(stateFactory.createPlaybackState(
+                                    state, actions, customActions));
+                        }
+                    }
+                });
+        telemetry = new Telemetry(TELEMETRY_EVENT_CAPACITY, TELEMETRY_HISTOGRAM_GENERATION_SIZE);
+        telemetryFile = new File(context.getFilesDir(), TELEMETRY_FILE_NAME);
+        // The formats of the streams carry over between launches, so a cold start can skip
+        // sniffing the format.
+        formatMemo = new FormatMemo();
+        formatMemoFile = new File(context.getFilesDir(), FORMAT_MEMO_FILE_NAME);
+        load();
+        playbackStats = new PlaybackStats();
+        random = new Random();
         createPlayer();
     }
 
+    /**
+     * Warms up the pipeline ahead of {@link #play()}: connects to the stream, sniffs its format
+     * and allocates the decoder without starting playback, so that play only has to flip
+     * playWhenReady. The pipeline is released again if play is not requested within
+     * {@link #WARM_UP_TIMEOUT_MS}, so an idle listener doesn't keep downloading.
+     */
     @Override
-    public void start() { }
+    public void start() {
+        createPlayer();
+        if (isPlaying() || audioPlayer.getPlaybackState() != AudioPlayer.STATE_IDLE) {
+            return;
+        }
+        updateNetworkType();
+        audioPlayer.prepare();
+        handler.removeCallbacks(coolDown);
+        handler.postDelayed(coolDown, WARM_UP_TIMEOUT_MS);
+        state = PlaybackStateCompat.STATE_PAUSED;
+        publishState();
+    }
 
     @Override
     public void play() {
         playOnAudioFocusGain = true;
         tryToGetAudioFocus();
-        AudioNoisyManager.registerAudioNoisyReceiver(context, this);
+        audioNoisyManager.registerAudioNoisyReceiver();
+        handler.removeCallbacks(coolDown);
+        handler.removeCallbacks(timeShiftExpiry);
+        createPlayer();
+        updateWifiLock(connectivityManager.getActiveNetworkInfo(), !downloadIdle);
+        if (pausedAtMs != 0) {
+            timeShiftMs += SystemClock.elapsedRealtime() - pausedAtMs;
+            pausedAtMs = 0;
+        }
 
-        if (state == PlaybackStateCompat.STATE_PAUSED) {
+        updateNetworkType();
+        startupRequestedMs = SystemClock.elapsedRealtime();
+        startupWarm = audioPlayer.getPlaybackState() != AudioPlayer.STATE_IDLE;
+        if (startupWarm) {
+            // Already prepared by start() or before a pause, so only playWhenReady has to flip.
             configAudioPlayerState();
         } else {
             state = PlaybackStateCompat.STATE_BUFFERING;
             audioPlayer.prepare();
-            wifiLock.acquire();
-            if (callback != null) {
-                callback.onPlaybackStatusChanged(createPlaybackState(state));
-            }
+            publishState();
         }
     }
 
@@ -77,24 +263,40 @@ public class AudioPlayback implements Playback, AudioManager.OnAudioFocusChangeL
             if (audioPlayer != null && audioPlayer.getPlayWhenReady()) {
                 audioPlayer.setPlayWhenReady(false);
             }
-            releaseResources(false);
+            long timeShiftCapacityMs =
+                    audioPlayer != null ? audioPlayer.getTimeShiftCapacityMs() : 0;
+            // Downloading what may never be played isn't worth it on a metered network.
+            if (timeShiftCapacityMs > timeShiftMs && !connectivityManager.isActiveNetworkMetered()
+                    && audioPlayer.startTimeShift()) {
+                // Keep downloading, and the Wi-Fi lock with it, so that play resumes from here.
+                pausedAtMs = SystemClock.elapsedRealtime();
+                handler.postDelayed(timeShiftExpiry, timeShiftCapacityMs - timeShiftMs);
+            } else {
+                releaseResources(false);
+            }
             giveUpAudioFocus();
         }
         state = PlaybackStateCompat.STATE_PAUSED;
-        if (callback != null) {
-            callback.onPlaybackStatusChanged(createPlaybackState(state));
-        }
-        AudioNoisyManager.unregisterAudioNoisyReceiver(context);
+        publishState();
+        audioNoisyManager.unregisterAudioNoisyReceiver();
     }
 
     @Override
     public void stop(boolean notifyListeners) {
+        handler.removeCallbacks(coolDown);
+        handler.removeCallbacks(timeShiftExpiry);
+        pausedAtMs = 0;
+        timeShiftMs = 0;
         state = PlaybackStateCompat.STATE_STOPPED;
-        if (notifyListeners && callback != null) {
-            callback.onPlaybackStatusChanged(createPlaybackState(state));
+        if (notifyListeners) {
+            // Published right away, since the session may be released next.
+            publishState();
+            statePublisher.flush();
+        } else {
+            statePublisher.cancel();
         }
         giveUpAudioFocus();
-        AudioNoisyManager.unregisterAudioNoisyReceiver(context);
+        audioNoisyManager.unregisterAudioNoisyReceiver();
         releaseResources(true);
     }
 
@@ -118,6 +320,90 @@ public class AudioPlayback implements Playback, AudioManager.OnAudioFocusChangeL
         this.callback = callback;
     }
 
+    /**
+     * Sets how much audio to buffer, see {@link BufferProfile}. Applies to the current playback
+     * right away, without interrupting it. While the device saves power,
+     * {@link BufferProfile#LOW_POWER} applies instead.
+     */
+    public void setBufferPolicy(BufferPolicy bufferPolicy) {
+        this.bufferPolicy = bufferPolicy;
+        if (audioPlayer != null) {
+            audioPlayer.setBufferPolicy(getEffectiveBufferPolicy());
+        }
+    }
+
+    /**
+     * Enables or disables low-power mode, in which the stream is downloaded in bursts and the
+     * radio, and the Wi-Fi lock, are let go in between. Bursts only pay off when playback runs
+     * well behind the live stream, so {@link BufferProfile#LOW_POWER} applies meanwhile. Follows
+     * whether the device saves power, see {@link PowerSaveMonitor}.
+     */
+    private void setLowPowerEnabled(boolean enabled) {
+        Log.i(TAG, "Low-power mode " + (enabled ? "enabled" : "disabled"));
+        lowPowerEnabled = enabled;
+        if (audioPlayer != null) {
+            audioPlayer.setBufferPolicy(getEffectiveBufferPolicy());
+            audioPlayer.setLowPowerEnabled(enabled);
+        }
+    }
+
+    private BufferPolicy getEffectiveBufferPolicy() {
+        return lowPowerEnabled ? BufferProfile.LOW_POWER : bufferPolicy;
+    }
+
+    /**
+     * Drops the audio time-shifted by pausing and continues from the live stream.
+     */
+    public void jumpToLive() {
+        if (audioPlayer == null) {
+            return;
+        }
+        audioPlayer.jumpToLive();
+        timeShiftMs = 0;
+        if (pausedAtMs != 0) {
+            pausedAtMs = SystemClock.elapsedRealtime();
+        }
+        publishState();
+    }
+
+    /**
+     * Starts recording the stream to the app's music directory, or its private storage if there
+     * is no external storage. Recording continues while paused if time-shifting.
+     */
+    public void startRecording() {
+        createPlayer();
+        File directory = context.getExternalFilesDir(Environment.DIRECTORY_MUSIC);
+        if (directory == null) {
+            directory = new File(context.getFilesDir(), Environment.DIRECTORY_MUSIC);
+        }
+        audioPlayer.startRecording(directory);
+        publishState();
+    }
+
+    public void stopRecording() {
+        if (audioPlayer != null) {
+            audioPlayer.stopRecording();
+        }
+        publishState();
+    }
+
+    /**
+     * Releases memory that playback can do without, see
+     * {@link android.content.ComponentCallbacks2#onTrimMemory(int)}.
+     */
+    public void onTrimMemory(int level) {
+        if (audioPlayer != null) {
+            audioPlayer.trimMemory(level);
+        }
+    }
+
+    /**
+     * @return How long it took from the last play() until audio started, or -1 if it hasn't yet
+     */
+    public long getLastStartupLatencyMs() {
+        return lastStartupLatencyMs;
+    }
+
     @Override
     public void onAudioFocusChange(int focusChange) {
         if (focusChange == AudioManager.AUDIOFOCUS_GAIN) {
@@ -146,6 +432,15 @@ public class AudioPlayback implements Playback, AudioManager.OnAudioFocusChangeL
 
     @Override
     public void onStateChanged(boolean playWhenReady, int playbackState) {
+        if (playWhenReady && playbackState == AudioPlayer.STATE_READY && startupRequestedMs != 0) {
+            lastStartupLatencyMs = SystemClock.elapsedRealtime() - startupRequestedMs;
+            startupRequestedMs = 0;
+            playbackTelemetry.onStartupCompleted(lastStartupLatencyMs, startupWarm);
+        }
+        if (playbackState == AudioPlayer.STATE_READY && formatMemo.hasUnsavedChanges()) {
+            // Saved now, rather than on release, in case the process is killed while playing.
+            saveFormatMemo();
+        }
         if (playbackState == AudioPlayer.STATE_READY) {
             // The AudioPlayer is done preparing. That means we can start playing if we
             // have audio focus.
@@ -184,18 +479,47 @@ public class AudioPlayback implements Playback, AudioManager.OnAudioFocusChangeL
                 errorString = context.getString(R.string.error_instantiating_decoder,
                         decoderInitializationException.decoderName);
             }
+        } else if (e instanceof ExoPlaybackException
+                && e.getCause() instanceof DecoderException) {
+            // The software decoders reject the stream's configuration.
+            errorString = context.getString(R.string.error_unsupported_format,
+                    e.getCause().getMessage());
         }
         callback.onError("AudioPlayer error: " + errorString);
     }
 
+    @Override
+    public void onStreamTitle(String title) {
+        if (callback != null) {
+            callback.onStreamTitleChanged(title);
+        }
+    }
+
     private void createPlayer() {
         if (audioPlayer == null) {
-            audioPlayer = new AudioPlayer(context, MusicProvider.STREAM_128KBPS);
-            eventLogger = new EventLogger();
-            eventLogger.startSession();
-            audioPlayer.addListener(eventLogger);
+            audioPlayer = new AudioPlayer(context, MusicProvider.getLiveStreams(),
+                    MusicProvider.DEFAULT_LIVE_STREAM_INDEX);
+            audioPlayer.setAdaptiveStreamingEnabled(true);
+            powerSaveMonitor.start();
+            lowPowerEnabled = powerSaveMonitor.isPowerSave();
+            audioPlayer.setBufferPolicy(getEffectiveBufferPolicy());
+            audioPlayer.setMirrorSelector(mirrorSelector);
+            audioPlayer.setFormatMemo(formatMemo);
+            audioPlayer.setPlaybackStats(playbackStats);
+            audioPlayer.setPcmListener(pcmListener);
+            audioPlayer.setTimeShiftBuffer(getTimeShiftBuffer());
+            audioPlayer.setLowPowerEnabled(lowPowerEnabled);
+            audioPlayer.setSoftwareDecodingEnabled(
+                    softwareDecodingRequired || isMediaCodecInitializationSlow());
+            audioPlayer.setPowerListener(this);
+            playbackTelemetry = new PlaybackTelemetry(telemetry);
+            playbackTelemetry.startSession();
+            audioPlayer.addListener(playbackTelemetry);
             audioPlayer.addListener(this);
-            audioPlayer.setInternalErrorListener(eventLogger);
+            audioPlayer.setInternalErrorListener(playbackTelemetry);
+            audioPlayer.setInfoListener(playbackTelemetry);
+            audioPlayer.setMetadataListener(this);
+            connectivityMonitor.start();
         }
     }
 
@@ -230,30 +554,99 @@ public class AudioPlayback implements Playback, AudioManager.OnAudioFocusChangeL
                 playOnAudioFocusGain = false;
             }
         }
-        if (callback != null) {
-            callback.onPlaybackStatusChanged(createPlaybackState(state));
+        publishState();
+    }
+
+    /**
+     * Publishes the current state to the callback, unless it is unchanged. See
+     * {@link PlaybackStatePublisher}.
+     */
+    private void publishState() {
+        boolean recording = audioPlayer != null && audioPlayer.isRecording();
+        statePublisher.update(state, PlaybackStateFactory.getAvailableActions(isPlaying()),
+                PlaybackStateFactory.getCustomActions(state, timeShiftMs > 0 || pausedAtMs != 0,
+                        recording));
+    }
+
+    @Override
+    public void onDefaultNetworkChanged(NetworkInfo networkInfo) {
+        if (audioPlayer == null) {
+            return;
+        }
+        updateNetworkType();
+        if (pausedAtMs != 0 && connectivityManager.isActiveNetworkMetered()) {
+            // Stop the download kept going for time-shifting, as pausing on this network would.
+            handler.removeCallbacks(timeShiftExpiry);
+            timeShiftExpiry.run();
+            return;
+        }
+        updateWifiLock(networkInfo, isDownloading());
+        if (networkInfo != null) {
+            // Whatever was connected over the old network is dead, or about to be. Move the
+            // stream over now rather than wait for a read to time out.
+            Log.i(TAG, "Default network changed to " + networkInfo.getTypeName());
+            audioPlayer.migrateNetwork();
         }
     }
 
-    private PlaybackStateCompat createPlaybackState(int state) {
-        //noinspection ResourceType
-        PlaybackStateCompat.Builder stateBuilder = new PlaybackStateCompat.Builder()
-                .setActions(getAvailableActions());
-        stateBuilder.setState(state, 0, 1.0f);
-        return stateBuilder.build();
+    @Override
+    public void onDownloadingChanged(boolean downloading) {
+        downloadIdle = !downloading;
+        updateWifiLock(connectivityManager.getActiveNetworkInfo(), isDownloading());
+    }
+
+    private boolean isDownloading() {
+        return !downloadIdle && (state == PlaybackStateCompat.STATE_PLAYING
+                || state == PlaybackStateCompat.STATE_BUFFERING || pausedAtMs != 0);
     }
 
-    private long getAvailableActions() {
-        long actions = PlaybackStateCompat.ACTION_PLAY;
-        if (isPlaying()) {
-            actions |= PlaybackStateCompat.ACTION_PAUSE;
+    /**
+     * Returns the buffer to time-shift in, or null if it can't be created.
+     */
+    private TimeShiftBuffer getTimeShiftBuffer() {
+        if (timeShiftBuffer == null) {
+            try {
+                timeShiftBuffer = new TimeShiftBuffer(
+                        new File(context.getCacheDir(), TIME_SHIFT_FILE_NAME),
+                        TIME_SHIFT_BUFFER_SIZE);
+            } catch (IOException e) {
+                Log.w(TAG, "Time-shifting disabled", e);
+            }
+        }
+        return timeShiftBuffer;
+    }
+
+    private void updateNetworkType() {
+        NetworkInfo networkInfo = connectivityManager.getActiveNetworkInfo();
+        mirrorSelector.setNetworkKey(ConnectivityMonitor.getNetworkKey(networkInfo));
+        if (networkInfo == null || !networkInfo.isConnected()) {
+            audioPlayer.setNetworkType(BufferPolicy.NETWORK_TYPE_UNKNOWN);
+        } else if (connectivityManager.isActiveNetworkMetered()) {
+            audioPlayer.setNetworkType(BufferPolicy.NETWORK_TYPE_METERED);
+        } else {
+            audioPlayer.setNetworkType(BufferPolicy.NETWORK_TYPE_UNMETERED);
+        }
+    }
+
+    /**
+     * Holds the Wi-Fi lock only while downloading over Wi-Fi. On any other network it would keep
+     * the Wi-Fi radio awake for nothing.
+     */
+    private void updateWifiLock(NetworkInfo networkInfo, boolean downloading) {
+        boolean onWifi = networkInfo != null && networkInfo.isConnected()
+                && networkInfo.getType() == ConnectivityManager.TYPE_WIFI;
+        if (onWifi && downloading) {
+            if (!wifiLock.isHeld()) {
+                wifiLock.acquire();
+            }
+        } else if (wifiLock.isHeld()) {
+            wifiLock.release();
         }
-        return actions;
     }
 
     private void giveUpAudioFocus() {
         if (audioFocus == AUDIO_FOCUSED) {
-            if (audioManager.abandonAudioFocus(this) == AudioManager.AUDIOFOCUS_REQUEST_GRANTED) {
+            if (audioManager.abandonAudioFocus(focusListener) == AudioManager.AUDIOFOCUS_REQUEST_GRANTED) {
                 audioFocus = AUDIO_NO_FOCUS_NO_DUCK;
             }
         }
@@ -261,7 +654,7 @@ public class AudioPlayback implements Playback, AudioManager.OnAudioFocusChangeL
 
     private void tryToGetAudioFocus() {
         if (audioFocus != AUDIO_FOCUSED) {
-            int result = audioManager.requestAudioFocus(this, AudioManager.STREAM_MUSIC,
+            int result = audioManager.requestAudioFocus(focusListener, AudioManager.STREAM_MUSIC,
                     AudioManager.AUDIOFOCUS_GAIN);
             if (result == AudioManager.AUDIOFOCUS_REQUEST_GRANTED) {
                 audioFocus = AUDIO_FOCUSED;
@@ -269,12 +662,148 @@ public class AudioPlayback implements Playback, AudioManager.OnAudioFocusChangeL
         }
     }
 
+    /**
+     * Returns the number of playback states published to the callback.
+     */
+    public int getPublishedStateCount() {
+        return statePublisher.getEmittedCount();
+    }
+
+    /**
+     * Returns the number of playback state updates not published because nothing changed, or
+     * because a later update replaced them.
+     */
+    public int getSuppressedStateCount() {
+        return statePublisher.getSuppressedCount();
+    }
+
+    /**
+     * Returns the diagnostics of the current player, which any thread may read.
+     */
+    public PlaybackStats getPlaybackStats() {
+        return playbackStats;
+    }
+
+    /**
+     * Sets the listener for the audio decoded by this and later players.
+     */
+    public void setPcmListener(AudioPlayer.PcmListener pcmListener) {
+        this.pcmListener = pcmListener;
+        if (audioPlayer != null) {
+            audioPlayer.setPcmListener(pcmListener);
+        }
+    }
+
+    /**
+     * Returns the telemetry of this and earlier sessions.
+     */
+    public Telemetry getTelemetry() {
+        return telemetry;
+    }
+
+    /**
+     * Restores the telemetry and the format memo saved by earlier launches, off the main thread.
+     * Queued on the executor that saves them, so that it completes before the first save.
+     */
+    private void load() {
+        AsyncTask.SERIAL_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    telemetry.load(telemetryFile);
+                } catch (IOException e) {
+                    Log.w(TAG, "Discarding unreadable telemetry", e);
+                }
+                try {
+                    formatMemo.load(formatMemoFile);
+                } catch (IOException e) {
+                    Log.w(TAG, "Discarding unreadable format memo", e);
+                }
+                handler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        onLoaded();
+                    }
+                });
+            }
+        });
+    }
+
+    private void onLoaded() {
+        // The first player was created before the decoder initializations of earlier launches
+        // were known. Unless it was prepared meanwhile, this still applies to its pipeline.
+        if (audioPlayer != null && isMediaCodecInitializationSlow()) {
+            audioPlayer.setSoftwareDecodingEnabled(true);
+        }
+    }
+
+    private void saveTelemetry() {
+        // Serial, so that saves of successive sessions don't race for the file.
+        AsyncTask.SERIAL_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    telemetry.save(telemetryFile);
+                } catch (IOException e) {
+                    Log.w(TAG, "Failed to save telemetry", e);
+                }
+            }
+        });
+    }
+
+    private void saveFormatMemo() {
+        AsyncTask.SERIAL_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    formatMemo.save(formatMemoFile);
+                } catch (IOException e) {
+                    Log.w(TAG, "Failed to save format memo", e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Returns whether MediaCodec has been too slow to initialize to use it. Since nothing is timed
+     * once it is passed over, it occasionally gets another chance, in case its slowness came from
+     * the state of the device back then, or was fixed by an update: its samples are forgotten, and
+     * it is timed afresh.
+     */
+    private boolean isMediaCodecInitializationSlow() {
+        if (telemetry.getSampleCount(Telemetry.HISTOGRAM_DECODER_INITIALIZATION)
+                < MIN_DECODER_INITIALIZATION_SAMPLES
+                || telemetry.getPercentile(Telemetry.HISTOGRAM_DECODER_INITIALIZATION, 50)
+                <= SLOW_DECODER_INITIALIZATION_MS) {
+            return false;
+        }
+        if (random.nextInt(MEDIA_CODEC_RETRY_INTERVAL) == 0) {
+            Log.i(TAG, "Timing MediaCodec initialization afresh");
+            telemetry.clearSamples(Telemetry.HISTOGRAM_DECODER_INITIALIZATION);
+            return false;
+        }
+        return true;
+    }
+
     private void releaseResources(boolean releaseAudioPlayer) {
         if (releaseAudioPlayer && audioPlayer != null) {
+            if (lowPowerEnabled) {
+                float dutyCycle = audioPlayer.getDownloadDutyCycle();
+                Log.i(TAG, "Low-power download duty cycle " + Math.round(dutyCycle * 100) + "%");
+                playbackTelemetry.onDownloadDutyCycle(dutyCycle);
+            }
+            softwareDecodingRequired |= audioPlayer.isSoftwareDecodingEnabled();
             audioPlayer.release();
             audioPlayer = null;
-            eventLogger.endSession();
-            eventLogger = null;
+            connectivityMonitor.stop();
+            powerSaveMonitor.stop();
+            playbackTelemetry.endSession();
+            playbackTelemetry = null;
+            saveTelemetry();
+            if (formatMemo.hasUnsavedChanges()) {
+                saveFormatMemo();
+            }
+            downloadIdle = false;
         }
 
         if (wifiLock.isHeld()) {
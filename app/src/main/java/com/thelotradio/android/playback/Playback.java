@@ -86,6 +86,11 @@ public interface Playback {
          * @param mediaId being currently played
          */
         void setCurrentMediaId(String mediaId);
+
+        /**
+         * @param title announced by the stream for what is currently on air
+         */
+        void onStreamTitleChanged(String title);
     }
 
     /**
@@ -0,0 +1,460 @@
+package com.thelotradio.android.playback;
+
+import android.content.Context;
+import android.media.AudioManager;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Message;
+import android.os.Process;
+import android.os.SystemClock;
+import android.support.v4.media.session.PlaybackStateCompat;
+import android.util.Log;
+
+import com.thelotradio.android.media.AudioPlayer;
+import com.thelotradio.android.media.BufferPolicy;
+import com.thelotradio.android.media.PlaybackStats;
+import com.thelotradio.android.telemetry.Telemetry;
+import com.thelotradio.android.visualizer.SpectrumAnalyzer;
+
+/**
+ * Drives an {@link AudioPlayback} from a dedicated thread, so that reacting to media buttons,
+ * audio focus changes and headphones being unplugged doesn't wait on a busy main thread.
+ * <p/>
+ * The playback, its player and everything that changes its state run on the controller thread.
+ * Commands may be issued from any thread: each is queued as a message and carried out in order.
+ * Audio focus changes are delivered on the main thread, so they are forwarded the same way. The
+ * callback is invoked on the controller thread.
+ * <p/>
+ * The latency of a command is measured from when it is queued until it has been carried out, and
+ * kept in the {@link Telemetry#HISTOGRAM_COMMAND_LATENCY} histogram.
+ */
+public final class PlaybackController implements Playback, Playback.Callback,
+        AudioManager.OnAudioFocusChangeListener {
+
+    /**
+     * The playback driven by the controller, which is an {@link AudioPlayback} outside of tests.
+     */
+    /* package */ interface ControlledPlayback extends Playback,
+            AudioManager.OnAudioFocusChangeListener {
+        void setBufferPolicy(BufferPolicy bufferPolicy);
+        void jumpToLive();
+        void startRecording();
+        void stopRecording();
+        void onTrimMemory(int level);
+        PlaybackStats getPlaybackStats();
+        void setPcmListener(AudioPlayer.PcmListener pcmListener);
+        Telemetry getTelemetry();
+    }
+
+    /**
+     * Creates the playback, on the controller thread.
+     */
+    /* package */ interface PlaybackFactory {
+        ControlledPlayback createPlayback(PlaybackController controller);
+    }
+
+    /**
+     * Carries out commands in the order they are sent, on a thread of its own, by passing them
+     * to {@link PlaybackController#execute(int, int, Object, long)}.
+     */
+    /* package */ interface CommandQueue {
+        /**
+         * Starts the thread, which carries out commands for {@code controller} from now on.
+         */
+        void start(PlaybackController controller);
+
+        void send(int command, int arg, Object obj);
+
+        /**
+         * Stops the thread once the command being carried out returns.
+         */
+        void quit();
+
+        /**
+         * Returns the time the commands are queued at, in ms.
+         */
+        long uptimeMillis();
+
+        /**
+         * Returns a handler on the thread, or null if there is none.
+         */
+        Handler getHandler();
+    }
+
+    /* package */ static final int MSG_CREATE = 0;
+    /* package */ static final int MSG_START = 1;
+    /* package */ static final int MSG_PLAY = 2;
+    /* package */ static final int MSG_PAUSE = 3;
+    /* package */ static final int MSG_STOP = 4;
+    /* package */ static final int MSG_SET_STATE = 5;
+    /* package */ static final int MSG_AUDIO_FOCUS_CHANGE = 6;
+    /* package */ static final int MSG_JUMP_TO_LIVE = 7;
+    /* package */ static final int MSG_START_RECORDING = 8;
+    /* package */ static final int MSG_STOP_RECORDING = 9;
+    /* package */ static final int MSG_TRIM_MEMORY = 10;
+    /* package */ static final int MSG_SET_BUFFER_POLICY = 11;
+    /* package */ static final int MSG_RELEASE = 12;
+
+    private static final String TAG = "PlaybackController";
+    // Commands slower than this are logged, as they are noticeable when pressing a button.
+    private static final long SLOW_COMMAND_MS = 50;
+
+    private final PlaybackFactory playbackFactory;
+    private final CommandQueue queue;
+    private final SpectrumAnalyzer spectrumAnalyzer;
+
+    // Only accessed on the controller thread.
+    private ControlledPlayback playback;
+
+    private volatile Callback callback;
+    private volatile Telemetry telemetry;
+    private volatile PlaybackStats playbackStats;
+    // The state of the playback as of the last command or published state, for other threads.
+    private volatile int state = PlaybackStateCompat.STATE_NONE;
+    private volatile boolean playing;
+    private volatile long lastCommandLatencyMs = -1;
+
+    private boolean released;
+
+    public PlaybackController(final Context context, Callback callback) {
+        this(callback, new PlaybackFactory() {
+            @Override
+            public ControlledPlayback createPlayback(PlaybackController controller) {
+                return new AudioPlayback(context, controller, controller);
+            }
+        }, new HandlerCommandQueue());
+    }
+
+    /* package */ PlaybackController(Callback callback, PlaybackFactory playbackFactory,
+            CommandQueue queue) {
+        this.callback = callback;
+        this.playbackFactory = playbackFactory;
+        this.queue = queue;
+        spectrumAnalyzer = new SpectrumAnalyzer();
+        queue.start(this);
+        // Created on the controller thread, so that the player binds to its Looper.
+        queue.send(MSG_CREATE, 0, null);
+    }
+
+    /**
+     * Returns a handler on the controller thread. Events that do nothing but issue commands, such
+     * as those of the media session, are best delivered on it, so they don't wait on the main
+     * thread either.
+     */
+    public Handler getHandler() {
+        return queue.getHandler();
+    }
+
+    @Override
+    public void start() {
+        queue.send(MSG_START, 0, null);
+    }
+
+    /**
+     * Plays, unless already playing by the time the command is carried out.
+     */
+    @Override
+    public void play() {
+        queue.send(MSG_PLAY, 0, null);
+    }
+
+    /**
+     * Pauses, unless not playing by the time the command is carried out.
+     */
+    @Override
+    public void pause() {
+        queue.send(MSG_PAUSE, 0, null);
+    }
+
+    @Override
+    public void stop(boolean notifyListeners) {
+        queue.send(MSG_STOP, notifyListeners ? 1 : 0, null);
+    }
+
+    @Override
+    public void setState(int state) {
+        queue.send(MSG_SET_STATE, state, null);
+    }
+
+    @Override
+    public int getState() {
+        return state;
+    }
+
+    @Override
+    public boolean isPlaying() {
+        return playing;
+    }
+
+    @Override
+    public void setCallback(Callback callback) {
+        this.callback = callback;
+    }
+
+    /**
+     * See {@link AudioPlayback#jumpToLive()}.
+     */
+    public void jumpToLive() {
+        queue.send(MSG_JUMP_TO_LIVE, 0, null);
+    }
+
+    /**
+     * See {@link AudioPlayback#startRecording()}.
+     */
+    public void startRecording() {
+        queue.send(MSG_START_RECORDING, 0, null);
+    }
+
+    public void stopRecording() {
+        queue.send(MSG_STOP_RECORDING, 0, null);
+    }
+
+    /**
+     * See {@link AudioPlayback#onTrimMemory(int)}.
+     */
+    public void onTrimMemory(int level) {
+        queue.send(MSG_TRIM_MEMORY, level, null);
+    }
+
+    /**
+     * See {@link AudioPlayback#setBufferPolicy(BufferPolicy)}.
+     */
+    public void setBufferPolicy(BufferPolicy bufferPolicy) {
+        queue.send(MSG_SET_BUFFER_POLICY, 0, bufferPolicy);
+    }
+
+    /**
+     * Carries out the commands issued so far, then stops the controller thread. Blocks until it
+     * has, so that a {@link #stop(boolean)} issued before is published before returning.
+     */
+    public synchronized void release() {
+        if (released) {
+            return;
+        }
+        queue.send(MSG_RELEASE, 0, null);
+        boolean wasInterrupted = false;
+        while (!released) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                wasInterrupted = true;
+            }
+        }
+        if (wasInterrupted) {
+            // Restore the interrupted status.
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return How long the last command took from being issued until carried out, or -1 if none
+     *     was yet
+     */
+    public long getLastCommandLatencyMs() {
+        return lastCommandLatencyMs;
+    }
+
+    /**
+     * Returns an upper bound for the given percentile of command latencies, in this and earlier
+     * sessions, or 0 if there are none.
+     *
+     * @param percentile A percentile between 0 and 100.
+     */
+    public long getCommandLatencyMs(double percentile) {
+        Telemetry telemetry = this.telemetry;
+        return telemetry != null
+                ? telemetry.getPercentile(Telemetry.HISTOGRAM_COMMAND_LATENCY, percentile) : 0;
+    }
+
+    /**
+     * Returns the diagnostics of the player, or null if the playback hasn't been created yet.
+     */
+    public PlaybackStats getPlaybackStats() {
+        return playbackStats;
+    }
+
+    /**
+     * Returns the analyzer of the audio played, which does nothing until started.
+     */
+    public SpectrumAnalyzer getSpectrumAnalyzer() {
+        return spectrumAnalyzer;
+    }
+
+    /**
+     * Returns the telemetry of the playback, or null if it hasn't been created yet.
+     */
+    public Telemetry getTelemetry() {
+        return telemetry;
+    }
+
+    @Override
+    public void onAudioFocusChange(int focusChange) {
+        queue.send(MSG_AUDIO_FOCUS_CHANGE, focusChange, null);
+    }
+
+    /**
+     * Carries out a command. Called on the controller thread, in the order the commands were sent.
+     *
+     * @param command One of the {@code MSG_*} constants.
+     * @param arg The int argument of the command, if any.
+     * @param obj The object argument of the command, if any.
+     * @param queuedAtMs When the command was sent, on the clock of the queue.
+     */
+    /* package */ void execute(int command, int arg, Object obj, long queuedAtMs) {
+        switch (command) {
+            case MSG_CREATE:
+                playback = playbackFactory.createPlayback(this);
+                telemetry = playback.getTelemetry();
+                playbackStats = playback.getPlaybackStats();
+                playback.setPcmListener(spectrumAnalyzer);
+                return;
+            case MSG_START:
+                playback.start();
+                break;
+            case MSG_PLAY:
+                // Judged now rather than when issued, as the commands queued ahead may change it.
+                if (!playback.isPlaying()) {
+                    playback.play();
+                }
+                break;
+            case MSG_PAUSE:
+                if (playback.isPlaying()) {
+                    playback.pause();
+                }
+                break;
+            case MSG_STOP:
+                playback.stop(arg != 0);
+                break;
+            case MSG_SET_STATE:
+                playback.setState(arg);
+                break;
+            case MSG_AUDIO_FOCUS_CHANGE:
+                playback.onAudioFocusChange(arg);
+                break;
+            case MSG_JUMP_TO_LIVE:
+                playback.jumpToLive();
+                break;
+            case MSG_START_RECORDING:
+                playback.startRecording();
+                break;
+            case MSG_STOP_RECORDING:
+                playback.stopRecording();
+                break;
+            case MSG_TRIM_MEMORY:
+                playback.onTrimMemory(arg);
+                break;
+            case MSG_SET_BUFFER_POLICY:
+                playback.setBufferPolicy((BufferPolicy) obj);
+                break;
+            case MSG_RELEASE:
+                spectrumAnalyzer.release();
+                queue.quit();
+                synchronized (this) {
+                    released = true;
+                    notifyAll();
+                }
+                return;
+            default:
+                throw new IllegalArgumentException("Unknown command: " + command);
+        }
+        updateState();
+        long latencyMs = queue.uptimeMillis() - queuedAtMs;
+        lastCommandLatencyMs = latencyMs;
+        telemetry.addSample(Telemetry.HISTOGRAM_COMMAND_LATENCY, latencyMs);
+        if (latencyMs > SLOW_COMMAND_MS) {
+            Log.w(TAG, "Command " + command + " took " + latencyMs + " ms");
+        }
+    }
+
+    @Override
+    public void onCompletion() {
+        Callback callback = this.callback;
+        if (callback != null) {
+            callback.onCompletion();
+        }
+    }
+
+    @Override
+    public void onPlaybackStatusChanged(PlaybackStateCompat state) {
+        // Also changed by the player, and by headphones being unplugged, between commands.
+        updateState();
+        Callback callback = this.callback;
+        if (callback != null) {
+            callback.onPlaybackStatusChanged(state);
+        }
+    }
+
+    @Override
+    public void onError(String error) {
+        Callback callback = this.callback;
+        if (callback != null) {
+            callback.onError(error);
+        }
+    }
+
+    @Override
+    public void setCurrentMediaId(String mediaId) {
+        Callback callback = this.callback;
+        if (callback != null) {
+            callback.setCurrentMediaId(mediaId);
+        }
+    }
+
+    @Override
+    public void onStreamTitleChanged(String title) {
+        Callback callback = this.callback;
+        if (callback != null) {
+            callback.onStreamTitleChanged(title);
+        }
+    }
+
+    private void updateState() {
+        state = playback.getState();
+        playing = playback.isPlaying();
+    }
+
+    /**
+     * Queues the commands as messages to a thread at audio priority.
+     */
+    private static final class HandlerCommandQueue implements CommandQueue, Handler.Callback {
+
+        private HandlerThread thread;
+        private Handler handler;
+        private PlaybackController controller;
+
+        @Override
+        public void start(PlaybackController controller) {
+            this.controller = controller;
+            thread = new HandlerThread("PlaybackController", Process.THREAD_PRIORITY_AUDIO);
+            thread.start();
+            handler = new Handler(thread.getLooper(), this);
+        }
+
+        @Override
+        public void send(int command, int arg, Object obj) {
+            handler.obtainMessage(command, arg, 0, obj).sendToTarget();
+        }
+
+        @Override
+        public void quit() {
+            thread.quit();
+        }
+
+        @Override
+        public long uptimeMillis() {
+            return SystemClock.uptimeMillis();
+        }
+
+        @Override
+        public Handler getHandler() {
+            return handler;
+        }
+
+        @Override
+        public boolean handleMessage(Message msg) {
+            // The message's time is when it was queued, as it was sent without a delay.
+            controller.execute(msg.what, msg.arg1, msg.obj, msg.getWhen());
+            return true;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.thelotradio.android.playback;
+
+import android.support.v4.media.session.PlaybackStateCompat;
+
+/**
+ * Works out the actions a playback state offers, and builds the states {@link AudioPlayback}
+ * publishes. The custom actions are built once, up front, so building a state looks nothing up
+ * and needs no Context; this is also what lets the benchmarks build states on a plain JVM.
+ */
+/* package */ final class PlaybackStateFactory {
+
+    // Flags of the custom actions offered in the playback state
+    /* package */ static final int CUSTOM_ACTION_FLAG_JUMP_TO_LIVE = 1;
+    /* package */ static final int CUSTOM_ACTION_FLAG_START_RECORDING = 1 << 1;
+    /* package */ static final int CUSTOM_ACTION_FLAG_STOP_RECORDING = 1 << 2;
+
+    private final PlaybackStateCompat.CustomAction jumpToLive;
+    private final PlaybackStateCompat.CustomAction startRecording;
+    private final PlaybackStateCompat.CustomAction stopRecording;
+
+    public PlaybackStateFactory(PlaybackStateCompat.CustomAction jumpToLive,
+            PlaybackStateCompat.CustomAction startRecording,
+            PlaybackStateCompat.CustomAction stopRecording) {
+        this.jumpToLive = jumpToLive;
+        this.startRecording = startRecording;
+        this.stopRecording = stopRecording;
+    }
+
+    /**
+     * Returns the actions offered while playing, or while not.
+     */
+    public static long getAvailableActions(boolean playing) {
+        long actions = PlaybackStateCompat.ACTION_PLAY;
+        if (playing) {
+            actions |= PlaybackStateCompat.ACTION_PAUSE;
+        }
+        return actions;
+    }
+
+    /**
+     * Returns the flags of the custom actions offered in the given state.
+     *
+     * @param timeShifted Whether playback is behind the live stream, or paused waiting to be.
+     * @param recording Whether the stream is being recorded.
+     */
+    public static int getCustomActions(int state, boolean timeShifted, boolean recording) {
+        int customActions = 0;
+        if (timeShifted) {
+            customActions |= CUSTOM_ACTION_FLAG_JUMP_TO_LIVE;
+        }
+        if (recording) {
+            customActions |= CUSTOM_ACTION_FLAG_STOP_RECORDING;
+        } else if (state == PlaybackStateCompat.STATE_PLAYING) {
+            customActions |= CUSTOM_ACTION_FLAG_START_RECORDING;
+        }
+        return customActions;
+    }
+
+    public PlaybackStateCompat createPlaybackState(int state, long actions, int customActions) {
+        //noinspection ResourceType
+        PlaybackStateCompat.Builder stateBuilder = new PlaybackStateCompat.Builder()
+                .setActions(actions);
+        stateBuilder.setState(state, 0, 1.0f);
+        if ((customActions & CUSTOM_ACTION_FLAG_JUMP_TO_LIVE) != 0) {
+            stateBuilder.addCustomAction(jumpToLive);
+        }
+        if ((customActions & CUSTOM_ACTION_FLAG_STOP_RECORDING) != 0) {
+            stateBuilder.addCustomAction(stopRecording);
+        }
+        if ((customActions & CUSTOM_ACTION_FLAG_START_RECORDING) != 0) {
+            stateBuilder.addCustomAction(startRecording);
+        }
+        return stateBuilder.build();
+    }
+}
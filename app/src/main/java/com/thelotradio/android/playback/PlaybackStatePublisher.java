@@ -0,0 +1,140 @@
+package com.thelotradio.android.playback;
+
+import android.os.Handler;
+import android.os.SystemClock;
+
+/**
+ * Publishes playback states only when they change, and at most once per {@link #MIN_INTERVAL_MS}.
+ * Every published state is an IPC to each connected controller, such as the system UI, the lock
+ * screen and Bluetooth devices, while the player reports states far more often than they change,
+ * for example when it flaps between ready and buffering.
+ * <p/>
+ * A state is described by its primitive parts, so unchanged states are dropped before a
+ * {@link android.support.v4.media.session.PlaybackStateCompat} is ever built. Updates that arrive
+ * within the interval are merged into the last of them. The first state is published right away.
+ */
+/* package */ final class PlaybackStatePublisher {
+
+    /**
+     * Builds and delivers a state that changed.
+     */
+    public interface Delegate {
+        void onPublishState(int state, long actions, int customActions);
+    }
+
+    /* package */ static final int MIN_INTERVAL_MS = 100;
+
+    private final Handler handler;
+    private final Delegate delegate;
+    private final Runnable publish;
+
+    private boolean published;
+    private int publishedState;
+    private long publishedActions;
+    private int publishedCustomActions;
+
+    private boolean pending;
+    private int pendingState;
+    private long pendingActions;
+    private int pendingCustomActions;
+    private long lastPublishedMs;
+
+    private int emittedCount;
+    private int suppressedCount;
+
+    /**
+     * @param handler The handler on which to publish merged updates, or null to publish every
+     *     change right away.
+     * @param delegate Builds and delivers the states.
+     */
+    public PlaybackStatePublisher(Handler handler, Delegate delegate) {
+        this.handler = handler;
+        this.delegate = delegate;
+        publish = new Runnable() {
+            @Override
+            public void run() {
+                flush();
+            }
+        };
+    }
+
+    /**
+     * Publishes a state, unless it equals the state last published.
+     *
+     * @param state One of the PlaybackStateCompat STATE_* constants.
+     * @param actions The PlaybackStateCompat ACTION_* flags.
+     * @param customActions Flags of the custom actions to offer, defined by the delegate.
+     */
+    public void update(int state, long actions, int customActions) {
+        if (pending) {
+            // Merged into the update that is already waiting.
+            suppressedCount++;
+        } else if (published && state == publishedState && actions == publishedActions
+                && customActions == publishedCustomActions) {
+            suppressedCount++;
+            return;
+        }
+        pendingState = state;
+        pendingActions = actions;
+        pendingCustomActions = customActions;
+        if (handler == null || !published) {
+            // The first state goes out right away, as the session has none to show until then.
+            pending = true;
+            flush();
+        } else if (!pending) {
+            pending = true;
+            handler.postAtTime(publish,
+                    Math.max(SystemClock.uptimeMillis(), lastPublishedMs + MIN_INTERVAL_MS));
+        }
+    }
+
+    /**
+     * Publishes the pending update, if any, right away.
+     */
+    public void flush() {
+        if (!pending) {
+            return;
+        }
+        pending = false;
+        if (handler != null) {
+            handler.removeCallbacks(publish);
+            lastPublishedMs = SystemClock.uptimeMillis();
+        }
+        if (published && pendingState == publishedState && pendingActions == publishedActions
+                && pendingCustomActions == publishedCustomActions) {
+            // The burst ended where it started.
+            suppressedCount++;
+            return;
+        }
+        published = true;
+        publishedState = pendingState;
+        publishedActions = pendingActions;
+        publishedCustomActions = pendingCustomActions;
+        emittedCount++;
+        delegate.onPublishState(publishedState, publishedActions, publishedCustomActions);
+    }
+
+    /**
+     * Drops the pending update, if any.
+     */
+    public void cancel() {
+        if (pending && handler != null) {
+            handler.removeCallbacks(publish);
+        }
+        pending = false;
+    }
+
+    /**
+     * Returns the number of states delivered to the delegate.
+     */
+    public int getEmittedCount() {
+        return emittedCount;
+    }
+
+    /**
+     * Returns the number of updates dropped as unchanged or merged into a later one.
+     */
+    public int getSuppressedCount() {
+        return suppressedCount;
+    }
+}
@@ -0,0 +1,111 @@
+package com.thelotradio.android.playback;
+
+import android.annotation.TargetApi;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.BatteryManager;
+import android.os.Build;
+import android.os.Handler;
+import android.os.PowerManager;
+
+/**
+ * Watches whether the device is saving power, which is when battery saver is on. Releases without
+ * battery saver count the battery running low while unplugged instead.
+ */
+/* package */ final class PowerSaveMonitor {
+
+    /**
+     * Listener for changes. Invoked on the thread that created the monitor.
+     */
+    public interface Listener {
+        void onPowerSaveChanged(boolean powerSave);
+    }
+
+    // The level at which releases without battery saver count as saving power, which is when
+    // battery saver turns on by default where there is one.
+    private static final int LOW_BATTERY_PERCENT = 15;
+
+    private final Context context;
+    private final Listener listener;
+    private final BroadcastReceiver receiver;
+    private final Handler handler;
+
+    private boolean started;
+    private boolean powerSave;
+    private Intent batteryStatus;
+
+    public PowerSaveMonitor(Context context, Listener listener) {
+        this.context = context;
+        this.listener = listener;
+        handler = new Handler();
+        receiver = new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                if (Intent.ACTION_BATTERY_CHANGED.equals(intent.getAction())) {
+                    batteryStatus = intent;
+                }
+                checkPowerSave();
+            }
+        };
+    }
+
+    public void start() {
+        if (started) {
+            return;
+        }
+        started = true;
+        IntentFilter filter = new IntentFilter();
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            filter.addAction(PowerManager.ACTION_POWER_SAVE_MODE_CHANGED);
+        } else {
+            filter.addAction(Intent.ACTION_BATTERY_CHANGED);
+        }
+        // The battery status is sticky, so it is returned right away. Delivered again on
+        // registration, it matches the state just recorded, so it isn't reported as a change.
+        batteryStatus = context.registerReceiver(receiver, filter, null, handler);
+        powerSave = isPowerSaveNow();
+    }
+
+    public void stop() {
+        if (!started) {
+            return;
+        }
+        started = false;
+        context.unregisterReceiver(receiver);
+    }
+
+    /**
+     * Returns whether the device was saving power when last checked.
+     */
+    public boolean isPowerSave() {
+        return powerSave;
+    }
+
+    private void checkPowerSave() {
+        boolean powerSave = isPowerSaveNow();
+        if (powerSave != this.powerSave) {
+            this.powerSave = powerSave;
+            listener.onPowerSaveChanged(powerSave);
+        }
+    }
+
+    private boolean isPowerSaveNow() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            return isPowerSaveModeV21();
+        }
+        if (batteryStatus == null
+                || batteryStatus.getIntExtra(BatteryManager.EXTRA_PLUGGED, 0) != 0) {
+            return false;
+        }
+        int level = batteryStatus.getIntExtra(BatteryManager.EXTRA_LEVEL, -1);
+        int scale = batteryStatus.getIntExtra(BatteryManager.EXTRA_SCALE, -1);
+        return level >= 0 && scale > 0 && level * 100 <= scale * LOW_BATTERY_PERCENT;
+    }
+
+    @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+    private boolean isPowerSaveModeV21() {
+        return ((PowerManager) context.getSystemService(Context.POWER_SERVICE)).isPowerSaveMode();
+    }
+}
@@ -0,0 +1,168 @@
+package com.thelotradio.android.schedule;
+
+import com.thelotradio.android.model.Show;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * The shows around now on the station's schedule, as published by its Airtime
+ * {@code live-info-v2} endpoint, and when that was last known to be up to date.
+ * <p/>
+ * Nothing on the schedule changes between two show boundaries, so the schedule stays fresh until
+ * the first boundary after it was validated. Past that it should be revalidated, which is
+ * cheap when nothing was rescheduled. A long show still expires after {@link #MAX_FRESHNESS_MS},
+ * so that edits to what follows it are picked up.
+ */
+public final class Schedule {
+
+    /* package */ static final long MAX_FRESHNESS_MS = 2 * 60 * 60 * 1000;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final String TIME_FORMAT = "yyyy-MM-dd HH:mm:ss";
+
+    private final List<Show> shows;
+    private final long validatedAtMs;
+
+    /**
+     * @param shows The shows, in any order.
+     * @param validatedAtMs When the schedule was last known to be up to date, in ms since the
+     *     epoch.
+     */
+    public Schedule(List<Show> shows, long validatedAtMs) {
+        List<Show> sortedShows = new ArrayList<>(shows);
+        Collections.sort(sortedShows, new Comparator<Show>() {
+            @Override
+            public int compare(Show a, Show b) {
+                return a.startTimeMs < b.startTimeMs ? -1 : a.startTimeMs == b.startTimeMs ? 0 : 1;
+            }
+        });
+        this.shows = Collections.unmodifiableList(sortedShows);
+        this.validatedAtMs = validatedAtMs;
+    }
+
+    /**
+     * Returns the shows by start time.
+     */
+    public List<Show> getShows() {
+        return shows;
+    }
+
+    public long getValidatedAtMs() {
+        return validatedAtMs;
+    }
+
+    /**
+     * Returns the show on air at {@code timeMs}, or null if none is scheduled.
+     */
+    public Show getShowAt(long timeMs) {
+        for (Show show : shows) {
+            if (show.startTimeMs <= timeMs && timeMs < show.endTimeMs) {
+                return show;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the first show starting after {@code timeMs}, or null if none is scheduled.
+     */
+    public Show getNextShow(long timeMs) {
+        for (Show show : shows) {
+            if (show.startTimeMs > timeMs) {
+                return show;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the first time after {@code timeMs} that a show starts or ends, or -1 if there is
+     * none on the schedule.
+     */
+    public long getNextBoundaryMs(long timeMs) {
+        long boundaryMs = Long.MAX_VALUE;
+        for (Show show : shows) {
+            if (show.startTimeMs > timeMs) {
+                boundaryMs = Math.min(boundaryMs, show.startTimeMs);
+            } else if (show.endTimeMs > timeMs) {
+                boundaryMs = Math.min(boundaryMs, show.endTimeMs);
+            }
+        }
+        return boundaryMs == Long.MAX_VALUE ? -1 : boundaryMs;
+    }
+
+    /**
+     * Returns when the schedule should be revalidated, in ms since the epoch.
+     */
+    public long getExpiryTimeMs() {
+        long maxExpiryTimeMs = validatedAtMs + MAX_FRESHNESS_MS;
+        long boundaryMs = getNextBoundaryMs(validatedAtMs);
+        return boundaryMs == -1 ? validatedAtMs : Math.min(boundaryMs, maxExpiryTimeMs);
+    }
+
+    /**
+     * Parses a response of the {@code live-info-v2} endpoint requested with times in UTC. The
+     * previous, current and next shows are all kept.
+     *
+     * @throws IOException If the response is malformed.
+     */
+    public static Schedule parse(byte[] body, long validatedAtMs) throws IOException {
+        SimpleDateFormat timeFormat = new SimpleDateFormat(TIME_FORMAT, Locale.US);
+        timeFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+        List<Show> shows = new ArrayList<>();
+        try {
+            JSONObject showsJson = new JSONObject(new String(body, UTF_8)).getJSONObject("shows");
+            addShows(showsJson.optJSONArray("previous"), timeFormat, shows);
+            // An empty array rather than an object when nothing is on air.
+            JSONObject current = showsJson.optJSONObject("current");
+            if (current != null) {
+                shows.add(parseShow(current, timeFormat));
+            }
+            addShows(showsJson.optJSONArray("next"), timeFormat, shows);
+        } catch (JSONException | ParseException e) {
+            throw new IOException("Malformed schedule", e);
+        }
+        return new Schedule(shows, validatedAtMs);
+    }
+
+    private static void addShows(JSONArray showsJson, SimpleDateFormat timeFormat,
+            List<Show> shows) throws JSONException, ParseException {
+        if (showsJson == null) {
+            return;
+        }
+        for (int i = 0; i < showsJson.length(); i++) {
+            shows.add(parseShow(showsJson.getJSONObject(i), timeFormat));
+        }
+    }
+
+    private static Show parseShow(JSONObject show, SimpleDateFormat timeFormat)
+            throws JSONException, ParseException {
+        return new Show(unescapeHtml(show.getString("name")),
+                timeFormat.parse(show.getString("starts")).getTime(),
+                timeFormat.parse(show.getString("ends")).getTime());
+    }
+
+    /**
+     * Airtime escapes the names of shows for HTML. Undoes the escapes it uses.
+     */
+    /* package */ static String unescapeHtml(String text) {
+        if (text.indexOf('&') == -1) {
+            return text;
+        }
+        return text.replace("&lt;", "<").replace("&gt;", ">").replace("&quot;", "\"")
+                .replace("&#039;", "'").replace("&amp;", "&");
+    }
+}
@@ -0,0 +1,157 @@
+package com.thelotradio.android.schedule;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Message;
+import android.os.Process;
+import android.util.Log;
+
+import com.thelotradio.android.model.Show;
+
+import java.io.IOException;
+
+/**
+ * Keeps track of the show on air and the one after it, on a background thread.
+ * <p/>
+ * Rather than polling, the client wakes up when a show starts or ends. It then moves on to the
+ * next show on the schedule it has, and revalidates that schedule if it expired, which usually
+ * costs a {@code 304 Not Modified}. A schedule cached by an earlier run that hasn't expired yet
+ * is used without going to the network at all. When the schedule can't be fetched, the cached one
+ * is used while fetching is retried with backoff.
+ */
+public final class ScheduleClient implements Handler.Callback {
+
+    /**
+     * Listener for the shows on air.
+     */
+    public interface Listener {
+        /**
+         * Invoked on the client's thread when the show on air or the one after it changes.
+         *
+         * @param currentShow The show on air, or null if none is known.
+         * @param nextShow The show after it, or null if none is known.
+         */
+        void onShowsChanged(Show currentShow, Show nextShow);
+    }
+
+    private static final String TAG = "ScheduleClient";
+    private static final int MSG_UPDATE = 0;
+    // Shows start a little late rather than early, and the schedule has to catch up with them.
+    private static final long BOUNDARY_DELAY_MS = 5000;
+    private static final long INITIAL_RETRY_DELAY_MS = 60 * 1000;
+    private static final long MAX_RETRY_DELAY_MS = 30 * 60 * 1000;
+
+    private final ScheduleFetcher fetcher;
+    private final HandlerThread thread;
+    private final Handler handler;
+
+    // Guarded by itself, so that release() can wait for a callback under way.
+    private final Object listenerLock;
+    private Listener listener;
+
+    // Only accessed on the client thread.
+    private Schedule schedule;
+    private boolean cacheLoaded;
+    private long retryDelayMs;
+    private Show currentShow;
+    private Show nextShow;
+
+    public ScheduleClient(ScheduleFetcher fetcher, Listener listener) {
+        this.fetcher = fetcher;
+        this.listener = listener;
+        listenerLock = new Object();
+        retryDelayMs = INITIAL_RETRY_DELAY_MS;
+        thread = new HandlerThread("ScheduleClient", Process.THREAD_PRIORITY_BACKGROUND);
+        thread.start();
+        handler = new Handler(thread.getLooper(), this);
+    }
+
+    /**
+     * Starts following the schedule.
+     */
+    public void start() {
+        handler.sendEmptyMessage(MSG_UPDATE);
+    }
+
+    /**
+     * Stops following the schedule. The listener isn't invoked after this returns, and an
+     * invocation under way on the client's thread is waited for. Must not be called while holding
+     * a lock the listener takes.
+     */
+    public void release() {
+        synchronized (listenerLock) {
+            listener = null;
+        }
+        thread.quit();
+    }
+
+    @Override
+    public boolean handleMessage(Message msg) {
+        if (msg.what != MSG_UPDATE) {
+            return false;
+        }
+        handler.removeMessages(MSG_UPDATE);
+        long nowMs = System.currentTimeMillis();
+        if (!cacheLoaded) {
+            schedule = fetcher.getCachedSchedule();
+            cacheLoaded = true;
+        }
+        // Without a schedule to follow, there's no telling when it will change.
+        long fallbackDelayMs = MAX_RETRY_DELAY_MS;
+        if (schedule == null || nowMs >= schedule.getExpiryTimeMs()) {
+            try {
+                schedule = fetcher.fetch(nowMs);
+                retryDelayMs = INITIAL_RETRY_DELAY_MS;
+            } catch (IOException e) {
+                Log.w(TAG, "Failed to fetch schedule", e);
+                // The cached schedule, if any, still moves on to the next show in the meantime.
+                fallbackDelayMs = retryDelayMs;
+                retryDelayMs = Math.min(retryDelayMs * 2, MAX_RETRY_DELAY_MS);
+            }
+        }
+        long delayMs = Math.min(fallbackDelayMs, getDelayUntilBoundaryMs(nowMs));
+        publish(nowMs);
+        handler.sendEmptyMessageDelayed(MSG_UPDATE, delayMs);
+        return true;
+    }
+
+    /**
+     * Returns how long to wait until just after the next show boundary, or after the schedule
+     * expires if that's sooner, or {@link Long#MAX_VALUE} if neither is coming up.
+     */
+    private long getDelayUntilBoundaryMs(long nowMs) {
+        if (schedule == null) {
+            return Long.MAX_VALUE;
+        }
+        long updateTimeMs = Long.MAX_VALUE;
+        long boundaryMs = schedule.getNextBoundaryMs(nowMs);
+        if (boundaryMs != -1) {
+            updateTimeMs = boundaryMs;
+        }
+        long expiryTimeMs = schedule.getExpiryTimeMs();
+        if (expiryTimeMs > nowMs) {
+            updateTimeMs = Math.min(updateTimeMs, expiryTimeMs);
+        }
+        return updateTimeMs == Long.MAX_VALUE ? Long.MAX_VALUE
+                : updateTimeMs - nowMs + BOUNDARY_DELAY_MS;
+    }
+
+    private void publish(long nowMs) {
+        Show currentShow = schedule != null ? schedule.getShowAt(nowMs) : null;
+        Show nextShow = schedule != null ? schedule.getNextShow(nowMs) : null;
+        if (equals(currentShow, this.currentShow) && equals(nextShow, this.nextShow)) {
+            return;
+        }
+        this.currentShow = currentShow;
+        this.nextShow = nextShow;
+        synchronized (listenerLock) {
+            if (listener != null) {
+                listener.onShowsChanged(currentShow, nextShow);
+            }
+        }
+    }
+
+    private static boolean equals(Show a, Show b) {
+        return a == null ? b == null : a.equals(b);
+    }
+}
@@ -0,0 +1,129 @@
+package com.thelotradio.android.schedule;
+
+import android.net.Uri;
+
+import com.google.android.exoplayer.C;
+import com.google.android.exoplayer.upstream.DataSpec;
+import com.google.android.exoplayer.upstream.HttpDataSource;
+import com.thelotradio.android.net.DiskResponseCache;
+import com.thelotradio.android.net.HttpConnectionPool;
+import com.thelotradio.android.net.PooledHttpDataSource;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Fetches the schedule over the pooled connections, and keeps the last response in a
+ * {@link DiskResponseCache}. Once a response is cached, fetching sends a conditional request with
+ * its {@code ETag} and {@code Last-Modified} validators, so an unchanged schedule costs a
+ * {@code 304 Not Modified} rather than the whole document. Blocks on network and disk I/O.
+ */
+public final class ScheduleFetcher {
+
+    /* package */ static final int TIMEOUT_MS = 10000;
+    // Far more than a schedule takes, while bounding what a broken server can make us buffer.
+    private static final int MAX_BODY_LENGTH = 1024 * 1024;
+
+    private final HttpConnectionPool pool;
+    private final String userAgent;
+    private final Uri uri;
+    private final DiskResponseCache cache;
+
+    /**
+     * @param pool The pool to take connections from.
+     * @param userAgent The User-Agent string to send with requests.
+     * @param uri Where the schedule is published.
+     * @param cache Where to keep the last response.
+     */
+    public ScheduleFetcher(HttpConnectionPool pool, String userAgent, Uri uri,
+            DiskResponseCache cache) {
+        this.pool = pool;
+        this.userAgent = userAgent;
+        this.uri = uri;
+        this.cache = cache;
+    }
+
+    /**
+     * Returns the cached schedule, or null if none is cached or it is unreadable.
+     */
+    public Schedule getCachedSchedule() {
+        DiskResponseCache.Entry entry = cache.get(uri.toString());
+        if (entry == null) {
+            return null;
+        }
+        try {
+            return Schedule.parse(entry.body, entry.validatedAtMs);
+        } catch (IOException e) {
+            cache.remove(uri.toString());
+            return null;
+        }
+    }
+
+    /**
+     * Fetches the schedule, revalidating the cached one if there is one.
+     *
+     * @param nowMs The current time, in ms since the epoch.
+     * @throws IOException If the schedule couldn't be fetched. The cached schedule is kept.
+     */
+    public Schedule fetch(long nowMs) throws IOException {
+        String url = uri.toString();
+        DiskResponseCache.Entry entry = cache.get(url);
+        PooledHttpDataSource dataSource =
+                new PooledHttpDataSource(pool, userAgent, null, TIMEOUT_MS, TIMEOUT_MS, null, null);
+        if (entry != null) {
+            if (entry.etag != null) {
+                dataSource.setRequestProperty("If-None-Match", entry.etag);
+            }
+            if (entry.lastModified != null) {
+                dataSource.setRequestProperty("If-Modified-Since", entry.lastModified);
+            }
+        }
+        try {
+            dataSource.open(new DataSpec(uri));
+            byte[] body = readBody(dataSource);
+            Map<String, List<String>> headers = dataSource.getResponseHeaders();
+            // Parsed before being cached, so that a broken response doesn't replace a good one.
+            Schedule schedule = Schedule.parse(body, nowMs);
+            cache.put(new DiskResponseCache.Entry(url, getHeader(headers, "ETag"),
+                    getHeader(headers, "Last-Modified"), nowMs, body));
+            return schedule;
+        } catch (HttpDataSource.InvalidResponseCodeException e) {
+            if (e.responseCode != 304 || entry == null) {
+                throw e;
+            }
+            entry = entry.revalidate(getHeader(e.headerFields, "ETag"),
+                    getHeader(e.headerFields, "Last-Modified"), nowMs);
+            cache.put(entry);
+            return Schedule.parse(entry.body, nowMs);
+        } finally {
+            dataSource.close();
+        }
+    }
+
+    private static byte[] readBody(PooledHttpDataSource dataSource) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int bytesRead;
+        while ((bytesRead = dataSource.read(buffer, 0, buffer.length)) != C.RESULT_END_OF_INPUT) {
+            body.write(buffer, 0, bytesRead);
+            if (body.size() > MAX_BODY_LENGTH) {
+                throw new IOException("Schedule too long");
+            }
+        }
+        return body.toByteArray();
+    }
+
+    private static String getHeader(Map<String, List<String>> headers, String name) {
+        if (headers == null) {
+            return null;
+        }
+        for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+            if (name.equalsIgnoreCase(header.getKey()) && !header.getValue().isEmpty()) {
+                return header.getValue().get(0);
+            }
+        }
+        return null;
+    }
+}
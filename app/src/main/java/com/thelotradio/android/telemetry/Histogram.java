@@ -0,0 +1,180 @@
+package com.thelotradio.android.telemetry;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * A histogram of durations in milliseconds over the most recent samples.
+ * <p/>
+ * Buckets grow geometrically, two per power of two, so the histogram has a fixed size whatever the
+ * range of its values, at a resolution of about 40%. To let old samples age out, samples go into a
+ * current generation, which replaces the previous one once it holds {@code generationSize} samples.
+ * The histogram reports both generations together, that is between {@code generationSize} and
+ * twice as many of the most recent samples.
+ */
+public final class Histogram {
+
+    /* package */ static final int BUCKET_COUNT = 64;
+
+    private final int generationSize;
+    private final int[] currentCounts;
+    private final int[] previousCounts;
+
+    private int currentCount;
+    private int previousCount;
+    private long currentSum;
+    private long previousSum;
+    private long max;
+
+    /**
+     * @param generationSize The number of samples after which older samples start to age out.
+     */
+    public Histogram(int generationSize) {
+        this.generationSize = generationSize;
+        currentCounts = new int[BUCKET_COUNT];
+        previousCounts = new int[BUCKET_COUNT];
+    }
+
+    /**
+     * Adds a sample. Never allocates.
+     */
+    public void add(long value) {
+        if (currentCount == generationSize) {
+            System.arraycopy(currentCounts, 0, previousCounts, 0, BUCKET_COUNT);
+            previousCount = currentCount;
+            previousSum = currentSum;
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                currentCounts[i] = 0;
+            }
+            currentCount = 0;
+            currentSum = 0;
+        }
+        value = Math.max(0, value);
+        currentCounts[getBucket(value)]++;
+        currentCount++;
+        currentSum += value;
+        max = Math.max(max, value);
+    }
+
+    public int getCount() {
+        return currentCount + previousCount;
+    }
+
+    /**
+     * Returns the mean of the samples, or 0 if there are none.
+     */
+    public long getMean() {
+        int count = getCount();
+        return count == 0 ? 0 : (currentSum + previousSum) / count;
+    }
+
+    /**
+     * Returns the largest sample ever added.
+     */
+    public long getMax() {
+        return max;
+    }
+
+    /**
+     * Returns an upper bound for the given percentile of the samples, or 0 if there are none.
+     *
+     * @param percentile A percentile between 0 and 100.
+     */
+    public long getPercentile(double percentile) {
+        int count = getCount();
+        if (count == 0) {
+            return 0;
+        }
+        long target = (long) Math.ceil(count * percentile / 100);
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += currentCounts[i] + previousCounts[i];
+            if (seen >= Math.max(1, target)) {
+                return Math.min(getBucketUpperBound(i), max);
+            }
+        }
+        return max;
+    }
+
+    public void clear() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            currentCounts[i] = 0;
+            previousCounts[i] = 0;
+        }
+        currentCount = 0;
+        previousCount = 0;
+        currentSum = 0;
+        previousSum = 0;
+        max = 0;
+    }
+
+    /**
+     * Writes the histogram, leaving out empty buckets.
+     */
+    public void writeTo(DataOutput output) throws IOException {
+        output.writeInt(currentCount);
+        output.writeInt(previousCount);
+        output.writeLong(currentSum);
+        output.writeLong(previousSum);
+        output.writeLong(max);
+        int nonEmptyBuckets = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            if (currentCounts[i] != 0 || previousCounts[i] != 0) {
+                nonEmptyBuckets++;
+            }
+        }
+        output.writeByte(nonEmptyBuckets);
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            if (currentCounts[i] != 0 || previousCounts[i] != 0) {
+                output.writeByte(i);
+                output.writeInt(currentCounts[i]);
+                output.writeInt(previousCounts[i]);
+            }
+        }
+    }
+
+    /**
+     * Replaces the contents of the histogram with one written by {@link #writeTo(DataOutput)}.
+     */
+    public void readFrom(DataInput input) throws IOException {
+        clear();
+        currentCount = input.readInt();
+        previousCount = input.readInt();
+        currentSum = input.readLong();
+        previousSum = input.readLong();
+        max = input.readLong();
+        int nonEmptyBuckets = input.readUnsignedByte();
+        for (int i = 0; i < nonEmptyBuckets; i++) {
+            int bucket = input.readUnsignedByte();
+            if (bucket >= BUCKET_COUNT) {
+                throw new IOException("Bad bucket: " + bucket);
+            }
+            currentCounts[bucket] = input.readInt();
+            previousCounts[bucket] = input.readInt();
+        }
+        if (currentCount > generationSize) {
+            // Written with a larger generation size. Close enough.
+            currentCount = generationSize;
+        }
+    }
+
+    /* package */ static int getBucket(long value) {
+        if (value < 2) {
+            return (int) value;
+        }
+        int log2 = 63 - Long.numberOfLeadingZeros(value);
+        // The bit below the leading one picks the half of [2^log2, 2^(log2 + 1)).
+        int half = (int) (value >>> (log2 - 1)) & 1;
+        return Math.min(BUCKET_COUNT - 1, 2 * log2 + half);
+    }
+
+    /* package */ static long getBucketUpperBound(int bucket) {
+        if (bucket < 2) {
+            return bucket;
+        }
+        int log2 = bucket / 2;
+        long lowerBound = (1L << log2) + (bucket % 2 == 1 ? 1L << (log2 - 1) : 0);
+        return lowerBound + (1L << (log2 - 1)) - 1;
+    }
+}
@@ -0,0 +1,201 @@
+package com.thelotradio.android.telemetry;
+
+import android.media.MediaCodec;
+import android.net.Uri;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.google.android.exoplayer.ExoPlayer;
+import com.google.android.exoplayer.MediaCodecTrackRenderer;
+import com.google.android.exoplayer.audio.AudioTrack;
+import com.thelotradio.android.media.AudioPlayer;
+import com.thelotradio.android.net.ConnectionTimings;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Records the events of an {@link AudioPlayer} into {@link Telemetry}, and derives the rebuffer
+ * durations from its state changes. Like the telemetry itself, it never allocates, except to log
+ * errors along with their exceptions.
+ */
+public final class PlaybackTelemetry implements AudioPlayer.Listener,
+        AudioPlayer.InternalErrorListener, AudioPlayer.InfoListener {
+
+    private static final String TAG = "PlaybackTelemetry";
+
+    private final Telemetry telemetry;
+
+    private boolean playbackStarted;
+    private long rebufferStartMs;
+
+    public PlaybackTelemetry(Telemetry telemetry) {
+        this.telemetry = telemetry;
+    }
+
+    public void startSession() {
+        playbackStarted = false;
+        rebufferStartMs = 0;
+        record(Telemetry.EVENT_SESSION_STARTED, 0, 0);
+    }
+
+    public void endSession() {
+        record(Telemetry.EVENT_SESSION_ENDED, 0, 0);
+    }
+
+    /**
+     * Records the time from a play request until audio started.
+     *
+     * @param latencyMs The time to first audio.
+     * @param warm Whether the pipeline had been prepared before play was requested.
+     */
+    public void onStartupCompleted(long latencyMs, boolean warm) {
+        record(Telemetry.EVENT_STARTUP_COMPLETED, latencyMs, warm ? 1 : 0);
+        telemetry.addSample(Telemetry.HISTOGRAM_STARTUP_LATENCY, latencyMs);
+    }
+
+    // AudioPlayer.Listener
+
+    @Override
+    public void onStateChanged(boolean playWhenReady, int state) {
+        long nowMs = SystemClock.elapsedRealtime();
+        telemetry.recordEvent(Telemetry.EVENT_STATE_CHANGED, nowMs, playWhenReady ? 1 : 0, state);
+        if (state == ExoPlayer.STATE_READY) {
+            if (rebufferStartMs != 0 && playWhenReady) {
+                long durationMs = nowMs - rebufferStartMs;
+                telemetry.recordEvent(Telemetry.EVENT_REBUFFER_COMPLETED, nowMs, durationMs, 0);
+                telemetry.addSample(Telemetry.HISTOGRAM_REBUFFER_DURATION, durationMs);
+            }
+            rebufferStartMs = 0;
+            playbackStarted |= playWhenReady;
+        } else if (state == ExoPlayer.STATE_BUFFERING) {
+            // Only buffering that interrupts audio counts as a rebuffer, not the initial load.
+            if (playbackStarted && playWhenReady && rebufferStartMs == 0) {
+                rebufferStartMs = nowMs;
+            }
+        } else {
+            playbackStarted = false;
+            rebufferStartMs = 0;
+        }
+        if (!playWhenReady) {
+            // A pause while rebuffering ends the wait the listener noticed.
+            rebufferStartMs = 0;
+        }
+    }
+
+    @Override
+    public void onError(Exception e) {
+        Log.e(TAG, "playerFailed", e);
+        record(Telemetry.EVENT_PLAYER_ERROR, 0, 0);
+    }
+
+    // AudioPlayer.InfoListener
+
+    @Override
+    public void onStreamChanged(Uri uri, int bitrate) {
+        record(Telemetry.EVENT_STREAM_CHANGED, bitrate, 0);
+    }
+
+    @Override
+    public void onStreamReconnected(int reconnectCount, long outageMs) {
+        record(Telemetry.EVENT_STREAM_RECONNECTED, reconnectCount, outageMs);
+        telemetry.addSample(Telemetry.HISTOGRAM_RECONNECT_OUTAGE, outageMs);
+    }
+
+    @Override
+    public void onDecoderInitialized(String decoderName, long initializationDurationMs) {
+        record(Telemetry.EVENT_DECODER_INITIALIZED, initializationDurationMs, 0);
+        telemetry.addSample(Telemetry.HISTOGRAM_DECODER_INITIALIZATION, initializationDurationMs);
+    }
+
+    @Override
+    public void onSoftwareDecodingFallback(
+            MediaCodecTrackRenderer.DecoderInitializationException e) {
+        Log.w(TAG, "softwareDecodingFallback", e);
+        record(Telemetry.EVENT_SOFTWARE_DECODING_FALLBACK, 0, 0);
+    }
+
+    @Override
+    public void onConnectionOpened(ConnectionTimings timings) {
+        int flags = (timings.reused ? 1 : 0) | (timings.tlsResumed ? 2 : 0);
+        record(Telemetry.EVENT_CONNECTION_OPENED, timings.getTotalMs(), flags);
+        telemetry.addSample(Telemetry.HISTOGRAM_CONNECTION_SETUP, timings.getTotalMs());
+    }
+
+    @Override
+    public void onBurstCycleCompleted(long burstMs, long idleMs) {
+        record(Telemetry.EVENT_DOWNLOAD_BURST, burstMs, idleMs);
+    }
+
+    /**
+     * Records the fraction of time spent downloading in low-power mode, typically at the end of a
+     * session.
+     */
+    public void onDownloadDutyCycle(float dutyCycle) {
+        record(Telemetry.EVENT_DOWNLOAD_DUTY_CYCLE, Math.round(dutyCycle * 1000), 0);
+    }
+
+    @Override
+    public void onRecordingFileCompleted(File file) {
+        record(Telemetry.EVENT_RECORDING_FILE_COMPLETED, file.length(), 0);
+    }
+
+    // AudioPlayer.InternalErrorListener
+
+    @Override
+    public void onLoadError(int sourceId, IOException e) {
+        logInternalError("loadError", e);
+        record(Telemetry.EVENT_LOAD_ERROR, sourceId, 0);
+    }
+
+    @Override
+    public void onRecordingError(IOException e) {
+        logInternalError("recordingError", e);
+        record(Telemetry.EVENT_RECORDING_ERROR, 0, 0);
+    }
+
+    @Override
+    public void onRendererInitializationError(Exception e) {
+        logInternalError("rendererInitError", e);
+        record(Telemetry.EVENT_RENDERER_INITIALIZATION_ERROR, 0, 0);
+    }
+
+    @Override
+    public void onDecoderInitializationError(
+            MediaCodecTrackRenderer.DecoderInitializationException e) {
+        logInternalError("decoderInitializationError", e);
+        record(Telemetry.EVENT_DECODER_INITIALIZATION_ERROR, 0, 0);
+    }
+
+    @Override
+    public void onAudioTrackInitializationError(AudioTrack.InitializationException e) {
+        logInternalError("audioTrackInitializationError", e);
+        record(Telemetry.EVENT_AUDIO_TRACK_INITIALIZATION_ERROR, 0, 0);
+    }
+
+    @Override
+    public void onAudioTrackWriteError(AudioTrack.WriteException e) {
+        logInternalError("audioTrackWriteError", e);
+        record(Telemetry.EVENT_AUDIO_TRACK_WRITE_ERROR, 0, 0);
+    }
+
+    @Override
+    public void onAudioTrackUnderrun(int bufferSize, long bufferSizeMs,
+            long elapsedSinceLastFeedMs) {
+        record(Telemetry.EVENT_UNDERRUN, bufferSizeMs, elapsedSinceLastFeedMs);
+    }
+
+    @Override
+    public void onCryptoError(MediaCodec.CryptoException e) {
+        logInternalError("cryptoError", e);
+        record(Telemetry.EVENT_CRYPTO_ERROR, 0, 0);
+    }
+
+    private static void logInternalError(String type, Exception e) {
+        Log.e(TAG, "internalError [" + type + "]", e);
+    }
+
+    private void record(int type, long value1, long value2) {
+        telemetry.recordEvent(type, SystemClock.elapsedRealtime(), value1, value2);
+    }
+}
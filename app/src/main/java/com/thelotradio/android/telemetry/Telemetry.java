@@ -0,0 +1,286 @@
+package com.thelotradio.android.telemetry;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Typed playback events and histograms of playback latencies.
+ * <p/>
+ * Events go into a ring of preallocated arrays, and samples into fixed-size {@link Histogram}s, so
+ * recording never allocates. The histograms and the events still in the ring can be saved to a
+ * compact binary file. Loading that file restores the histograms, so they aggregate across
+ * sessions, while the events only describe the sessions since the file was written.
+ * <p/>
+ * The file holds the magic number {@code LOTT} and the format version, then the histograms, then
+ * the events from oldest to newest, each as its type, the time since the previous event and two
+ * values whose meaning depends on the type.
+ */
+public final class Telemetry {
+
+    public static final int EVENT_SESSION_STARTED = 1;
+    public static final int EVENT_SESSION_ENDED = 2;
+    /** value1: 1 if playWhenReady, else 0. value2: the ExoPlayer state. */
+    public static final int EVENT_STATE_CHANGED = 3;
+    /** value1: the time from the play request to audio, in ms. value2: 1 if warm, else 0. */
+    public static final int EVENT_STARTUP_COMPLETED = 4;
+    /** value1: the duration of the rebuffer, in ms. */
+    public static final int EVENT_REBUFFER_COMPLETED = 5;
+    /** value1: the AudioTrack buffer size, in ms. value2: the time since it was last fed, in ms. */
+    public static final int EVENT_UNDERRUN = 6;
+    /** value1: the id of the source that failed. */
+    public static final int EVENT_LOAD_ERROR = 7;
+    /** value1: the time taken to initialize the decoder, in ms. */
+    public static final int EVENT_DECODER_INITIALIZED = 8;
+    /** value1: the bitrate of the new stream, in bits per second. */
+    public static final int EVENT_STREAM_CHANGED = 9;
+    /** value1: the number of reconnects so far. value2: the length of the outage, in ms. */
+    public static final int EVENT_STREAM_RECONNECTED = 10;
+    /** value1: the length of the file, in bytes. */
+    public static final int EVENT_RECORDING_FILE_COMPLETED = 11;
+    public static final int EVENT_RECORDING_ERROR = 12;
+    public static final int EVENT_PLAYER_ERROR = 13;
+    public static final int EVENT_RENDERER_INITIALIZATION_ERROR = 14;
+    public static final int EVENT_DECODER_INITIALIZATION_ERROR = 15;
+    public static final int EVENT_AUDIO_TRACK_INITIALIZATION_ERROR = 16;
+    public static final int EVENT_AUDIO_TRACK_WRITE_ERROR = 17;
+    public static final int EVENT_CRYPTO_ERROR = 18;
+    /**
+     * value1: the time from starting to connect until the first byte of the response, in ms.
+     * value2: 1 if the connection was reused, plus 2 if its TLS session was resumed.
+     */
+    public static final int EVENT_CONNECTION_OPENED = 19;
+    /** value1: how long the download burst lasted, in ms. value2: the idle time after it, in ms. */
+    public static final int EVENT_DOWNLOAD_BURST = 20;
+    /** value1: the fraction of low-power playback spent downloading, in thousandths. */
+    public static final int EVENT_DOWNLOAD_DUTY_CYCLE = 21;
+    /** MediaCodec failed to initialize, so playback was retried with the software decoders. */
+    public static final int EVENT_SOFTWARE_DECODING_FALLBACK = 22;
+
+    public static final int HISTOGRAM_STARTUP_LATENCY = 0;
+    public static final int HISTOGRAM_REBUFFER_DURATION = 1;
+    public static final int HISTOGRAM_DECODER_INITIALIZATION = 2;
+    public static final int HISTOGRAM_RECONNECT_OUTAGE = 3;
+    public static final int HISTOGRAM_CONNECTION_SETUP = 4;
+    public static final int HISTOGRAM_COMMAND_LATENCY = 5;
+    private static final int HISTOGRAM_COUNT = 6;
+
+    private static final int MAGIC = 0x4C4F5454;
+    private static final int VERSION = 1;
+
+    private final int capacity;
+    private final long[] eventTimesMs;
+    private final byte[] eventTypes;
+    private final long[] eventValues1;
+    private final long[] eventValues2;
+    private final Histogram[] histograms;
+
+    private int nextEvent;
+    private int eventCount;
+
+    /**
+     * @param eventCapacity The number of most recent events to keep.
+     * @param histogramGenerationSize The number of samples after which older samples start to
+     *     age out of the histograms. See {@link Histogram}.
+     */
+    public Telemetry(int eventCapacity, int histogramGenerationSize) {
+        capacity = eventCapacity;
+        eventTimesMs = new long[eventCapacity];
+        eventTypes = new byte[eventCapacity];
+        eventValues1 = new long[eventCapacity];
+        eventValues2 = new long[eventCapacity];
+        histograms = new Histogram[HISTOGRAM_COUNT];
+        for (int i = 0; i < HISTOGRAM_COUNT; i++) {
+            histograms[i] = new Histogram(histogramGenerationSize);
+        }
+    }
+
+    /**
+     * Records an event, overwriting the oldest one if the ring is full. Never allocates.
+     *
+     * @param type One of the {@code EVENT_*} constants.
+     * @param timeMs The time of the event, on a monotonic clock.
+     * @param value1 The first value of the event. Depends on the type.
+     * @param value2 The second value of the event. Depends on the type.
+     */
+    public synchronized void recordEvent(int type, long timeMs, long value1, long value2) {
+        eventTypes[nextEvent] = (byte) type;
+        eventTimesMs[nextEvent] = timeMs;
+        eventValues1[nextEvent] = value1;
+        eventValues2[nextEvent] = value2;
+        nextEvent = (nextEvent + 1) % capacity;
+        eventCount = Math.min(eventCount + 1, capacity);
+    }
+
+    /**
+     * Adds a sample to a histogram. Never allocates.
+     *
+     * @param histogram One of the {@code HISTOGRAM_*} constants.
+     * @param valueMs The sample, in ms.
+     */
+    public synchronized void addSample(int histogram, long valueMs) {
+        histograms[histogram].add(valueMs);
+    }
+
+    /**
+     * Returns the number of events in the ring.
+     */
+    public synchronized int getEventCount() {
+        return eventCount;
+    }
+
+    /**
+     * Returns the type of an event, where 0 is the oldest event in the ring.
+     */
+    public synchronized int getEventType(int index) {
+        return eventTypes[getEventSlot(index)];
+    }
+
+    /**
+     * Returns the first value of an event, where 0 is the oldest event in the ring.
+     */
+    public synchronized long getEventValue1(int index) {
+        return eventValues1[getEventSlot(index)];
+    }
+
+    /**
+     * Forgets the samples of a histogram, so that it starts over.
+     */
+    public synchronized void clearSamples(int histogram) {
+        histograms[histogram].clear();
+    }
+
+    public synchronized int getSampleCount(int histogram) {
+        return histograms[histogram].getCount();
+    }
+
+    public synchronized long getMean(int histogram) {
+        return histograms[histogram].getMean();
+    }
+
+    /**
+     * @see Histogram#getPercentile(double)
+     */
+    public synchronized long getPercentile(int histogram, double percentile) {
+        return histograms[histogram].getPercentile(percentile);
+    }
+
+    /**
+     * Returns the histograms and the events in the ring in the binary format.
+     */
+    public synchronized byte[] toByteArray() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + eventCount * 20);
+        DataOutputStream output = new DataOutputStream(bytes);
+        try {
+            output.writeInt(MAGIC);
+            output.writeByte(VERSION);
+            output.writeByte(HISTOGRAM_COUNT);
+            for (Histogram histogram : histograms) {
+                histogram.writeTo(output);
+            }
+            output.writeInt(eventCount);
+            long previousTimeMs = eventCount == 0 ? 0 : eventTimesMs[getEventSlot(0)];
+            output.writeLong(previousTimeMs);
+            for (int i = 0; i < eventCount; i++) {
+                int slot = getEventSlot(i);
+                output.writeByte(eventTypes[slot]);
+                output.writeInt((int) (eventTimesMs[slot] - previousTimeMs));
+                writeValue(output, eventValues1[slot]);
+                writeValue(output, eventValues2[slot]);
+                previousTimeMs = eventTimesMs[slot];
+            }
+            output.flush();
+        } catch (IOException e) {
+            // Never thrown by a ByteArrayOutputStream.
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Replaces the histograms with those in data written by {@link #toByteArray()}.
+     *
+     * @throws IOException If the data is not in the binary format.
+     */
+    public synchronized void readHistograms(byte[] data) throws IOException {
+        DataInputStream input = new DataInputStream(new ByteArrayInputStream(data));
+        if (input.readInt() != MAGIC || input.readUnsignedByte() != VERSION) {
+            throw new IOException("Unrecognized telemetry file");
+        }
+        int histogramCount = input.readUnsignedByte();
+        try {
+            for (int i = 0; i < histogramCount; i++) {
+                if (i < HISTOGRAM_COUNT) {
+                    histograms[i].readFrom(input);
+                }
+            }
+        } catch (IOException e) {
+            for (Histogram histogram : histograms) {
+                histogram.clear();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Writes the histograms and events to a file, replacing it atomically. Blocks on disk I/O.
+     */
+    public void save(File file) throws IOException {
+        byte[] data = toByteArray();
+        File temporaryFile = new File(file.getPath() + ".tmp");
+        FileOutputStream output = new FileOutputStream(temporaryFile);
+        try {
+            output.write(data);
+            output.getFD().sync();
+        } finally {
+            output.close();
+        }
+        if (!temporaryFile.renameTo(file)) {
+            temporaryFile.delete();
+            throw new IOException("Failed to replace " + file);
+        }
+    }
+
+    /**
+     * Restores the histograms from a file written by {@link #save(File)}, if it exists. Blocks on
+     * disk I/O.
+     */
+    public void load(File file) throws IOException {
+        if (!file.exists()) {
+            return;
+        }
+        byte[] data = new byte[(int) file.length()];
+        FileInputStream input = new FileInputStream(file);
+        try {
+            new DataInputStream(input).readFully(data);
+        } finally {
+            input.close();
+        }
+        readHistograms(data);
+    }
+
+    private int getEventSlot(int index) {
+        if (index < 0 || index >= eventCount) {
+            throw new IndexOutOfBoundsException();
+        }
+        return (nextEvent - eventCount + index + capacity) % capacity;
+    }
+
+    /**
+     * Writes a value as a variable-length quantity, since most values are small.
+     */
+    private static void writeValue(DataOutputStream output, long value) throws IOException {
+        // Zigzag encoding keeps small negative values short too.
+        long bits = (value << 1) ^ (value >> 63);
+        while ((bits & ~0x7FL) != 0) {
+            output.writeByte((int) ((bits & 0x7F) | 0x80));
+            bits >>>= 7;
+        }
+        output.writeByte((int) bits);
+    }
+}
@@ -0,0 +1,73 @@
+package com.thelotradio.android.visualizer;
+
+/**
+ * A forward complex FFT of a fixed size, computed in place. The tables are built up front, so a
+ * transform doesn't allocate.
+ */
+/* package */ final class Fft {
+
+    private final int size;
+    private final float[] cos;
+    private final float[] sin;
+    private final int[] bitReversal;
+
+    /**
+     * @param size The number of points, a power of two.
+     */
+    public Fft(int size) {
+        if (Integer.bitCount(size) != 1) {
+            throw new IllegalArgumentException("Size must be a power of two: " + size);
+        }
+        this.size = size;
+        cos = new float[size / 2];
+        sin = new float[size / 2];
+        for (int i = 0; i < size / 2; i++) {
+            double angle = 2 * Math.PI * i / size;
+            cos[i] = (float) Math.cos(angle);
+            sin[i] = (float) -Math.sin(angle);
+        }
+        bitReversal = new int[size];
+        int bits = Integer.numberOfTrailingZeros(size);
+        for (int i = 0; i < size; i++) {
+            bitReversal[i] = bits == 0 ? 0 : Integer.reverse(i) >>> (32 - bits);
+        }
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Replaces {@code size} points, in natural order, with their transform.
+     */
+    public void transform(float[] real, float[] imaginary) {
+        for (int i = 0; i < size; i++) {
+            int j = bitReversal[i];
+            if (i < j) {
+                float re = real[i];
+                real[i] = real[j];
+                real[j] = re;
+                float im = imaginary[i];
+                imaginary[i] = imaginary[j];
+                imaginary[j] = im;
+            }
+        }
+        for (int span = 1; span < size; span <<= 1) {
+            int stride = size / (2 * span);
+            for (int start = 0; start < size; start += 2 * span) {
+                for (int i = 0; i < span; i++) {
+                    float c = cos[i * stride];
+                    float s = sin[i * stride];
+                    int p = start + i;
+                    int q = p + span;
+                    float re = real[q] * c - imaginary[q] * s;
+                    float im = real[q] * s + imaginary[q] * c;
+                    real[q] = real[p] - re;
+                    imaginary[q] = imaginary[p] - im;
+                    real[p] += re;
+                    imaginary[p] += im;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.thelotradio.android.visualizer;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hands frames of floats from one thread to another without locking or allocating. The writer
+ * fills its back buffer and publishes it, the reader acquires the latest published frame as its
+ * front buffer. The two are swapped through a spare buffer, so that neither side ever waits for
+ * the other or sees a frame while it is being written. Frames the reader didn't get to in time
+ * are replaced by newer ones.
+ */
+/* package */ final class FrameExchange {
+
+    private static final int INDEX_MASK = 3;
+    // Set on the spare buffer when it holds a frame the reader hasn't acquired.
+    private static final int FRESH = 4;
+
+    private final float[][] frames;
+    private final AtomicInteger spare;
+
+    // Owned by the writer.
+    private int back;
+    // Owned by the reader.
+    private int front;
+
+    public FrameExchange(int frameLength) {
+        frames = new float[3][frameLength];
+        back = 0;
+        spare = new AtomicInteger(1);
+        front = 2;
+    }
+
+    /**
+     * Returns the buffer the writer fills next.
+     */
+    public float[] getBackBuffer() {
+        return frames[back];
+    }
+
+    /**
+     * Publishes the back buffer to the reader, and replaces it with another.
+     */
+    public void publish() {
+        back = spare.getAndSet(back | FRESH) & INDEX_MASK;
+    }
+
+    /**
+     * Makes the latest published frame the front buffer, if there is one the reader hasn't
+     * acquired yet.
+     *
+     * @return Whether the front buffer changed.
+     */
+    public boolean acquire() {
+        if ((spare.get() & FRESH) == 0) {
+            return false;
+        }
+        front = spare.getAndSet(front) & INDEX_MASK;
+        return true;
+    }
+
+    /**
+     * Returns the frame the reader acquired last.
+     */
+    public float[] getFrontBuffer() {
+        return frames[front];
+    }
+}
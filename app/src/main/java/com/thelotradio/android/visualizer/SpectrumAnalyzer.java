@@ -0,0 +1,223 @@
+package com.thelotradio.android.visualizer;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Message;
+import android.os.Process;
+
+import com.thelotradio.android.media.AudioPlayer;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Computes the spectrum of the audio being played, for display. The playback thread only mixes
+ * the decoded audio down into blocks of {@link #FFT_SIZE} samples, and the spectrum of each block
+ * is computed on a background thread, into {@link #BAND_COUNT} levels on a logarithmic frequency
+ * scale. Blocks and levels are handed between the threads by {@link FrameExchange}s, so nothing
+ * locks or allocates once started.
+ * <p/>
+ * Analysis only runs between {@link #start(Listener)} and {@link #stop()}, which are called on
+ * the main thread. The rest of the time the playback thread skips the audio after a single check.
+ * The background thread is started by the first start, and kept from one start to the next, until
+ * {@link #release()}.
+ */
+public final class SpectrumAnalyzer implements AudioPlayer.PcmListener, Handler.Callback {
+
+    /**
+     * Listener for new levels.
+     */
+    public interface Listener {
+        /**
+         * Invoked on the analysis thread when new levels can be read with
+         * {@link #readLevels(float[])}.
+         */
+        void onLevelsAvailable();
+    }
+
+    public static final int BAND_COUNT = 32;
+
+    // About 23 ms at 44.1 kHz, so the display follows the audio at over 40 frames per second.
+    /* package */ static final int FFT_SIZE = 1024;
+
+    private static final int MSG_ANALYZE = 0;
+    // Levels span this range of decibels below full scale.
+    private static final float DYNAMIC_RANGE_DB = 60;
+    // How much of a level is kept from one block to the next, so peaks fall back smoothly.
+    private static final float DECAY = 0.85f;
+
+    private final FrameExchange samples;
+    private final FrameExchange levels;
+    private final AtomicBoolean analysisPending;
+
+    // Only accessed on the analysis thread.
+    private final Fft fft;
+    private final float[] window;
+    private final float[] real;
+    private final float[] imaginary;
+    private final int[] bandStarts;
+    private final float[] smoothedLevels;
+
+    // Only accessed on the playback thread.
+    private int sampleCount;
+
+    // Guarded by this.
+    private HandlerThread thread;
+    private boolean released;
+
+    // Set before the listener.
+    private volatile Handler handler;
+    private volatile Listener listener;
+
+    public SpectrumAnalyzer() {
+        samples = new FrameExchange(FFT_SIZE);
+        levels = new FrameExchange(BAND_COUNT);
+        analysisPending = new AtomicBoolean();
+        fft = new Fft(FFT_SIZE);
+        window = new float[FFT_SIZE];
+        for (int i = 0; i < FFT_SIZE; i++) {
+            // Hann window.
+            window[i] = (float) (0.5 - 0.5 * Math.cos(2 * Math.PI * i / FFT_SIZE));
+        }
+        real = new float[FFT_SIZE];
+        imaginary = new float[FFT_SIZE];
+        bandStarts = getBandStarts(BAND_COUNT, FFT_SIZE / 2);
+        smoothedLevels = new float[BAND_COUNT];
+    }
+
+    /**
+     * Starts analyzing the audio played from now on.
+     *
+     * @param listener The listener to tell about new levels.
+     */
+    public synchronized void start(Listener listener) {
+        if (released) {
+            return;
+        }
+        if (thread == null) {
+            thread = new HandlerThread("SpectrumAnalyzer", Process.THREAD_PRIORITY_BACKGROUND);
+            thread.start();
+            handler = new Handler(thread.getLooper(), this);
+        }
+        this.listener = listener;
+    }
+
+    /**
+     * Stops analyzing, for example because the spectrum is no longer visible.
+     */
+    public void stop() {
+        listener = null;
+    }
+
+    /**
+     * Stops analyzing for good, and ends the analysis thread.
+     */
+    public synchronized void release() {
+        released = true;
+        listener = null;
+        if (thread != null) {
+            thread.quit();
+        }
+    }
+
+    /**
+     * Copies the latest levels into {@code bands}, each between 0 and 1, from the lowest
+     * frequency to the highest. Must be called on a single thread.
+     *
+     * @return Whether the levels changed since the last call.
+     */
+    public boolean readLevels(float[] bands) {
+        if (!levels.acquire()) {
+            return false;
+        }
+        System.arraycopy(levels.getFrontBuffer(), 0, bands, 0, BAND_COUNT);
+        return true;
+    }
+
+    @Override
+    public void onPcm(ByteBuffer buffer, int offset, int size, int channelCount) {
+        if (listener == null) {
+            return;
+        }
+        float[] block = samples.getBackBuffer();
+        float scale = 1f / (32768 * channelCount);
+        int frameSize = 2 * channelCount;
+        int end = offset + size - frameSize;
+        for (int position = offset; position <= end; position += frameSize) {
+            int sum = 0;
+            for (int i = 0; i < frameSize; i += 2) {
+                sum += (short) ((buffer.get(position + i) & 0xFF)
+                        | (buffer.get(position + i + 1) << 8));
+            }
+            block[sampleCount++] = sum * scale;
+            if (sampleCount == FFT_SIZE) {
+                samples.publish();
+                block = samples.getBackBuffer();
+                sampleCount = 0;
+                if (!analysisPending.getAndSet(true)) {
+                    // Set before the listener, so not null.
+                    handler.sendEmptyMessage(MSG_ANALYZE);
+                }
+            }
+        }
+    }
+
+    @Override
+    public boolean handleMessage(Message msg) {
+        if (msg.what != MSG_ANALYZE) {
+            return false;
+        }
+        analysisPending.set(false);
+        if (samples.acquire()) {
+            analyze(samples.getFrontBuffer(), levels.getBackBuffer());
+            levels.publish();
+            Listener listener = this.listener;
+            if (listener != null) {
+                listener.onLevelsAvailable();
+            }
+        }
+        return true;
+    }
+
+    private void analyze(float[] block, float[] bands) {
+        for (int i = 0; i < FFT_SIZE; i++) {
+            real[i] = block[i] * window[i];
+            imaginary[i] = 0;
+        }
+        fft.transform(real, imaginary);
+        // A full scale sine, windowed, peaks at a quarter of the transform size.
+        float scale = 4f / FFT_SIZE;
+        for (int band = 0; band < BAND_COUNT; band++) {
+            float peak = 0;
+            for (int bin = bandStarts[band]; bin < bandStarts[band + 1]; bin++) {
+                peak = Math.max(peak, real[bin] * real[bin] + imaginary[bin] * imaginary[bin]);
+            }
+            float level = 0;
+            if (peak > 0) {
+                double decibels = 10 * Math.log10(peak) + 20 * Math.log10(scale);
+                level = (float) Math.max(0, Math.min(1, 1 + decibels / DYNAMIC_RANGE_DB));
+            }
+            smoothedLevels[band] = Math.max(level, smoothedLevels[band] * DECAY);
+            bands[band] = smoothedLevels[band];
+        }
+    }
+
+    /**
+     * Splits the bins from 1 up to {@code binCount} into bands of logarithmically growing width,
+     * each at least one bin wide.
+     *
+     * @return The first bin of each band, followed by {@code binCount}.
+     */
+    /* package */ static int[] getBandStarts(int bandCount, int binCount) {
+        int[] starts = new int[bandCount + 1];
+        starts[0] = 1;
+        for (int band = 1; band < bandCount; band++) {
+            int start = (int) Math.round(Math.pow(binCount, (double) band / bandCount));
+            // Leave at least one bin for each band still to come.
+            starts[band] = Math.min(Math.max(start, starts[band - 1] + 1),
+                    binCount - (bandCount - band));
+        }
+        starts[bandCount] = binCount;
+        return starts;
+    }
+}
@@ -0,0 +1,133 @@
+package com.thelotradio.android.visualizer;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.util.AttributeSet;
+import android.view.View;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Shows the levels of a {@link SpectrumAnalyzer} as bars. The analyzer is started while the view
+ * is attached to a visible window, and stopped otherwise, so that nothing is analyzed that can't
+ * be seen. When the analyzer has new levels, the view reads them on the next display frame and
+ * redraws, so it does nothing while no audio plays.
+ */
+public class SpectrumView extends View {
+
+    // The share of each bar's slot left empty, between bars.
+    private static final float BAR_GAP = 0.25f;
+
+    private final float[] levels;
+    private final Paint paint;
+    private final AtomicBoolean updatePending;
+    private final Runnable update = new Runnable() {
+        @Override
+        public void run() {
+            updatePending.set(false);
+            if (running && analyzer.readLevels(levels)) {
+                invalidate();
+            }
+        }
+    };
+    private final SpectrumAnalyzer.Listener analyzerListener = new SpectrumAnalyzer.Listener() {
+        @Override
+        public void onLevelsAvailable() {
+            // At most one update per display frame, however many blocks were analyzed.
+            if (!updatePending.getAndSet(true)) {
+                postOnAnimation(update);
+            }
+        }
+    };
+
+    private SpectrumAnalyzer analyzer;
+    private boolean running;
+
+    public SpectrumView(Context context) {
+        this(context, null);
+    }
+
+    public SpectrumView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+        levels = new float[SpectrumAnalyzer.BAND_COUNT];
+        paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        paint.setColor(0xFF000000);
+        updatePending = new AtomicBoolean();
+    }
+
+    /**
+     * Sets the analyzer to show, or null to show nothing.
+     */
+    public void setAnalyzer(SpectrumAnalyzer analyzer) {
+        if (analyzer == this.analyzer) {
+            return;
+        }
+        stopAnalyzer();
+        this.analyzer = analyzer;
+        updateRunning();
+    }
+
+    public void setColor(int color) {
+        paint.setColor(color);
+        invalidate();
+    }
+
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        updateRunning();
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        stopAnalyzer();
+    }
+
+    @Override
+    protected void onWindowVisibilityChanged(int visibility) {
+        super.onWindowVisibilityChanged(visibility);
+        updateRunning();
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        int width = getWidth() - getPaddingLeft() - getPaddingRight();
+        int height = getHeight() - getPaddingTop() - getPaddingBottom();
+        float slotWidth = (float) width / levels.length;
+        float barWidth = slotWidth * (1 - BAR_GAP);
+        float bottom = getPaddingTop() + height;
+        for (int band = 0; band < levels.length; band++) {
+            float left = getPaddingLeft() + band * slotWidth + (slotWidth - barWidth) / 2;
+            canvas.drawRect(left, bottom - levels[band] * height, left + barWidth, bottom, paint);
+        }
+    }
+
+    private void updateRunning() {
+        if (analyzer != null && getWindowToken() != null
+                && getWindowVisibility() == VISIBLE) {
+            if (!running) {
+                running = true;
+                updatePending.set(false);
+                analyzer.start(analyzerListener);
+            }
+        } else {
+            stopAnalyzer();
+        }
+    }
+
+    private void stopAnalyzer() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        removeCallbacks(update);
+        analyzer.stop();
+        // Don't leave the last levels frozen on screen when shown again.
+        for (int band = 0; band < levels.length; band++) {
+            levels[band] = 0;
+        }
+        invalidate();
+    }
+}
@@ -0,0 +1,139 @@
+package com.thelotradio.android;
+
+import android.net.Uri;
+import android.os.Handler;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+// Handler, SystemClock and Uri need the framework, which the android.jar of unit tests only stubs.
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 23)
+public class NotificationUpdaterTest {
+
+    private static final Uri ICON_URI = Uri.parse("https://example.com/a.jpg");
+
+    private NotificationUpdater.Content content;
+    private List<NotificationUpdater.Content> posted;
+    private NotificationUpdater updater;
+
+    @Before
+    public void setUp() {
+        content = content("Show", ICON_URI, false);
+        posted = new ArrayList<>();
+        updater = new NotificationUpdater(new Handler(), new NotificationUpdater.Delegate() {
+            @Override
+            public NotificationUpdater.Content getContent() {
+                return content;
+            }
+
+            @Override
+            public void onPostNotification(NotificationUpdater.Content content) {
+                posted.add(content);
+            }
+        });
+        // Posted updates only run once the test moves the clock on.
+        Robolectric.getForegroundThreadScheduler().pause();
+    }
+
+    @Test
+    public void coalescesUpdatesWithinFrame() {
+        updater.start();
+        content = content("Show", ICON_URI, true);
+        updater.update();
+        content = content("Other show", ICON_URI, true);
+        updater.update();
+        content = content("Last show", ICON_URI, false);
+        updater.update();
+        assertEquals(0, posted.size());
+        advance(NotificationUpdater.FRAME_INTERVAL_MS);
+        assertEquals(1, posted.size());
+        assertSame(content, posted.get(0));
+    }
+
+    @Test
+    public void postsNoSoonerThanFrameAfterPrevious() {
+        updater.start();
+        content = content("Other show", ICON_URI, false);
+        updater.update();
+        advance(NotificationUpdater.FRAME_INTERVAL_MS);
+        assertEquals(1, posted.size());
+
+        content = content("Last show", ICON_URI, false);
+        updater.update();
+        advance(NotificationUpdater.FRAME_INTERVAL_MS - 1);
+        assertEquals(1, posted.size());
+        advance(1);
+        assertEquals(2, posted.size());
+    }
+
+    @Test
+    public void skipsUnchangedContent() {
+        updater.start();
+        // Equal, though read again.
+        content = content("Show", Uri.parse(ICON_URI.toString()), false);
+        updater.update();
+        advance(NotificationUpdater.FRAME_INTERVAL_MS);
+        assertEquals(0, posted.size());
+    }
+
+    @Test
+    public void postsChangedLargeIconUri() {
+        updater.start();
+        content = content("Show", Uri.parse("https://example.com/b.jpg"), false);
+        updater.update();
+        advance(NotificationUpdater.FRAME_INTERVAL_MS);
+        assertEquals(1, posted.size());
+
+        content = content("Show", null, false);
+        updater.update();
+        advance(NotificationUpdater.FRAME_INTERVAL_MS);
+        assertEquals(2, posted.size());
+    }
+
+    @Test
+    public void postsOnceFirstPlaybackStateArrives() {
+        content = new NotificationUpdater.Content("Show", null, null, null, false, true, false);
+        updater.start();
+        // Shown as paused either way, but the state is there now.
+        content = new NotificationUpdater.Content("Show", null, null, null, true, true, false);
+        updater.update();
+        advance(NotificationUpdater.FRAME_INTERVAL_MS);
+        assertEquals(1, posted.size());
+    }
+
+    @Test
+    public void ignoresUpdatesUnlessStarted() {
+        content = content("Other show", ICON_URI, false);
+        updater.update();
+        advance(NotificationUpdater.FRAME_INTERVAL_MS);
+        assertEquals(0, posted.size());
+
+        updater.start();
+        content = content("Last show", ICON_URI, false);
+        updater.update();
+        updater.stop();
+        advance(NotificationUpdater.FRAME_INTERVAL_MS);
+        assertEquals(0, posted.size());
+    }
+
+    private static NotificationUpdater.Content content(String title, Uri largeIconUri,
+            boolean paused) {
+        return new NotificationUpdater.Content(title, "The Lot Radio", largeIconUri, null, true,
+                paused, false);
+    }
+
+    private static void advance(long intervalMs) {
+        Robolectric.getForegroundThreadScheduler().advanceBy(intervalMs);
+    }
+}
@@ -0,0 +1,50 @@
+package com.thelotradio.android.artwork;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class ArtworkCacheTest {
+
+    @Test
+    public void keepsSizeOfImageThatFits() {
+        assertArrayEquals(new int[] {96, 64}, ArtworkCache.getFittedSize(96, 64, 128, 128));
+    }
+
+    @Test
+    public void fitsWideImageToTargetWidth() {
+        assertArrayEquals(new int[] {128, 64}, ArtworkCache.getFittedSize(2000, 1000, 128, 128));
+    }
+
+    @Test
+    public void fitsTallImageToTargetHeight() {
+        assertArrayEquals(new int[] {72, 128}, ArtworkCache.getFittedSize(900, 1600, 256, 128));
+    }
+
+    @Test
+    public void fitsExtremeAspectRatioToAtLeastOnePixel() {
+        assertArrayEquals(new int[] {128, 1}, ArtworkCache.getFittedSize(10000, 10, 128, 128));
+    }
+
+    @Test
+    public void doesNotSubsampleImageAtFittedSize() {
+        assertEquals(1, ArtworkCache.getSampleSize(128, 128, 128, 128));
+        assertEquals(1, ArtworkCache.getSampleSize(255, 255, 128, 128));
+    }
+
+    @Test
+    public void subsamplesByLargestPowerOfTwoCoveringFittedSize() {
+        assertEquals(2, ArtworkCache.getSampleSize(256, 256, 128, 128));
+        // 1000 / 8 would fall short of 128.
+        assertEquals(4, ArtworkCache.getSampleSize(1000, 1000, 128, 128));
+        assertEquals(8, ArtworkCache.getSampleSize(1024, 1024, 128, 128));
+    }
+
+    @Test
+    public void subsamplingIsLimitedByEitherDimension() {
+        int[] size = ArtworkCache.getFittedSize(2000, 1000, 128, 128);
+        // Subsampling by 16 would leave 125 x 62, narrower than 128 x 64.
+        assertEquals(8, ArtworkCache.getSampleSize(2000, 1000, size[0], size[1]));
+    }
+}
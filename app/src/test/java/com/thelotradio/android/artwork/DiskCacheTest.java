@@ -0,0 +1,97 @@
+package com.thelotradio.android.artwork;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class DiskCacheTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private File directory;
+    private DiskCache cache;
+
+    @Before
+    public void setUp() {
+        directory = new File(folder.getRoot(), "artwork");
+        cache = new DiskCache(directory, 3000);
+    }
+
+    @Test
+    public void servesWhatWasPut() throws IOException {
+        assertNull(cache.get("a"));
+        cache.put("a", data(100, 1));
+        assertArrayEquals(data(100, 1), cache.get("a"));
+        // Read back by another instance, as after a restart.
+        assertArrayEquals(data(100, 1), new DiskCache(directory, 3000).get("a"));
+    }
+
+    @Test
+    public void replacesEarlierData() throws IOException {
+        cache.put("a", data(100, 1));
+        cache.put("a", data(50, 2));
+        assertArrayEquals(data(50, 2), cache.get("a"));
+        assertEquals(1, directory.listFiles().length);
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedBySize() throws IOException {
+        cache.put("a", data(1000, 1));
+        cache.put("b", data(1000, 2));
+        cache.put("c", data(1000, 3));
+        setLastUsed("a", 1000);
+        setLastUsed("b", 2000);
+        setLastUsed("c", 3000);
+        // Reading marks a as the most recently used.
+        assertNotNull(cache.get("a"));
+
+        cache.put("d", data(1000, 4));
+        assertNull(cache.get("b"));
+        assertNotNull(cache.get("a"));
+        assertNotNull(cache.get("c"));
+        assertNotNull(cache.get("d"));
+    }
+
+    @Test
+    public void evictsAsManyAsItTakesToFit() throws IOException {
+        cache.put("a", data(1000, 1));
+        cache.put("b", data(1000, 2));
+        setLastUsed("a", 1000);
+        setLastUsed("b", 2000);
+        cache.put("c", data(2500, 3));
+        assertNull(cache.get("a"));
+        assertNull(cache.get("b"));
+        assertNotNull(cache.get("c"));
+    }
+
+    @Test
+    public void removeDropsData() throws IOException {
+        cache.put("a", data(100, 1));
+        cache.remove("a");
+        assertNull(cache.get("a"));
+        assertFalse(cache.getFile("a").exists());
+    }
+
+    private void setLastUsed(String key, long timeMs) {
+        cache.getFile(key).setLastModified(timeMs);
+    }
+
+    private static byte[] data(int length, int value) {
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = (byte) (value + i);
+        }
+        return data;
+    }
+}
@@ -0,0 +1,52 @@
+package com.thelotradio.android.artwork;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class LoadTrackerTest {
+
+    private static final long RETRY_DELAY_MS = 600000;
+
+    private final LoadTracker loads = new LoadTracker(RETRY_DELAY_MS);
+
+    @Test
+    public void loadsEachKeyOnceAtATime() {
+        assertTrue(loads.start("a", 0));
+        assertFalse(loads.start("a", 0));
+        assertTrue(loads.start("b", 0));
+        loads.finish("a", true, 10);
+        assertTrue(loads.start("a", 20));
+    }
+
+    @Test
+    public void holdsBackFailedKeyUntilRetryDelayIsOver() {
+        assertTrue(loads.start("a", 0));
+        loads.finish("a", false, 1000);
+        assertFalse(loads.start("a", 1000));
+        assertFalse(loads.start("a", 1000 + RETRY_DELAY_MS - 1));
+        // Other artwork isn't held back.
+        assertTrue(loads.start("b", 1000));
+        assertTrue(loads.start("a", 1000 + RETRY_DELAY_MS));
+    }
+
+    @Test
+    public void loadingForgetsEarlierFailure() {
+        loads.start("a", 0);
+        loads.finish("a", false, 0);
+        loads.start("a", RETRY_DELAY_MS);
+        loads.finish("a", true, RETRY_DELAY_MS);
+        assertTrue(loads.start("a", RETRY_DELAY_MS + 1));
+    }
+
+    @Test
+    public void failingAgainRestartsRetryDelay() {
+        loads.start("a", 0);
+        loads.finish("a", false, 0);
+        loads.start("a", RETRY_DELAY_MS);
+        loads.finish("a", false, RETRY_DELAY_MS);
+        assertFalse(loads.start("a", 2 * RETRY_DELAY_MS - 1));
+        assertTrue(loads.start("a", 2 * RETRY_DELAY_MS));
+    }
+}
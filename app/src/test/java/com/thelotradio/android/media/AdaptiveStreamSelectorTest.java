@@ -0,0 +1,91 @@
+package com.thelotradio.android.media;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class AdaptiveStreamSelectorTest {
+
+    private static final int[] BITRATES = {64000, 128000, 192000};
+    private static final long NO_ESTIMATE = -1;
+
+    @Test
+    public void stepsDownWhenBufferRunsLow() {
+        AdaptiveStreamSelector selector = createSelector(1);
+        assertEquals(1, selector.evaluate(NO_ESTIMATE, 3000, 0));
+        assertEquals(0, selector.evaluate(NO_ESTIMATE, 1000, 1000));
+        assertEquals(0, selector.getSelectedIndex());
+    }
+
+    @Test
+    public void stepsDownOnShortBandwidthOnlyWithoutHealthyBuffer() {
+        AdaptiveStreamSelector selector = createSelector(1);
+        // 80% of 100 kbps is short of 128 kbps, but the buffer still covers it.
+        assertEquals(1, selector.evaluate(100000, 5000, 0));
+        assertEquals(0, selector.evaluate(100000, 3000, 1000));
+    }
+
+    @Test
+    public void waitsBetweenSwitches() {
+        AdaptiveStreamSelector selector = createSelector(2);
+        assertEquals(1, selector.evaluate(NO_ESTIMATE, 1000, 0));
+        assertEquals(1, selector.evaluate(NO_ESTIMATE, 1000, 9999));
+        assertEquals(0, selector.evaluate(NO_ESTIMATE, 1000, 10000));
+    }
+
+    @Test
+    public void stepsUpOnceBufferStaysHealthy() {
+        AdaptiveStreamSelector selector = createSelector(1);
+        // The throughput of a live mount settles at the bitrate played, so it can't hold back a
+        // step up.
+        assertEquals(1, selector.evaluate(128000, 5000, 0));
+        assertEquals(1, selector.evaluate(128000, 5000, 29999));
+        assertEquals(2, selector.evaluate(128000, 5000, 30000));
+    }
+
+    @Test
+    public void dipBelowHighBufferRestartsStableTime() {
+        AdaptiveStreamSelector selector = createSelector(1);
+        selector.evaluate(NO_ESTIMATE, 5000, 0);
+        assertEquals(1, selector.evaluate(NO_ESTIMATE, 3000, 20000));
+        assertEquals(1, selector.evaluate(NO_ESTIMATE, 5000, 25000));
+        assertEquals(1, selector.evaluate(NO_ESTIMATE, 5000, 54999));
+        assertEquals(2, selector.evaluate(NO_ESTIMATE, 5000, 55000));
+    }
+
+    @Test
+    public void waitsLongerToStepUpAfterSteppingDown() {
+        AdaptiveStreamSelector selector = createSelector(1);
+        assertEquals(0, selector.evaluate(NO_ESTIMATE, 1000, 0));
+        selector.evaluate(NO_ESTIMATE, 5000, 10000);
+        // Healthy for long enough, but within the penalty of the step down.
+        assertEquals(0, selector.evaluate(NO_ESTIMATE, 5000, 40000));
+        assertEquals(0, selector.evaluate(NO_ESTIMATE, 5000, 119999));
+        assertEquals(1, selector.evaluate(NO_ESTIMATE, 5000, 120000));
+    }
+
+    @Test
+    public void resetForgetsHistoryButKeepsQuality() {
+        AdaptiveStreamSelector selector = createSelector(1);
+        assertEquals(0, selector.evaluate(NO_ESTIMATE, 1000, 0));
+        selector.reset();
+        assertEquals(0, selector.getSelectedIndex());
+        assertEquals(0, selector.evaluate(NO_ESTIMATE, 5000, 1000));
+        assertEquals(1, selector.evaluate(NO_ESTIMATE, 5000, 31000));
+    }
+
+    @Test
+    public void staysWithinQualities() {
+        AdaptiveStreamSelector top = createSelector(2);
+        top.evaluate(NO_ESTIMATE, 5000, 0);
+        assertEquals(2, top.evaluate(NO_ESTIMATE, 5000, 1000000));
+        AdaptiveStreamSelector bottom = createSelector(0);
+        assertEquals(0, bottom.evaluate(NO_ESTIMATE, 0, 0));
+        assertEquals(0, bottom.evaluate(NO_ESTIMATE, 0, 1000000));
+    }
+
+    private static AdaptiveStreamSelector createSelector(int initialIndex) {
+        return new AdaptiveStreamSelector(BITRATES, initialIndex, 2000, 4000, 30000, 10000, 120000,
+                0.8f);
+    }
+}
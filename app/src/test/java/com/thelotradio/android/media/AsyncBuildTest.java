@@ -0,0 +1,173 @@
+package com.thelotradio.android.media;
+
+import android.os.Handler;
+
+import com.thelotradio.android.BuildConfig;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+// Handler needs the framework, which the android.jar of unit tests only stubs.
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 23)
+public class AsyncBuildTest {
+
+    private static final int TIMEOUT_MS = 5000;
+
+    private ExecutorService executor;
+    private List<String> calls;
+
+    @Before
+    public void setUp() {
+        executor = Executors.newSingleThreadExecutor();
+        calls = Collections.synchronizedList(new ArrayList<String>());
+        // Results are only delivered once the test runs what was posted.
+        Robolectric.getForegroundThreadScheduler().pause();
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void deliversResult() throws InterruptedException {
+        TestBuild build = new TestBuild(null);
+        build.start();
+        finishBuilding();
+        assertEquals(Arrays.asList("stage 1", "stage 2", "built"), calls);
+    }
+
+    @Test
+    public void buildCanceledPartWayStopsAtNextStage() throws InterruptedException {
+        CountDownLatch proceed = new CountDownLatch(1);
+        TestBuild build = new TestBuild(proceed);
+        build.start();
+        assertTrue(build.inStage1.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        build.cancel();
+        proceed.countDown();
+        finishBuilding();
+        assertEquals(Arrays.asList("stage 1"), calls);
+    }
+
+    @Test
+    public void buildCanceledOnceDoneIsNeverDelivered() throws InterruptedException {
+        TestBuild build = new TestBuild(null);
+        build.start();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        build.cancel();
+        runPosted();
+        assertEquals(Arrays.asList("stage 1", "stage 2", "canceled"), calls);
+    }
+
+    @Test
+    public void buildCanceledBeforeStartingNeverRuns() throws InterruptedException {
+        CountDownLatch proceed = new CountDownLatch(1);
+        TestBuild blocking = new TestBuild(proceed);
+        blocking.start();
+        assertTrue(blocking.inStage1.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        TestBuild queued = new TestBuild(null);
+        queued.start();
+        queued.cancel();
+        blocking.cancel();
+        proceed.countDown();
+        finishBuilding();
+        // Only the blocking build ever started.
+        assertEquals(Arrays.asList("stage 1"), calls);
+    }
+
+    @Test
+    public void errorOfCanceledBuildIsNeverDelivered() throws InterruptedException {
+        CountDownLatch proceed = new CountDownLatch(1);
+        TestBuild build = new TestBuild(proceed);
+        build.failInStage2 = true;
+        build.start();
+        assertTrue(build.inStage1.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        proceed.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        build.cancel();
+        runPosted();
+        assertEquals(Arrays.asList("stage 1", "stage 2"), calls);
+    }
+
+    private void finishBuilding() throws InterruptedException {
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        runPosted();
+    }
+
+    private static void runPosted() {
+        Robolectric.getForegroundThreadScheduler().advanceBy(0);
+    }
+
+    /**
+     * Builds in two stages, optionally waiting between them.
+     */
+    private final class TestBuild extends AsyncBuild<String> {
+
+        public final CountDownLatch inStage1 = new CountDownLatch(1);
+        private final CountDownLatch proceed;
+
+        public volatile boolean failInStage2;
+
+        public TestBuild(CountDownLatch proceed) {
+            super(executor, new Handler());
+            this.proceed = proceed;
+        }
+
+        @Override
+        protected String build() {
+            calls.add("stage 1");
+            inStage1.countDown();
+            if (proceed != null) {
+                try {
+                    proceed.await(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+            if (isCanceled()) {
+                return null;
+            }
+            calls.add("stage 2");
+            if (failInStage2) {
+                throw new IllegalStateException();
+            }
+            return "result";
+        }
+
+        @Override
+        protected void onBuilt(String result) {
+            calls.add("built");
+        }
+
+        @Override
+        protected void onCanceled(String result) {
+            calls.add("canceled");
+        }
+
+        @Override
+        protected void onError(RuntimeException e) {
+            calls.add("error");
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.thelotradio.android.media;
+
+import com.google.android.exoplayer.upstream.Allocation;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class BudgetedAllocatorTest {
+
+    private static final int SEGMENT_SIZE = 16 * 1024;
+
+    private BudgetedAllocator allocator;
+
+    @Before
+    public void setUp() {
+        // A 32 MB heap yields a 2 MB budget.
+        allocator = new BudgetedAllocator(SEGMENT_SIZE, 32);
+    }
+
+    @Test
+    public void budgetFollowsHeapAndBitrate() {
+        assertEquals(2 * 1024 * 1024, allocator.getBudgetBytes());
+        allocator.setBitrate(64000);
+        assertEquals(64000 / 8 * BudgetedAllocator.MAX_BUFFER_SECONDS, allocator.getBudgetBytes());
+        allocator.setBitrate(320000);
+        assertEquals(2 * 1024 * 1024, allocator.getBudgetBytes());
+    }
+
+    @Test
+    public void reusesReleasedSegments() {
+        Allocation allocation = allocator.allocate();
+        allocator.release(allocation);
+        assertEquals(0, allocator.getTotalBytesAllocated());
+        assertEquals(SEGMENT_SIZE, allocator.getPooledBytes());
+        assertSame(allocation, allocator.allocate());
+        assertEquals(0, allocator.getPooledBytes());
+    }
+
+    @Test
+    public void releasePoolKeepsSegmentsInUse() {
+        Allocation first = allocator.allocate();
+        Allocation second = allocator.allocate();
+        allocator.allocate();
+        allocator.release(first);
+        allocator.release(second);
+        allocator.releasePool();
+        assertEquals(SEGMENT_SIZE, allocator.getTotalBytesAllocated());
+        assertEquals(0, allocator.getPooledBytes());
+        assertEquals(3 * SEGMENT_SIZE, allocator.getPeakBytes());
+        assertEquals(SEGMENT_SIZE, allocator.getHeldBytes());
+    }
+
+    @Test
+    public void poolStaysWithinBudget() {
+        allocator.setBitrate(8000);
+        int budgetSegments = allocator.getBudgetBytes() / SEGMENT_SIZE;
+        Allocation[] allocations = new Allocation[budgetSegments + 4];
+        for (int i = 0; i < allocations.length; i++) {
+            allocations[i] = allocator.allocate();
+        }
+        for (Allocation allocation : allocations) {
+            allocator.release(allocation);
+        }
+        assertEquals(budgetSegments * SEGMENT_SIZE, allocator.getPooledBytes());
+        assertEquals(budgetSegments * SEGMENT_SIZE, allocator.getHeldBytes());
+    }
+}
@@ -0,0 +1,173 @@
+package com.thelotradio.android.media;
+
+import com.google.android.exoplayer.MediaFormat;
+import com.google.android.exoplayer.MediaFormatHolder;
+import com.google.android.exoplayer.SampleHolder;
+import com.google.android.exoplayer.SampleSource;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BufferingSampleSourceTest {
+
+    private static final int SEGMENT_SIZE = 64 * 1024;
+
+    private FakeSampleSource upstream;
+    private BufferController bufferController;
+    private BufferingSampleSource sampleSource;
+
+    @Before
+    public void setUp() {
+        upstream = new FakeSampleSource();
+        bufferController = new BufferController(new BufferProfile(1000, 3000, 10000, 5000),
+                SEGMENT_SIZE);
+        sampleSource = new BufferingSampleSource(upstream, bufferController);
+        sampleSource.enable(0, 0);
+    }
+
+    @Test
+    public void waitsForStartThreshold() {
+        upstream.bufferedPositionUs = 500000;
+        assertFalse(sampleSource.continueBuffering(0, 0));
+        upstream.bufferedPositionUs = 1000000;
+        assertTrue(sampleSource.continueBuffering(0, 0));
+    }
+
+    @Test
+    public void waitsForRebufferThresholdAfterRunningDry() {
+        upstream.bufferedPositionUs = 1000000;
+        assertTrue(sampleSource.continueBuffering(0, 0));
+        // Playing from a shrinking buffer doesn't hold playback back.
+        assertTrue(sampleSource.continueBuffering(0, 900000));
+
+        upstream.ready = false;
+        assertFalse(sampleSource.continueBuffering(0, 1000000));
+        upstream.ready = true;
+        upstream.bufferedPositionUs = 2000000;
+        assertFalse(sampleSource.continueBuffering(0, 1000000));
+        upstream.bufferedPositionUs = 4000000;
+        assertTrue(sampleSource.continueBuffering(0, 1000000));
+    }
+
+    @Test
+    public void appliesPolicyChangedWhileBuffering() {
+        upstream.bufferedPositionUs = 500000;
+        assertFalse(sampleSource.continueBuffering(0, 0));
+        bufferController.setPolicy(new BufferProfile(500, 500, 10000, 5000));
+        assertTrue(sampleSource.continueBuffering(0, 0));
+    }
+
+    @Test
+    public void bufferTargetDependsOnBitrateAndNetwork() {
+        BufferProfile profile = new BufferProfile(1000, 3000, 10000, 5000);
+        assertEquals(160000, profile.getBufferTargetBytes(128000,
+                BufferPolicy.NETWORK_TYPE_UNMETERED));
+        assertEquals(240000, profile.getBufferTargetBytes(192000,
+                BufferPolicy.NETWORK_TYPE_UNMETERED));
+        assertEquals(120000, profile.getBufferTargetBytes(192000,
+                BufferPolicy.NETWORK_TYPE_METERED));
+    }
+
+    @Test
+    public void bufferTargetIsWholeSegments() {
+        // 4 s at 64 kbps is 32000 bytes, less than a segment.
+        bufferController.setPolicy(BufferProfile.LOW_LATENCY);
+        bufferController.setBitrate(64000);
+        assertEquals(SEGMENT_SIZE, bufferController.getBufferTargetBytes());
+        // 10 s at 128 kbps is 160000 bytes, between two and three segments.
+        bufferController.setPolicy(new BufferProfile(1000, 3000, 10000, 5000));
+        bufferController.setBitrate(128000);
+        assertEquals(3 * SEGMENT_SIZE, bufferController.getBufferTargetBytes());
+    }
+
+    @Test
+    public void bufferTargetIsAtLeastOneSegmentWithinMemoryBudget() {
+        bufferController.setBitrate(128000);
+        bufferController.setMemoryBudgetBytes(SEGMENT_SIZE / 2);
+        assertEquals(SEGMENT_SIZE, bufferController.getBufferTargetBytes());
+    }
+
+    @Test
+    public void thresholdsFitInBufferTarget() {
+        bufferController.setBitrate(128000);
+        assertEquals(1000000, bufferController.getStartBufferUs());
+        assertEquals(3000000, bufferController.getRebufferUs());
+        // One segment holds 2730 ms at 192 kbps, of which three quarters may be waited for.
+        bufferController.setMemoryBudgetBytes(SEGMENT_SIZE);
+        bufferController.setBitrate(192000);
+        assertEquals(1000000, bufferController.getStartBufferUs());
+        assertEquals(2730666 * 3 / 4, bufferController.getRebufferUs());
+    }
+
+    private static final class FakeSampleSource implements SampleSource,
+            SampleSource.SampleSourceReader {
+
+        public boolean ready = true;
+        public long bufferedPositionUs;
+
+        @Override
+        public SampleSourceReader register() {
+            return this;
+        }
+
+        @Override
+        public void maybeThrowError() {
+        }
+
+        @Override
+        public boolean prepare(long positionUs) {
+            return true;
+        }
+
+        @Override
+        public int getTrackCount() {
+            return 1;
+        }
+
+        @Override
+        public MediaFormat getFormat(int track) {
+            return null;
+        }
+
+        @Override
+        public void enable(int track, long positionUs) {
+        }
+
+        @Override
+        public boolean continueBuffering(int track, long positionUs) {
+            return ready;
+        }
+
+        @Override
+        public long readDiscontinuity(int track) {
+            return SampleSource.NO_DISCONTINUITY;
+        }
+
+        @Override
+        public int readData(int track, long positionUs, MediaFormatHolder formatHolder,
+                SampleHolder sampleHolder) {
+            return SampleSource.NOTHING_READ;
+        }
+
+        @Override
+        public void seekToUs(long positionUs) {
+        }
+
+        @Override
+        public long getBufferedPositionUs() {
+            return bufferedPositionUs;
+        }
+
+        @Override
+        public void disable(int track) {
+        }
+
+        @Override
+        public void release() {
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.thelotradio.android.media;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BurstControllerTest {
+
+    private final List<long[]> cycles = new ArrayList<>();
+    private BurstController controller;
+
+    @Before
+    public void setUp() {
+        controller = new BurstController(new BurstController.Listener() {
+            @Override
+            public void onBurstStateChanged(boolean bursting) {
+                // Not needed.
+            }
+
+            @Override
+            public void onBurstCycleCompleted(long burstMs, long idleMs) {
+                cycles.add(new long[] {burstMs, idleMs});
+            }
+        }, 5000, 30000, 20000);
+        controller.setEnabled(true, 0);
+    }
+
+    @Test
+    public void idlesAtHighWatermarkUntilLowWatermark() {
+        controller.update(10000, 0);
+        controller.update(30000, 1000);
+        assertFalse(controller.isBursting());
+        controller.update(15000, 16000);
+        assertFalse(controller.isBursting());
+        controller.update(5000, 26000);
+        assertTrue(controller.isBursting());
+        assertEquals(1, cycles.size());
+        assertEquals(1000, cycles.get(0)[0]);
+        assertEquals(25000, cycles.get(0)[1]);
+        assertEquals(1f / 26, controller.getDutyCycle(26000), 0.001f);
+    }
+
+    @Test
+    public void idlesWhenCaughtUpWithLiveStream() {
+        controller.update(12000, 0);
+        controller.update(12000, 500);
+        // Nothing more queued on the server, and enough buffered to be worth idling.
+        assertFalse(controller.isBursting());
+        // Idles for as long as the audio above the low watermark lasts.
+        controller.update(6000, 7400);
+        assertFalse(controller.isBursting());
+        controller.update(5500, 7500);
+        assertTrue(controller.isBursting());
+    }
+
+    @Test
+    public void neverIdlesLongerThanServerQueues() {
+        controller.update(40000, 0);
+        assertFalse(controller.isBursting());
+        // Paused, so the buffer stays full, but the server would drop the connection.
+        controller.update(40000, 20000);
+        assertTrue(controller.isBursting());
+    }
+
+    @Test
+    public void keepsDownloadingWithLittleBuffered() {
+        controller.update(6000, 0);
+        controller.update(6000, 500);
+        assertTrue(controller.isBursting());
+    }
+
+    @Test
+    public void disablingResumesDownload() throws InterruptedException {
+        controller.update(30000, 0);
+        assertFalse(controller.isBursting());
+        controller.setEnabled(false, 1000);
+        assertTrue(controller.isBursting());
+        // Returns right away.
+        controller.awaitBurst();
+    }
+}
@@ -0,0 +1,111 @@
+package com.thelotradio.android.media;
+
+import android.net.Uri;
+
+import com.google.android.exoplayer.C;
+import com.google.android.exoplayer.MediaFormat;
+import com.google.android.exoplayer.util.MimeTypes;
+import com.thelotradio.android.BuildConfig;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+// Uri needs the framework, which the android.jar of unit tests only stubs.
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 23)
+public class FormatMemoTest {
+
+    private static final Uri STREAM = Uri.parse("http://example.com/stream");
+    // AAC-LC, 44.1 kHz, stereo.
+    private static final byte[] AUDIO_SPECIFIC_CONFIG = {0x12, 0x10};
+
+    @Test
+    public void roundTripsFormats() throws IOException {
+        FormatMemo memo = new FormatMemo();
+        memo.put(STREAM, aacFormat());
+        Uri other = Uri.parse("http://example.com/other");
+        memo.put(other, mp3Format());
+
+        FormatMemo restored = new FormatMemo();
+        restored.readFormats(memo.toByteArray());
+        MediaFormat aac = restored.get(STREAM);
+        assertEquals(MimeTypes.AUDIO_AAC, aac.mimeType);
+        assertEquals(44100, aac.sampleRate);
+        assertEquals(2, aac.channelCount);
+        assertArrayEquals(AUDIO_SPECIFIC_CONFIG, aac.initializationData.get(0));
+        MediaFormat mp3 = restored.get(other);
+        assertEquals(MimeTypes.AUDIO_MPEG, mp3.mimeType);
+        assertTrue(mp3.initializationData.isEmpty());
+        assertFalse(restored.hasUnsavedChanges());
+    }
+
+    @Test
+    public void onlyChangesAreUnsaved() throws IOException {
+        FormatMemo memo = new FormatMemo();
+        memo.put(STREAM, aacFormat());
+        assertTrue(memo.hasUnsavedChanges());
+        memo.readFormats(memo.toByteArray());
+        memo.put(STREAM, aacFormat());
+        assertFalse(memo.hasUnsavedChanges());
+        memo.put(STREAM, mp3Format());
+        assertTrue(memo.hasUnsavedChanges());
+    }
+
+    @Test
+    public void ignoresOtherFormats() {
+        FormatMemo memo = new FormatMemo();
+        memo.put(STREAM, audioFormat(MimeTypes.AUDIO_OPUS, 48000,
+                Collections.<byte[]>emptyList()));
+        assertNull(memo.get(STREAM));
+        assertFalse(memo.hasUnsavedChanges());
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsed() {
+        FormatMemo memo = new FormatMemo();
+        memo.put(STREAM, mp3Format());
+        for (int i = 0; i < FormatMemo.MAX_ENTRIES; i++) {
+            memo.put(Uri.parse("http://example.com/" + i), mp3Format());
+            // Kept fresh by being looked up.
+            assertNotNull(memo.get(STREAM));
+        }
+        assertNotNull(memo.get(STREAM));
+        assertNull(memo.get(Uri.parse("http://example.com/0")));
+    }
+
+    @Test
+    public void rejectsUnrecognizedData() {
+        FormatMemo memo = new FormatMemo();
+        memo.put(STREAM, mp3Format());
+        try {
+            memo.readFormats(new byte[] {'L', 'O', 'T', 'T', 1, 0});
+            fail();
+        } catch (IOException e) {
+            // Expected.
+        }
+        assertNull(memo.get(STREAM));
+    }
+
+    private static MediaFormat aacFormat() {
+        return audioFormat(MimeTypes.AUDIO_AAC, 44100,
+                Collections.singletonList(AUDIO_SPECIFIC_CONFIG));
+    }
+
+    private static MediaFormat mp3Format() {
+        return audioFormat(MimeTypes.AUDIO_MPEG, 44100, Collections.<byte[]>emptyList());
+    }
+
+    private static MediaFormat audioFormat(String mimeType, int sampleRate,
+            List<byte[]> initializationData) {
+        return MediaFormat.createAudioFormat("1", mimeType, 128000, 4096, C.UNKNOWN_TIME_US, 2,
+                sampleRate, initializationData, null);
+    }
+}
@@ -0,0 +1,107 @@
+package com.thelotradio.android.media;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class FrameBoundaryTrackerTest {
+
+    // MPEG-1 Layer III, 128 kbps, 44.1 kHz, no padding: 417 byte frames.
+    private static final byte[] MP3_HEADER = {(byte) 0xFF, (byte) 0xFB, (byte) 0x90, 0x64, 0, 0};
+    private static final int MP3_FRAME_LENGTH = 417;
+
+    @Test
+    public void frameLength_mp3() {
+        assertEquals(MP3_FRAME_LENGTH, FrameBoundaryTracker.getFrameLength(MP3_HEADER, 0));
+    }
+
+    @Test
+    public void frameLength_adts() {
+        byte[] header = adtsHeader(371);
+        assertEquals(371, FrameBoundaryTracker.getFrameLength(header, 0));
+    }
+
+    @Test
+    public void frameLength_rejectsGarbage() {
+        assertEquals(-1, FrameBoundaryTracker.getFrameLength(new byte[] {0x49, 0x44, 0x33, 4, 0, 0}, 0));
+        // Bitrate index 15 is invalid.
+        assertEquals(-1, FrameBoundaryTracker.getFrameLength(
+                new byte[] {(byte) 0xFF, (byte) 0xFB, (byte) 0xF0, 0, 0, 0}, 0));
+    }
+
+    @Test
+    public void tracksBoundariesAcrossArbitraryReads() {
+        byte[] stream = mp3Frames(3);
+        FrameBoundaryTracker tracker = new FrameBoundaryTracker();
+        tracker.consume(stream, 0, 3);
+        assertFalse(tracker.isAtFrameBoundary());
+        assertEquals(-1, tracker.bytesUntilFrameBoundary());
+        tracker.consume(stream, 3, 100);
+        assertEquals(MP3_FRAME_LENGTH - 103, tracker.bytesUntilFrameBoundary());
+        tracker.consume(stream, 103, MP3_FRAME_LENGTH - 103);
+        assertTrue(tracker.isAtFrameBoundary());
+        tracker.consume(stream, MP3_FRAME_LENGTH, 2 * MP3_FRAME_LENGTH);
+        assertTrue(tracker.isAtFrameBoundary());
+    }
+
+    @Test
+    public void findFrame_skipsLeadingPartialFrame() {
+        byte[] frames = mp3Frames(3);
+        byte[] stream = new byte[frames.length - 200];
+        System.arraycopy(frames, 200, stream, 0, stream.length);
+        assertEquals(MP3_FRAME_LENGTH - 200, FrameBoundaryTracker.findFrame(stream, 0, stream.length));
+    }
+
+    @Test
+    public void findFrame_needsSecondHeader() {
+        byte[] frames = mp3Frames(1);
+        assertEquals(-1, FrameBoundaryTracker.findFrame(frames, 0, frames.length));
+    }
+
+    @Test
+    public void formatKey_ignoresBitrateAndStereoMode() {
+        // 64 kbps, stereo rather than joint stereo.
+        byte[] header = {(byte) 0xFF, (byte) 0xFB, 0x50, 0x04, 0, 0};
+        assertEquals(FrameBoundaryTracker.getFormatKey(MP3_HEADER, 0),
+                FrameBoundaryTracker.getFormatKey(header, 0));
+    }
+
+    @Test
+    public void formatKey_differsOnSampleRateAndChannels() {
+        int key = FrameBoundaryTracker.getFormatKey(MP3_HEADER, 0);
+        byte[] header48kHz = {(byte) 0xFF, (byte) 0xFB, (byte) 0x94, 0x64, 0, 0};
+        byte[] headerMono = {(byte) 0xFF, (byte) 0xFB, (byte) 0x90, (byte) 0xC4, 0, 0};
+        assertNotEquals(key, FrameBoundaryTracker.getFormatKey(header48kHz, 0));
+        assertNotEquals(key, FrameBoundaryTracker.getFormatKey(headerMono, 0));
+        byte[] adtsMono = adtsHeader(371);
+        adtsMono[3] = (byte) ((adtsMono[3] & 0x3F) | 0x40);
+        assertNotEquals(FrameBoundaryTracker.getFormatKey(adtsHeader(371), 0),
+                FrameBoundaryTracker.getFormatKey(adtsMono, 0));
+        assertNotEquals(key, FrameBoundaryTracker.getFormatKey(adtsHeader(371), 0));
+    }
+
+    @Test
+    public void tracksFormatOfLastFrame() {
+        FrameBoundaryTracker tracker = new FrameBoundaryTracker();
+        assertEquals(-1, tracker.getFormatKey());
+        byte[] stream = mp3Frames(2);
+        tracker.consume(stream, 0, stream.length);
+        assertEquals(FrameBoundaryTracker.getFormatKey(MP3_HEADER, 0), tracker.getFormatKey());
+        tracker.reset();
+        assertEquals(-1, tracker.getFormatKey());
+    }
+
+    private static byte[] mp3Frames(int count) {
+        byte[] data = new byte[count * MP3_FRAME_LENGTH];
+        for (int i = 0; i < count; i++) {
+            System.arraycopy(MP3_HEADER, 0, data, i * MP3_FRAME_LENGTH, MP3_HEADER.length);
+        }
+        return data;
+    }
+
+    private static byte[] adtsHeader(int frameLength) {
+        // AAC LC, 44.1 kHz, stereo, no CRC.
+        return new byte[] {(byte) 0xFF, (byte) 0xF1, 0x50, (byte) (0x80 | (frameLength >> 11)),
+                (byte) (frameLength >> 3), (byte) ((frameLength & 0x07) << 5)};
+    }
+}
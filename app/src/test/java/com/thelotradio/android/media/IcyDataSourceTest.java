@@ -0,0 +1,132 @@
+package com.thelotradio.android.media;
+
+import com.google.android.exoplayer.C;
+import com.google.android.exoplayer.upstream.DataSpec;
+import com.google.android.exoplayer.upstream.HttpDataSource;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class IcyDataSourceTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    @Test
+    public void stripsMetadataBlocks() throws Exception {
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        stream.write(new byte[] {1, 2, 3, 4});
+        writeMetadata(stream, "StreamTitle='Live';");
+        stream.write(new byte[] {5, 6, 7, 8});
+        stream.write(0);
+        stream.write(new byte[] {9, 10});
+        IcyDataSource dataSource = new IcyDataSource(
+                new FakeHttpDataSource(stream.toByteArray(), 4), null, null);
+        dataSource.open(new DataSpec(null));
+
+        byte[] audio = new byte[16];
+        int length = 0;
+        int bytesRead;
+        while ((bytesRead = dataSource.read(audio, length, 3)) != C.RESULT_END_OF_INPUT) {
+            length += bytesRead;
+        }
+        assertEquals(10, length);
+        for (int i = 0; i < length; i++) {
+            assertEquals(i + 1, audio[i]);
+        }
+    }
+
+    @Test
+    public void parseStreamTitle_keepsInnerQuotes() {
+        byte[] block = pad("StreamTitle='Lot's Morning Show';StreamUrl='';");
+        assertEquals("Lot's Morning Show", IcyDataSource.parseStreamTitle(block, block.length));
+    }
+
+    @Test
+    public void parseStreamTitle_withoutTitle() {
+        byte[] block = pad("StreamUrl='http://thelotradio.com';");
+        assertNull(IcyDataSource.parseStreamTitle(block, block.length));
+    }
+
+    @Test
+    public void parseMetadataInterval_ignoresCase() {
+        Map<String, List<String>> headers =
+                Collections.singletonMap("Icy-MetaInt", Collections.singletonList("16000"));
+        assertEquals(16000, IcyDataSource.parseMetadataInterval(headers));
+    }
+
+    private static void writeMetadata(ByteArrayOutputStream stream, String metadata) {
+        byte[] block = pad(metadata);
+        stream.write(block.length / 16);
+        stream.write(block, 0, block.length);
+    }
+
+    private static byte[] pad(String metadata) {
+        byte[] bytes = metadata.getBytes(UTF_8);
+        byte[] block = new byte[(bytes.length + 15) / 16 * 16];
+        System.arraycopy(bytes, 0, block, 0, bytes.length);
+        return block;
+    }
+
+    private static final class FakeHttpDataSource implements HttpDataSource {
+
+        private final byte[] data;
+        private final Map<String, List<String>> headers;
+        private int position;
+
+        public FakeHttpDataSource(byte[] data, int metadataInterval) {
+            this.data = data;
+            headers = Collections.singletonMap("icy-metaint",
+                    Collections.singletonList(Integer.toString(metadataInterval)));
+        }
+
+        @Override
+        public long open(DataSpec dataSpec) {
+            position = 0;
+            return C.LENGTH_UNBOUNDED;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int readLength) {
+            if (position == data.length) {
+                return C.RESULT_END_OF_INPUT;
+            }
+            int bytesRead = Math.min(readLength, data.length - position);
+            System.arraycopy(data, position, buffer, offset, bytesRead);
+            position += bytesRead;
+            return bytesRead;
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public String getUri() {
+            return null;
+        }
+
+        @Override
+        public void setRequestProperty(String name, String value) {
+        }
+
+        @Override
+        public void clearRequestProperty(String name) {
+        }
+
+        @Override
+        public void clearAllRequestProperties() {
+        }
+
+        @Override
+        public Map<String, List<String>> getResponseHeaders() {
+            return headers;
+        }
+    }
+}
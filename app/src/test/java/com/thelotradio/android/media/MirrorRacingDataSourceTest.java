@@ -0,0 +1,248 @@
+package com.thelotradio.android.media;
+
+import android.net.Uri;
+
+import com.google.android.exoplayer.upstream.DataSpec;
+import com.google.android.exoplayer.upstream.UriDataSource;
+import com.thelotradio.android.model.Stream;
+import com.thelotradio.android.net.DnsCache;
+import com.thelotradio.android.net.HttpConnectionPool;
+import com.thelotradio.android.net.PooledHttpDataSource;
+import com.thelotradio.android.BuildConfig;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+// Uri needs the framework, which the android.jar of unit tests only stubs.
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 23)
+public class MirrorRacingDataSourceTest {
+
+    private static final Charset US_ASCII = Charset.forName("US-ASCII");
+    private static final byte[] MP3_HEADER = {(byte) 0xFF, (byte) 0xFB, (byte) 0x90, 0x64, 0, 0};
+    private static final int MP3_FRAME_LENGTH = 417;
+
+    private HttpConnectionPool pool;
+    private Mirror slow;
+    private Mirror fast;
+
+    @Before
+    public void setUp() throws IOException {
+        pool = new HttpConnectionPool(null, new DnsCache(DnsCache.DEFAULT_TTL_MS));
+        slow = new Mirror(1500, mp3Frames(4));
+        fast = new Mirror(0, mp3Frames(4));
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        pool.evictAll();
+        slow.close();
+        fast.close();
+    }
+
+    @Test
+    public void keepsFastestMirror() throws Exception {
+        MirrorSelector selector = createSelector(slow, fast);
+        MirrorRacingDataSource dataSource = createDataSource(selector, 300);
+        long startMs = System.currentTimeMillis();
+        dataSource.open(new DataSpec(slow.uri));
+        assertTrue(System.currentTimeMillis() - startMs < 1000);
+        assertEquals(fast.uri, dataSource.getEndpoint());
+        // The bytes read to check the audio are replayed.
+        assertArrayEquals(mp3Frames(4), readFully(dataSource, 4 * MP3_FRAME_LENGTH));
+        dataSource.close();
+        assertEquals(fast.uri, selector.getEndpoints(slow.uri).get(0));
+    }
+
+    @Test
+    public void skipsMirrorWithoutAudio() throws Exception {
+        Mirror broken = new Mirror(0, "<html>Not found</html>".getBytes(US_ASCII));
+        try {
+            MirrorSelector selector = createSelector(broken, fast);
+            MirrorRacingDataSource dataSource = createDataSource(selector, 300);
+            dataSource.open(new DataSpec(broken.uri));
+            assertEquals(fast.uri, dataSource.getEndpoint());
+            dataSource.close();
+        } finally {
+            broken.close();
+        }
+    }
+
+    @Test
+    public void givesRememberedWinnerHeadStart() throws Exception {
+        MirrorSelector selector = createSelector(fast, slow);
+        selector.onEndpointWon(fast.uri, slow.uri);
+        MirrorRacingDataSource dataSource = createDataSource(selector, 5000);
+        dataSource.open(new DataSpec(fast.uri));
+        // The remembered mirror delivered within its head start, so the other was never opened.
+        assertEquals(slow.uri, dataSource.getEndpoint());
+        assertEquals(0, fast.connectionCount);
+        dataSource.close();
+    }
+
+    @Test
+    public void abortFailsStalledReadAndSparesOtherConnections() throws Exception {
+        Mirror large = new Mirror(0, mp3Frames(200));
+        try {
+            // Another fetch sharing the pool, partway through its response.
+            PooledHttpDataSource other =
+                    new PooledHttpDataSource(pool, "test", null, 2000, 2000, null, null);
+            other.open(new DataSpec(large.uri));
+            readFully(other, MP3_FRAME_LENGTH);
+
+            final MirrorRacingDataSource dataSource =
+                    createDataSource(createSelector(slow, fast), 300);
+            dataSource.open(new DataSpec(slow.uri));
+            // The mirror sends no more, like a connection stuck on a network the device left.
+            readFully(dataSource, 4 * MP3_FRAME_LENGTH);
+            new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        Thread.sleep(100);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    dataSource.abort();
+                }
+            }.start();
+            long startMs = System.currentTimeMillis();
+            try {
+                dataSource.read(new byte[1], 0, 1);
+                fail();
+            } catch (IOException e) {
+                // Expected.
+            }
+            // Well before the read timeout.
+            assertTrue(System.currentTimeMillis() - startMs < 1000);
+            dataSource.close();
+
+            byte[] rest = readFully(other, 199 * MP3_FRAME_LENGTH);
+            assertArrayEquals(Arrays.copyOf(mp3Frames(199), rest.length), rest);
+            other.close();
+            // The stream can be reopened.
+            dataSource.open(new DataSpec(slow.uri));
+            assertEquals(fast.uri, dataSource.getEndpoint());
+            dataSource.close();
+        } finally {
+            large.close();
+        }
+    }
+
+    private MirrorSelector createSelector(Mirror primary, Mirror mirror) {
+        return new MirrorSelector(Collections.singletonList(new Stream(primary.uri, 128000,
+                mirror.uri)));
+    }
+
+    private MirrorRacingDataSource createDataSource(MirrorSelector selector, int headStartMs) {
+        return new MirrorRacingDataSource(new MirrorRacingDataSource.Factory() {
+            @Override
+            public PooledHttpDataSource createDataSource() {
+                return new PooledHttpDataSource(pool, "test", null, 2000, 2000, null, null);
+            }
+        }, selector, headStartMs);
+    }
+
+    private static byte[] readFully(UriDataSource dataSource, int length)
+            throws IOException {
+        byte[] data = new byte[length];
+        int position = 0;
+        while (position < length) {
+            position += dataSource.read(data, position, Math.min(100, length - position));
+        }
+        return data;
+    }
+
+    private static byte[] mp3Frames(int count) {
+        byte[] data = new byte[count * MP3_FRAME_LENGTH];
+        for (int i = 0; i < count; i++) {
+            System.arraycopy(MP3_HEADER, 0, data, i * MP3_FRAME_LENGTH, MP3_HEADER.length);
+        }
+        return data;
+    }
+
+    /**
+     * A local stand-in for a stream server, which answers every request after a delay and then
+     * keeps the connection open like a live stream.
+     */
+    private static final class Mirror {
+
+        public final Uri uri;
+        private final ServerSocket serverSocket;
+        private final int latencyMs;
+        private final byte[] body;
+
+        public volatile int connectionCount;
+
+        public Mirror(int latencyMs, byte[] body) throws IOException {
+            this.latencyMs = latencyMs;
+            this.body = Arrays.copyOf(body, body.length);
+            serverSocket = new ServerSocket(0);
+            uri = Uri.parse("http://127.0.0.1:" + serverSocket.getLocalPort() + "/stream");
+            new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        while (true) {
+                            final Socket socket = serverSocket.accept();
+                            connectionCount++;
+                            new Thread() {
+                                @Override
+                                public void run() {
+                                    serve(socket);
+                                }
+                            }.start();
+                        }
+                    } catch (IOException e) {
+                        // Closed by the test.
+                    }
+                }
+            }.start();
+        }
+
+        public void close() throws IOException {
+            serverSocket.close();
+        }
+
+        private void serve(Socket socket) {
+            try {
+                BufferedReader reader = new BufferedReader(
+                        new InputStreamReader(socket.getInputStream(), US_ASCII));
+                String line;
+                while ((line = reader.readLine()) != null && !line.isEmpty()) {
+                    // Skip the request head.
+                }
+                Thread.sleep(latencyMs);
+                OutputStream output = socket.getOutputStream();
+                output.write("ICY 200 OK\r\n\r\n".getBytes(US_ASCII));
+                output.write(body);
+                output.flush();
+                // Hold the connection open until the client goes away.
+                while (reader.read() != -1) {
+                }
+                socket.close();
+            } catch (IOException | InterruptedException e) {
+                // The client went away.
+            }
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.thelotradio.android.media;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class PlaybackStatsTest {
+
+    @Test
+    public void startsUnknown() {
+        assertUnknown(new PlaybackStats());
+    }
+
+    @Test
+    public void countsUnderruns() {
+        PlaybackStats stats = new PlaybackStats();
+        stats.onUnderrun();
+        stats.onUnderrun();
+        stats.onUnderrun();
+        assertEquals(3, stats.getUnderrunCount());
+    }
+
+    @Test
+    public void keepsLatestValues() {
+        PlaybackStats stats = new PlaybackStats();
+        stats.setBufferedAheadMs(1500);
+        stats.setBufferedAheadMs(2500);
+        stats.setBandwidthEstimate(400000);
+        stats.setBitrate(128000);
+        stats.setHost("thelot.out.airtime.pro");
+        stats.setDecoder("OMX.google.mp3.decoder", 30);
+        stats.setDecoder("OMX.google.aac.decoder", 12);
+        stats.setSampleBufferBytes(65536);
+        assertEquals(2500, stats.getBufferedAheadMs());
+        assertEquals(400000, stats.getBandwidthEstimate());
+        assertEquals(128000, stats.getBitrate());
+        assertEquals("thelot.out.airtime.pro", stats.getHost());
+        assertEquals("OMX.google.aac.decoder", stats.getDecoderName());
+        assertEquals(12, stats.getDecoderInitializationMs());
+        assertEquals(65536, stats.getSampleBufferBytes());
+    }
+
+    @Test
+    public void resetForgetsEverything() {
+        PlaybackStats stats = new PlaybackStats();
+        stats.setBufferedAheadMs(2500);
+        stats.setBandwidthEstimate(400000);
+        stats.setBitrate(128000);
+        stats.setHost("thelot.out.airtime.pro");
+        stats.onUnderrun();
+        stats.setDecoder("OMX.google.mp3.decoder", 30);
+        stats.setSampleBufferBytes(65536);
+        stats.reset();
+        assertUnknown(stats);
+        // Counting starts over.
+        stats.onUnderrun();
+        assertEquals(1, stats.getUnderrunCount());
+    }
+
+    private static void assertUnknown(PlaybackStats stats) {
+        assertEquals(-1, stats.getBufferedAheadMs());
+        assertEquals(-1, stats.getBandwidthEstimate());
+        assertEquals(-1, stats.getBitrate());
+        assertNull(stats.getHost());
+        assertEquals(0, stats.getUnderrunCount());
+        assertNull(stats.getDecoderName());
+        assertEquals(-1, stats.getDecoderInitializationMs());
+        assertEquals(0, stats.getSampleBufferBytes());
+    }
+}
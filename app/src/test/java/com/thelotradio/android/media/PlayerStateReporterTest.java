@@ -0,0 +1,52 @@
+package com.thelotradio.android.media;
+
+import com.google.android.exoplayer.ExoPlayer;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class PlayerStateReporterTest {
+
+    private List<String> reported;
+    private PlayerStateReporter reporter;
+
+    @Before
+    public void setUp() {
+        reported = new ArrayList<>();
+        reporter = new PlayerStateReporter(new PlayerStateReporter.Listener() {
+            @Override
+            public void onStateChanged(boolean playWhenReady, int playbackState) {
+                reported.add(playWhenReady + " " + playbackState);
+            }
+        });
+    }
+
+    @Test
+    public void reportsOnlyChanges() {
+        reporter.update(false, ExoPlayer.STATE_IDLE);
+        reporter.update(true, ExoPlayer.STATE_IDLE);
+        reporter.update(true, ExoPlayer.STATE_READY);
+        reporter.update(true, ExoPlayer.STATE_READY);
+        reporter.update(true, ExoPlayer.STATE_BUFFERING);
+        assertEquals(Arrays.asList("true " + ExoPlayer.STATE_IDLE,
+                "true " + ExoPlayer.STATE_READY, "true " + ExoPlayer.STATE_BUFFERING), reported);
+    }
+
+    @Test
+    public void preparesUntilRenderersReachPlayer() {
+        assertEquals(ExoPlayer.STATE_PREPARING, PlayerStateReporter.getPlaybackState(
+                PlayerStateReporter.RENDERER_BUILDING_STATE_BUILDING, ExoPlayer.STATE_READY));
+        assertEquals(ExoPlayer.STATE_PREPARING, PlayerStateReporter.getPlaybackState(
+                PlayerStateReporter.RENDERER_BUILDING_STATE_BUILT, ExoPlayer.STATE_IDLE));
+        assertEquals(ExoPlayer.STATE_IDLE, PlayerStateReporter.getPlaybackState(
+                PlayerStateReporter.RENDERER_BUILDING_STATE_IDLE, ExoPlayer.STATE_IDLE));
+        assertEquals(ExoPlayer.STATE_BUFFERING, PlayerStateReporter.getPlaybackState(
+                PlayerStateReporter.RENDERER_BUILDING_STATE_BUILT, ExoPlayer.STATE_BUFFERING));
+    }
+}
@@ -0,0 +1,107 @@
+package com.thelotradio.android.media;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class StreamRecorderTest {
+
+    // MPEG-1 Layer III, 128 kbps, 44.1 kHz, no padding: 417 byte frames.
+    private static final byte[] MP3_HEADER = {(byte) 0xFF, (byte) 0xFB, (byte) 0x90, 0x64, 0, 0};
+    private static final int MP3_FRAME_LENGTH = 417;
+    private static final int FRAME_COUNT = 100;
+
+    private File directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = File.createTempFile("recordings", null);
+        directory.delete();
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void splitsFilesAtFrameBoundaries() throws Exception {
+        StreamRecorder recorder = new StreamRecorder(null, null, 1000, 64, 10000, Long.MAX_VALUE);
+        byte[] stream = mp3Frames(FRAME_COUNT);
+        recorder.start(directory);
+        // Hand the stream over in pieces that don't line up with frames.
+        for (int offset = 0; offset < stream.length; offset += 700) {
+            recorder.write(stream, offset, Math.min(700, stream.length - offset));
+        }
+        recorder.stop();
+        waitForWriter(recorder, stream.length);
+
+        File[] files = directory.listFiles();
+        assertTrue(files.length > 1);
+        Arrays.sort(files);
+        long totalLength = 0;
+        for (File file : files) {
+            assertTrue(file.getName().endsWith(".mp3"));
+            assertEquals(0, file.length() % MP3_FRAME_LENGTH);
+            totalLength += file.length();
+        }
+        assertEquals(stream.length, totalLength);
+        assertEquals(0, recorder.getBytesDropped());
+    }
+
+    @Test
+    public void stopsAndStartsWhileDiskFallsBehind() throws Exception {
+        StreamRecorder recorder = new StreamRecorder(null, null, MP3_FRAME_LENGTH, 2, 10000,
+                Long.MAX_VALUE);
+        byte[] stream = mp3Frames(FRAME_COUNT);
+        // Each stop queues its end marker behind chunks of its recording that are still waiting
+        // for the disk.
+        for (int i = 0; i < 20; i++) {
+            recorder.start(directory);
+            recorder.write(stream, 0, stream.length);
+            recorder.stop();
+        }
+        recorder.start(directory);
+        recorder.stop();
+        long bytesRecorded = 20L * stream.length - recorder.getBytesDropped();
+        waitForWriter(recorder, bytesRecorded);
+        assertEquals(bytesRecorded, recorder.getBytesWritten());
+    }
+
+    @Test
+    public void ignoresBytesWhenNotRecording() {
+        StreamRecorder recorder = new StreamRecorder(null, null);
+        byte[] stream = mp3Frames(1);
+        recorder.write(stream, 0, stream.length);
+        assertEquals(0, recorder.getBytesWritten());
+        assertEquals(0, recorder.getBytesDropped());
+    }
+
+    private static void waitForWriter(StreamRecorder recorder, long bytesWritten)
+            throws InterruptedException {
+        for (int i = 0; i < 500 && recorder.getBytesWritten() < bytesWritten; i++) {
+            Thread.sleep(10);
+        }
+    }
+
+    private static byte[] mp3Frames(int count) {
+        byte[] data = new byte[count * MP3_FRAME_LENGTH];
+        for (int i = 0; i < count; i++) {
+            System.arraycopy(MP3_HEADER, 0, data, i * MP3_FRAME_LENGTH, MP3_HEADER.length);
+        }
+        return data;
+    }
+}
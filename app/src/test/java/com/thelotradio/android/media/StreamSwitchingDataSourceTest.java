@@ -0,0 +1,211 @@
+package com.thelotradio.android.media;
+
+import android.net.Uri;
+
+import com.google.android.exoplayer.C;
+import com.google.android.exoplayer.upstream.DataSpec;
+import com.google.android.exoplayer.upstream.UriDataSource;
+import com.google.android.exoplayer.util.Clock;
+import com.thelotradio.android.BuildConfig;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+// Uri needs the framework, which the android.jar of unit tests only stubs.
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 23)
+public class StreamSwitchingDataSourceTest {
+
+    // MPEG-1 Layer III, 128 kbps, 44.1 kHz, no padding: 417 byte frames.
+    private static final int MP3_FRAME_LENGTH = 417;
+    private static final Uri URI = Uri.parse("http://localhost/stream");
+    private static final int MAX_OUTAGE_MS = 1000;
+    // How far the clock moves on with each attempt to connect.
+    private static final int CONNECT_MS = 100;
+
+    private final FakeClock clock = new FakeClock();
+
+    @Test
+    public void reconnectsAndPadsTornFrame() throws IOException {
+        byte[] frames = mp3Frames(60);
+        // The first connection drops halfway through its third frame.
+        int tornAt = 2 * MP3_FRAME_LENGTH + 200;
+        FakeUpstream upstream = new FakeUpstream(Arrays.copyOf(frames, tornAt), frames);
+        StreamSwitchingDataSource dataSource = createDataSource(upstream);
+        dataSource.open(new DataSpec(URI));
+
+        byte[] output = readFully(dataSource, 3 * MP3_FRAME_LENGTH + frames.length);
+        assertEquals(2, upstream.openCount);
+        // The torn frame is padded out, and the new connection follows from its first frame.
+        assertArrayEquals(Arrays.copyOf(frames, tornAt), Arrays.copyOf(output, tornAt));
+        for (int i = tornAt; i < 3 * MP3_FRAME_LENGTH; i++) {
+            assertEquals(0, output[i]);
+        }
+        assertArrayEquals(frames, Arrays.copyOfRange(output, 3 * MP3_FRAME_LENGTH,
+                3 * MP3_FRAME_LENGTH + frames.length));
+        assertEquals(1, dataSource.getReconnectCount());
+        assertEquals(CONNECT_MS, dataSource.getLastOutageMs());
+    }
+
+    @Test
+    public void outageEndsOnceNewConnectionDeliveredRecoveryBytes() throws IOException {
+        byte[] frames = mp3Frames(60);
+        FakeUpstream upstream = new FakeUpstream(Arrays.copyOf(frames, MP3_FRAME_LENGTH), frames);
+        StreamSwitchingDataSource dataSource = createDataSource(upstream);
+        dataSource.open(new DataSpec(URI));
+
+        readFully(dataSource, MP3_FRAME_LENGTH + StreamSwitchingDataSource.RECOVERY_BYTES / 2);
+        assertEquals(0, dataSource.getReconnectCount());
+        readFully(dataSource, StreamSwitchingDataSource.RECOVERY_BYTES);
+        assertEquals(1, dataSource.getReconnectCount());
+    }
+
+    @Test
+    public void failsWhenEveryConnectionIsDroppedAtOnce() throws IOException {
+        // Without reading a byte, each reopen succeeds and ends right away. Reconnecting must
+        // neither recurse nor restart the outage clock.
+        FakeUpstream upstream = new FakeUpstream(mp3Frames(1), new byte[0]);
+        StreamSwitchingDataSource dataSource = createDataSource(upstream);
+        dataSource.open(new DataSpec(URI));
+        readFully(dataSource, MP3_FRAME_LENGTH);
+        try {
+            dataSource.read(new byte[1024], 0, 1024);
+            fail();
+        } catch (IOException e) {
+            // Expected.
+        }
+        assertEquals(1 + MAX_OUTAGE_MS / CONNECT_MS, upstream.openCount);
+        assertEquals(0, dataSource.getReconnectCount());
+    }
+
+    @Test
+    public void failsWhenEveryConnectionIsDroppedBeforeRecovering() throws IOException {
+        // Each connection delivers a couple of frames, not enough to end the outage.
+        FakeUpstream upstream = new FakeUpstream(mp3Frames(4), mp3Frames(4));
+        StreamSwitchingDataSource dataSource = createDataSource(upstream);
+        dataSource.open(new DataSpec(URI));
+        try {
+            readFully(dataSource, 1024 * 1024);
+            fail();
+        } catch (IOException e) {
+            // Expected.
+        }
+        assertEquals(1 + MAX_OUTAGE_MS / CONNECT_MS, upstream.openCount);
+        assertEquals(0, dataSource.getReconnectCount());
+    }
+
+    @Test
+    public void failsWhenReopeningFails() throws IOException {
+        FakeUpstream upstream = new FakeUpstream(mp3Frames(1), null);
+        StreamSwitchingDataSource dataSource = createDataSource(upstream);
+        dataSource.open(new DataSpec(URI));
+        readFully(dataSource, MP3_FRAME_LENGTH);
+        try {
+            dataSource.read(new byte[1024], 0, 1024);
+            fail();
+        } catch (IOException e) {
+            assertEquals("Connection refused", e.getMessage());
+        }
+        assertEquals(1 + MAX_OUTAGE_MS / CONNECT_MS, upstream.openCount);
+    }
+
+    private StreamSwitchingDataSource createDataSource(FakeUpstream upstream) {
+        return new StreamSwitchingDataSource(upstream, URI, null, null, 1, 1, MAX_OUTAGE_MS,
+                clock);
+    }
+
+    private static byte[] readFully(StreamSwitchingDataSource dataSource, int length)
+            throws IOException {
+        byte[] output = new byte[length];
+        int position = 0;
+        while (position < length) {
+            position += dataSource.read(output, position, Math.min(1000, length - position));
+        }
+        return output;
+    }
+
+    private static byte[] mp3Frames(int count) {
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        for (int frame = 0; frame < count; frame++) {
+            byte[] bytes = new byte[MP3_FRAME_LENGTH];
+            bytes[0] = (byte) 0xFF;
+            bytes[1] = (byte) 0xFB;
+            bytes[2] = (byte) 0x90;
+            bytes[3] = 0x64;
+            for (int i = 4; i < MP3_FRAME_LENGTH; i++) {
+                // Never 0xFF, so no false frame headers, and never 0, unlike the padding.
+                bytes[i] = (byte) (1 + (frame + i) % 200);
+            }
+            stream.write(bytes, 0, bytes.length);
+        }
+        return stream.toByteArray();
+    }
+
+    private static final class FakeClock implements Clock {
+
+        public long timeMs;
+
+        @Override
+        public long elapsedRealtime() {
+            return timeMs;
+        }
+    }
+
+    /**
+     * Live connections that deliver the first bytes on the first connection, and the next bytes on
+     * every later one, or fail to open if they are null.
+     */
+    private final class FakeUpstream implements UriDataSource {
+
+        private final byte[] firstData;
+        private final byte[] nextData;
+
+        public int openCount;
+        private byte[] data;
+        private int position;
+
+        public FakeUpstream(byte[] firstData, byte[] nextData) {
+            this.firstData = firstData;
+            this.nextData = nextData;
+        }
+
+        @Override
+        public long open(DataSpec dataSpec) throws IOException {
+            clock.timeMs += CONNECT_MS;
+            data = openCount++ == 0 ? firstData : nextData;
+            if (data == null) {
+                throw new IOException("Connection refused");
+            }
+            position = 0;
+            return C.LENGTH_UNBOUNDED;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int readLength) {
+            if (position == data.length) {
+                return C.RESULT_END_OF_INPUT;
+            }
+            int bytesRead = Math.min(readLength, data.length - position);
+            System.arraycopy(data, position, buffer, offset, bytesRead);
+            position += bytesRead;
+            return bytesRead;
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public String getUri() {
+            return null;
+        }
+    }
+}
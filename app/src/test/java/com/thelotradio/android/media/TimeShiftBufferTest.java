@@ -0,0 +1,62 @@
+package com.thelotradio.android.media;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class TimeShiftBufferTest {
+
+    private static final int CAPACITY = 128 * 1024;
+
+    private File file;
+    private TimeShiftBuffer buffer;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("timeshift", null);
+        buffer = new TimeShiftBuffer(file, CAPACITY);
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Test
+    public void readsBackAcrossTheEndOfTheRing() {
+        byte[] data = sequence(CAPACITY + 1000);
+        buffer.write(data, 0, data.length);
+        long position = CAPACITY - 500;
+        byte[] target = new byte[1000];
+        int bytesRead = buffer.read(position, target, 0, target.length);
+        assertEquals(500, bytesRead);
+        bytesRead += buffer.read(position + bytesRead, target, bytesRead, target.length - bytesRead);
+        assertEquals(1000, bytesRead);
+        assertArrayEquals(Arrays.copyOfRange(data, (int) position, (int) position + 1000), target);
+    }
+
+    @Test
+    public void readReportsOverwrittenAndUnwrittenPositions() {
+        byte[] data = sequence(2 * CAPACITY);
+        buffer.write(data, 0, data.length);
+        byte[] target = new byte[16];
+        assertEquals(-1, buffer.read(buffer.getStartPosition() - 1, target, 0, target.length));
+        assertEquals(16, buffer.read(buffer.getStartPosition(), target, 0, target.length));
+        assertEquals(0, buffer.read(buffer.getWritePosition(), target, 0, target.length));
+    }
+
+    private static byte[] sequence(int length) {
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = (byte) (i * 31);
+        }
+        return data;
+    }
+}
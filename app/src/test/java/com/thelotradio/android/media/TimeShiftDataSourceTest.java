@@ -0,0 +1,264 @@
+package com.thelotradio.android.media;
+
+import android.net.Uri;
+
+import com.google.android.exoplayer.C;
+import com.google.android.exoplayer.upstream.DataSpec;
+import com.google.android.exoplayer.upstream.UriDataSource;
+import com.thelotradio.android.BuildConfig;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+// Uri needs the framework, which the android.jar of unit tests only stubs.
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 23)
+public class TimeShiftDataSourceTest {
+
+    private static final int CAPACITY = 128 * 1024;
+    private static final Uri URI = Uri.parse("http://localhost/live");
+    // MPEG-1 Layer III, 128 kbps, 44.1 kHz, no padding: 417 byte frames.
+    private static final byte[] MP3_HEADER = {(byte) 0xFF, (byte) 0xFB, (byte) 0x90, 0x64, 0, 0};
+    private static final int MP3_FRAME_LENGTH = 417;
+    private static final int TIMEOUT_MS = 5000;
+
+    private File file;
+    private TimeShiftBuffer buffer;
+    private FakeLiveSource upstream;
+    private TimeShiftDataSource source;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("timeshift", null);
+        buffer = new TimeShiftBuffer(file, CAPACITY);
+        upstream = new FakeLiveSource();
+        source = new TimeShiftDataSource(upstream, buffer);
+    }
+
+    @After
+    public void tearDown() {
+        source.release();
+        file.delete();
+    }
+
+    @Test
+    public void playsLiveWithoutBuffering() throws IOException {
+        byte[] stream = mp3Frames(20);
+        upstream.feed(stream);
+        source.open(new DataSpec(URI));
+        assertArrayEquals(stream, read(stream.length));
+        assertEquals(0, buffer.getWritePosition());
+        assertEquals(0, source.getBytesBehindLive());
+    }
+
+    @Test
+    public void resumesWhereReadingStopped() throws IOException {
+        byte[] stream = mp3Frames(20);
+        upstream.feed(stream);
+        upstream.end();
+        source.open(new DataSpec(URI));
+        read(1000);
+        source.close();
+        // Opening at a position other than 0 is a retry, which continues from where it stopped.
+        source.open(new DataSpec(URI, 1000, C.LENGTH_UNBOUNDED, null));
+        assertArrayEquals(Arrays.copyOfRange(stream, 1000, stream.length),
+                read(stream.length - 1000));
+        assertEquals(C.RESULT_END_OF_INPUT, source.read(new byte[1], 0, 1));
+    }
+
+    @Test
+    public void keepsDownloadingWhilePaused() throws IOException, InterruptedException {
+        byte[] stream = mp3Frames(30);
+        upstream.feed(Arrays.copyOf(stream, 5000));
+        source.open(new DataSpec(URI));
+        byte[] head = read(3000);
+        source.pause();
+        upstream.feed(Arrays.copyOfRange(stream, 5000, stream.length));
+        awaitWritePosition(stream.length - 3000);
+        assertEquals(stream.length - 3000, source.getBytesBehindLive());
+        byte[] tail = read(stream.length - 3000);
+        assertArrayEquals(Arrays.copyOf(stream, 3000), head);
+        assertArrayEquals(Arrays.copyOfRange(stream, 3000, stream.length), tail);
+    }
+
+    @Test
+    public void playsLiveAgainOnceCaughtUpAfterResuming() throws Exception {
+        final byte[] stream = mp3Frames(40);
+        final int chunkLength = 2 * MP3_FRAME_LENGTH;
+        source.open(new DataSpec(URI));
+        source.pause();
+        upstream.feed(Arrays.copyOf(stream, chunkLength));
+        awaitWritePosition(chunkLength);
+        source.resume();
+        assertArrayEquals(Arrays.copyOf(stream, chunkLength), read(chunkLength));
+
+        // Caught up, the reader waits for the pump to hand the connection back, which it does
+        // once the read it is blocked in returns.
+        final byte[][] result = new byte[1][];
+        Thread reader = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    result[0] = read(chunkLength);
+                } catch (IOException e) {
+                    // Fails the comparison below.
+                }
+            }
+        };
+        reader.start();
+        long deadlineMs = System.currentTimeMillis() + TIMEOUT_MS;
+        while (reader.getState() != Thread.State.BLOCKED
+                && System.currentTimeMillis() < deadlineMs) {
+            Thread.sleep(10);
+        }
+        upstream.feed(Arrays.copyOfRange(stream, chunkLength, 2 * chunkLength));
+        reader.join(TIMEOUT_MS);
+        assertArrayEquals(Arrays.copyOfRange(stream, chunkLength, 2 * chunkLength), result[0]);
+
+        // From here on, reads go straight to the connection.
+        int position = 2 * chunkLength;
+        while (position < stream.length) {
+            int length = Math.min(chunkLength, stream.length - position);
+            upstream.feed(Arrays.copyOfRange(stream, position, position + length));
+            assertArrayEquals(Arrays.copyOfRange(stream, position, position + length),
+                    read(length));
+            position += length;
+        }
+        assertEquals(2 * chunkLength, buffer.getWritePosition());
+        assertEquals(0, source.getBytesBehindLive());
+    }
+
+    @Test
+    public void jumpsToLiveAtNextFrame() throws IOException, InterruptedException {
+        source.open(new DataSpec(URI));
+        source.pause();
+        upstream.feed(mp3Frames(5));
+        awaitWritePosition(5 * MP3_FRAME_LENGTH);
+        source.close();
+        source.open(new DataSpec(URI));
+        assertEquals(0, source.getBytesBehindLive());
+        // The live stream continues halfway through a frame.
+        byte[] frames = mp3Frames(3);
+        byte[] tornFrame = new byte[100];
+        upstream.feed(tornFrame);
+        upstream.feed(frames);
+        assertArrayEquals(frames, read(frames.length));
+    }
+
+    @Test
+    public void releaseClosesConnectionHeldByPump() throws IOException, InterruptedException {
+        source.open(new DataSpec(URI));
+        source.pause();
+        upstream.feed(mp3Frames(1));
+        awaitWritePosition(MP3_FRAME_LENGTH);
+        source.release();
+        long deadlineMs = System.currentTimeMillis() + TIMEOUT_MS;
+        while (upstream.open && System.currentTimeMillis() < deadlineMs) {
+            Thread.sleep(10);
+        }
+        assertFalse(upstream.open);
+    }
+
+    private byte[] read(int length) throws IOException {
+        byte[] target = new byte[length];
+        int offset = 0;
+        while (offset < length) {
+            int bytesRead = source.read(target, offset, length - offset);
+            if (bytesRead == C.RESULT_END_OF_INPUT) {
+                throw new IOException("Ended after " + offset);
+            }
+            offset += bytesRead;
+        }
+        return target;
+    }
+
+    private void awaitWritePosition(long position) throws InterruptedException {
+        long deadlineMs = System.currentTimeMillis() + TIMEOUT_MS;
+        while (buffer.getWritePosition() < position && System.currentTimeMillis() < deadlineMs) {
+            Thread.sleep(10);
+        }
+        assertEquals(position, buffer.getWritePosition());
+    }
+
+    private static byte[] mp3Frames(int count) {
+        byte[] data = new byte[count * MP3_FRAME_LENGTH];
+        for (int i = 0; i < count; i++) {
+            System.arraycopy(MP3_HEADER, 0, data, i * MP3_FRAME_LENGTH, MP3_HEADER.length);
+        }
+        return data;
+    }
+
+    /**
+     * A live connection that delivers what the test feeds it, blocking until it does.
+     */
+    private static final class FakeLiveSource implements UriDataSource {
+
+        private static final byte[] END_OF_INPUT = new byte[0];
+
+        private final LinkedBlockingQueue<byte[]> chunks = new LinkedBlockingQueue<>();
+
+        public volatile boolean open;
+        private byte[] chunk;
+        private int position;
+
+        public void feed(byte[] data) {
+            chunks.add(data);
+        }
+
+        public void end() {
+            chunks.add(END_OF_INPUT);
+        }
+
+        @Override
+        public long open(DataSpec dataSpec) {
+            open = true;
+            return C.LENGTH_UNBOUNDED;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int readLength) throws IOException {
+            if (chunk == END_OF_INPUT) {
+                return C.RESULT_END_OF_INPUT;
+            }
+            if (chunk == null || position == chunk.length) {
+                try {
+                    chunk = chunks.take();
+                } catch (InterruptedException e) {
+                    throw new InterruptedIOException();
+                }
+                position = 0;
+            }
+            if (chunk == END_OF_INPUT) {
+                return C.RESULT_END_OF_INPUT;
+            }
+            int length = Math.min(readLength, chunk.length - position);
+            System.arraycopy(chunk, position, buffer, offset, length);
+            position += length;
+            return length;
+        }
+
+        @Override
+        public void close() {
+            open = false;
+        }
+
+        @Override
+        public String getUri() {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.thelotradio.android.media.decoder;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+
+import static com.thelotradio.android.media.decoder.DecoderTestUtil.assertPcmEquals;
+import static com.thelotradio.android.media.decoder.DecoderTestUtil.newOutput;
+import static com.thelotradio.android.media.decoder.DecoderTestUtil.readResource;
+import static org.junit.Assert.*;
+
+public class AacDecoderTest {
+
+    // AAC-LC, 44.1 kHz, stereo.
+    private static final byte[] LC_STEREO_44100 = {0x12, 0x10};
+
+    @Test
+    public void decodesStereoToReference() throws Exception {
+        byte[] stream = readResource("stereo_44100.aac");
+        AacDecoder decoder = new AacDecoder(audioSpecificConfig(stream));
+        assertEquals(44100, decoder.getSampleRate());
+        assertEquals(2, decoder.getChannelCount());
+        assertPcmEquals(readResource("stereo_44100_aac.pcm"), decodeAll(decoder, stream));
+    }
+
+    @Test
+    public void resetForgetsPreviousFrames() throws Exception {
+        byte[] stream = readResource("stereo_44100.aac");
+        AacDecoder decoder = new AacDecoder(audioSpecificConfig(stream));
+        byte[] first = decodeAll(decoder, stream);
+        decoder.reset();
+        assertArrayEquals(first, decodeAll(decoder, stream));
+    }
+
+    @Test
+    public void decodesCoreOfExplicitHeAac() throws Exception {
+        // SBR with a 24 kHz stereo AAC-LC core, extended to 48 kHz.
+        AacDecoder decoder = new AacDecoder(new byte[] {0x2B, 0x11, (byte) 0x88, 0x00});
+        assertEquals(24000, decoder.getSampleRate());
+        assertEquals(2, decoder.getChannelCount());
+    }
+
+    @Test
+    public void rejectsMainProfile() {
+        assertUnsupported(new byte[] {0x0A, 0x10});
+    }
+
+    @Test
+    public void rejectsSurround() {
+        // AAC-LC, 44.1 kHz, 5.1.
+        assertUnsupported(new byte[] {0x12, 0x30});
+    }
+
+    @Test
+    public void rejectsCouplingChannelElement() throws Exception {
+        AacDecoder decoder = new AacDecoder(LC_STEREO_44100);
+        byte[] data = {0x40, 0, 0, 0};
+        try {
+            decoder.decode(data, 0, data.length, newOutput(decoder));
+            fail();
+        } catch (DecoderException e) {
+            // Expected.
+        }
+    }
+
+    @Test
+    public void rejectsTruncatedFrame() throws Exception {
+        byte[] stream = readResource("stereo_44100.aac");
+        AacDecoder decoder = new AacDecoder(audioSpecificConfig(stream));
+        try {
+            decoder.decode(stream, getHeaderLength(stream, 0), 20, newOutput(decoder));
+            fail();
+        } catch (DecoderException e) {
+            // Expected.
+        }
+    }
+
+    private static void assertUnsupported(byte[] audioSpecificConfig) {
+        try {
+            new AacDecoder(audioSpecificConfig);
+            fail();
+        } catch (DecoderException e) {
+            // Expected.
+        }
+    }
+
+    private static byte[] decodeAll(AacDecoder decoder, byte[] stream) throws DecoderException {
+        ByteArrayOutputStream pcm = new ByteArrayOutputStream();
+        ByteBuffer output = newOutput(decoder);
+        int offset = 0;
+        while (offset < stream.length) {
+            int frameLength = getFrameLength(stream, offset);
+            assertTrue(frameLength > 0);
+            int headerLength = getHeaderLength(stream, offset);
+            output.clear();
+            decoder.decode(stream, offset + headerLength, frameLength - headerLength, output);
+            pcm.write(output.array(), 0, output.position());
+            offset += frameLength;
+        }
+        return pcm.toByteArray();
+    }
+
+    // Builds the AudioSpecificConfig that an extractor would derive from the first ADTS header.
+    private static byte[] audioSpecificConfig(byte[] stream) {
+        int objectType = ((stream[2] & 0xFF) >> 6) + 1;
+        int rateIndex = (stream[2] >> 2) & 0x0F;
+        int channelConfiguration = ((stream[2] & 0x01) << 2) | ((stream[3] & 0xFF) >> 6);
+        return new byte[] {
+                (byte) ((objectType << 3) | (rateIndex >> 1)),
+                (byte) (((rateIndex & 0x01) << 7) | (channelConfiguration << 3))};
+    }
+
+    private static int getFrameLength(byte[] stream, int offset) {
+        return ((stream[offset + 3] & 0x03) << 11) | ((stream[offset + 4] & 0xFF) << 3)
+                | ((stream[offset + 5] & 0xFF) >> 5);
+    }
+
+    private static int getHeaderLength(byte[] stream, int offset) {
+        boolean protectionAbsent = (stream[offset + 1] & 0x01) != 0;
+        return protectionAbsent ? 7 : 9;
+    }
+}
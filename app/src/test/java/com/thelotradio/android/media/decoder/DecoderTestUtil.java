@@ -0,0 +1,49 @@
+package com.thelotradio.android.media.decoder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.Assert.*;
+
+/* package */ final class DecoderTestUtil {
+
+    // The reference PCM was decoded from the same files by FFmpeg. The decoders round differently,
+    // so samples may be off by one.
+    private static final int TOLERANCE = 1;
+
+    private DecoderTestUtil() {}
+
+    public static ByteBuffer newOutput(AudioDecoder decoder) {
+        return ByteBuffer.allocate(decoder.getMaxOutputSize()).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    public static void assertPcmEquals(byte[] expected, byte[] actual) {
+        assertEquals(expected.length, actual.length);
+        for (int i = 0; i < expected.length; i += 2) {
+            int expectedSample = (short) ((expected[i] & 0xFF) | (expected[i + 1] << 8));
+            int actualSample = (short) ((actual[i] & 0xFF) | (actual[i + 1] << 8));
+            if (Math.abs(expectedSample - actualSample) > TOLERANCE) {
+                fail("Sample " + i / 2 + ": expected " + expectedSample + " but was " + actualSample);
+            }
+        }
+    }
+
+    public static byte[] readResource(String name) throws IOException {
+        InputStream in = DecoderTestUtil.class.getResourceAsStream(name);
+        assertNotNull(name, in);
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package com.thelotradio.android.media.decoder;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+
+import static com.thelotradio.android.media.decoder.DecoderTestUtil.assertPcmEquals;
+import static com.thelotradio.android.media.decoder.DecoderTestUtil.newOutput;
+import static com.thelotradio.android.media.decoder.DecoderTestUtil.readResource;
+import static org.junit.Assert.*;
+
+public class Mp3DecoderTest {
+
+    // Layer III bitrates in kbps, by bitrate index.
+    private static final int[] MPEG1_BITRATES =
+            {0, 32, 40, 48, 56, 64, 80, 96, 112, 128, 160, 192, 224, 256, 320};
+    private static final int[] MPEG2_BITRATES =
+            {0, 8, 16, 24, 32, 40, 48, 56, 64, 80, 96, 112, 128, 144, 160};
+    private static final int[] MPEG1_SAMPLE_RATES = {44100, 48000, 32000};
+
+    @Test
+    public void decodesStereoToReference() throws Exception {
+        Mp3Decoder decoder = new Mp3Decoder();
+        byte[] output = decodeAll(decoder, readResource("stereo_44100.mp3"));
+        assertEquals(44100, decoder.getSampleRate());
+        assertEquals(2, decoder.getChannelCount());
+        assertPcmEquals(readResource("stereo_44100_mp3.pcm"), output);
+    }
+
+    @Test
+    public void decodesMpeg2MonoToReference() throws Exception {
+        Mp3Decoder decoder = new Mp3Decoder();
+        byte[] output = decodeAll(decoder, readResource("mono_22050.mp3"));
+        assertEquals(22050, decoder.getSampleRate());
+        assertEquals(1, decoder.getChannelCount());
+        assertPcmEquals(readResource("mono_22050_mp3.pcm"), output);
+    }
+
+    @Test
+    public void resetForgetsPreviousFrames() throws Exception {
+        byte[] stream = readResource("stereo_44100.mp3");
+        Mp3Decoder decoder = new Mp3Decoder();
+        byte[] first = decodeAll(decoder, stream);
+        decoder.reset();
+        assertArrayEquals(first, decodeAll(decoder, stream));
+    }
+
+    @Test
+    public void rejectsGarbage() {
+        byte[] garbage = new byte[417];
+        garbage[0] = 0x49;
+        garbage[1] = 0x44;
+        try {
+            Mp3Decoder decoder = new Mp3Decoder();
+            decoder.decode(garbage, 0, garbage.length, newOutput(decoder));
+            fail();
+        } catch (DecoderException e) {
+            // Expected.
+        }
+    }
+
+    @Test
+    public void rejectsTruncatedFrame() throws Exception {
+        byte[] stream = readResource("stereo_44100.mp3");
+        Mp3Decoder decoder = new Mp3Decoder();
+        try {
+            decoder.decode(stream, 0, 20, newOutput(decoder));
+            fail();
+        } catch (DecoderException e) {
+            // Expected.
+        }
+    }
+
+    @Test
+    public void decodingDoesNotAllocate() throws Exception {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) bean;
+        Assume.assumeTrue(threadBean.isThreadAllocatedMemorySupported());
+        threadBean.setThreadAllocatedMemoryEnabled(true);
+
+        byte[] stream = readResource("stereo_44100.mp3");
+        Mp3Decoder decoder = new Mp3Decoder();
+        ByteBuffer output = newOutput(decoder);
+        for (int i = 0; i < 20; i++) {
+            decodeInto(decoder, stream, output);
+        }
+        long threadId = Thread.currentThread().getId();
+        long before = threadBean.getThreadAllocatedBytes(threadId);
+        decodeInto(decoder, stream, output);
+        long allocated = threadBean.getThreadAllocatedBytes(threadId) - before;
+        // Leave room for the bookkeeping of the measurement itself.
+        assertTrue("Allocated " + allocated + " bytes", allocated < 1024);
+    }
+
+    private static byte[] decodeAll(Mp3Decoder decoder, byte[] stream) throws DecoderException {
+        ByteArrayOutputStream pcm = new ByteArrayOutputStream();
+        ByteBuffer output = newOutput(decoder);
+        int offset = 0;
+        while (offset < stream.length) {
+            int frameLength = getFrameLength(stream, offset);
+            assertTrue(frameLength > 0);
+            output.clear();
+            decoder.decode(stream, offset, Math.min(frameLength, stream.length - offset), output);
+            pcm.write(output.array(), 0, output.position());
+            offset += frameLength;
+        }
+        return pcm.toByteArray();
+    }
+
+    private static void decodeInto(Mp3Decoder decoder, byte[] stream, ByteBuffer output)
+            throws DecoderException {
+        int offset = 0;
+        while (offset < stream.length) {
+            int frameLength = getFrameLength(stream, offset);
+            output.clear();
+            decoder.decode(stream, offset, Math.min(frameLength, stream.length - offset), output);
+            offset += frameLength;
+        }
+    }
+
+    // Only handles the Layer III files used here: MPEG-1 or MPEG-2, no free format.
+    private static int getFrameLength(byte[] stream, int offset) {
+        assertEquals(0xFF, stream[offset] & 0xFF);
+        boolean mpeg1 = (stream[offset + 1] & 0x08) != 0;
+        int bitrateIndex = (stream[offset + 2] & 0xFF) >> 4;
+        int sampleRateIndex = (stream[offset + 2] >> 2) & 0x03;
+        int padding = (stream[offset + 2] >> 1) & 0x01;
+        if (mpeg1) {
+            return 144000 * MPEG1_BITRATES[bitrateIndex] / MPEG1_SAMPLE_RATES[sampleRateIndex]
+                    + padding;
+        }
+        return 72000 * MPEG2_BITRATES[bitrateIndex] / (MPEG1_SAMPLE_RATES[sampleRateIndex] / 2)
+                + padding;
+    }
+}
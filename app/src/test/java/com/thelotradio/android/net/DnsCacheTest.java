@@ -0,0 +1,40 @@
+package com.thelotradio.android.net;
+
+import org.junit.Test;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+import static org.junit.Assert.assertEquals;
+
+public class DnsCacheTest {
+
+    private int lookupCount;
+
+    @Test
+    public void reusesLookupsUntilInvalidated() throws Exception {
+        DnsCache dnsCache = new DnsCache(new CountingResolver(), DnsCache.DEFAULT_TTL_MS);
+        dnsCache.lookup("thelotradio.com");
+        dnsCache.lookup("thelotradio.com");
+        assertEquals(1, lookupCount);
+        dnsCache.invalidate("thelotradio.com");
+        dnsCache.lookup("thelotradio.com");
+        assertEquals(2, lookupCount);
+    }
+
+    @Test
+    public void expiresLookups() throws Exception {
+        DnsCache dnsCache = new DnsCache(new CountingResolver(), 0);
+        dnsCache.lookup("thelotradio.com");
+        dnsCache.lookup("thelotradio.com");
+        assertEquals(2, lookupCount);
+    }
+
+    private final class CountingResolver implements DnsCache.Resolver {
+        @Override
+        public InetAddress[] resolve(String host) throws UnknownHostException {
+            lookupCount++;
+            return new InetAddress[] {InetAddress.getByAddress(host, new byte[] {127, 0, 0, 1})};
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package com.thelotradio.android.net;
+
+import android.net.Uri;
+
+import com.google.android.exoplayer.C;
+import com.google.android.exoplayer.upstream.DataSpec;
+import com.thelotradio.android.BuildConfig;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.Charset;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+// Uri needs the framework, which the android.jar of unit tests only stubs.
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 23)
+public class PooledHttpDataSourceTest {
+
+    private static final Charset US_ASCII = Charset.forName("US-ASCII");
+
+    private ServerSocket serverSocket;
+    private HttpConnectionPool pool;
+    private final AtomicInteger connectionCount = new AtomicInteger();
+    private volatile String response;
+
+    @Before
+    public void setUp() throws IOException {
+        serverSocket = new ServerSocket(0);
+        pool = new HttpConnectionPool(null, new DnsCache(DnsCache.DEFAULT_TTL_MS));
+        Thread server = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    while (true) {
+                        final Socket socket = serverSocket.accept();
+                        connectionCount.incrementAndGet();
+                        new Thread() {
+                            @Override
+                            public void run() {
+                                serve(socket);
+                            }
+                        }.start();
+                    }
+                } catch (IOException e) {
+                    // Closed by tearDown.
+                }
+            }
+        };
+        server.start();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        pool.evictAll();
+        serverSocket.close();
+    }
+
+    @Test
+    public void reusesKeptAliveConnections() throws Exception {
+        response = "HTTP/1.1 200 OK\r\nContent-Length: 5\r\n\r\nhello";
+        PooledHttpDataSource dataSource = createDataSource();
+        assertEquals(5, dataSource.open(new DataSpec(getUri())));
+        assertEquals("hello", readFully(dataSource));
+        assertFalse(dataSource.getTimings().reused);
+        dataSource.close();
+        assertEquals(1, pool.getIdleConnectionCount());
+
+        dataSource.open(new DataSpec(getUri()));
+        assertEquals("hello", readFully(dataSource));
+        assertTrue(dataSource.getTimings().reused);
+        dataSource.close();
+        assertEquals(1, connectionCount.get());
+    }
+
+    @Test
+    public void readsChunkedBody() throws Exception {
+        response = "HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\n\r\n"
+                + "3\r\nhel\r\n2;ext=1\r\nlo\r\n0\r\n\r\n";
+        PooledHttpDataSource dataSource = createDataSource();
+        assertEquals(C.LENGTH_UNBOUNDED, dataSource.open(new DataSpec(getUri())));
+        assertEquals("hello", readFully(dataSource));
+        dataSource.close();
+        assertEquals(1, pool.getIdleConnectionCount());
+    }
+
+    @Test
+    public void readsShoutcastStreamUntilClosed() throws Exception {
+        response = "ICY 200 OK\r\nicy-metaint: 16000\r\n\r\nhello";
+        PooledHttpDataSource dataSource = createDataSource();
+        assertEquals(C.LENGTH_UNBOUNDED, dataSource.open(new DataSpec(getUri())));
+        assertEquals("16000", dataSource.getResponseHeaders().get("icy-metaint").get(0));
+        assertEquals("hello", readFully(dataSource));
+        dataSource.close();
+        // The body ended with the connection, so there is nothing to keep alive.
+        assertEquals(0, pool.getIdleConnectionCount());
+    }
+
+    @Test
+    public void abortUnblocksStalledRead() throws Exception {
+        // Promises more than it sends, so the second read blocks.
+        response = "HTTP/1.1 200 OK\r\nContent-Length: 100\r\n\r\nhe";
+        final PooledHttpDataSource dataSource = createDataSource();
+        dataSource.open(new DataSpec(getUri()));
+        byte[] buffer = new byte[100];
+        assertEquals(2, dataSource.read(buffer, 0, buffer.length));
+        new Thread() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                dataSource.abort();
+            }
+        }.start();
+        long startMs = System.currentTimeMillis();
+        try {
+            dataSource.read(buffer, 0, buffer.length);
+            fail();
+        } catch (IOException e) {
+            // Expected.
+        }
+        // Well before the read timeout.
+        assertTrue(System.currentTimeMillis() - startMs < 1000);
+        dataSource.close();
+        assertEquals(0, pool.getIdleConnectionCount());
+    }
+
+    private PooledHttpDataSource createDataSource() {
+        return new PooledHttpDataSource(pool, "test", null, 2000, 2000, null, null);
+    }
+
+    private Uri getUri() {
+        return Uri.parse("http://127.0.0.1:" + serverSocket.getLocalPort() + "/stream");
+    }
+
+    private void serve(Socket socket) {
+        try {
+            BufferedReader reader =
+                    new BufferedReader(new InputStreamReader(socket.getInputStream(), US_ASCII));
+            OutputStream output = socket.getOutputStream();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty()) {
+                    output.write(response.getBytes(US_ASCII));
+                    output.flush();
+                    if (response.startsWith("ICY")) {
+                        break;
+                    }
+                }
+            }
+            socket.close();
+        } catch (IOException e) {
+            // The client went away.
+        }
+    }
+
+    private static String readFully(PooledHttpDataSource dataSource) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        byte[] buffer = new byte[2];
+        int bytesRead;
+        while ((bytesRead = dataSource.read(buffer, 0, buffer.length)) != C.RESULT_END_OF_INPUT) {
+            output.write(buffer, 0, bytesRead);
+        }
+        return new String(output.toByteArray(), US_ASCII);
+    }
+}
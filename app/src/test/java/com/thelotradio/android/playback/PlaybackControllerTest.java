@@ -0,0 +1,266 @@
+package com.thelotradio.android.playback;
+
+import android.os.Handler;
+import android.support.v4.media.session.PlaybackStateCompat;
+
+import com.thelotradio.android.media.AudioPlayer;
+import com.thelotradio.android.media.BufferPolicy;
+import com.thelotradio.android.media.BufferProfile;
+import com.thelotradio.android.media.PlaybackStats;
+import com.thelotradio.android.telemetry.Telemetry;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PlaybackControllerTest {
+
+    private static final int TIMEOUT_MS = 5000;
+
+    private FakeQueue queue;
+    private FakePlayback playback;
+    private PlaybackController controller;
+
+    @Before
+    public void setUp() {
+        queue = new FakeQueue();
+        playback = new FakePlayback();
+        controller = new PlaybackController(null, new PlaybackController.PlaybackFactory() {
+            @Override
+            public PlaybackController.ControlledPlayback createPlayback(
+                    PlaybackController controller) {
+                playback.calls.add("create");
+                return playback;
+            }
+        }, queue);
+    }
+
+    @Test
+    public void carriesOutCommandsInOrder() {
+        controller.start();
+        controller.setBufferPolicy(BufferProfile.LOW_POWER);
+        controller.play();
+        controller.jumpToLive();
+        controller.onTrimMemory(20);
+        controller.stop(true);
+        assertEquals(0, playback.calls.size());
+        queue.runPending();
+        assertEquals(Arrays.asList("create", "start", "setBufferPolicy", "play", "jumpToLive",
+                "onTrimMemory 20", "stop true"), playback.calls);
+        assertEquals(BufferProfile.LOW_POWER, playback.bufferPolicy);
+    }
+
+    @Test
+    public void judgesPlayAndPauseWhenCarriedOut() {
+        // Issued while not playing, but the first play changes that by the time the second
+        // one is carried out.
+        controller.play();
+        controller.play();
+        controller.pause();
+        controller.pause();
+        controller.play();
+        queue.runPending();
+        assertEquals(Arrays.asList("create", "play", "pause", "play"), playback.calls);
+        assertTrue(controller.isPlaying());
+        assertEquals(PlaybackStateCompat.STATE_PLAYING, controller.getState());
+    }
+
+    @Test
+    public void updatesStateForOtherThreadsAfterEachCommand() {
+        controller.play();
+        queue.runPending();
+        assertTrue(controller.isPlaying());
+        controller.stop(false);
+        assertTrue(controller.isPlaying());
+        queue.runPending();
+        assertFalse(controller.isPlaying());
+        assertEquals(PlaybackStateCompat.STATE_STOPPED, controller.getState());
+    }
+
+    @Test
+    public void recordsCommandLatency() {
+        queue.runPending();
+        assertEquals(-1, controller.getLastCommandLatencyMs());
+        queue.timeMs = 1000;
+        controller.play();
+        queue.timeMs = 1030;
+        queue.runPending();
+        assertEquals(30, controller.getLastCommandLatencyMs());
+        assertEquals(1, playback.telemetry.getSampleCount(
+                Telemetry.HISTOGRAM_COMMAND_LATENCY));
+    }
+
+    @Test
+    public void releaseBlocksUntilPendingCommandsAreCarriedOut() throws InterruptedException {
+        controller.play();
+        controller.stop(true);
+        Thread releaser = new Thread() {
+            @Override
+            public void run() {
+                controller.release();
+            }
+        };
+        releaser.start();
+        long deadlineMs = System.currentTimeMillis() + TIMEOUT_MS;
+        while (queue.commands.size() < 4 && System.currentTimeMillis() < deadlineMs) {
+            Thread.sleep(10);
+        }
+        Thread.sleep(50);
+        assertTrue(releaser.isAlive());
+        assertEquals(0, playback.calls.size());
+
+        queue.runPending();
+        releaser.join(TIMEOUT_MS);
+        assertFalse(releaser.isAlive());
+        assertEquals(Arrays.asList("create", "play", "stop true"), playback.calls);
+        assertTrue(queue.quit);
+    }
+
+    /**
+     * Queues commands until the test carries them out on its own thread.
+     */
+    private final class FakeQueue implements PlaybackController.CommandQueue {
+
+        public final LinkedBlockingQueue<Object[]> commands = new LinkedBlockingQueue<>();
+
+        public volatile long timeMs;
+        public volatile boolean quit;
+
+        public void runPending() {
+            Object[] command;
+            while ((command = commands.poll()) != null) {
+                controller.execute((Integer) command[0], (Integer) command[1], command[2],
+                        (Long) command[3]);
+            }
+        }
+
+        @Override
+        public void start(PlaybackController controller) {
+        }
+
+        @Override
+        public void send(int command, int arg, Object obj) {
+            commands.add(new Object[] {command, arg, obj, timeMs});
+        }
+
+        @Override
+        public void quit() {
+            quit = true;
+        }
+
+        @Override
+        public long uptimeMillis() {
+            return timeMs;
+        }
+
+        @Override
+        public Handler getHandler() {
+            return null;
+        }
+    }
+
+    private static final class FakePlayback implements PlaybackController.ControlledPlayback {
+
+        public final List<String> calls = new ArrayList<>();
+        public final Telemetry telemetry = new Telemetry(16, 16);
+
+        public BufferPolicy bufferPolicy;
+        private int state = PlaybackStateCompat.STATE_NONE;
+
+        @Override
+        public void start() {
+            calls.add("start");
+        }
+
+        @Override
+        public void stop(boolean notifyListeners) {
+            calls.add("stop " + notifyListeners);
+            state = PlaybackStateCompat.STATE_STOPPED;
+        }
+
+        @Override
+        public void setState(int state) {
+            calls.add("setState " + state);
+            this.state = state;
+        }
+
+        @Override
+        public int getState() {
+            return state;
+        }
+
+        @Override
+        public boolean isPlaying() {
+            return state == PlaybackStateCompat.STATE_PLAYING;
+        }
+
+        @Override
+        public void play() {
+            calls.add("play");
+            state = PlaybackStateCompat.STATE_PLAYING;
+        }
+
+        @Override
+        public void pause() {
+            calls.add("pause");
+            state = PlaybackStateCompat.STATE_PAUSED;
+        }
+
+        @Override
+        public void setCallback(Callback callback) {
+        }
+
+        @Override
+        public void onAudioFocusChange(int focusChange) {
+            calls.add("onAudioFocusChange " + focusChange);
+        }
+
+        @Override
+        public void setBufferPolicy(BufferPolicy bufferPolicy) {
+            calls.add("setBufferPolicy");
+            this.bufferPolicy = bufferPolicy;
+        }
+
+        @Override
+        public void jumpToLive() {
+            calls.add("jumpToLive");
+        }
+
+        @Override
+        public void startRecording() {
+            calls.add("startRecording");
+        }
+
+        @Override
+        public void stopRecording() {
+            calls.add("stopRecording");
+        }
+
+        @Override
+        public void onTrimMemory(int level) {
+            calls.add("onTrimMemory " + level);
+        }
+
+        @Override
+        public PlaybackStats getPlaybackStats() {
+            return null;
+        }
+
+        @Override
+        public void setPcmListener(AudioPlayer.PcmListener pcmListener) {
+        }
+
+        @Override
+        public Telemetry getTelemetry() {
+            return telemetry;
+        }
+    }
+}
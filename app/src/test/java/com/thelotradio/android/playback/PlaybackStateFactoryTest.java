@@ -0,0 +1,41 @@
+package com.thelotradio.android.playback;
+
+import android.support.v4.media.session.PlaybackStateCompat;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class PlaybackStateFactoryTest {
+
+    @Test
+    public void offersPauseOnlyWhilePlaying() {
+        assertEquals(PlaybackStateCompat.ACTION_PLAY | PlaybackStateCompat.ACTION_PAUSE,
+                PlaybackStateFactory.getAvailableActions(true));
+        assertEquals(PlaybackStateCompat.ACTION_PLAY,
+                PlaybackStateFactory.getAvailableActions(false));
+    }
+
+    @Test
+    public void offersRecordingWhilePlayingAndStopWhileRecording() {
+        assertEquals(PlaybackStateFactory.CUSTOM_ACTION_FLAG_START_RECORDING,
+                PlaybackStateFactory.getCustomActions(PlaybackStateCompat.STATE_PLAYING, false,
+                        false));
+        assertEquals(0, PlaybackStateFactory.getCustomActions(PlaybackStateCompat.STATE_PAUSED,
+                false, false));
+        assertEquals(PlaybackStateFactory.CUSTOM_ACTION_FLAG_STOP_RECORDING,
+                PlaybackStateFactory.getCustomActions(PlaybackStateCompat.STATE_BUFFERING, false,
+                        true));
+    }
+
+    @Test
+    public void offersJumpToLiveWhileTimeShifted() {
+        assertEquals(PlaybackStateFactory.CUSTOM_ACTION_FLAG_JUMP_TO_LIVE
+                        | PlaybackStateFactory.CUSTOM_ACTION_FLAG_START_RECORDING,
+                PlaybackStateFactory.getCustomActions(PlaybackStateCompat.STATE_PLAYING, true,
+                        false));
+        assertEquals(PlaybackStateFactory.CUSTOM_ACTION_FLAG_JUMP_TO_LIVE,
+                PlaybackStateFactory.getCustomActions(PlaybackStateCompat.STATE_PAUSED, true,
+                        false));
+    }
+}
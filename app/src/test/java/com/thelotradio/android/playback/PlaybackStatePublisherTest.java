@@ -0,0 +1,127 @@
+package com.thelotradio.android.playback;
+
+import android.os.Handler;
+
+import com.thelotradio.android.BuildConfig;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+
+// Handler and SystemClock need the framework, which the android.jar of unit tests only stubs.
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 23)
+public class PlaybackStatePublisherTest {
+
+    private int deliveredState;
+    private int deliveredCount;
+    private PlaybackStatePublisher.Delegate delegate;
+
+    @Before
+    public void setUp() {
+        delegate = new PlaybackStatePublisher.Delegate() {
+            @Override
+            public void onPublishState(int state, long actions, int customActions) {
+                deliveredState = state;
+                deliveredCount++;
+            }
+        };
+        // Posted updates only run once the test moves the clock on.
+        Robolectric.getForegroundThreadScheduler().pause();
+    }
+
+    @Test
+    public void dropsUnchangedStates() {
+        PlaybackStatePublisher publisher = new PlaybackStatePublisher(null, delegate);
+        publisher.update(3, 4, 0);
+        publisher.update(3, 4, 0);
+        publisher.update(3, 4, 1);
+        publisher.update(3, 4, 1);
+        assertEquals(2, deliveredCount);
+        assertEquals(2, publisher.getEmittedCount());
+        assertEquals(2, publisher.getSuppressedCount());
+    }
+
+    @Test
+    public void publishesEveryChange() {
+        PlaybackStatePublisher publisher = new PlaybackStatePublisher(null, delegate);
+        publisher.update(6, 4, 0);
+        publisher.update(3, 4, 0);
+        publisher.update(6, 4, 0);
+        assertEquals(3, deliveredCount);
+        assertEquals(6, deliveredState);
+        assertEquals(0, publisher.getSuppressedCount());
+    }
+
+    @Test
+    public void publishesFirstStateRightAway() {
+        PlaybackStatePublisher publisher = new PlaybackStatePublisher(new Handler(), delegate);
+        publisher.update(2, 4, 0);
+        assertEquals(1, deliveredCount);
+        assertEquals(2, deliveredState);
+        // Later changes wait for the interval.
+        publisher.update(3, 4, 0);
+        assertEquals(1, deliveredCount);
+        advance(PlaybackStatePublisher.MIN_INTERVAL_MS);
+        assertEquals(2, deliveredCount);
+        assertEquals(3, deliveredState);
+    }
+
+    @Test
+    public void mergesUpdatesWithinInterval() {
+        PlaybackStatePublisher publisher = new PlaybackStatePublisher(new Handler(), delegate);
+        publisher.update(2, 4, 0);
+        advance(PlaybackStatePublisher.MIN_INTERVAL_MS);
+        assertEquals(1, deliveredCount);
+
+        publisher.update(6, 4, 0);
+        publisher.update(3, 4, 0);
+        assertEquals(1, deliveredCount);
+        advance(PlaybackStatePublisher.MIN_INTERVAL_MS);
+        assertEquals(2, deliveredCount);
+        assertEquals(3, deliveredState);
+        assertEquals(2, publisher.getEmittedCount());
+        assertEquals(1, publisher.getSuppressedCount());
+    }
+
+    @Test
+    public void dropsBurstThatEndsWhereItStarted() {
+        PlaybackStatePublisher publisher = new PlaybackStatePublisher(new Handler(), delegate);
+        publisher.update(3, 4, 0);
+        advance(PlaybackStatePublisher.MIN_INTERVAL_MS);
+
+        // Flapping between ready and buffering, back to ready before the interval is over.
+        publisher.update(6, 4, 0);
+        publisher.update(3, 4, 0);
+        advance(PlaybackStatePublisher.MIN_INTERVAL_MS);
+        assertEquals(1, deliveredCount);
+        assertEquals(3, deliveredState);
+        assertEquals(1, publisher.getEmittedCount());
+        assertEquals(2, publisher.getSuppressedCount());
+    }
+
+    @Test
+    public void flushPublishesPendingUpdateRightAway() {
+        PlaybackStatePublisher publisher = new PlaybackStatePublisher(new Handler(), delegate);
+        publisher.update(3, 4, 0);
+        advance(PlaybackStatePublisher.MIN_INTERVAL_MS);
+
+        publisher.update(2, 4, 0);
+        publisher.flush();
+        assertEquals(2, deliveredCount);
+        assertEquals(2, deliveredState);
+        // Nothing is left to publish once the interval is over.
+        advance(PlaybackStatePublisher.MIN_INTERVAL_MS);
+        assertEquals(2, deliveredCount);
+        assertEquals(0, publisher.getSuppressedCount());
+    }
+
+    private static void advance(long intervalMs) {
+        Robolectric.getForegroundThreadScheduler().advanceBy(intervalMs);
+    }
+}
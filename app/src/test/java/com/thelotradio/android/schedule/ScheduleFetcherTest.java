@@ -0,0 +1,191 @@
+package com.thelotradio.android.schedule;
+
+import android.net.Uri;
+
+import com.thelotradio.android.net.DiskResponseCache;
+import com.thelotradio.android.net.DnsCache;
+import com.thelotradio.android.net.HttpConnectionPool;
+import com.thelotradio.android.BuildConfig;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+// Uri needs the framework, which the android.jar of unit tests only stubs.
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 23)
+public class ScheduleFetcherTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final String ETAG = "\"v1\"";
+    private static final String LAST_MODIFIED = "Tue, 05 Jul 2016 11:59:00 GMT";
+    private static final String SCHEDULE = "{\"shows\":{\"previous\":[],"
+            + "\"current\":{\"name\":\"Lunch\",\"starts\":\"2016-07-05 12:00:00\","
+            + "\"ends\":\"2016-07-05 13:00:00\"},\"next\":[]}}";
+    // 2016-07-05 12:00:00 UTC.
+    private static final long NOON_MS = 1467720000000L;
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private final List<String> requests = new CopyOnWriteArrayList<>();
+    private ServerSocket serverSocket;
+    private volatile boolean offline;
+    private HttpConnectionPool pool;
+    private DiskResponseCache cache;
+    private ScheduleFetcher fetcher;
+
+    @Before
+    public void setUp() throws IOException {
+        serverSocket = new ServerSocket(0);
+        pool = new HttpConnectionPool(null, new DnsCache(DnsCache.DEFAULT_TTL_MS));
+        cache = new DiskResponseCache(folder.newFolder());
+        fetcher = createFetcher();
+        new Thread() {
+            @Override
+            public void run() {
+                try {
+                    while (true) {
+                        final Socket socket = serverSocket.accept();
+                        new Thread() {
+                            @Override
+                            public void run() {
+                                serve(socket);
+                            }
+                        }.start();
+                    }
+                } catch (IOException e) {
+                    // Closed by the test.
+                }
+            }
+        }.start();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        pool.evictAll();
+        serverSocket.close();
+    }
+
+    @Test
+    public void cachesResponseWithValidators() throws IOException {
+        assertNull(fetcher.getCachedSchedule());
+        Schedule schedule = fetcher.fetch(NOON_MS);
+        assertEquals("Lunch", schedule.getShowAt(NOON_MS).name);
+        assertFalse(requests.get(0).contains("If-None-Match"));
+
+        DiskResponseCache.Entry entry = cache.get(getUri().toString());
+        assertEquals(ETAG, entry.etag);
+        assertEquals(LAST_MODIFIED, entry.lastModified);
+        assertEquals(NOON_MS, entry.validatedAtMs);
+        // Survives the fetcher, as across launches.
+        assertEquals(schedule.getShows(), createFetcher().getCachedSchedule().getShows());
+    }
+
+    @Test
+    public void revalidatesWithConditionalRequest() throws IOException {
+        fetcher.fetch(NOON_MS);
+        Schedule schedule = fetcher.fetch(NOON_MS + 1000);
+        assertEquals(2, requests.size());
+        assertTrue(requests.get(1).contains("If-None-Match: " + ETAG));
+        assertTrue(requests.get(1).contains("If-Modified-Since: " + LAST_MODIFIED));
+        // Served from the cache, and fresh again.
+        assertEquals("Lunch", schedule.getShowAt(NOON_MS).name);
+        assertEquals(NOON_MS + 1000, schedule.getValidatedAtMs());
+        assertEquals(NOON_MS + 1000, cache.get(getUri().toString()).validatedAtMs);
+    }
+
+    @Test
+    public void keepsCachedScheduleOffline() throws IOException {
+        fetcher.fetch(NOON_MS);
+        pool.evictAll();
+        offline = true;
+        try {
+            fetcher.fetch(NOON_MS + 1000);
+            fail();
+        } catch (IOException e) {
+            // Expected.
+        }
+        Schedule cached = fetcher.getCachedSchedule();
+        assertNotNull(cached);
+        assertEquals(NOON_MS, cached.getValidatedAtMs());
+    }
+
+    @Test
+    public void discardsUnreadableCache() throws IOException {
+        cache.put(new DiskResponseCache.Entry(getUri().toString(), ETAG, null, NOON_MS,
+                "not json".getBytes(UTF_8)));
+        assertNull(fetcher.getCachedSchedule());
+        assertNull(cache.get(getUri().toString()));
+    }
+
+    private ScheduleFetcher createFetcher() {
+        return new ScheduleFetcher(pool, "test", getUri(), cache);
+    }
+
+    private Uri getUri() {
+        return Uri.parse("http://127.0.0.1:" + serverSocket.getLocalPort() + "/api/live-info-v2");
+    }
+
+    /**
+     * Serves the schedule with validators, and honours If-None-Match, on kept-alive connections.
+     */
+    private void serve(Socket socket) {
+        try {
+            if (offline) {
+                // Dropped before the response, as by a network that is down.
+                socket.close();
+                return;
+            }
+            BufferedReader reader =
+                    new BufferedReader(new InputStreamReader(socket.getInputStream(), UTF_8));
+            OutputStream output = socket.getOutputStream();
+            StringBuilder request = new StringBuilder();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.isEmpty()) {
+                    request.append(line).append("\r\n");
+                    continue;
+                }
+                requests.add(request.toString());
+                String response;
+                if (request.indexOf("If-None-Match: " + ETAG) != -1) {
+                    response = "HTTP/1.1 304 Not Modified\r\nETag: " + ETAG + "\r\n\r\n";
+                } else {
+                    response = "HTTP/1.1 200 OK\r\nETag: " + ETAG + "\r\nLast-Modified: "
+                            + LAST_MODIFIED + "\r\nContent-Type: application/json\r\n"
+                            + "Content-Length: " + SCHEDULE.getBytes(UTF_8).length + "\r\n\r\n"
+                            + SCHEDULE;
+                }
+                output.write(response.getBytes(UTF_8));
+                output.flush();
+                request.setLength(0);
+            }
+            socket.close();
+        } catch (IOException e) {
+            // The client went away.
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.thelotradio.android.schedule;
+
+import com.thelotradio.android.model.Show;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class ScheduleTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    // 2016-07-05 12:00:00 UTC.
+    private static final long NOON_MS = 1467720000000L;
+    private static final long HOUR_MS = 60 * 60 * 1000;
+
+    @Test
+    public void parsesLiveInfo() throws IOException {
+        String json = "{\"station\":{\"env\":\"production\"},\"shows\":{"
+                + "\"previous\":[{\"name\":\"Morning\",\"starts\":\"2016-07-05 10:00:00\","
+                + "\"ends\":\"2016-07-05 12:00:00\"}],"
+                + "\"current\":{\"name\":\"Lunch &amp; Friends\",\"starts\":\"2016-07-05 12:00:00\","
+                + "\"ends\":\"2016-07-05 13:00:00\"},"
+                + "\"next\":[{\"name\":\"Afternoon\",\"starts\":\"2016-07-05 13:00:00\","
+                + "\"ends\":\"2016-07-05 15:00:00\"}]}}";
+        Schedule schedule = Schedule.parse(json.getBytes(UTF_8), NOON_MS);
+        assertEquals(3, schedule.getShows().size());
+        assertEquals(new Show("Lunch & Friends", NOON_MS, NOON_MS + HOUR_MS),
+                schedule.getShowAt(NOON_MS + 1000));
+        assertEquals("Afternoon", schedule.getNextShow(NOON_MS).name);
+        assertEquals(NOON_MS - 2 * HOUR_MS, schedule.getShows().get(0).startTimeMs);
+    }
+
+    @Test
+    public void parsesNothingOnAir() throws IOException {
+        String json = "{\"shows\":{\"previous\":[],\"current\":[],\"next\":[]}}";
+        Schedule schedule = Schedule.parse(json.getBytes(UTF_8), NOON_MS);
+        assertNull(schedule.getShowAt(NOON_MS));
+        assertEquals(-1, schedule.getNextBoundaryMs(NOON_MS));
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsMalformedTimes() throws IOException {
+        String json = "{\"shows\":{\"current\":{\"name\":\"A\",\"starts\":\"noon\","
+                + "\"ends\":\"2016-07-05 13:00:00\"}}}";
+        Schedule.parse(json.getBytes(UTF_8), NOON_MS);
+    }
+
+    @Test
+    public void nextBoundarySkipsGaps() {
+        Schedule schedule = new Schedule(Arrays.asList(
+                new Show("Later", NOON_MS + 2 * HOUR_MS, NOON_MS + 3 * HOUR_MS),
+                new Show("Now", NOON_MS, NOON_MS + HOUR_MS)), NOON_MS);
+        assertEquals(NOON_MS + HOUR_MS, schedule.getNextBoundaryMs(NOON_MS));
+        // Off air between the two shows.
+        assertNull(schedule.getShowAt(NOON_MS + HOUR_MS));
+        assertEquals(NOON_MS + 2 * HOUR_MS, schedule.getNextBoundaryMs(NOON_MS + HOUR_MS));
+        assertEquals("Later", schedule.getNextShow(NOON_MS).name);
+    }
+
+    @Test
+    public void expiresAtNextBoundary() {
+        Schedule schedule = new Schedule(Collections.singletonList(
+                new Show("Now", NOON_MS - HOUR_MS, NOON_MS + HOUR_MS)), NOON_MS);
+        assertEquals(NOON_MS + HOUR_MS, schedule.getExpiryTimeMs());
+
+        Schedule longShow = new Schedule(Collections.singletonList(
+                new Show("All day", NOON_MS - HOUR_MS, NOON_MS + 12 * HOUR_MS)), NOON_MS);
+        assertEquals(NOON_MS + Schedule.MAX_FRESHNESS_MS, longShow.getExpiryTimeMs());
+
+        Schedule empty = new Schedule(Collections.<Show>emptyList(), NOON_MS);
+        assertEquals(NOON_MS, empty.getExpiryTimeMs());
+    }
+}
@@ -0,0 +1,80 @@
+package com.thelotradio.android.telemetry;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TelemetryTest {
+
+    private Telemetry telemetry;
+
+    @Before
+    public void setUp() {
+        telemetry = new Telemetry(4, 10);
+    }
+
+    @Test
+    public void ringKeepsMostRecentEvents() {
+        for (int i = 0; i < 6; i++) {
+            telemetry.recordEvent(Telemetry.EVENT_UNDERRUN, 1000 + i, i, 0);
+        }
+        assertEquals(4, telemetry.getEventCount());
+        assertEquals(2, telemetry.getEventValue1(0));
+        assertEquals(5, telemetry.getEventValue1(3));
+        assertEquals(Telemetry.EVENT_UNDERRUN, telemetry.getEventType(3));
+    }
+
+    @Test
+    public void histogramAgesOutOldSamples() {
+        for (int i = 0; i < 10; i++) {
+            telemetry.addSample(Telemetry.HISTOGRAM_REBUFFER_DURATION, 10000);
+        }
+        for (int i = 0; i < 20; i++) {
+            telemetry.addSample(Telemetry.HISTOGRAM_REBUFFER_DURATION, 100);
+        }
+        assertEquals(20, telemetry.getSampleCount(Telemetry.HISTOGRAM_REBUFFER_DURATION));
+        assertEquals(100, telemetry.getMean(Telemetry.HISTOGRAM_REBUFFER_DURATION));
+        long p99 = telemetry.getPercentile(Telemetry.HISTOGRAM_REBUFFER_DURATION, 99);
+        assertTrue(p99 >= 100 && p99 < 150);
+    }
+
+    @Test
+    public void clearedHistogramStartsOver() {
+        for (int i = 0; i < 5; i++) {
+            telemetry.addSample(Telemetry.HISTOGRAM_DECODER_INITIALIZATION, 3000);
+        }
+        telemetry.addSample(Telemetry.HISTOGRAM_STARTUP_LATENCY, 800);
+        telemetry.clearSamples(Telemetry.HISTOGRAM_DECODER_INITIALIZATION);
+        assertEquals(0, telemetry.getSampleCount(Telemetry.HISTOGRAM_DECODER_INITIALIZATION));
+        telemetry.addSample(Telemetry.HISTOGRAM_DECODER_INITIALIZATION, 200);
+        assertEquals(200, telemetry.getPercentile(Telemetry.HISTOGRAM_DECODER_INITIALIZATION, 50));
+        assertEquals(1, telemetry.getSampleCount(Telemetry.HISTOGRAM_STARTUP_LATENCY));
+    }
+
+    @Test
+    public void bucketsCoverTheirValues() {
+        for (long value = 0; value < 100000; value += 7) {
+            int bucket = Histogram.getBucket(value);
+            assertTrue(value <= Histogram.getBucketUpperBound(bucket));
+            assertTrue(bucket == 0 || value > Histogram.getBucketUpperBound(bucket - 1));
+        }
+    }
+
+    @Test
+    public void histogramsSurviveRoundTrip() throws Exception {
+        telemetry.addSample(Telemetry.HISTOGRAM_STARTUP_LATENCY, 800);
+        telemetry.addSample(Telemetry.HISTOGRAM_STARTUP_LATENCY, 1200);
+        telemetry.recordEvent(Telemetry.EVENT_STARTUP_COMPLETED, 5000, 800, 1);
+        byte[] data = telemetry.toByteArray();
+
+        Telemetry restored = new Telemetry(4, 10);
+        restored.readHistograms(data);
+        assertEquals(2, restored.getSampleCount(Telemetry.HISTOGRAM_STARTUP_LATENCY));
+        assertEquals(1000, restored.getMean(Telemetry.HISTOGRAM_STARTUP_LATENCY));
+        assertEquals(telemetry.getPercentile(Telemetry.HISTOGRAM_STARTUP_LATENCY, 50),
+                restored.getPercentile(Telemetry.HISTOGRAM_STARTUP_LATENCY, 50));
+        assertEquals(0, restored.getEventCount());
+    }
+}
@@ -0,0 +1,56 @@
+package com.thelotradio.android.visualizer;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class FftTest {
+
+    private static final int SIZE = 64;
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsSizeNotPowerOfTwo() {
+        new Fft(48);
+    }
+
+    @Test
+    public void matchesDiscreteFourierTransform() {
+        Random random = new Random(0);
+        float[] real = new float[SIZE];
+        float[] imaginary = new float[SIZE];
+        for (int i = 0; i < SIZE; i++) {
+            real[i] = random.nextFloat() * 2 - 1;
+            imaginary[i] = random.nextFloat() * 2 - 1;
+        }
+        double[] expectedReal = new double[SIZE];
+        double[] expectedImaginary = new double[SIZE];
+        for (int k = 0; k < SIZE; k++) {
+            for (int n = 0; n < SIZE; n++) {
+                double angle = -2 * Math.PI * k * n / SIZE;
+                expectedReal[k] += real[n] * Math.cos(angle) - imaginary[n] * Math.sin(angle);
+                expectedImaginary[k] += real[n] * Math.sin(angle) + imaginary[n] * Math.cos(angle);
+            }
+        }
+        new Fft(SIZE).transform(real, imaginary);
+        for (int k = 0; k < SIZE; k++) {
+            assertEquals(expectedReal[k], real[k], 1e-4);
+            assertEquals(expectedImaginary[k], imaginary[k], 1e-4);
+        }
+    }
+
+    @Test
+    public void sinePeaksAtItsBin() {
+        float[] real = new float[SIZE];
+        float[] imaginary = new float[SIZE];
+        for (int i = 0; i < SIZE; i++) {
+            real[i] = (float) Math.sin(2 * Math.PI * 5 * i / SIZE);
+        }
+        new Fft(SIZE).transform(real, imaginary);
+        for (int k = 0; k <= SIZE / 2; k++) {
+            double magnitude = Math.hypot(real[k], imaginary[k]);
+            assertEquals(k == 5 ? SIZE / 2 : 0, magnitude, 1e-3);
+        }
+    }
+}
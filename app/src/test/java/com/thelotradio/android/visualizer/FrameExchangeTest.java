@@ -0,0 +1,55 @@
+package com.thelotradio.android.visualizer;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+public class FrameExchangeTest {
+
+    private FrameExchange exchange;
+
+    @Before
+    public void setUp() {
+        exchange = new FrameExchange(1);
+    }
+
+    @Test
+    public void nothingToAcquireUntilPublished() {
+        assertFalse(exchange.acquire());
+        publish(1);
+        assertTrue(exchange.acquire());
+        assertEquals(1, exchange.getFrontBuffer()[0], 0);
+        assertFalse(exchange.acquire());
+        assertEquals(1, exchange.getFrontBuffer()[0], 0);
+    }
+
+    @Test
+    public void latestFrameReplacesUnacquiredOnes() {
+        publish(1);
+        publish(2);
+        publish(3);
+        assertTrue(exchange.acquire());
+        assertEquals(3, exchange.getFrontBuffer()[0], 0);
+        assertFalse(exchange.acquire());
+    }
+
+    @Test
+    public void writerNeverFillsFrontBuffer() {
+        for (int i = 0; i < 10; i++) {
+            publish(i);
+            if (i % 3 == 0) {
+                assertTrue(exchange.acquire());
+            }
+            assertNotSame(exchange.getFrontBuffer(), exchange.getBackBuffer());
+        }
+    }
+
+    private void publish(float value) {
+        exchange.getBackBuffer()[0] = value;
+        exchange.publish();
+    }
+}
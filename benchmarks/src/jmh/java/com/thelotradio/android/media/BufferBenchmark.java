@@ -0,0 +1,55 @@
+package com.thelotradio.android.media;
+
+import com.google.android.exoplayer.upstream.Allocation;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * The buffers every downloaded byte passes through: sample buffer segments from
+ * {@link BudgetedAllocator}, which should come from its pool without allocating once warm, and
+ * the memory-mapped {@link TimeShiftBuffer}.
+ */
+@State(Scope.Thread)
+public class BufferBenchmark {
+
+    private static final int SEGMENT_SIZE = 16 * 1024;
+    private static final int CHUNK_LENGTH = 4096;
+
+    private BudgetedAllocator allocator;
+    private TimeShiftBuffer timeShiftBuffer;
+    private byte[] chunk;
+
+    @Setup
+    public void setUp() throws IOException {
+        allocator = new BudgetedAllocator(SEGMENT_SIZE, 64);
+        File file = File.createTempFile("timeshift", null);
+        timeShiftBuffer = new TimeShiftBuffer(file, 4 * 1024 * 1024);
+        chunk = new byte[CHUNK_LENGTH];
+    }
+
+    @TearDown
+    public void tearDown() {
+        allocator.releasePool();
+    }
+
+    @Benchmark
+    public Allocation allocateAndRelease() {
+        Allocation allocation = allocator.allocate();
+        allocator.release(allocation);
+        return allocation;
+    }
+
+    @Benchmark
+    public int writeAndReadTimeShift() {
+        long position = timeShiftBuffer.getWritePosition();
+        timeShiftBuffer.write(chunk, 0, CHUNK_LENGTH);
+        return timeShiftBuffer.read(position, chunk, 0, CHUNK_LENGTH);
+    }
+}
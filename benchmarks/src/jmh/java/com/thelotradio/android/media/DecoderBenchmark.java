@@ -0,0 +1,86 @@
+package com.thelotradio.android.media;
+
+import com.thelotradio.android.media.decoder.AacDecoder;
+import com.thelotradio.android.media.decoder.AudioDecoder;
+import com.thelotradio.android.media.decoder.Mp3Decoder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Decodes a third of a second of 44.1 kHz stereo audio with the software decoders, from the
+ * vectors of the decoder unit tests. Anything under 333 ms per operation is faster than realtime;
+ * the GC profiler should report no allocation.
+ */
+@State(Scope.Thread)
+public class DecoderBenchmark {
+
+    private static final String RESOURCE_PATH = "/com/thelotradio/android/media/decoder/";
+    private static final int ADTS_HEADER_LENGTH = 7;
+
+    @Param({"mp3", "aac"})
+    public String format;
+
+    private AudioDecoder decoder;
+    private byte[] stream;
+    private int[] offsets;
+    private int[] lengths;
+    private int accessUnitCount;
+    private ByteBuffer output;
+
+    @Setup
+    public void setUp() throws Exception {
+        boolean aac = format.equals("aac");
+        stream = readResource(RESOURCE_PATH + "stereo_44100." + format);
+        offsets = new int[stream.length];
+        lengths = new int[stream.length];
+        int offset = 0;
+        while (offset < stream.length) {
+            int frameLength = FrameBoundaryTracker.getFrameLength(stream, offset);
+            // The test vectors carry no ADTS CRC.
+            int headerLength = aac ? ADTS_HEADER_LENGTH : 0;
+            offsets[accessUnitCount] = offset + headerLength;
+            lengths[accessUnitCount] = Math.min(frameLength, stream.length - offset) - headerLength;
+            accessUnitCount++;
+            offset += frameLength;
+        }
+        // AAC-LC, 44.1 kHz, stereo.
+        decoder = aac ? new AacDecoder(new byte[] {0x12, 0x10}) : new Mp3Decoder();
+        output = ByteBuffer.allocateDirect(decoder.getMaxOutputSize())
+                .order(ByteOrder.nativeOrder());
+    }
+
+    @Benchmark
+    public int decode() throws Exception {
+        decoder.reset();
+        int samples = 0;
+        for (int i = 0; i < accessUnitCount; i++) {
+            output.clear();
+            samples += decoder.decode(stream, offsets[i], lengths[i], output);
+        }
+        return samples;
+    }
+
+    private static byte[] readResource(String name) throws Exception {
+        InputStream in = DecoderBenchmark.class.getResourceAsStream(name);
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.thelotradio.android.media;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Follows frame boundaries through 64 KB of 128 kbps MP3, as the stream switching and time-shift
+ * sources do with every read.
+ */
+@State(Scope.Thread)
+public class FrameBoundaryTrackerBenchmark {
+
+    // MPEG-1 Layer III, 128 kbps, 44.1 kHz, no padding: 417 byte frames.
+    private static final byte[] MP3_HEADER = {(byte) 0xFF, (byte) 0xFB, (byte) 0x90, 0x64, 0, 0};
+    private static final int MP3_FRAME_LENGTH = 417;
+    private static final int READ_LENGTH = 4096;
+
+    private FrameBoundaryTracker tracker;
+    private byte[] stream;
+
+    @Setup
+    public void setUp() {
+        stream = new byte[64 * 1024];
+        for (int i = 0; i + MP3_HEADER.length <= stream.length; i += MP3_FRAME_LENGTH) {
+            System.arraycopy(MP3_HEADER, 0, stream, i, MP3_HEADER.length);
+        }
+        tracker = new FrameBoundaryTracker();
+    }
+
+    @Benchmark
+    public int consume() {
+        tracker.reset();
+        for (int offset = 0; offset < stream.length; offset += READ_LENGTH) {
+            tracker.consume(stream, offset, Math.min(READ_LENGTH, stream.length - offset));
+        }
+        return tracker.bytesUntilFrameBoundary();
+    }
+
+    @Benchmark
+    public int findFrame() {
+        // Starts just past a header, so it has to scan most of a frame.
+        return FrameBoundaryTracker.findFrame(stream, 1, stream.length - 1);
+    }
+}
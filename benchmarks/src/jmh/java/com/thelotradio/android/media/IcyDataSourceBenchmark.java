@@ -0,0 +1,125 @@
+package com.thelotradio.android.media;
+
+import com.google.android.exoplayer.C;
+import com.google.android.exoplayer.upstream.DataSpec;
+import com.google.android.exoplayer.upstream.HttpDataSource;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads a second of 128 kbps audio with metadata interleaved every 16000 bytes, as Icecast sends
+ * it, through {@link IcyDataSource}. With an unchanged title the metadata path should not
+ * allocate; a changed title costs one String.
+ */
+@State(Scope.Thread)
+public class IcyDataSourceBenchmark {
+
+    private static final int METADATA_INTERVAL = 16000;
+    private static final int READ_LENGTH = 4096;
+
+    @Param({"false", "true"})
+    public boolean titleChanges;
+
+    private IcyDataSource dataSource;
+    private byte[] buffer;
+    private byte[] metadataBlock;
+
+    @Setup
+    public void setUp() throws Exception {
+        Charset utf8 = Charset.forName("UTF-8");
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        byte[] audio = new byte[METADATA_INTERVAL];
+        for (int i = 0; i < 2; i++) {
+            stream.write(audio);
+            String title = "StreamTitle='Morning Show" + (titleChanges ? " " + i : "") + "';";
+            metadataBlock = new byte[(title.length() + 15) / 16 * 16];
+            System.arraycopy(title.getBytes(utf8), 0, metadataBlock, 0, title.length());
+            stream.write(metadataBlock.length / 16);
+            stream.write(metadataBlock);
+        }
+        dataSource = new IcyDataSource(new LoopingHttpDataSource(stream.toByteArray()), null,
+                null);
+        dataSource.open(new DataSpec(null));
+        buffer = new byte[READ_LENGTH];
+    }
+
+    @Benchmark
+    public int readOneSecond() throws Exception {
+        int total = 0;
+        while (total < 16000) {
+            total += dataSource.read(buffer, 0, READ_LENGTH);
+        }
+        return total;
+    }
+
+    @Benchmark
+    public String parseStreamTitle() {
+        return IcyDataSource.parseStreamTitle(metadataBlock, metadataBlock.length);
+    }
+
+    /**
+     * Serves the same bytes over and over, like a live stream that never ends.
+     */
+    private static final class LoopingHttpDataSource implements HttpDataSource {
+
+        private final byte[] data;
+        private final Map<String, List<String>> headers;
+        private int position;
+
+        public LoopingHttpDataSource(byte[] data) {
+            this.data = data;
+            headers = Collections.singletonMap("icy-metaint",
+                    Collections.singletonList(Integer.toString(METADATA_INTERVAL)));
+        }
+
+        @Override
+        public long open(DataSpec dataSpec) {
+            position = 0;
+            return C.LENGTH_UNBOUNDED;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int readLength) {
+            int bytesRead = Math.min(readLength, data.length - position);
+            System.arraycopy(data, position, buffer, offset, bytesRead);
+            position = (position + bytesRead) % data.length;
+            return bytesRead;
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public String getUri() {
+            return null;
+        }
+
+        @Override
+        public void setRequestProperty(String name, String value) {
+        }
+
+        @Override
+        public void clearRequestProperty(String name) {
+        }
+
+        @Override
+        public void clearAllRequestProperties() {
+        }
+
+        @Override
+        public Map<String, List<String>> getResponseHeaders() {
+            return headers;
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.thelotradio.android.media;
+
+import com.google.android.exoplayer.ExoPlayer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * What each state change of the ExoPlayer costs AudioPlayer before its listeners: working out the
+ * state to report, and dropping it when it is unchanged.
+ */
+@State(Scope.Thread)
+public class PlayerStateReporterBenchmark {
+
+    private PlayerStateReporter reporter;
+    private int reportedCount;
+    private boolean buffering;
+
+    @Setup
+    public void setUp() {
+        reporter = new PlayerStateReporter(new PlayerStateReporter.Listener() {
+            @Override
+            public void onStateChanged(boolean playWhenReady, int playbackState) {
+                reportedCount++;
+            }
+        });
+        report(ExoPlayer.STATE_READY);
+    }
+
+    @Benchmark
+    public int reportUnchanged() {
+        report(ExoPlayer.STATE_READY);
+        return reportedCount;
+    }
+
+    @Benchmark
+    public int reportChange() {
+        buffering = !buffering;
+        report(buffering ? ExoPlayer.STATE_BUFFERING : ExoPlayer.STATE_READY);
+        return reportedCount;
+    }
+
+    private void report(int playerState) {
+        reporter.update(true, PlayerStateReporter.getPlaybackState(
+                PlayerStateReporter.RENDERER_BUILDING_STATE_BUILT, playerState));
+    }
+}
@@ -0,0 +1,65 @@
+package com.thelotradio.android.playback;
+
+import android.support.v4.media.session.PlaybackStateCompat;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * What each state change of the player costs AudioPlayback: working out the actions, dropping an
+ * unchanged state, and building a changed one for the media session. Publishing without a handler
+ * delivers every change right away, so each op of publishChange builds a state.
+ */
+@State(Scope.Thread)
+public class PlaybackStateBenchmark {
+
+    private PlaybackStateFactory factory;
+    private PlaybackStatePublisher publisher;
+    private PlaybackStateCompat lastState;
+    private boolean buffering;
+
+    @Setup
+    public void setUp() {
+        factory = new PlaybackStateFactory(
+                new PlaybackStateCompat.CustomAction.Builder("jump", "Jump to live", 1).build(),
+                new PlaybackStateCompat.CustomAction.Builder("record", "Record", 2).build(),
+                new PlaybackStateCompat.CustomAction.Builder("stop", "Stop recording", 3).build());
+        publisher = new PlaybackStatePublisher(null, new PlaybackStatePublisher.Delegate() {
+            @Override
+            public void onPublishState(int state, long actions, int customActions) {
+                lastState = factory.createPlaybackState(state, actions, customActions);
+            }
+        });
+        publish(PlaybackStateCompat.STATE_PLAYING);
+    }
+
+    @Benchmark
+    public int publishUnchanged() {
+        publish(PlaybackStateCompat.STATE_PLAYING);
+        return publisher.getSuppressedCount();
+    }
+
+    @Benchmark
+    public PlaybackStateCompat publishChange() {
+        // Flapping between buffering and playing, as a stalling stream does.
+        buffering = !buffering;
+        publish(buffering ? PlaybackStateCompat.STATE_BUFFERING
+                : PlaybackStateCompat.STATE_PLAYING);
+        return lastState;
+    }
+
+    @Benchmark
+    public PlaybackStateCompat createPlaybackState() {
+        return factory.createPlaybackState(PlaybackStateCompat.STATE_PLAYING,
+                PlaybackStateFactory.getAvailableActions(true),
+                PlaybackStateFactory.getCustomActions(PlaybackStateCompat.STATE_PLAYING, true,
+                        false));
+    }
+
+    private void publish(int state) {
+        publisher.update(state, PlaybackStateFactory.getAvailableActions(true),
+                PlaybackStateFactory.getCustomActions(state, false, false));
+    }
+}
@@ -0,0 +1,42 @@
+package com.thelotradio.android.telemetry;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * The cost of what each player event costs its listeners: recording it and adding its sample.
+ * Recording must stay allocation-free, so gc.alloc.rate.norm should read 0 for both.
+ */
+@State(Scope.Thread)
+public class TelemetryBenchmark {
+
+    private Telemetry telemetry;
+    private long timeMs;
+
+    @Setup
+    public void setUp() {
+        telemetry = new Telemetry(1024, 500);
+        for (int i = 0; i < 1024; i++) {
+            recordStateChange();
+        }
+    }
+
+    @Benchmark
+    public void recordStateChange() {
+        timeMs += 20;
+        telemetry.recordEvent(Telemetry.EVENT_STATE_CHANGED, timeMs, 1, 4);
+    }
+
+    @Benchmark
+    public void addRebufferSample() {
+        timeMs += 20;
+        telemetry.addSample(Telemetry.HISTOGRAM_REBUFFER_DURATION, timeMs & 0xFFFF);
+    }
+
+    @Benchmark
+    public byte[] dumpFullRing() {
+        return telemetry.toByteArray();
+    }
+}